@@ -0,0 +1,553 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.custom;
+
+import java.util.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+import org.eclipse.swt.widgets.*;
+
+/**
+ * Instances of this class play the frames of an animated image,
+ * such as an animated GIF loaded with an <code>ImageLoader</code>.
+ * <p>
+ * The frames are composited according to their offsets and disposal
+ * methods into images of the logical screen size, which are ready to
+ * be drawn as they are. As many composited images as fit in the memory
+ * budget are kept, so that short animations are composited only once
+ * and long ones are composited a few frames ahead of the one shown.
+ * </p><p>
+ * The frames are scheduled with <code>Display.timerExec</code> on the
+ * user-interface thread. When the thread falls behind, the frames whose
+ * display time has already passed are dropped instead of being shown
+ * late. Frames are never shown more often than the minimum delay, which
+ * bounds the CPU used by the animation.
+ * </p><p>
+ * Listeners are notified with an event of type <code>SWT.Modify</code>
+ * whenever the image to draw changes, typically to redraw the control
+ * that shows it:
+ * </p>
+ * <pre><code>
+ * ImageAnimator animator = new ImageAnimator(display, loader);
+ * animator.addListener(event -&gt; canvas.redraw());
+ * canvas.addPaintListener(event -&gt; event.gc.drawImage(animator.getImage(), 0, 0));
+ * animator.start();
+ * </code></pre>
+ * <p>
+ * The images answered by <code>getImage()</code> belong to the
+ * animator, which must be disposed when it is no longer required.
+ * </p>
+ *
+ * @see ImageLoader
+ * @see ImageData#disposalMethod
+ * @see ImageData#delayTime
+ * @see <a href="http://www.eclipse.org/swt/">Sample code and further information</a>
+ *
+ * @since 3.106
+ */
+public class ImageAnimator {
+	Display display;
+	Compositor compositor;
+	int frameCount, repeatCount;
+
+	/* The composited images of the frames that are kept, null for the others */
+	Image[] images;
+	int capacity;
+	int memoryBudget = DEFAULT_MEMORY_BUDGET;
+	int minimumDelay = DEFAULT_MINIMUM_DELAY;
+
+	/* The frame shown, the loops completed, and when the frame shown should be replaced */
+	int index, loops;
+	long due;
+	boolean running, disposed;
+	java.util.List<Listener> listeners = new ArrayList<>();
+	Runnable timer = this::tick;
+
+	static final int DEFAULT_MEMORY_BUDGET = 4 * 1024 * 1024;
+	static final int DEFAULT_MINIMUM_DELAY = 20;
+
+	/* Delays of at most 10 milliseconds are shown for 100, as web browsers do */
+	static final int UNSPECIFIED_DELAY = 100;
+
+	/* Beyond this lag the schedule restarts from now instead of dropping frames */
+	static final long MAX_LAG = 1000000000L;
+
+	/*
+	 * Composites the frames one after the other into straight ARGB
+	 * pixels of the logical screen, starting again from a transparent
+	 * screen when a frame before the last one composited is asked for.
+	 */
+	static final class Compositor {
+		final ImageData[] frames;
+		final int width, height;
+		final int[] pixels;
+		int[] previous;
+		int composited = -1;
+
+		Compositor(ImageData[] frames, int width, int height) {
+			this.frames = frames;
+			this.width = width;
+			this.height = height;
+			this.pixels = new int[width * height];
+		}
+
+		int[] composite(int index) {
+			if (index < composited) {
+				Arrays.fill(pixels, 0);
+				composited = -1;
+			}
+			while (composited < index) {
+				if (composited != -1) dispose(frames[composited]);
+				composited++;
+				draw(frames[composited]);
+			}
+			return pixels;
+		}
+
+		/* Answers the part of the frame bounds that is on the screen, as x, y, width and height */
+		int[] clip(ImageData frame) {
+			int x = Math.max(0, frame.x), y = Math.max(0, frame.y);
+			int right = Math.min(width, frame.x + frame.width), bottom = Math.min(height, frame.y + frame.height);
+			return new int[] {x, y, Math.max(0, right - x), Math.max(0, bottom - y)};
+		}
+
+		void draw(ImageData frame) {
+			int[] bounds = clip(frame);
+			int x = bounds[0], y = bounds[1], w = bounds[2], h = bounds[3];
+			if (frame.disposalMethod == SWT.DM_FILL_PREVIOUS) {
+				previous = new int[w * h];
+				for (int row = 0; row < h; row++) {
+					System.arraycopy(pixels, (y + row) * width + x, previous, row * w, w);
+				}
+			}
+			if (w == 0 || h == 0) return;
+			int[] source = new ARGBImageData(frame, false).pixels;
+			for (int row = 0; row < h; row++) {
+				int sourceIndex = (y + row - frame.y) * frame.width + (x - frame.x);
+				int index = (y + row) * width + x;
+				for (int column = 0; column < w; column++, sourceIndex++, index++) {
+					int pixel = source[sourceIndex];
+					int alpha = pixel >>> 24;
+					if (alpha == 0xFF) {
+						pixels[index] = pixel;
+					} else if (alpha != 0) {
+						pixels[index] = blend(pixel, pixels[index]);
+					}
+				}
+			}
+		}
+
+		void dispose(ImageData frame) {
+			int[] bounds = clip(frame);
+			int x = bounds[0], y = bounds[1], w = bounds[2], h = bounds[3];
+			switch (frame.disposalMethod) {
+				case SWT.DM_FILL_BACKGROUND:
+					for (int row = 0; row < h; row++) {
+						Arrays.fill(pixels, (y + row) * width + x, (y + row) * width + x + w, 0);
+					}
+					break;
+				case SWT.DM_FILL_PREVIOUS:
+					for (int row = 0; row < h; row++) {
+						System.arraycopy(previous, row * w, pixels, (y + row) * width + x, w);
+					}
+					previous = null;
+					break;
+			}
+		}
+
+		/* Answers the straight ARGB source drawn over the straight ARGB destination */
+		static int blend(int source, int destination) {
+			int sa = source >>> 24, da = destination >>> 24;
+			int dw = da * (0xFF - sa) / 0xFF;
+			int a = sa + dw;
+			int result = a << 24;
+			for (int shift = 0; shift < 24; shift += 8) {
+				int channel = (((source >> shift) & 0xFF) * sa + ((destination >> shift) & 0xFF) * dw + a / 2) / a;
+				result |= channel << shift;
+			}
+			return result;
+		}
+	}
+
+/**
+ * Constructs a new instance of this class that plays the frames
+ * of the given loader on the given display. The array of frames is
+ * copied, so the loader can be reused for other images afterwards.
+ * <p>
+ * The logical screen size of the loader is the size of the images,
+ * or the bounds of all the frames if it is not set. The animation is
+ * repeated as many times as the repeat count of the loader, or for
+ * ever if it is 0.
+ * </p>
+ *
+ * @param display the display on which to play the animation
+ * @param loader the loader that holds the frames of the animation
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the display or the loader is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the loader has no frames</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_DEVICE_DISPOSED - if the display has been disposed</li>
+ *    <li>ERROR_THREAD_INVALID_ACCESS - if not called from the thread that created the display</li>
+ * </ul>
+ */
+public ImageAnimator(Display display, ImageLoader loader) {
+	if (display == null || loader == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (loader.data == null || loader.data.length == 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	this.display = display;
+	checkThread();
+	ImageData[] frames = loader.data.clone();
+	int width = loader.logicalScreenWidth, height = loader.logicalScreenHeight;
+	if (width <= 0 || height <= 0) {
+		width = height = 1;
+		for (ImageData frame : frames) {
+			width = Math.max(width, frame.x + frame.width);
+			height = Math.max(height, frame.y + frame.height);
+		}
+	}
+	compositor = new Compositor(frames, width, height);
+	frameCount = frames.length;
+	repeatCount = loader.repeatCount;
+	images = new Image[frameCount];
+	capacity = computeCapacity();
+}
+
+/**
+ * Adds the listener to the collection of listeners who will be
+ * notified with an event of type <code>SWT.Modify</code> when the
+ * image to draw changes. The <code>index</code> field of the event
+ * is the index of the frame shown.
+ *
+ * @param listener the listener which should be notified
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the listener is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_GRAPHIC_DISPOSED - if the receiver has been disposed</li>
+ *    <li>ERROR_THREAD_INVALID_ACCESS - if not called from the thread that created the display</li>
+ * </ul>
+ */
+public void addListener(Listener listener) {
+	checkAnimator();
+	if (listener == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	listeners.add(listener);
+}
+
+/**
+ * Disposes of the images of the receiver and stops the animation.
+ * Disposing of an animator that has already been disposed has no
+ * effect.
+ *
+ * @exception SWTException <ul>
+ *    <li>ERROR_THREAD_INVALID_ACCESS - if not called from the thread that created the display</li>
+ * </ul>
+ */
+public void dispose() {
+	if (disposed) return;
+	if (!display.isDisposed()) {
+		checkThread();
+		display.timerExec(-1, timer);
+	}
+	running = false;
+	disposed = true;
+	for (int i = 0; i < frameCount; i++) {
+		if (images[i] != null) images[i].dispose();
+		images[i] = null;
+	}
+	listeners.clear();
+}
+
+/**
+ * Returns the index of the frame shown by the receiver.
+ *
+ * @return the index of the frame shown
+ *
+ * @exception SWTException <ul>
+ *    <li>ERROR_GRAPHIC_DISPOSED - if the receiver has been disposed</li>
+ *    <li>ERROR_THREAD_INVALID_ACCESS - if not called from the thread that created the display</li>
+ * </ul>
+ */
+public int getFrameIndex() {
+	checkAnimator();
+	return index;
+}
+
+/**
+ * Returns the composited image of the frame shown by the receiver,
+ * with the logical screen size of the animation. The image belongs
+ * to the receiver and must not be disposed. It is only valid until
+ * the next frame is shown.
+ *
+ * @return the image of the frame shown
+ *
+ * @exception SWTException <ul>
+ *    <li>ERROR_GRAPHIC_DISPOSED - if the receiver has been disposed</li>
+ *    <li>ERROR_THREAD_INVALID_ACCESS - if not called from the thread that created the display</li>
+ * </ul>
+ */
+public Image getImage() {
+	checkAnimator();
+	return getImage(index);
+}
+
+/**
+ * Returns the number of bytes of composited images that the
+ * receiver keeps at most.
+ *
+ * @return the memory budget in bytes
+ *
+ * @exception SWTException <ul>
+ *    <li>ERROR_GRAPHIC_DISPOSED - if the receiver has been disposed</li>
+ *    <li>ERROR_THREAD_INVALID_ACCESS - if not called from the thread that created the display</li>
+ * </ul>
+ */
+public int getMemoryBudget() {
+	checkAnimator();
+	return memoryBudget;
+}
+
+/**
+ * Returns the minimum number of milliseconds for which a frame
+ * is shown.
+ *
+ * @return the minimum delay in milliseconds
+ *
+ * @exception SWTException <ul>
+ *    <li>ERROR_GRAPHIC_DISPOSED - if the receiver has been disposed</li>
+ *    <li>ERROR_THREAD_INVALID_ACCESS - if not called from the thread that created the display</li>
+ * </ul>
+ */
+public int getMinimumDelay() {
+	checkAnimator();
+	return minimumDelay;
+}
+
+/**
+ * Returns <code>true</code> if the animator has been disposed,
+ * and <code>false</code> otherwise.
+ *
+ * @return <code>true</code> when the animator is disposed and <code>false</code> otherwise
+ */
+public boolean isDisposed() {
+	return disposed;
+}
+
+/**
+ * Returns <code>true</code> if the animation is playing, and
+ * <code>false</code> if it is stopped or has played all its
+ * repetitions.
+ *
+ * @return <code>true</code> when the animation is playing and <code>false</code> otherwise
+ *
+ * @exception SWTException <ul>
+ *    <li>ERROR_GRAPHIC_DISPOSED - if the receiver has been disposed</li>
+ *    <li>ERROR_THREAD_INVALID_ACCESS - if not called from the thread that created the display</li>
+ * </ul>
+ */
+public boolean isRunning() {
+	checkAnimator();
+	return running;
+}
+
+/**
+ * Removes the listener from the collection of listeners who will
+ * be notified when the image to draw changes.
+ *
+ * @param listener the listener which should no longer be notified
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the listener is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_GRAPHIC_DISPOSED - if the receiver has been disposed</li>
+ *    <li>ERROR_THREAD_INVALID_ACCESS - if not called from the thread that created the display</li>
+ * </ul>
+ */
+public void removeListener(Listener listener) {
+	checkAnimator();
+	if (listener == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	listeners.remove(listener);
+}
+
+/**
+ * Sets the number of bytes of composited images that the receiver
+ * keeps at most, counting four bytes per pixel. When all the frames
+ * fit, every frame is composited only once. Otherwise the frames
+ * are composited again on every repetition, a few frames ahead of
+ * the one shown. At least two images are always kept.
+ *
+ * @param bytes the memory budget in bytes
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if the budget is negative</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_GRAPHIC_DISPOSED - if the receiver has been disposed</li>
+ *    <li>ERROR_THREAD_INVALID_ACCESS - if not called from the thread that created the display</li>
+ * </ul>
+ */
+public void setMemoryBudget(int bytes) {
+	checkAnimator();
+	if (bytes < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	memoryBudget = bytes;
+	capacity = computeCapacity();
+	releaseImages();
+}
+
+/**
+ * Sets the minimum number of milliseconds for which a frame is
+ * shown, whatever the delay of the frame. This bounds the number
+ * of frames shown per second, and so the CPU used to draw them.
+ *
+ * @param milliseconds the minimum delay in milliseconds
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if the delay is negative</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_GRAPHIC_DISPOSED - if the receiver has been disposed</li>
+ *    <li>ERROR_THREAD_INVALID_ACCESS - if not called from the thread that created the display</li>
+ * </ul>
+ */
+public void setMinimumDelay(int milliseconds) {
+	checkAnimator();
+	if (milliseconds < 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	minimumDelay = milliseconds;
+}
+
+/**
+ * Starts playing the animation from the frame shown, or from
+ * the first frame if all its repetitions have been played.
+ *
+ * @exception SWTException <ul>
+ *    <li>ERROR_GRAPHIC_DISPOSED - if the receiver has been disposed</li>
+ *    <li>ERROR_THREAD_INVALID_ACCESS - if not called from the thread that created the display</li>
+ * </ul>
+ */
+public void start() {
+	checkAnimator();
+	if (running || frameCount < 2) return;
+	if (nextIndex(index, loops) == -1) {
+		loops = 0;
+		show(0);
+	}
+	running = true;
+	due = System.nanoTime() + delay(index) * 1000000L;
+	display.timerExec(delay(index), timer);
+}
+
+/**
+ * Stops playing the animation, which keeps showing the same frame.
+ *
+ * @exception SWTException <ul>
+ *    <li>ERROR_GRAPHIC_DISPOSED - if the receiver has been disposed</li>
+ *    <li>ERROR_THREAD_INVALID_ACCESS - if not called from the thread that created the display</li>
+ * </ul>
+ */
+public void stop() {
+	checkAnimator();
+	running = false;
+	display.timerExec(-1, timer);
+}
+
+void checkAnimator() {
+	if (disposed) SWT.error(SWT.ERROR_GRAPHIC_DISPOSED);
+	checkThread();
+}
+
+void checkThread() {
+	if (display.isDisposed()) SWT.error(SWT.ERROR_DEVICE_DISPOSED);
+	if (display.getThread() != Thread.currentThread()) SWT.error(SWT.ERROR_THREAD_INVALID_ACCESS);
+}
+
+int computeCapacity() {
+	long size = (long)compositor.width * compositor.height * 4;
+	return (int)Math.min(frameCount, Math.max(2, memoryBudget / size));
+}
+
+/* Answers the number of milliseconds for which the frame is shown */
+int delay(int index) {
+	int delay = compositor.frames[index].delayTime * 10;
+	if (delay <= 10) delay = UNSPECIFIED_DELAY;
+	return Math.max(delay, minimumDelay);
+}
+
+Image getImage(int index) {
+	Image image = images[index];
+	if (image == null) {
+		int[] pixels = compositor.composite(index).clone();
+		image = new Image(display, new ARGBImageData(compositor.width, compositor.height, pixels, false));
+		images[index] = image;
+	}
+	return image;
+}
+
+/* Answers the frame after the given one, or -1 when all the repetitions have been played */
+int nextIndex(int index, int loops) {
+	if (index < frameCount - 1) return index + 1;
+	if (repeatCount != 0 && loops + 1 >= repeatCount) return -1;
+	return 0;
+}
+
+/* Disposes of the images that are not among the capacity frames from the one shown */
+void releaseImages() {
+	for (int i = 0; i < frameCount; i++) {
+		if (images[i] != null && (i - index + frameCount) % frameCount >= capacity) {
+			images[i].dispose();
+			images[i] = null;
+		}
+	}
+}
+
+void show(int index) {
+	this.index = index;
+	releaseImages();
+	Event event = new Event();
+	event.display = display;
+	event.type = SWT.Modify;
+	event.index = index;
+	for (Listener listener : listeners.toArray(new Listener[listeners.size()])) {
+		listener.handleEvent(event);
+		if (disposed) return;
+	}
+}
+
+void tick() {
+	if (!running || disposed) return;
+	long now = System.nanoTime();
+	if (now - due > MAX_LAG) due = now;
+	/* Drop the frames whose display time has already passed */
+	int next = index, nextLoops = loops;
+	long end = due;
+	do {
+		int after = nextIndex(next, nextLoops);
+		if (after == -1) break;
+		if (after == 0) nextLoops++;
+		next = after;
+		end += delay(next) * 1000000L;
+	} while (end <= now);
+	if (next == index && nextLoops == loops) {
+		running = false;
+		return;
+	}
+	loops = nextLoops;
+	due = end;
+	show(next);
+	if (disposed || !running) return;
+	/* Composite the next frame ahead while waiting for it */
+	int after = nextIndex(index, loops);
+	if (after != -1 && capacity > 1) getImage(after);
+	display.timerExec((int)Math.max(1, (due - System.nanoTime()) / 1000000L), timer);
+}
+}
@@ -12,6 +12,7 @@ package org.eclipse.swt.graphics;
 
 
 import java.io.*;
+import java.util.concurrent.*;
 
 import org.eclipse.swt.*;
 import org.eclipse.swt.internal.*;
@@ -558,6 +559,31 @@ public Image(Device device, ImageData data) {
 	}
 }
 
+/**
+ * Constructs an instance of this class from the given
+ * <code>ARGBImageData</code>.
+ * <p>
+ * You must dispose the image when it is no longer required.
+ * </p>
+ *
+ * @param device the device on which to create the image
+ * @param data the image data to create the image from (must not be null)
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if device is null and there is no current device</li>
+ *    <li>ERROR_NULL_ARGUMENT - if the image data is null</li>
+ * </ul>
+ * @exception SWTError <ul>
+ *    <li>ERROR_NO_HANDLES if a handle could not be obtained for image creation</li>
+ * </ul>
+ *
+ * @see #dispose()
+ * @since 3.106
+ */
+public Image(Device device, ARGBImageData data) {
+	this(device, data != null ? data.toImageData() : null);
+}
+
 /**
  * Constructs an instance of this class, whose type is
  * <code>SWT.ICON</code>, from the two given <code>ImageData</code>
@@ -1614,6 +1640,71 @@ public boolean isDisposed() {
 	return handle == null;
 }
 
+/**
+ * Loads an image in the background from the files of the image file
+ * name provider.
+ * <p>
+ * The file for the current zoom level is decoded by a background thread.
+ * The image is then created on the user-interface thread of the device,
+ * where the returned future is completed. Loading many images this way
+ * does not block the user-interface thread while they are decoded.
+ * </p><p>
+ * The future fails with the exceptions the <code>Image</code>
+ * constructors throw when the image cannot be loaded. The image is
+ * not created when the future is cancelled first. You must dispose the
+ * image when it is no longer required.
+ * </p>
+ *
+ * @param device the device on which to create the image
+ * @param imageFileNameProvider the ImageFileNameProvider object that is
+ * to be used to get the file names
+ * @return a future completed with the image on the user-interface thread
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if device is null and there is no current device</li>
+ *    <li>ERROR_NULL_ARGUMENT - if the ImageFileNameProvider is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_DEVICE_DISPOSED - if the device has been disposed</li>
+ * </ul>
+ *
+ * @see #Image(Device, ImageFileNameProvider)
+ * @see #dispose()
+ * @since 3.106
+ */
+public static CompletableFuture<Image> loadAsync (Device device, ImageFileNameProvider imageFileNameProvider) {
+	return AsyncImageLoader.load(device, imageFileNameProvider);
+}
+
+/**
+ * Prepares the receiver to be displayed at the given zoom levels, so
+ * that moving it to one of these levels, for example when a shell is
+ * moved to a monitor with a different resolution, does not load and
+ * scale it on the user interface thread.
+ * <p>
+ * The work is done in the background and this method returns
+ * immediately. The image file name or image data providers of the
+ * receiver may be called from a background thread. This is a hint,
+ * platforms are free to ignore it.
+ * </p>
+ *
+ * @param zoomLevels the zoom levels in % of the standard resolution,
+ * for example 150 or 200
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the zoom levels are null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_GRAPHIC_DISPOSED - if the receiver has been disposed</li>
+ * </ul>
+ *
+ * @since 3.106
+ */
+public void prepareZoomLevels (int... zoomLevels) {
+	if (isDisposed()) SWT.error(SWT.ERROR_GRAPHIC_DISPOSED);
+	if (zoomLevels == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+}
+
 /**
  * Sets the color to which to map the transparent pixel.
  * <p>
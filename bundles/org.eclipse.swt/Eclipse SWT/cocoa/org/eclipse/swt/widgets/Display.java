@@ -362,6 +362,13 @@ public class Display extends Device {
 			}
 			setDevice (device);
 		};
+		DeviceHooks.asyncExec = (device, runnable) -> {
+			if (device instanceof Display) {
+				((Display) device).asyncExec (runnable);
+			} else {
+				DeviceHooks.run (device, runnable);
+			}
+		};
 	}
 
 /*
@@ -3775,6 +3782,7 @@ protected void release () {
 		}
 	}
 	disposeList = null;
+	DeviceHooks.disposed (this);
 	synchronizer.releaseSynchronizer ();
 	synchronizer = null;
 	if (appMenu != null) appMenu.dispose();
@@ -4110,6 +4110,83 @@ public class SWT {
 	 */
 	public static final int TRANSPARENCY_PIXEL = 1 << 2;
 
+	/**
+	 * Image scaling filter constant indicating that each pixel
+	 * is copied from the nearest source pixel (value is 0).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#scaledTo(int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int FILTER_NEAREST = 0;
+
+	/**
+	 * Image scaling filter constant indicating that each pixel
+	 * is interpolated linearly between the nearest source pixels
+	 * (value is 1).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#scaledTo(int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int FILTER_BILINEAR = 1;
+
+	/**
+	 * Image scaling filter constant indicating that each pixel
+	 * is interpolated with a cubic convolution of the nearest
+	 * 4x4 source pixels (value is 2).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#scaledTo(int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int FILTER_BICUBIC = 2;
+
+	/**
+	 * Image scaling filter constant indicating that each pixel
+	 * is interpolated with a Lanczos kernel over the nearest
+	 * 6x6 source pixels, which keeps the most detail
+	 * (value is 3).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#scaledTo(int, int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int FILTER_LANCZOS = 3;
+
+	/**
+	 * Image quantization dither constant indicating that each
+	 * pixel is mapped to the nearest palette color (value is 0).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#quantizedTo(int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int DITHER_NONE = 0;
+
+	/**
+	 * Image quantization dither constant indicating that the
+	 * error of each pixel is diffused to the pixels after it
+	 * with the Floyd-Steinberg weights (value is 1).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#quantizedTo(int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int DITHER_ERROR_DIFFUSION = 1;
+
+	/**
+	 * Image quantization dither constant indicating that each
+	 * pixel is offset by a 4x4 Bayer matrix before it is mapped
+	 * to the nearest palette color, which keeps the pattern stable
+	 * between the frames of an animation (value is 2).
+	 *
+	 * @see org.eclipse.swt.graphics.ImageData#quantizedTo(int, int)
+	 *
+	 * @since 3.106
+	 */
+	public static final int DITHER_ORDERED = 2;
+
 	/**
 	 * The character movement type (value is 1&lt;&lt;0).
 	 * This constant is used to move a text offset over a character.
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+import java.util.*;
+
+import org.eclipse.swt.*;
+
+/**
+ * Instances of this class are device-independent descriptions
+ * of images that hold every pixel in one <code>int</code>, with
+ * alpha in the most significant byte followed by red, green and
+ * blue in the least significant byte.
+ * <p>
+ * The color channels are either straight or premultiplied by
+ * alpha. Premultiplied pixels can be composited and filtered
+ * without unpacking alpha first, and straight pixels keep the
+ * exact colors of translucent pixels.
+ * </p>
+ * <p>
+ * Instances are converted from and to <code>ImageData</code>
+ * of any depth and palette, so that pixel processing code can
+ * work on one value per pixel instead of unpacking channels
+ * with palette masks and shifts.
+ * </p>
+ * <p>
+ * Application code does <em>not</em> need to explicitly release the
+ * resources managed by each instance when those instances are no longer
+ * required, and thus no <code>dispose()</code> method is provided.
+ * </p>
+ *
+ * @see ImageData
+ * @since 3.106
+ */
+public final class ARGBImageData implements Cloneable {
+	/**
+	 * The width of the image, in pixels.
+	 */
+	public int width;
+
+	/**
+	 * The height of the image, in pixels.
+	 */
+	public int height;
+
+	/**
+	 * The pixels of the image, row by row from the top, with
+	 * <code>width</code> pixels in every row and no padding.
+	 */
+	public int[] pixels;
+
+	/**
+	 * Whether the color channels are premultiplied by alpha.
+	 */
+	boolean premultiplied;
+
+/**
+ * Constructs a new, empty instance of this class with the
+ * specified width and height. All the pixels are transparent.
+ *
+ * @param width the width of the image
+ * @param height the height of the image
+ * @param premultiplied whether the color channels are premultiplied by alpha
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if the width or height is zero or negative</li>
+ * </ul>
+ */
+public ARGBImageData(int width, int height, boolean premultiplied) {
+	if (width <= 0 || height <= 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	this.width = width;
+	this.height = height;
+	this.pixels = new int[width * height];
+	this.premultiplied = premultiplied;
+}
+
+/**
+ * Constructs a new instance of this class with the specified
+ * width and height, backed by the given pixels. The array is
+ * used as is, not copied.
+ *
+ * @param width the width of the image
+ * @param height the height of the image
+ * @param pixels the pixels of the image, row by row from the top
+ * @param premultiplied whether the color channels are premultiplied by alpha
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the pixels are null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the width or height is zero or negative,
+ *        or if the array is too small for the image</li>
+ * </ul>
+ */
+public ARGBImageData(int width, int height, int[] pixels, boolean premultiplied) {
+	if (pixels == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (width <= 0 || height <= 0 || pixels.length < (long)width * height) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	this.width = width;
+	this.height = height;
+	this.pixels = pixels;
+	this.premultiplied = premultiplied;
+}
+
+/**
+ * Constructs a new instance of this class from the given image
+ * data. Transparency masks and transparent pixels become alphas
+ * of 0 and 255. Otherwise the global alpha of the image data, if
+ * any, becomes the alpha of every pixel. Like images created from
+ * the image data, a mask or transparent pixel takes precedence
+ * over the global alpha, which is then ignored.
+ *
+ * @param data the image data to convert
+ * @param premultiplied whether the color channels are premultiplied by alpha
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the image data is null</li>
+ * </ul>
+ */
+public ARGBImageData(ImageData data, boolean premultiplied) {
+	if (data == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	this.width = data.width;
+	this.height = data.height;
+	this.pixels = data.getARGBs();
+	this.premultiplied = false;
+	int transparencyType = data.getTransparencyType();
+	if (data.alpha != -1 && transparencyType != SWT.TRANSPARENCY_MASK && transparencyType != SWT.TRANSPARENCY_PIXEL) {
+		int alpha = data.alpha << 24;
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (pixels[i] & 0xFFFFFF) | alpha;
+		}
+	}
+	setPremultiplied(premultiplied);
+}
+
+/**
+ * Returns a new instance of this class that is a copy of the receiver.
+ *
+ * @return a copy of the receiver
+ */
+@Override
+public ARGBImageData clone() {
+	return new ARGBImageData(width, height, pixels.clone(), premultiplied);
+}
+
+/**
+ * Returns the ARGB value of the pixel at the specified location.
+ *
+ * @param x the x coordinate of the pixel to get
+ * @param y the y coordinate of the pixel to get
+ * @return the ARGB value of the pixel
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if x or y is out of bounds</li>
+ * </ul>
+ */
+public int getPixel(int x, int y) {
+	if (x < 0 || x >= width || y < 0 || y >= height) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	return pixels[y * width + x];
+}
+
+/**
+ * Sets the ARGB value of the pixel at the specified location.
+ *
+ * @param x the x coordinate of the pixel to set
+ * @param y the y coordinate of the pixel to set
+ * @param argb the ARGB value of the pixel
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if x or y is out of bounds</li>
+ * </ul>
+ */
+public void setPixel(int x, int y, int argb) {
+	if (x < 0 || x >= width || y < 0 || y >= height) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	pixels[y * width + x] = argb;
+}
+
+/**
+ * Copies the <code>width</code> pixels of the row at the given
+ * y coordinate into the array, starting at the given index.
+ *
+ * @param y the y coordinate of the row
+ * @param row the array to copy the pixels into
+ * @param startIndex the index in the array at which to start copying
+ *
+ * @exception IndexOutOfBoundsException if the array is too small
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the array is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if y is out of bounds</li>
+ * </ul>
+ */
+public void getRow(int y, int[] row, int startIndex) {
+	if (row == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (y < 0 || y >= height) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	System.arraycopy(pixels, y * width, row, startIndex, width);
+}
+
+/**
+ * Copies <code>width</code> pixels from the array, starting at
+ * the given index, into the row at the given y coordinate.
+ *
+ * @param y the y coordinate of the row
+ * @param row the array to copy the pixels from
+ * @param startIndex the index in the array at which to start copying
+ *
+ * @exception IndexOutOfBoundsException if the array is too small
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the array is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if y is out of bounds</li>
+ * </ul>
+ */
+public void setRow(int y, int[] row, int startIndex) {
+	if (row == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (y < 0 || y >= height) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	System.arraycopy(row, startIndex, pixels, y * width, width);
+}
+
+/**
+ * Returns whether the color channels of the receiver are
+ * premultiplied by alpha.
+ *
+ * @return <code>true</code> if the colors are premultiplied, and <code>false</code> otherwise
+ */
+public boolean isPremultiplied() {
+	return premultiplied;
+}
+
+/**
+ * Converts the pixels of the receiver in place so that their
+ * color channels are premultiplied by alpha, or straight. Colors
+ * of fully transparent pixels are lost when premultiplying.
+ *
+ * @param premultiplied whether the color channels should be premultiplied by alpha
+ */
+public void setPremultiplied(boolean premultiplied) {
+	if (this.premultiplied == premultiplied) return;
+	int[] pixels = this.pixels;
+	int count = width * height;
+	if (premultiplied) {
+		for (int i = 0; i < count; i++) {
+			int pixel = pixels[i];
+			int a = pixel >>> 24;
+			if (a == 0xFF) continue;
+			pixels[i] = (a << 24) |
+				(multiply((pixel >> 16) & 0xFF, a) << 16) |
+				(multiply((pixel >> 8) & 0xFF, a) << 8) |
+				multiply(pixel & 0xFF, a);
+		}
+	} else {
+		for (int i = 0; i < count; i++) {
+			int pixel = pixels[i];
+			int a = pixel >>> 24;
+			if (a == 0xFF) continue;
+			pixels[i] = (a << 24) |
+				(divide((pixel >> 16) & 0xFF, a) << 16) |
+				(divide((pixel >> 8) & 0xFF, a) << 8) |
+				divide(pixel & 0xFF, a);
+		}
+	}
+	this.premultiplied = premultiplied;
+}
+
+/**
+ * Returns a new image data with the pixels of the receiver. The
+ * image data has a depth of 24 bits, red, green and blue masks of
+ * <code>0xFF0000</code>, <code>0xFF00</code> and <code>0xFF</code>,
+ * and alpha data unless every pixel is opaque.
+ *
+ * @return the image data
+ */
+public ImageData toImageData() {
+	ImageData data = new ImageData(width, height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	byte[] bytes = data.data, alphas = null;
+	int bytesPerLine = data.bytesPerLine;
+	for (int y = 0, i = 0; y < height; y++) {
+		for (int x = 0, offset = y * bytesPerLine; x < width; x++, i++, offset += 3) {
+			int pixel = pixels[i];
+			int a = pixel >>> 24;
+			if (a != 0xFF) {
+				if (alphas == null) {
+					alphas = new byte[width * height];
+					Arrays.fill(alphas, 0, i, (byte)0xFF);
+				}
+				if (premultiplied) {
+					pixel = (divide((pixel >> 16) & 0xFF, a) << 16) |
+						(divide((pixel >> 8) & 0xFF, a) << 8) |
+						divide(pixel & 0xFF, a);
+				}
+			}
+			if (alphas != null) alphas[i] = (byte)a;
+			bytes[offset] = (byte)(pixel >> 16);
+			bytes[offset + 1] = (byte)(pixel >> 8);
+			bytes[offset + 2] = (byte)pixel;
+		}
+	}
+	data.alphaData = alphas;
+	return data;
+}
+
+/* Multiplies a channel by alpha, rounded */
+static int multiply(int channel, int alpha) {
+	int value = channel * alpha + 0x80;
+	return (value + (value >> 8)) >> 8;
+}
+
+/* Divides a premultiplied channel by alpha, rounded and clamped */
+static int divide(int channel, int alpha) {
+	if (alpha == 0) return 0;
+	return Math.min(0xFF, (channel * 0xFF + (alpha >> 1)) / alpha);
+}
+
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.internal.*;
+
+/**
+ * Loads images in the background for <code>Image.loadAsync()</code>.
+ * <p>
+ * The image data is decoded by a small pool of daemon threads. The images
+ * themselves are created on the thread of their device, the images that
+ * finished decoding in the meantime are created together by a single
+ * <code>asyncExec()</code>.
+ * </p><p>
+ * When a display is disposed, the images still queued for it and the
+ * images decoded for it later fail with <code>ERROR_DEVICE_DISPOSED</code>,
+ * since its last runnables may never run.
+ * </p>
+ */
+final class AsyncImageLoader {
+
+	/**
+	 * An image decoded in the background, waiting to be created.
+	 */
+	static final class Completion {
+		final CompletableFuture<Image> future;
+		final ImageDataProvider provider;
+		final Throwable error;
+
+		Completion(CompletableFuture<Image> future, ImageDataProvider provider, Throwable error) {
+			this.future = future;
+			this.provider = provider;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Provides the image data decoded in the background for the zoom level
+	 * it was decoded at, the first time it is asked for, and reads the files
+	 * of the image file name provider otherwise.
+	 */
+	static final class DecodedImageDataProvider implements ImageDataProvider {
+		final ImageFileNameProvider provider;
+		final int zoom;
+		ImageData data;
+
+		DecodedImageDataProvider(ImageFileNameProvider provider, int zoom, ImageData data) {
+			this.provider = provider;
+			this.zoom = zoom;
+			this.data = data;
+		}
+
+		@Override
+		public synchronized ImageData getImageData(int zoom) {
+			if (zoom == this.zoom && data != null) {
+				ImageData result = data;
+				data = null;
+				return result;
+			}
+			String filename = provider.getImagePath(zoom);
+			return filename != null ? new ImageData(filename) : null;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (object == this) return true;
+			if (!(object instanceof DecodedImageDataProvider)) return false;
+			return provider.equals(((DecodedImageDataProvider) object).provider);
+		}
+
+		@Override
+		public int hashCode() {
+			return provider.hashCode();
+		}
+	}
+
+	/* Decoding is mostly memory bound, a few threads are enough */
+	static final int MAX_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+	static ThreadPoolExecutor executor;
+	static final Map<Device, List<Completion>> pending = new HashMap<>();
+
+	/* Devices being disposed, guarded by pending */
+	static final Set<Device> released = Collections.newSetFromMap(new WeakHashMap<>());
+
+	static {
+		DeviceHooks.disposed = AsyncImageLoader::release;
+	}
+
+static synchronized Executor executor() {
+	if (executor == null) {
+		AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "SWT Image Loader " + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+	}
+	return executor;
+}
+
+static CompletableFuture<Image> load(Device device, ImageFileNameProvider provider) {
+	if (device == null) device = Device.getDevice();
+	if (device == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (device.isDisposed()) SWT.error(SWT.ERROR_DEVICE_DISPOSED);
+	if (provider == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	CompletableFuture<Image> future = new CompletableFuture<>();
+	int zoom = DPIUtil.getDeviceZoom();
+	Device target = device;
+	executor().execute(() -> {
+		if (future.isDone()) return;
+		ImageDataProvider dataProvider = null;
+		Throwable error = null;
+		try {
+			boolean[] found = new boolean[1];
+			String filename = DPIUtil.validateAndGetImagePathAtZoom(provider, zoom, found);
+			dataProvider = new DecodedImageDataProvider(provider, found[0] ? zoom : 100, new ImageData(filename));
+		} catch (RuntimeException | Error e) {
+			error = e;
+		}
+		deliver(target, new Completion(future, dataProvider, error));
+	});
+	return future;
+}
+
+/**
+ * Queues the completion for the thread of the device, scheduling the
+ * creation of the queued images unless it is already scheduled.
+ */
+static void deliver(Device device, Completion completion) {
+	boolean schedule = false;
+	synchronized (pending) {
+		if (!released.contains(device)) {
+			List<Completion> completions = pending.get(device);
+			schedule = completions == null;
+			if (schedule) pending.put(device, completions = new ArrayList<>());
+			completions.add(completion);
+			completion = null;
+		}
+	}
+	if (completion != null) {
+		completion.future.completeExceptionally(new SWTException(SWT.ERROR_DEVICE_DISPOSED));
+	} else if (schedule) {
+		try {
+			DeviceHooks.asyncExec(device, () -> complete(device));
+		} catch (SWTException e) {
+			complete(device);
+		}
+	}
+}
+
+/**
+ * Fails the images queued for a device that is being disposed, and those
+ * decoded for it later.
+ */
+static void release(Device device) {
+	List<Completion> completions;
+	synchronized (pending) {
+		released.add(device);
+		completions = pending.remove(device);
+	}
+	if (completions == null) return;
+	for (Completion completion : completions) {
+		completion.future.completeExceptionally(new SWTException(SWT.ERROR_DEVICE_DISPOSED));
+	}
+}
+
+/**
+ * Creates the queued images of the device, or fails them when the
+ * device was disposed meanwhile.
+ */
+static void complete(Device device) {
+	List<Completion> completions;
+	synchronized (pending) {
+		completions = pending.remove(device);
+	}
+	if (completions == null) return;
+	for (Completion completion : completions) {
+		CompletableFuture<Image> future = completion.future;
+		if (future.isDone()) continue;
+		if (completion.error != null) {
+			future.completeExceptionally(completion.error);
+		} else if (device.isDisposed()) {
+			future.completeExceptionally(new SWTException(SWT.ERROR_DEVICE_DISPOSED));
+		} else {
+			try {
+				Image image = new Image(device, completion.provider);
+				if (!future.complete(image)) image.dispose();
+			} catch (RuntimeException | Error e) {
+				future.completeExceptionally(e);
+			}
+		}
+	}
+}
+
+}
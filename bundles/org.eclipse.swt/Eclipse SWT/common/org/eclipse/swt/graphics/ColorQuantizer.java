@@ -0,0 +1,410 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+import java.util.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.internal.*;
+
+/**
+ * Reduces the colors of an image to an indexed palette.
+ * <p>
+ * The colors are counted in a single pass into a histogram of 5 bits
+ * per channel. The pixels are converted to ARGB a band of rows at a
+ * time, so the memory used depends on the image width but not on its
+ * height.
+ * When the image has no more distinct colors than the palette can
+ * hold, the palette is made of those colors. Otherwise the histogram
+ * is split with the median cut algorithm into as many boxes as there
+ * are palette colors, and every box gives the mean of its colors.
+ * </p><p>
+ * Pixels that are less than half opaque are mapped to a transparent
+ * pixel that is added after the colors. The histogram and the mapping
+ * without error diffusion are run on bands of rows in parallel for
+ * large images.
+ * </p>
+ */
+final class ColorQuantizer {
+	static final int BITS = 5;
+	static final int SHIFT = 8 - BITS;
+	static final int SIDE = 1 << BITS;
+	static final int CELLS = SIDE * SIDE * SIDE;
+	static final int MAX_COLORS = 256;
+	static final int MAX_HISTOGRAMS = 8;
+
+	/* Number of rows converted to ARGB at a time */
+	static final int BAND_ROWS = 64;
+
+	/* Number of pixels from which images are quantized in parallel */
+	static final int PARALLEL_MIN_PIXELS = 256 * 256;
+
+	/* The 4x4 Bayer threshold matrix */
+	static final int[] BAYER = {0, 8, 2, 10, 12, 4, 14, 6, 3, 11, 1, 9, 15, 7, 13, 5};
+
+	/*
+	 * The pixel counts of the histogram cells, the sums of the bits
+	 * of every channel below the cell, and the distinct colors seen
+	 * as long as there are no more than MAX_COLORS of them.
+	 */
+	static final class Histogram {
+		int[] counts = new int[CELLS];
+		int[] sums = new int[CELLS * 3];
+		int[] colors = new int[MAX_COLORS * 4];
+		int distinct;
+		boolean transparent;
+
+		void addColor(int rgb) {
+			if (distinct > MAX_COLORS) return;
+			int key = rgb | 0x1000000, mask = colors.length - 1;
+			for (int slot = (rgb * 0x9E3779B1) >>> 22 & mask; ; slot = (slot + 1) & mask) {
+				if (colors[slot] == key) return;
+				if (colors[slot] == 0) {
+					if (++distinct <= MAX_COLORS) colors[slot] = key;
+					return;
+				}
+			}
+		}
+
+		void add(Histogram histogram) {
+			for (int i = 0; i < CELLS; i++) counts[i] += histogram.counts[i];
+			for (int i = 0; i < CELLS * 3; i++) sums[i] += histogram.sums[i];
+			for (int key : histogram.colors) {
+				if (key != 0) addColor(key & 0xFFFFFF);
+			}
+			if (histogram.distinct > MAX_COLORS) distinct = MAX_COLORS + 1;
+			transparent |= histogram.transparent;
+		}
+	}
+
+	/* A box of histogram cells, from low to high inclusive on every axis */
+	static final class Box {
+		int[] low = new int[3], high = new int[3];
+		long count;
+	}
+
+	final ImageData image;
+	final int width, height;
+	final boolean parallel;
+
+ColorQuantizer(ImageData image) {
+	this.image = image;
+	this.width = image.width;
+	this.height = image.height;
+	this.parallel = (long)width * height >= PARALLEL_MIN_PIXELS;
+}
+
+static int cell(int red, int green, int blue) {
+	return ((red >> SHIFT) << (2 * BITS)) | ((green >> SHIFT) << BITS) | (blue >> SHIFT);
+}
+
+ImageData quantize(ImageData image, int depth, int dither) {
+	Histogram histogram = countColors();
+	int maxColors = (1 << depth) - (histogram.transparent ? 1 : 0);
+	byte[] reds, greens, blues;
+	boolean exact = histogram.distinct <= maxColors;
+	if (exact) {
+		int[] colors = new int[histogram.distinct];
+		int count = 0;
+		for (int key : histogram.colors) {
+			if (key != 0) colors[count++] = key & 0xFFFFFF;
+		}
+		Arrays.sort(colors);
+		reds = new byte[count];
+		greens = new byte[count];
+		blues = new byte[count];
+		for (int i = 0; i < count; i++) {
+			reds[i] = (byte)(colors[i] >> 16);
+			greens[i] = (byte)(colors[i] >> 8);
+			blues[i] = (byte)colors[i];
+		}
+	} else {
+		List<Box> boxes = cutBoxes(histogram, maxColors);
+		int count = boxes.size();
+		reds = new byte[count];
+		greens = new byte[count];
+		blues = new byte[count];
+		for (int i = 0; i < count; i++) {
+			long[] mean = meanColor(histogram, boxes.get(i));
+			reds[i] = (byte)mean[0];
+			greens[i] = (byte)mean[1];
+			blues[i] = (byte)mean[2];
+		}
+	}
+	int colorCount = reds.length;
+	RGB[] rgbs = new RGB[colorCount + (histogram.transparent ? 1 : 0)];
+	for (int i = 0; i < colorCount; i++) {
+		rgbs[i] = new RGB(reds[i] & 0xFF, greens[i] & 0xFF, blues[i] & 0xFF);
+	}
+	int transparentPixel = -1;
+	if (histogram.transparent) {
+		transparentPixel = colorCount;
+		rgbs[colorCount] = new RGB(0, 0, 0);
+	}
+	ImageData dest = new ImageData(
+		width, height, depth, new PaletteData(rgbs),
+		image.scanlinePad, null, 0, null,
+		null, image.alpha, transparentPixel, image.type,
+		image.x, image.y, image.disposalMethod, image.delayTime);
+	if (colorCount == 0) {
+		fillRows(dest, 0, height, transparentPixel, reds, greens, blues, 0);
+	} else if (exact || dither == SWT.DITHER_NONE) {
+		fill(dest, transparentPixel, reds, greens, blues, 0);
+	} else if (dither == SWT.DITHER_ORDERED) {
+		fill(dest, transparentPixel, reds, greens, blues, (int)(0xFF / Math.cbrt(colorCount)));
+	} else {
+		diffuse(dest, transparentPixel, reds, greens, blues);
+	}
+	return dest;
+}
+
+/* Counts the colors of the image, on bands of rows in parallel for large images */
+Histogram countColors() {
+	int bands = parallel ? Math.min(height, Math.min(MAX_HISTOGRAMS, ParallelUtil.getParallelism())) : 1;
+	Histogram[] histograms = new Histogram[Math.max(1, bands)];
+	ParallelUtil.forEach(histograms.length, parallel, band -> {
+		Histogram histogram = histograms[band] = new Histogram();
+		int[] counts = histogram.counts, sums = histogram.sums;
+		int first = (int)((long)height * band / histograms.length);
+		int last = (int)((long)height * (band + 1) / histograms.length);
+		int[] pixels = new int[width * Math.min(BAND_ROWS, last - first)];
+		for (int y = first; y < last; y += BAND_ROWS) {
+			int rows = Math.min(BAND_ROWS, last - y);
+			image.getARGBs(y, rows, pixels);
+			for (int i = 0, end = rows * width; i < end; i++) {
+				int pixel = pixels[i];
+				if ((pixel >>> 24) < 0x80) {
+					histogram.transparent = true;
+					continue;
+				}
+				int red = (pixel >> 16) & 0xFF, green = (pixel >> 8) & 0xFF, blue = pixel & 0xFF;
+				int cell = cell(red, green, blue);
+				counts[cell]++;
+				sums[cell * 3] += red & ((1 << SHIFT) - 1);
+				sums[cell * 3 + 1] += green & ((1 << SHIFT) - 1);
+				sums[cell * 3 + 2] += blue & ((1 << SHIFT) - 1);
+				histogram.addColor(pixel & 0xFFFFFF);
+			}
+		}
+	});
+	Histogram histogram = histograms[0];
+	for (int i = 1; i < histograms.length; i++) {
+		histogram.add(histograms[i]);
+	}
+	return histogram;
+}
+
+/* Splits the cells of the histogram into at most maxColors boxes */
+static List<Box> cutBoxes(Histogram histogram, int maxColors) {
+	List<Box> boxes = new ArrayList<>(maxColors);
+	Box all = new Box();
+	Arrays.fill(all.high, SIDE - 1);
+	if (shrink(histogram, all)) boxes.add(all);
+	while (boxes.size() < maxColors) {
+		/* Split the box with the most pixels times its longest side */
+		Box box = null;
+		long best = 0;
+		for (Box candidate : boxes) {
+			int length = length(candidate, longestAxis(candidate));
+			long size = candidate.count * (length + 1);
+			if (length > 0 && size > best) {
+				best = size;
+				box = candidate;
+			}
+		}
+		if (box == null) break;
+		boxes.add(split(histogram, box));
+	}
+	return boxes;
+}
+
+/* Answers the axis of the longest side of the box */
+static int longestAxis(Box box) {
+	int axis = 0;
+	for (int i = 1; i < 3; i++) {
+		if (length(box, i) > length(box, axis)) axis = i;
+	}
+	return axis;
+}
+
+/* Answers the number of cells of the box along the axis, minus one */
+static int length(Box box, int axis) {
+	return box.high[axis] - box.low[axis];
+}
+
+/*
+ * Splits the box at the median of its pixels along its longest side,
+ * keeping the lower half in the box and answering the upper half.
+ */
+static Box split(Histogram histogram, Box box) {
+	int axis = longestAxis(box);
+	long[] counts = new long[SIDE];
+	forCells(histogram, box, (cell, position) -> counts[position[axis]] += histogram.counts[cell]);
+	long half = box.count / 2, total = 0;
+	int cut = box.low[axis];
+	for (int i = box.low[axis]; i < box.high[axis]; i++) {
+		total += counts[i];
+		cut = i;
+		if (total >= half) break;
+	}
+	Box upper = new Box();
+	System.arraycopy(box.low, 0, upper.low, 0, 3);
+	System.arraycopy(box.high, 0, upper.high, 0, 3);
+	box.high[axis] = cut;
+	upper.low[axis] = cut + 1;
+	shrink(histogram, box);
+	shrink(histogram, upper);
+	return upper;
+}
+
+/* Shrinks the box to the cells that have pixels and answers whether there are any */
+static boolean shrink(Histogram histogram, Box box) {
+	int[] low = {SIDE, SIDE, SIDE}, high = {-1, -1, -1};
+	long[] count = new long[1];
+	forCells(histogram, box, (cell, position) -> {
+		if (histogram.counts[cell] == 0) return;
+		count[0] += histogram.counts[cell];
+		for (int i = 0; i < 3; i++) {
+			low[i] = Math.min(low[i], position[i]);
+			high[i] = Math.max(high[i], position[i]);
+		}
+	});
+	box.count = count[0];
+	if (count[0] == 0) return false;
+	System.arraycopy(low, 0, box.low, 0, 3);
+	System.arraycopy(high, 0, box.high, 0, 3);
+	return true;
+}
+
+/* Answers the mean red, green and blue of the pixels of the box */
+static long[] meanColor(Histogram histogram, Box box) {
+	long[] sums = new long[3];
+	forCells(histogram, box, (cell, position) -> {
+		int count = histogram.counts[cell];
+		for (int i = 0; i < 3; i++) {
+			sums[i] += ((long)position[i] << SHIFT) * count + histogram.sums[cell * 3 + i];
+		}
+	});
+	for (int i = 0; i < 3; i++) {
+		sums[i] = Math.min(0xFF, (sums[i] + box.count / 2) / box.count);
+	}
+	return sums;
+}
+
+interface CellVisitor {
+	void visit(int cell, int[] position);
+}
+
+static void forCells(Histogram histogram, Box box, CellVisitor visitor) {
+	int[] position = new int[3];
+	for (int r = box.low[0]; r <= box.high[0]; r++) {
+		position[0] = r;
+		for (int g = box.low[1]; g <= box.high[1]; g++) {
+			position[1] = g;
+			for (int b = box.low[2]; b <= box.high[2]; b++) {
+				position[2] = b;
+				visitor.visit((r << (2 * BITS)) | (g << BITS) | b, position);
+			}
+		}
+	}
+}
+
+/*
+ * Maps every pixel to the nearest palette color, after offsetting it
+ * with the Bayer matrix scaled to the given spread if it is not 0.
+ */
+void fill(ImageData dest, int transparentPixel, byte[] reds, byte[] greens, byte[] blues, int spread) {
+	int bands = parallel ? Math.min(height, ParallelUtil.getParallelism() * 4) : 1;
+	ParallelUtil.forEach(Math.max(1, bands), parallel, band -> {
+		int first = (int)((long)height * band / bands);
+		int last = (int)((long)height * (band + 1) / bands);
+		fillRows(dest, first, last, transparentPixel, reds, greens, blues, spread);
+	});
+}
+
+void fillRows(ImageData dest, int first, int last, int transparentPixel, byte[] reds, byte[] greens, byte[] blues, int spread) {
+	PaletteMatcher matcher = reds.length > 0 ? new PaletteMatcher(reds, greens, blues, reds.length, true) : null;
+	byte[] row = new byte[width];
+	int[] pixels = new int[width * Math.min(BAND_ROWS, last - first)];
+	for (int y = first; y < last; y++) {
+		int band = (y - first) % BAND_ROWS;
+		if (band == 0) image.getARGBs(y, Math.min(BAND_ROWS, last - y), pixels);
+		for (int x = 0, i = band * width; x < width; x++, i++) {
+			int pixel = pixels[i];
+			if (matcher == null || (pixel >>> 24) < 0x80) {
+				row[x] = (byte)transparentPixel;
+				continue;
+			}
+			int red = (pixel >> 16) & 0xFF, green = (pixel >> 8) & 0xFF, blue = pixel & 0xFF;
+			if (spread != 0) {
+				int offset = (2 * BAYER[((y & 3) << 2) | (x & 3)] - 15) * spread / 32;
+				red = clamp(red + offset);
+				green = clamp(green + offset);
+				blue = clamp(blue + offset);
+			}
+			row[x] = (byte)matcher.nearest(red, green, blue);
+		}
+		setRow(dest, y, row);
+	}
+}
+
+/* Maps every pixel to the nearest palette color, diffusing the error with the Floyd-Steinberg weights */
+void diffuse(ImageData dest, int transparentPixel, byte[] reds, byte[] greens, byte[] blues) {
+	PaletteMatcher matcher = new PaletteMatcher(reds, greens, blues, reds.length, true);
+	byte[] row = new byte[width];
+	/* Errors times 16 of the current and next rows, with a pixel of margin on both sides */
+	int[] errors = new int[(width + 2) * 3], nextErrors = new int[(width + 2) * 3];
+	int[] pixels = new int[width * Math.min(BAND_ROWS, height)];
+	for (int y = 0; y < height; y++) {
+		int band = y % BAND_ROWS;
+		if (band == 0) image.getARGBs(y, Math.min(BAND_ROWS, height - y), pixels);
+		Arrays.fill(nextErrors, 0);
+		for (int x = 0, i = band * width; x < width; x++, i++) {
+			int pixel = pixels[i];
+			if ((pixel >>> 24) < 0x80) {
+				row[x] = (byte)transparentPixel;
+				continue;
+			}
+			int e = (x + 1) * 3;
+			int red = clamp(((pixel >> 16) & 0xFF) + (errors[e] >> 4));
+			int green = clamp(((pixel >> 8) & 0xFF) + (errors[e + 1] >> 4));
+			int blue = clamp((pixel & 0xFF) + (errors[e + 2] >> 4));
+			int index = matcher.nearest(red, green, blue);
+			row[x] = (byte)index;
+			int[] channelErrors = {red - (reds[index] & 0xFF), green - (greens[index] & 0xFF), blue - (blues[index] & 0xFF)};
+			for (int c = 0; c < 3; c++) {
+				int error = channelErrors[c];
+				errors[e + 3 + c] += error * 7;
+				nextErrors[e - 3 + c] += error * 3;
+				nextErrors[e + c] += error * 5;
+				nextErrors[e + 3 + c] += error;
+			}
+		}
+		int[] swap = errors;
+		errors = nextErrors;
+		nextErrors = swap;
+		setRow(dest, y, row);
+	}
+}
+
+static void setRow(ImageData dest, int y, byte[] row) {
+	if (dest.depth == 8) {
+		System.arraycopy(row, 0, dest.data, y * dest.bytesPerLine, row.length);
+	} else {
+		dest.setPixels(0, y, row.length, row, 0);
+	}
+}
+
+static int clamp(int channel) {
+	return channel < 0 ? 0 : channel > 0xFF ? 0xFF : channel;
+}
+
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+import java.io.*;
+
+/**
+ * Classes which implement this interface add support for image file
+ * formats that are not built into SWT to <code>ImageLoader</code>.
+ * <p>
+ * Codecs are registered as service providers of this interface and
+ * are found with <code>java.util.ServiceLoader</code> using the context
+ * class loader of the thread that first needs them. That happens the
+ * first time a stream is loaded whose signature does not match one of
+ * the built-in formats, or an image is saved in a format that is not
+ * built in. Codecs cannot replace the built-in formats.
+ * </p>
+ *
+ * @see ImageLoader#load(InputStream)
+ * @see ImageLoader#save(OutputStream, int)
+ *
+ * @since 3.106
+ */
+public interface ImageCodec {
+
+/**
+ * Returns the format constant that is passed to <code>ImageLoader.save</code>
+ * to save images with this codec, or -1 if the codec cannot save images.
+ * The value must not be one of the <code>SWT.IMAGE_*</code> constants.
+ *
+ * @return the format constant of the codec, or -1
+ */
+public int getFormat();
+
+/**
+ * Returns whether a stream that starts with the given bytes holds an
+ * image that this codec can load. The header holds the first
+ * bytes of the stream, at most 32, and is shorter only when the
+ * stream is.
+ *
+ * @param header the first bytes of the stream
+ * @return <code>true</code> if the codec can load the stream, <code>false</code> otherwise
+ */
+public boolean isFormat(byte[] header);
+
+/**
+ * Loads the images of the given stream, which is positioned at the
+ * start of the image file. Errors are reported by throwing an
+ * <code>SWTException</code> or an <code>IOException</code>.
+ *
+ * @param stream the stream to load the images from
+ * @param loader the image loader that the images are loaded for
+ * @return the images of the stream
+ *
+ * @exception IOException if an IO error occurs while reading from the stream
+ */
+public ImageData[] load(InputStream stream, ImageLoader loader) throws IOException;
+
+/**
+ * Saves the image data of the given loader to the stream. Errors are
+ * reported by throwing an <code>SWTException</code> or an
+ * <code>IOException</code>.
+ *
+ * @param stream the stream to write the images to
+ * @param loader the image loader that holds the image data to save
+ *
+ * @exception IOException if an IO error occurs while writing to the stream
+ */
+public void save(OutputStream stream, ImageLoader loader) throws IOException;
+
+}
@@ -375,9 +375,7 @@ public ImageData(InputStream stream) {
  * </ul>
  */
 public ImageData(String filename) {
-	ImageData[] data = ImageDataLoader.load(filename);
-	if (data.length < 1) SWT.error(SWT.ERROR_INVALID_IMAGE);
-	ImageData i = data[0];
+	ImageData i = ImageDiskCache.load(filename);
 	setAllFields(
 		i.width,
 		i.height,
@@ -1159,6 +1157,316 @@ public ImageData scaledTo(int width, int height) {
 	return dest;
 }
 
+/**
+ * Returns a copy of the receiver with an indexed palette of at most
+ * <code>1 &lt;&lt; depth</code> colors chosen for the colors of the
+ * receiver, for example to save a direct color image as a GIF or as
+ * an 8 bit BMP.
+ * <p>
+ * If the receiver has no more colors than the palette can hold, the
+ * palette is made of exactly those colors and the image is not
+ * dithered. Pixels that are less than half opaque become the
+ * transparent pixel, which is the last color of the palette.
+ * </p>
+ *
+ * @param depth the depth of the new ImageData, one of 1, 2, 4 or 8
+ * @param dither the dithering, one of <code>SWT.DITHER_NONE</code>,
+ *        <code>SWT.DITHER_ERROR_DIFFUSION</code> or <code>SWT.DITHER_ORDERED</code>
+ * @return an indexed copy of the image
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if the depth is not one of 1, 2, 4 or 8,
+ *        or if the dither is not one of the dither constants</li>
+ * </ul>
+ *
+ * @see SWT#DITHER_NONE
+ * @see SWT#DITHER_ERROR_DIFFUSION
+ * @see SWT#DITHER_ORDERED
+ *
+ * @since 3.106
+ */
+public ImageData quantizedTo(int depth, int dither) {
+	if (depth != 1 && depth != 2 && depth != 4 && depth != 8) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	switch (dither) {
+		case SWT.DITHER_NONE:
+		case SWT.DITHER_ERROR_DIFFUSION:
+		case SWT.DITHER_ORDERED: break;
+		default: SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	}
+	return new ColorQuantizer(this).quantize(this, depth, dither);
+}
+
+/**
+ * Returns a copy of the receiver which has been stretched or
+ * shrunk to the specified size with the given filter. If either
+ * the width or height is negative, the resulting image will be
+ * inverted in the associated axis.
+ * <p>
+ * <code>SWT.FILTER_NEAREST</code> scales the image like
+ * <code>scaledTo(int, int)</code>. The other filters interpolate
+ * every pixel from the source pixels around it and answer a 24 bit
+ * direct color image. Transparent pixels and transparency masks are
+ * interpolated as alpha data, so that the edges are smoothed too.
+ * </p>
+ *
+ * @param width the width of the new ImageData
+ * @param height the height of the new ImageData
+ * @param filter the filter, one of <code>SWT.FILTER_NEAREST</code>,
+ *        <code>SWT.FILTER_BILINEAR</code>, <code>SWT.FILTER_BICUBIC</code>
+ *        or <code>SWT.FILTER_LANCZOS</code>
+ * @return a scaled copy of the image
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_INVALID_ARGUMENT - if the filter is not one of the filter constants</li>
+ * </ul>
+ *
+ * @see SWT#FILTER_NEAREST
+ * @see SWT#FILTER_BILINEAR
+ * @see SWT#FILTER_BICUBIC
+ * @see SWT#FILTER_LANCZOS
+ *
+ * @since 3.106
+ */
+public ImageData scaledTo(int width, int height, int filter) {
+	switch (filter) {
+		case SWT.FILTER_NEAREST: return scaledTo(width, height);
+		case SWT.FILTER_BILINEAR:
+		case SWT.FILTER_BICUBIC:
+		case SWT.FILTER_LANCZOS: break;
+		default: SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	}
+	final boolean flipX = (width < 0);
+	if (flipX) width = - width;
+	final boolean flipY = (height < 0);
+	if (flipY) height = - height;
+
+	ImageData dest = new ImageData(
+		width, height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF),
+		scanlinePad, null, 0, null,
+		null, alpha, -1, type,
+		x, y, disposalMethod, delayTime);
+
+	/* Masks and transparent pixels are interpolated as alpha, a global alpha is kept as is */
+	int srcWidth = this.width, srcHeight = this.height;
+	final int[] pixels = getARGBs();
+	int transparencyType = getTransparencyType();
+	final boolean hasAlpha = transparencyType == SWT.TRANSPARENCY_MASK || transparencyType == SWT.TRANSPARENCY_PIXEL ||
+		(alphaData != null && alpha == -1);
+	if (hasAlpha) dest.alphaData = new byte[width * height];
+
+	/*
+	 * The image is filtered horizontally into an intermediate image of
+	 * premultiplied samples, which is then filtered vertically. Both
+	 * passes are run on bands of rows in parallel for large images.
+	 */
+	int[] xStarts = new int[width], xCounts = new int[width];
+	float[] xWeights = getFilterWeights(filter, srcWidth, width, xStarts, xCounts);
+	int[] yStarts = new int[height], yCounts = new int[height];
+	float[] yWeights = getFilterWeights(filter, srcHeight, height, yStarts, yCounts);
+	int xTaps = xWeights.length / width, yTaps = yWeights.length / height;
+	float[] samples = new float[srcHeight * width * 4];
+	final int destWidth = width, destHeight = height;
+	boolean parallel = (long)destWidth * destHeight >= FILTER_PARALLEL_MIN_PIXELS;
+	ParallelUtil.forEach(srcHeight, parallel, y -> {
+		int rowStart = y * srcWidth;
+		for (int dx = 0, index = y * destWidth * 4; dx < destWidth; dx++) {
+			float a = 0, r = 0, g = 0, b = 0;
+			for (int k = 0, i = rowStart + xStarts[dx], w = dx * xTaps; k < xCounts[dx]; k++, i++, w++) {
+				float weight = xWeights[w];
+				int pixel = pixels[i];
+				if (hasAlpha) weight *= (pixel >>> 24) / 255f;
+				a += weight;
+				r += weight * ((pixel >> 16) & 0xFF);
+				g += weight * ((pixel >> 8) & 0xFF);
+				b += weight * (pixel & 0xFF);
+			}
+			samples[index++] = a;
+			samples[index++] = r;
+			samples[index++] = g;
+			samples[index++] = b;
+		}
+	});
+	byte[] destData = dest.data, destAlphas = dest.alphaData;
+	int destBpl = dest.bytesPerLine;
+	ParallelUtil.forEach(destHeight, parallel, dy -> {
+		int row = flipY ? destHeight - 1 - dy : dy;
+		for (int dx = 0; dx < destWidth; dx++) {
+			float a = 0, r = 0, g = 0, b = 0;
+			for (int k = 0, i = (yStarts[dy] * destWidth + dx) * 4, w = dy * yTaps; k < yCounts[dy]; k++, i += destWidth * 4, w++) {
+				float weight = yWeights[w];
+				a += weight * samples[i];
+				r += weight * samples[i + 1];
+				g += weight * samples[i + 2];
+				b += weight * samples[i + 3];
+			}
+			int column = flipX ? destWidth - 1 - dx : dx;
+			int offset = row * destBpl + column * 3;
+			if (a > 0) {
+				destData[offset] = (byte)clampChannel(r / a);
+				destData[offset + 1] = (byte)clampChannel(g / a);
+				destData[offset + 2] = (byte)clampChannel(b / a);
+			}
+			if (destAlphas != null) destAlphas[row * destWidth + column] = (byte)clampChannel(a * 255);
+		}
+	});
+	return dest;
+}
+
+/**
+ * Answers the pixels of the receiver as straight ARGB values, row
+ * by row without padding. Transparency masks and transparent pixels
+ * give alphas of 0 and 255, and alpha data is used when there is no
+ * global alpha. The global alpha itself is not applied.
+ */
+int[] getARGBs() {
+	int[] pixels = new int[width * height];
+	getARGBs(0, height, pixels);
+	return pixels;
+}
+
+/**
+ * Stores the ARGB values of the given number of rows of the receiver,
+ * starting at row <code>y</code>, at the start of <code>pixels</code>.
+ * This lets large images be converted a band of rows at a time.
+ *
+ * @see #getARGBs()
+ */
+void getARGBs(int y, int rows, int[] pixels) {
+	int width = this.width;
+	byte[] rgbs = new byte[width * rows * 4];
+	if (palette.isDirect) blit(BLIT_SRC,
+		this.data, this.depth, this.bytesPerLine, this.getByteOrder(), 0, y, width, rows, palette.redMask, palette.greenMask, palette.blueMask,
+		ALPHA_OPAQUE, null, 0, 0, 0,
+		rgbs, 32, width * 4, MSB_FIRST, 0, 0, width, rows, 0xFF0000, 0xFF00, 0xFF,
+		false, false);
+	else {
+		RGB[] colors = palette.getRGBs();
+		int length = colors.length;
+		byte[] reds = new byte[length], greens = new byte[length], blues = new byte[length];
+		for (int i = 0; i < length; i++) {
+			RGB rgb = colors[i];
+			if (rgb == null) continue;
+			reds[i] = (byte)rgb.red;
+			greens[i] = (byte)rgb.green;
+			blues[i] = (byte)rgb.blue;
+		}
+		blit(BLIT_SRC,
+			this.data, this.depth, this.bytesPerLine, this.getByteOrder(), 0, y, width, rows, reds, greens, blues,
+			ALPHA_OPAQUE, null, 0, 0, 0,
+			rgbs, 32, width * 4, MSB_FIRST, 0, 0, width, rows, 0xFF0000, 0xFF00, 0xFF,
+			false, false);
+	}
+
+	byte[] alphas = null;
+	int alphaOffset = 0;
+	int transparencyType = getTransparencyType();
+	if (transparencyType == SWT.TRANSPARENCY_MASK) {
+		ImageData mask = getTransparencyMask();
+		alphas = new byte[width * rows];
+		for (int row = 0; row < rows; row++) {
+			mask.getPixels(0, y + row, width, alphas, row * width);
+		}
+		for (int i = 0; i < alphas.length; i++) {
+			if (alphas[i] != 0) alphas[i] = (byte)0xFF;
+		}
+	} else if (transparencyType == SWT.TRANSPARENCY_PIXEL) {
+		alphas = new byte[width * rows];
+		int[] line = new int[width];
+		for (int row = 0; row < rows; row++) {
+			getPixels(0, y + row, width, line, 0);
+			for (int x = 0; x < width; x++) {
+				if (line[x] != transparentPixel) alphas[row * width + x] = (byte)0xFF;
+			}
+		}
+	} else if (alphaData != null && alpha == -1) {
+		alphas = alphaData;
+		alphaOffset = y * width;
+	}
+	for (int i = 0, offset = 0, count = width * rows; i < count; i++, offset += 4) {
+		int a = alphas != null ? alphas[alphaOffset + i] & 0xFF : 0xFF;
+		pixels[i] = (a << 24) | ((rgbs[offset + 1] & 0xFF) << 16) | ((rgbs[offset + 2] & 0xFF) << 8) | (rgbs[offset + 3] & 0xFF);
+	}
+}
+
+/**
+ * Number of destination pixels from which images are filtered in parallel.
+ */
+static final int FILTER_PARALLEL_MIN_PIXELS = 256 * 256;
+
+/**
+ * Rounds a filtered channel value to a byte.
+ */
+static int clampChannel(float value) {
+	int channel = Math.round(value);
+	return channel < 0 ? 0 : channel > 255 ? 255 : channel;
+}
+
+/**
+ * Evaluates the kernel of a scaling filter at the given distance
+ * from the center, in source pixels.
+ */
+static double getFilterKernel(int filter, double x) {
+	x = Math.abs(x);
+	switch (filter) {
+		case SWT.FILTER_BILINEAR:
+			return x < 1 ? 1 - x : 0;
+		case SWT.FILTER_BICUBIC:
+			/* Catmull-Rom spline */
+			if (x < 1) return (1.5 * x - 2.5) * x * x + 1;
+			if (x < 2) return ((-0.5 * x + 2.5) * x - 4) * x + 2;
+			return 0;
+		case SWT.FILTER_LANCZOS:
+			/* Lanczos windowed sinc with 3 lobes */
+			if (x == 0) return 1;
+			if (x >= 3) return 0;
+			double px = Math.PI * x;
+			return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+	}
+	return 0;
+}
+
+/**
+ * Computes the weights of the source pixels that each destination
+ * pixel is filtered from along one axis. The source pixels of
+ * destination pixel <code>i</code> start at <code>starts[i]</code>,
+ * and their <code>counts[i]</code> weights start at
+ * <code>i * weights.length / destSize</code>. When shrinking, the
+ * kernel is widened to cover all the source pixels. Pixels past the
+ * edges are replaced with the edge pixels.
+ */
+static float[] getFilterWeights(int filter, int srcSize, int destSize, int[] starts, int[] counts) {
+	int support = filter == SWT.FILTER_BILINEAR ? 1 : filter == SWT.FILTER_BICUBIC ? 2 : 3;
+	double scale = (double)srcSize / destSize;
+	double filterScale = Math.max(1, scale);
+	double radius = support * filterScale;
+	int taps = (int)Math.ceil(2 * radius) + 2;
+	float[] weights = new float[destSize * taps];
+	for (int i = 0; i < destSize; i++) {
+		double center = (i + 0.5) * scale;
+		int first = (int)Math.floor(center - radius - 0.5);
+		int last = (int)Math.ceil(center + radius - 0.5);
+		int start = Math.max(0, Math.min(srcSize - 1, first));
+		int end = Math.max(0, Math.min(srcSize - 1, last));
+		double total = 0;
+		for (int j = first; j <= last; j++) {
+			double weight = getFilterKernel(filter, (j + 0.5 - center) / filterScale);
+			int index = Math.max(0, Math.min(srcSize - 1, j));
+			weights[i * taps + index - start] += weight;
+			total += weight;
+		}
+		if (total != 0) {
+			for (int j = 0; j <= end - start; j++) {
+				weights[i * taps + j] /= total;
+			}
+		} else {
+			weights[i * taps] = 1;
+		}
+		starts[i] = start;
+		counts[i] = end - start + 1;
+	}
+	return weights;
+}
+
 /**
  * Sets the alpha value at offset <code>x</code> in
  * scanline <code>y</code> in the receiver's alpha data.
@@ -1877,9 +2185,29 @@ static void blit(int op,
 	/*** Blit ***/
 	int dp = dpr;
 	int sp = spr;
-	if ((alphaMode == 0x10000) && (stype == dtype) &&
+	final boolean sameFormat = (stype == dtype) &&
 		(srcRedMask == destRedMask) && (srcGreenMask == destGreenMask) &&
-		(srcBlueMask == destBlueMask) && (srcAlphaMask == destAlphaMask)) {
+		(srcBlueMask == destBlueMask) && (srcAlphaMask == destAlphaMask);
+	if ((alphaMode == 0x10000) && (srcWidth == destWidth) && (srcHeight == destHeight)) {
+		if (sameFormat && !flipX) {
+			/*** Fast unscaled blit (copy whole rows) ***/
+			final int rowSize = destWidth * dbpp;
+			if (!flipY && (srcStride == destStride) && (rowSize == srcStride)) {
+				System.arraycopy(srcData, sp, destData, dp, destHeight * rowSize);
+				return;
+			}
+			for (int dy = destHeight; dy > 0; --dy, sp += srcStride, dp += dpryi) {
+				System.arraycopy(srcData, sp, destData, dp, rowSize);
+			}
+			return;
+		}
+		if (!sameFormat && blitChannels(srcData, sbpp, srcStride, srcOrder, srcRedMask, srcGreenMask, srcBlueMask, sp,
+			destData, dbpp, destStride, destOrder, destRedMask, destGreenMask, destBlueMask, dp,
+			destWidth, destHeight, dprxi, dpryi)) {
+			return;
+		}
+	}
+	if ((alphaMode == 0x10000) && sameFormat) {
 		/*** Fast blit (straight copy) ***/
 		switch (sbpp) {
 			case 1:
@@ -2358,25 +2686,16 @@ static void blit(int op,
 			int srcPaletteSize = 1 << srcDepth;
 			paletteMapping = new byte[srcPaletteSize];
 			if ((srcReds != null) && (srcReds.length < srcPaletteSize)) srcPaletteSize = srcReds.length;
+			PaletteMatcher matcher = new PaletteMatcher(destReds, destGreens, destBlues, destPaletteSize, false);
 			for (int i = 0, r, g, b, index; i < srcPaletteSize; ++i) {
 				r = srcReds[i] & 0xff;
 				g = srcGreens[i] & 0xff;
 				b = srcBlues[i] & 0xff;
-				index = 0;
-				int minDistance = 0x7fffffff;
-				for (int j = 0, dr, dg, db, distance; j < destPaletteSize; ++j) {
-					dr = (destReds[j] & 0xff) - r;
-					dg = (destGreens[j] & 0xff) - g;
-					db = (destBlues[j] & 0xff) - b;
-					distance = dr * dr + dg * dg + db * db;
-					if (distance < minDistance) {
-						index = j;
-						if (distance == 0) break;
-						minDistance = distance;
-					}
-				}
+				index = matcher.nearest(r, g, b);
 				paletteMapping[i] = (byte)index;
-				if (minDistance != 0) isExactPaletteMapping = false;
+				if (destPaletteSize == 0 || (destReds[index] & 0xff) != r || (destGreens[index] & 0xff) != g || (destBlues[index] & 0xff) != b) {
+					isExactPaletteMapping = false;
+				}
 			}
 			break;
 	}
@@ -2535,6 +2854,7 @@ static void blit(int op,
 	int index = 0;
 	int indexq = 0;
 	int lastindex = 0, lastr = -1, lastg = -1, lastb = -1;
+	final PaletteMatcher matcher = (destReds != null) ? new PaletteMatcher(destReds, destGreens, destBlues, destPaletteSize, true) : null;
 	final int[] rerr, gerr, berr;
 	if (ditherEnabled) {
 		rerr = new int[destWidth + 2];
@@ -2653,18 +2973,7 @@ static void blit(int op,
 				berr[dx] = lberr;
 			}
 			if (r != lastr || g != lastg || b != lastb) {
-				// moving the variable declarations out seems to make the JDK JIT happier...
-				for (int j = 0, dr, dg, db, distance, minDistance = 0x7fffffff; j < destPaletteSize; ++j) {
-					dr = (destReds[j] & 0xff) - r;
-					dg = (destGreens[j] & 0xff) - g;
-					db = (destBlues[j] & 0xff) - b;
-					distance = dr * dr + dg * dg + db * db;
-					if (distance < minDistance) {
-						lastindex = j;
-						if (distance == 0) break;
-						minDistance = distance;
-					}
-				}
+				lastindex = matcher.nearest(r, g, b);
 				lastr = r; lastg = g; lastb = b;
 			}
 			if (ditherEnabled) {
@@ -2765,26 +3074,36 @@ static void blit(int op,
 	if ((destWidth <= 0) || (destHeight <= 0) || (alphaMode == ALPHA_TRANSPARENT)) return;
 
 	/*** Fast blit (straight copy) ***/
-	if (srcX == 0 && srcY == 0 && destX == 0 && destY == 0 && destWidth == srcWidth && destHeight == srcHeight) {
-		if (destDepth == 24 && srcDepth == 8 && (op & BLIT_ALPHA) == 0 && destRedMask == 0xFF0000 && destGreenMask == 0xFF00 && destBlueMask == 0xFF) {
-			for (int y = 0, sp = 0, dp = 0, spad = srcStride - srcWidth, dpad = destStride - (destWidth * 3); y < destHeight; y++, sp += spad, dp += dpad) {
-				for (int x = 0; x < destWidth; x++) {
-					int index = srcData[sp++] & 0xff;
-					destData[dp++] = srcReds[index];
-					destData[dp++] = srcGreens[index];
-					destData[dp++] = srcBlues[index];
+	if (srcDepth == 8 && (destDepth == 24 || destDepth == 32) && (op & BLIT_ALPHA) == 0 && destWidth == srcWidth && destHeight == srcHeight) {
+		final int dbpp = destDepth / 8;
+		final int dr = getChannelOffset(destRedMask, dbpp, destOrder);
+		final int dg = getChannelOffset(destGreenMask, dbpp, destOrder);
+		final int db = getChannelOffset(destBlueMask, dbpp, destOrder);
+		if (dr >= 0 && dg >= 0 && db >= 0 && dr != dg && dg != db && db != dr) {
+			final int dprxi = (flipX) ? -dbpp : dbpp;
+			final int dpryi = (flipY) ? -destStride : destStride;
+			int spr = srcY * srcStride + srcX;
+			int dpr = ((flipY) ? destY + destHeight - 1 : destY) * destStride + ((flipX) ? destX + destWidth - 1 : destX) * dbpp;
+			if (dbpp == 4) {
+				/* The byte that holds no channel, 0 + 1 + 2 + 3 minus the others */
+				final int dx = 6 - dr - dg - db;
+				for (int y = destHeight; y > 0; --y, spr += srcStride, dpr += dpryi) {
+					for (int x = destWidth, sp = spr, dp = dpr; x > 0; --x, ++sp, dp += dprxi) {
+						final int index = srcData[sp] & 0xff;
+						destData[dp + dr] = srcReds[index];
+						destData[dp + dg] = srcGreens[index];
+						destData[dp + db] = srcBlues[index];
+						destData[dp + dx] = 0;
+					}
 				}
-			}
-			return;
-		}
-		if (destDepth == 32 && destOrder == MSB_FIRST && srcDepth == 8 && (op & BLIT_ALPHA) == 0 && destRedMask == 0xFF0000 && destGreenMask == 0xFF00 && destBlueMask == 0xFF) {
-			for (int y = 0, sp = 0, dp = 0, spad = srcStride - srcWidth, dpad = destStride - (destWidth * 4); y < destHeight; y++, sp += spad, dp += dpad) {
-				for (int x = 0; x < destWidth; x++) {
-					int index = srcData[sp++] & 0xff;
-					dp++;
-					destData[dp++] = srcReds[index];
-					destData[dp++] = srcGreens[index];
-					destData[dp++] = srcBlues[index];
+			} else {
+				for (int y = destHeight; y > 0; --y, spr += srcStride, dpr += dpryi) {
+					for (int x = destWidth, sp = spr, dp = dpr; x > 0; --x, ++sp, dp += dprxi) {
+						final int index = srcData[sp] & 0xff;
+						destData[dp + dr] = srcReds[index];
+						destData[dp + dg] = srcGreens[index];
+						destData[dp + db] = srcBlues[index];
+					}
 				}
 			}
 			return;
@@ -3240,6 +3559,7 @@ static void blit(int op,
 	final int[] rerr, gerr, berr;
 	int destPaletteSize = 1 << destDepth;
 	if ((destReds != null) && (destReds.length < destPaletteSize)) destPaletteSize = destReds.length;
+	final PaletteMatcher matcher = (destReds != null) ? new PaletteMatcher(destReds, destGreens, destBlues, destPaletteSize, true) : null;
 	if (ditherEnabled) {
 		rerr = new int[destWidth + 2];
 		gerr = new int[destWidth + 2];
@@ -3386,18 +3706,7 @@ static void blit(int op,
 				berr[dx] = lberr;
 			}
 			if (r != lastr || g != lastg || b != lastb) {
-				// moving the variable declarations out seems to make the JDK JIT happier...
-				for (int j = 0, dr, dg, db, distance, minDistance = 0x7fffffff; j < destPaletteSize; ++j) {
-					dr = (destReds[j] & 0xff) - r;
-					dg = (destGreens[j] & 0xff) - g;
-					db = (destBlues[j] & 0xff) - b;
-					distance = dr * dr + dg * dg + db * db;
-					if (distance < minDistance) {
-						lastindex = j;
-						if (distance == 0) break;
-						minDistance = distance;
-					}
-				}
+				lastindex = matcher.nearest(r, g, b);
 				lastr = r; lastg = g; lastb = b;
 			}
 			if (ditherEnabled) {
@@ -3441,6 +3750,63 @@ static void blit(int op,
 	}
 }
 
+/**
+ * Blits unscaled 24 or 32 bit direct pixels whose channels are whole bytes
+ * by moving each channel byte to its destination offset, with any remaining
+ * destination byte cleared. Answers false, without touching the destination,
+ * when the pixel formats do not allow this.
+ */
+static boolean blitChannels(
+	byte[] srcData, int sbpp, int srcStride, int srcOrder,
+	int srcRedMask, int srcGreenMask, int srcBlueMask, int spr,
+	byte[] destData, int dbpp, int destStride, int destOrder,
+	int destRedMask, int destGreenMask, int destBlueMask, int dpr,
+	int width, int height, int dprxi, int dpryi) {
+	if (sbpp < 3 || dbpp < 3) return false;
+	final int sr = getChannelOffset(srcRedMask, sbpp, srcOrder);
+	final int sg = getChannelOffset(srcGreenMask, sbpp, srcOrder);
+	final int sb = getChannelOffset(srcBlueMask, sbpp, srcOrder);
+	final int dr = getChannelOffset(destRedMask, dbpp, destOrder);
+	final int dg = getChannelOffset(destGreenMask, dbpp, destOrder);
+	final int db = getChannelOffset(destBlueMask, dbpp, destOrder);
+	if (sr < 0 || sg < 0 || sb < 0 || dr < 0 || dg < 0 || db < 0) return false;
+	if (dr == dg || dg == db || db == dr) return false;
+	if (dbpp == 4) {
+		/* The byte that holds no channel, 0 + 1 + 2 + 3 minus the others */
+		final int dx = 6 - dr - dg - db;
+		for (int y = height; y > 0; --y, spr += srcStride, dpr += dpryi) {
+			for (int x = width, sp = spr, dp = dpr; x > 0; --x, sp += sbpp, dp += dprxi) {
+				final byte r = srcData[sp + sr], g = srcData[sp + sg], b = srcData[sp + sb];
+				destData[dp + dr] = r;
+				destData[dp + dg] = g;
+				destData[dp + db] = b;
+				destData[dp + dx] = 0;
+			}
+		}
+	} else {
+		for (int y = height; y > 0; --y, spr += srcStride, dpr += dpryi) {
+			for (int x = width, sp = spr, dp = dpr; x > 0; --x, sp += sbpp, dp += dprxi) {
+				final byte r = srcData[sp + sr], g = srcData[sp + sg], b = srcData[sp + sb];
+				destData[dp + dr] = r;
+				destData[dp + dg] = g;
+				destData[dp + db] = b;
+			}
+		}
+	}
+	return true;
+}
+
+/**
+ * Computes the offset of the byte holding a channel within a 24 or 32 bit
+ * pixel, or -1 if the channel does not occupy exactly one byte.
+ */
+static int getChannelOffset(int mask, int bpp, int order) {
+	final int shift = getChannelShift(mask);
+	if ((shift & 7) != 0 || shift >= bpp * 8 || mask != 0xFF << shift) return -1;
+	final int index = shift >>> 3;
+	return (bpp == 4 && order == LSB_FIRST) ? index : bpp - 1 - index;
+}
+
 /**
  * Computes the required channel shift from a mask.
  */
@@ -0,0 +1,397 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.Path;
+import java.security.*;
+import java.util.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.internal.*;
+import org.eclipse.swt.internal.image.*;
+
+/**
+ * Keeps the image data decoded from image files on disk, so that the
+ * files do not have to be decoded again the next time the application
+ * starts.
+ * <p>
+ * The image data is stored uncompressed, both as decoded and as scaled
+ * for the zoom levels it was used at, and is read back in a single pass.
+ * Cache files are mapped into memory, except on Windows where a mapped
+ * file cannot be deleted or replaced until the mapping is garbage
+ * collected. Entries are found by the path, modification
+ * time and length of the image file and by the zoom level, so changed
+ * files are decoded again. The cache files that were used least recently
+ * are deleted when the size of the cache exceeds its budget.
+ * </p><p>
+ * The cache is off by default, it is enabled by setting the
+ * <code>swt.imageCacheDir</code> system property to the directory to
+ * keep the cache files in. The property is read again whenever an image
+ * is loaded, so that the cache can be turned on and off while running.
+ * The budget is read in megabytes from the <code>swt.imageCacheSize</code>
+ * system property.
+ * </p>
+ */
+final class ImageDiskCache {
+
+	static final String SWT_IMAGE_CACHE_DIR = "swt.imageCacheDir";
+	static final String SWT_IMAGE_CACHE_SIZE = "swt.imageCacheSize";
+	static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+	static final int MAGIC = 0x53575449; // "SWTI"
+	static final int VERSION = 1;
+	static final String SUFFIX = ".swtimage";
+
+	static long budget = DEFAULT_BUDGET;
+
+	/* The cache directory and the property value it was resolved from */
+	static String directoryName;
+	static Path cacheDirectory;
+
+	/* Total size of the cache files, or -1 until the directory is scanned */
+	static long size = -1;
+
+	static {
+		String value = System.getProperty(SWT_IMAGE_CACHE_SIZE);
+		if (value != null) {
+			try {
+				budget = Math.max(0, Long.parseLong(value.trim())) * 1024 * 1024;
+			} catch (NumberFormatException e) {
+			}
+		}
+	}
+
+/**
+ * Returns the cache directory, or null if the cache is off.
+ */
+static synchronized Path directory() {
+	String value = System.getProperty(SWT_IMAGE_CACHE_DIR);
+	if (!Objects.equals(value, directoryName)) {
+		directoryName = value;
+		cacheDirectory = null;
+		size = -1;
+		if (value != null && value.length() > 0) {
+			try {
+				cacheDirectory = Paths.get(value).toAbsolutePath();
+			} catch (InvalidPathException e) {
+			}
+		}
+	}
+	return budget > 0 ? cacheDirectory : null;
+}
+
+/**
+ * Returns the image data of the first image in the file, as decoded from
+ * the file.
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the file name is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the file</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image file contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image file contains an unrecognized format</li>
+ * </ul>
+ */
+static ImageData load(String filename) {
+	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	Path directory = directory();
+	String key = directory != null ? key(filename, 100) : null;
+	ImageData data = key != null ? read(directory, key) : null;
+	if (data == null) {
+		ImageData[] images = ImageDataLoader.load(filename);
+		if (images.length < 1) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		data = images[0];
+		if (key != null) write(directory, key, data);
+	}
+	return data;
+}
+
+/**
+ * Returns the image data of the first image in the file, which is meant
+ * for zoom level 100, scaled to the given zoom level like
+ * <code>DPIUtil.autoScaleImageData()</code> does.
+ *
+ * @see #load(String)
+ */
+static ImageData load(Device device, String filename, int zoom) {
+	if (zoom == 100 || (device != null && !device.isAutoScalable())) return load(filename);
+	Path directory = directory();
+	String key = directory != null ? key(filename, zoom) : null;
+	ImageData data = key != null ? read(directory, key) : null;
+	if (data == null) {
+		data = DPIUtil.autoScaleImageData(device, load(filename), zoom, 100);
+		if (key != null) write(directory, key, data);
+	}
+	return data;
+}
+
+/**
+ * Returns the key of the image data in the file at the zoom level, or
+ * null if the file cannot be cached.
+ */
+static String key(String filename, int zoom) {
+	File file = new File(filename).getAbsoluteFile();
+	long modified = file.lastModified();
+	if (modified == 0) return null;
+	StringBuilder key = new StringBuilder(file.getPath());
+	key.append('\n').append(modified);
+	key.append('\n').append(file.length());
+	key.append('\n').append(zoom);
+	if (zoom != 100) key.append(DPIUtil.isSmoothAutoScale() ? "\nsmooth" : "\nnearest");
+	return key.toString();
+}
+
+/**
+ * Returns the cache file for the key in the directory.
+ */
+static Path path(Path directory, String key) {
+	MessageDigest digest;
+	try {
+		digest = MessageDigest.getInstance("SHA-256");
+	} catch (NoSuchAlgorithmException e) {
+		return null;
+	}
+	byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+	StringBuilder name = new StringBuilder(hash.length * 2 + SUFFIX.length());
+	for (byte b : hash) {
+		name.append(Character.forDigit((b >> 4) & 0xF, 16));
+		name.append(Character.forDigit(b & 0xF, 16));
+	}
+	return directory.resolve(name.append(SUFFIX).toString());
+}
+
+/**
+ * Reads the image data for the key from its cache file.
+ *
+ * @return the image data, or null if it is not cached
+ */
+static ImageData read(Path directory, String key) {
+	Path path = path(directory, key);
+	if (path == null) return null;
+	ImageData data;
+	try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+		long length = channel.size();
+		ByteBuffer buffer;
+		if (length > Integer.MAX_VALUE) {
+			buffer = null;
+		} else if (FileFormat.MAP_FILES) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+		} else {
+			buffer = ByteBuffer.allocate((int) length);
+			while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+			}
+			buffer.flip();
+		}
+		data = buffer != null ? decode(buffer, key) : null;
+	} catch (IOException e) {
+		return null;
+	} catch (RuntimeException e) {
+		/* Truncated or otherwise invalid cache file */
+		data = null;
+	}
+	if (data == null) {
+		delete(path);
+		return null;
+	}
+	/* The modification time of cache files is the time they were last used */
+	path.toFile().setLastModified(System.currentTimeMillis());
+	return data;
+}
+
+/**
+ * Writes the image data for the key to its cache file, replacing the
+ * cache file atomically so that it is never read partially written.
+ */
+static void write(Path directory, String key, ImageData data) {
+	Path path = path(directory, key);
+	if (path == null) return;
+	ByteBuffer header = encode(key, data);
+	long length = header.remaining() + data.data.length;
+	if (data.maskData != null) length += data.maskData.length;
+	if (data.alphaData != null) length += data.alphaData.length;
+	if (length > budget) return;
+	Path temp = null;
+	try {
+		Files.createDirectories(directory);
+		temp = Files.createTempFile(directory, null, ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+			ByteBuffer[] buffers = {
+				header,
+				ByteBuffer.wrap(data.data),
+				ByteBuffer.wrap(data.maskData != null ? data.maskData : new byte[0]),
+				ByteBuffer.wrap(data.alphaData != null ? data.alphaData : new byte[0]),
+			};
+			long remaining = 0;
+			for (ByteBuffer buffer : buffers) {
+				remaining += buffer.remaining();
+			}
+			while (remaining > 0) {
+				remaining -= channel.write(buffers);
+			}
+		}
+		try {
+			Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+		temp = null;
+		added(directory, Files.size(path));
+	} catch (IOException | SecurityException e) {
+		/* The image just does not get cached */
+	} finally {
+		if (temp != null) delete(temp);
+	}
+}
+
+/**
+ * Returns the header of the cache file for the image data, which is
+ * followed by its pixels, mask and alpha data.
+ */
+static ByteBuffer encode(String key, ImageData data) {
+	byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+	PaletteData palette = data.palette;
+	int colors = palette.isDirect ? 0 : palette.colors.length;
+	ByteBuffer buffer = ByteBuffer.allocate(96 + keyBytes.length + colors * 3);
+	buffer.putInt(MAGIC).putInt(VERSION);
+	buffer.putInt(keyBytes.length).put(keyBytes);
+	buffer.putInt(data.width).putInt(data.height).putInt(data.depth);
+	buffer.putInt(data.scanlinePad).putInt(data.bytesPerLine);
+	buffer.putInt(data.transparentPixel).putInt(data.alpha).putInt(data.maskPad);
+	buffer.putInt(data.type).putInt(data.x).putInt(data.y);
+	buffer.putInt(data.disposalMethod).putInt(data.delayTime);
+	buffer.putInt(data.data.length);
+	buffer.putInt(data.maskData != null ? data.maskData.length : -1);
+	buffer.putInt(data.alphaData != null ? data.alphaData.length : -1);
+	if (palette.isDirect) {
+		buffer.putInt(-1);
+		buffer.putInt(palette.redMask).putInt(palette.greenMask).putInt(palette.blueMask);
+	} else {
+		buffer.putInt(colors);
+		for (RGB rgb : palette.colors) {
+			if (rgb == null) rgb = new RGB(0, 0, 0);
+			buffer.put((byte) rgb.red).put((byte) rgb.green).put((byte) rgb.blue);
+		}
+	}
+	buffer.flip();
+	return buffer;
+}
+
+/**
+ * Returns the image data in a cache file, or null if the cache file is
+ * not for the key.
+ */
+static ImageData decode(ByteBuffer buffer, String key) {
+	if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+	byte[] keyBytes = getBytes(buffer, buffer.getInt());
+	if (keyBytes == null || !key.equals(new String(keyBytes, StandardCharsets.UTF_8))) return null;
+	int width = buffer.getInt(), height = buffer.getInt(), depth = buffer.getInt();
+	int scanlinePad = buffer.getInt(), bytesPerLine = buffer.getInt();
+	int transparentPixel = buffer.getInt(), alpha = buffer.getInt(), maskPad = buffer.getInt();
+	int type = buffer.getInt(), x = buffer.getInt(), y = buffer.getInt();
+	int disposalMethod = buffer.getInt(), delayTime = buffer.getInt();
+	int dataLength = buffer.getInt(), maskLength = buffer.getInt(), alphaLength = buffer.getInt();
+	int colors = buffer.getInt();
+	if (width <= 0 || height <= 0 || bytesPerLine <= 0) return null;
+	if (colors < -1 || colors > buffer.remaining() / 3) return null;
+	PaletteData palette;
+	if (colors == -1) {
+		palette = new PaletteData(buffer.getInt(), buffer.getInt(), buffer.getInt());
+	} else {
+		RGB[] rgbs = new RGB[colors];
+		for (int i = 0; i < colors; i++) {
+			rgbs[i] = new RGB(buffer.get() & 0xFF, buffer.get() & 0xFF, buffer.get() & 0xFF);
+		}
+		palette = new PaletteData(rgbs);
+	}
+	if ((long) bytesPerLine * height > dataLength) return null;
+	byte[] data = getBytes(buffer, dataLength);
+	if (data == null) return null;
+	byte[] maskData = null, alphaData = null;
+	if (maskLength != -1 && (maskData = getBytes(buffer, maskLength)) == null) return null;
+	if (alphaLength != -1 && (alphaData = getBytes(buffer, alphaLength)) == null) return null;
+	if (buffer.hasRemaining()) return null;
+	ImageData image = ImageData.internal_new(width, height, depth, palette, scanlinePad, data,
+		maskPad, maskData, alphaData, alpha, transparentPixel, type, x, y, disposalMethod, delayTime);
+	/* Keep the scanline layout of the decoder, which may differ from the pad */
+	image.bytesPerLine = bytesPerLine;
+	return image;
+}
+
+/**
+ * Returns the given number of bytes read from the buffer, or null if the
+ * length is negative or exceeds the bytes left in the buffer.
+ */
+static byte[] getBytes(ByteBuffer buffer, int length) {
+	if (length < 0 || length > buffer.remaining()) return null;
+	byte[] bytes = new byte[length];
+	buffer.get(bytes);
+	return bytes;
+}
+
+/**
+ * Accounts for a cache file that was written, deleting the least recently
+ * used cache files when the budget is exceeded.
+ */
+static synchronized void added(Path directory, long length) {
+	/* The size is reset when the cache directory changes */
+	if (directory != directory()) return;
+	if (size == -1) {
+		size = 0;
+		for (File file : files(directory)) {
+			size += file.length();
+		}
+	} else {
+		size += length;
+	}
+	if (size > budget) trim(directory);
+}
+
+/**
+ * Deletes the least recently used cache files until the budget is met.
+ */
+static void trim(Path directory) {
+	File[] files = files(directory);
+	long[] modified = new long[files.length];
+	Integer[] order = new Integer[files.length];
+	size = 0;
+	for (int i = 0; i < files.length; i++) {
+		modified[i] = files[i].lastModified();
+		size += files[i].length();
+		order[i] = i;
+	}
+	Arrays.sort(order, (a, b) -> Long.compare(modified[a], modified[b]));
+	for (int i = 0; i < order.length && size > budget; i++) {
+		File file = files[order[i]];
+		long length = file.length();
+		if (file.delete()) size -= length;
+	}
+}
+
+static File[] files(Path directory) {
+	File[] files = directory.toFile().listFiles((dir, name) -> name.endsWith(SUFFIX));
+	return files != null ? files : new File[0];
+}
+
+static void delete(Path path) {
+	try {
+		Files.deleteIfExists(path);
+	} catch (IOException | SecurityException e) {
+	}
+}
+
+}
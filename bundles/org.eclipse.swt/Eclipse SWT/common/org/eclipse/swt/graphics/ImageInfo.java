@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+/**
+ * Instances of this class describe an image file without holding
+ * any of its pixels. They are answered by <code>ImageLoader.probe</code>,
+ * which reads only the headers of the file.
+ * <p>
+ * The size, depth and type describe the first image of the file,
+ * and match the corresponding fields of the first image data that
+ * <code>ImageLoader.load</code> would answer for the same file.
+ * </p>
+ *
+ * @see ImageLoader#probe(java.io.InputStream)
+ *
+ * @since 3.106
+ */
+public final class ImageInfo {
+
+	/**
+	 * The type of the image file, one of the <code>SWT.IMAGE_*</code>
+	 * constants as found in <code>ImageData.type</code>
+	 */
+	public int type;
+
+	/**
+	 * The width of the first image, in pixels
+	 */
+	public int width;
+
+	/**
+	 * The height of the first image, in pixels
+	 */
+	public int height;
+
+	/**
+	 * The color depth of the first image, in bits per pixel
+	 */
+	public int depth;
+
+	/**
+	 * The number of images in the file
+	 */
+	public int frameCount;
+
+	/**
+	 * Whether the pixels of the first image have an alpha channel
+	 */
+	public boolean hasAlpha;
+
+ImageInfo() {
+}
+
+/**
+ * Invokes internal SWT functionality to create a new instance of
+ * this class.
+ * <p>
+ * <b>IMPORTANT:</b> This method is <em>not</em> part of the public
+ * API for <code>ImageInfo</code>. It is marked public only so that it
+ * can be shared within the packages provided by SWT. It is subject
+ * to change without notice, and should never be called from
+ * application code.
+ * </p>
+ * <p>
+ * This method is for internal use, and is not described further.
+ * </p>
+ *
+ * @noreference This method is not intended to be referenced by clients.
+ */
+public static ImageInfo internal_new(int type, int width, int height, int depth, int frameCount, boolean hasAlpha) {
+	ImageInfo info = new ImageInfo();
+	info.type = type;
+	info.width = width;
+	info.height = height;
+	info.depth = depth;
+	info.frameCount = frameCount;
+	info.hasAlpha = hasAlpha;
+	return info;
+}
+
+}
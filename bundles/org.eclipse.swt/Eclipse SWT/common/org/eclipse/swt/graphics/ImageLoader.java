@@ -86,7 +86,9 @@ public class ImageLoader {
 	 * <p>
 	 * When saving jpeg files, the value is from 1 to 100,
 	 * where 1 is very high compression but low quality, and 100 is
-	 * no compression and high quality; default is 75.
+	 * no compression and high quality; default is 75. Below 100, the
+	 * color information is stored at half the horizontal and vertical
+	 * resolution of the brightness.
 	 * </p><p>
 	 * When saving png files, the value is from 0 to 3, but they do not impact the quality
 	 * because PNG is lossless compression. 0 is uncompressed, 1 is low compression and fast,
@@ -169,7 +171,7 @@ public ImageData[] load(String filename) {
 	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
 	InputStream stream = null;
 	try {
-		stream = new FileInputStream(filename);
+		stream = FileFormat.open(filename);
 		return load(stream);
 	} catch (IOException e) {
 		SWT.error(SWT.ERROR_IO, e);
@@ -183,6 +185,240 @@ public ImageData[] load(String filename) {
 	return null;
 }
 
+/**
+ * Loads an array of <code>ImageData</code> objects from the
+ * specified input stream, decoding at a reduced resolution when
+ * the image format allows it. Throws an error if either an error
+ * occurs while loading the images, or if the images are not
+ * of a supported type. Returns the loaded image data array.
+ * <p>
+ * The requested size is a hint. JPEG images are decoded at 1/2, 1/4
+ * or 1/8 of their size, choosing the smallest scale that is still at
+ * least <code>width</code> by <code>height</code> pixels. All other
+ * formats are loaded at their full size. Callers that need an exact
+ * size should scale the returned image data.
+ * </p>
+ *
+ * @param stream the input stream to load the images from
+ * @param width the minimum width in pixels of the loaded images
+ * @param height the minimum height in pixels of the loaded images
+ * @return an array of <code>ImageData</code> objects loaded from the specified input stream
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the stream is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the width or height is not positive</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the stream</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image stream contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image stream contains an unrecognized format</li>
+ * </ul>
+ *
+ * @since 3.106
+ */
+public ImageData[] load(InputStream stream, int width, int height) {
+	if (stream == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (width <= 0 || height <= 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	reset();
+	data = FileFormat.load(stream, this, width, height);
+	return data;
+}
+
+/**
+ * Loads an array of <code>ImageData</code> objects from the
+ * file with the specified name, decoding at a reduced resolution
+ * when the image format allows it. Throws an error if either
+ * an error occurs while loading the images, or if the images are
+ * not of a supported type. Returns the loaded image data array.
+ *
+ * @param filename the name of the file to load the images from
+ * @param width the minimum width in pixels of the loaded images
+ * @param height the minimum height in pixels of the loaded images
+ * @return an array of <code>ImageData</code> objects loaded from the specified file
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the file name is null</li>
+ *    <li>ERROR_INVALID_ARGUMENT - if the width or height is not positive</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the file</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image file contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image file contains an unrecognized format</li>
+ * </ul>
+ *
+ * @see #load(InputStream, int, int)
+ *
+ * @since 3.106
+ */
+public ImageData[] load(String filename, int width, int height) {
+	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (width <= 0 || height <= 0) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+	InputStream stream = null;
+	try {
+		stream = FileFormat.open(filename);
+		return load(stream, width, height);
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	} finally {
+		try {
+			if (stream != null) stream.close();
+		} catch (IOException e) {
+			// Ignore error
+		}
+	}
+	return null;
+}
+
+/**
+ * Loads the first image from the specified input stream and passes
+ * its pixels to the given consumer a band of rows at a time, instead
+ * of creating image data for the whole image. Throws an error if
+ * either an error occurs while loading the image, or if the image is
+ * not of a supported type.
+ * <p>
+ * Non-interlaced PNG, baseline JPEG, uncompressed BMP and TIFF
+ * images are decoded incrementally, so only a few rows are held in
+ * memory at any time. Other images are decoded completely and then
+ * passed to the consumer as a single band. The image loader's
+ * <code>data</code> is not set by this method.
+ * </p>
+ *
+ * @param stream the input stream to load the image from
+ * @param consumer the consumer that receives the rows of the image
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the stream or the consumer is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the stream</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image stream contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image stream contains an unrecognized format</li>
+ * </ul>
+ *
+ * @see ImageRowConsumer
+ *
+ * @since 3.106
+ */
+public void load(InputStream stream, ImageRowConsumer consumer) {
+	if (stream == null || consumer == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	reset();
+	FileFormat.load(stream, this, consumer);
+}
+
+/**
+ * Loads the first image from the file with the specified name and
+ * passes its pixels to the given consumer a band of rows at a time,
+ * instead of creating image data for the whole image. Throws an
+ * error if either an error occurs while loading the image, or if
+ * the image is not of a supported type.
+ *
+ * @param filename the name of the file to load the image from
+ * @param consumer the consumer that receives the rows of the image
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the file name or the consumer is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the file</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image file contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image file contains an unrecognized format</li>
+ * </ul>
+ *
+ * @see #load(InputStream, ImageRowConsumer)
+ *
+ * @since 3.106
+ */
+public void load(String filename, ImageRowConsumer consumer) {
+	if (filename == null || consumer == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	InputStream stream = null;
+	try {
+		stream = FileFormat.open(filename);
+		load(stream, consumer);
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	} finally {
+		try {
+			if (stream != null) stream.close();
+		} catch (IOException e) {
+			// Ignore error
+		}
+	}
+}
+
+/**
+ * Reads the headers of the image file in the specified input stream
+ * and answers a description of it, without loading its pixels. The
+ * description gives the type of the file, the number of images it
+ * holds, and the size and depth of its first image. The data of this
+ * image loader is not changed. Throws an error if either an error
+ * occurs while reading the stream, or if the stream is not of a
+ * supported type.
+ * <p>
+ * Only the headers of PNG, JPEG, BMP, ICO and TIFF files are read.
+ * GIF files are scanned to count their frames, skipping the pixel
+ * data. Files loaded by an <code>ImageCodec</code> are loaded
+ * completely.
+ * </p>
+ *
+ * @param stream the input stream to read the image file from
+ * @return a description of the image file
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the stream is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the stream</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image stream contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image stream contains an unrecognized format</li>
+ * </ul>
+ *
+ * @since 3.106
+ */
+public ImageInfo probe(InputStream stream) {
+	if (stream == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	return FileFormat.probe(stream, this);
+}
+
+/**
+ * Reads the headers of the image file with the specified name and
+ * answers a description of it, without loading its pixels. Throws an
+ * error if either an error occurs while reading the file, or if the
+ * file is not of a supported type.
+ *
+ * @param filename the name of the file to read
+ * @return a description of the image file
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the file name is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_IO - if an IO error occurs while reading from the file</li>
+ *    <li>ERROR_INVALID_IMAGE - if the image file contains invalid data</li>
+ *    <li>ERROR_UNSUPPORTED_FORMAT - if the image file contains an unrecognized format</li>
+ * </ul>
+ *
+ * @see #probe(InputStream)
+ *
+ * @since 3.106
+ */
+public ImageInfo probe(String filename) {
+	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	InputStream stream = null;
+	try {
+		stream = FileFormat.open(filename);
+		return probe(stream);
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	} finally {
+		try {
+			if (stream != null) stream.close();
+		} catch (IOException e) {
+			// Ignore error
+		}
+	}
+	return null;
+}
+
 /**
  * Saves the image data in this ImageLoader to the specified stream.
  * The format parameter can have one of the following values:
@@ -200,6 +436,8 @@ public ImageData[] load(String filename) {
  * <dt><code>IMAGE_PNG</code></dt>
  * <dd>PNG file format</dd>
  * </dl>
+ * The format can also be the format constant of an <code>ImageCodec</code>
+ * registered by the application.
  *
  * @param stream the output stream to write the images to
  * @param format the format to write the images in
@@ -235,6 +473,8 @@ public void save(OutputStream stream, int format) {
  * <dt><code>IMAGE_PNG</code></dt>
  * <dd>PNG file format</dd>
  * </dl>
+ * The format can also be the format constant of an <code>ImageCodec</code>
+ * registered by the application.
  *
  * @param filename the name of the file to write the images to
  * @param format the format to write the images in
@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+/**
+ * Classes which implement this interface receive the pixels of
+ * an image a band of rows at a time while it is being loaded by
+ * <code>ImageLoader.load(InputStream, ImageRowConsumer)</code>.
+ * This allows very large images to be processed without holding
+ * all of their pixels in memory.
+ *
+ * @see ImageLoader#load(InputStream, ImageRowConsumer)
+ *
+ * @since 3.106
+ */
+public interface ImageRowConsumer {
+
+/**
+ * Sent when a band of rows of the image has been loaded.
+ * <p>
+ * The band is an image data as wide as the image and as tall as
+ * the number of rows it holds. Its depth, palette, transparency
+ * and type describe the pixel format of the whole image. Bands
+ * are usually sent from top to bottom, but formats that store
+ * their rows bottom-up send them in that order. The band and its
+ * data may be reused once this method returns, so receivers
+ * must copy any pixels they want to keep.
+ * </p>
+ *
+ * @param rows the band of rows that was loaded
+ * @param y the row of the image at which the band starts
+ * @param height the number of rows in the band
+ */
+public void rowsLoaded(ImageData rows, int y, int height);
+
+}
@@ -98,6 +98,13 @@ public final class PaletteData {
 	 */
 	public int blueShift;
 
+	/**
+	 * the matcher of an indexed palette, built on demand, and
+	 * the colors it was built from
+	 */
+	PaletteMatcher matcher;
+	RGB[] matcherColors;
+
 /**
  * Constructs a new indexed palette given an array of RGB values.
  *
@@ -150,6 +157,11 @@ public int getPixel(RGB rgb) {
 		pixel |= (blueShift < 0 ? rgb.blue << -blueShift : rgb.blue >>> blueShift) & blueMask;
 		return pixel;
 	} else {
+		PaletteMatcher matcher = getMatcher();
+		int index = matcher != null ? matcher.nearest(rgb.red, rgb.green, rgb.blue) : -1;
+		if (0 <= index && index < colors.length && colors[index].equals(rgb)) return index;
+		/* The colors may have been modified since the matcher was built */
+		this.matcher = null;
 		for (int i = 0; i < colors.length; i++) {
 			if (colors[i].equals(rgb)) return i;
 		}
@@ -197,6 +209,29 @@ public RGB[] getRGBs() {
 	return colors;
 }
 
+/*
+ * Answers the matcher of the colors of an indexed palette, building
+ * it when there is none for the current colors. Answers null if the
+ * palette has null colors.
+ */
+PaletteMatcher getMatcher() {
+	RGB[] colors = this.colors;
+	if (matcher == null || matcherColors != colors) {
+		int length = colors.length;
+		byte[] reds = new byte[length], greens = new byte[length], blues = new byte[length];
+		for (int i = 0; i < length; i++) {
+			RGB rgb = colors[i];
+			if (rgb == null) return null;
+			reds[i] = (byte)rgb.red;
+			greens[i] = (byte)rgb.green;
+			blues[i] = (byte)rgb.blue;
+		}
+		matcherColors = colors;
+		matcher = new PaletteMatcher(reds, greens, blues, length, false);
+	}
+	return matcher;
+}
+
 /**
  * Computes the shift value for a given mask.
  *
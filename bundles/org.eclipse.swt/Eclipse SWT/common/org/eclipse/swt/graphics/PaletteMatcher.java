@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+import java.util.*;
+
+/**
+ * Finds the color of a palette that is nearest to a given color.
+ * <p>
+ * The result is always the one of a linear scan: the lowest index
+ * among the colors at the smallest squared distance. The colors are
+ * sorted by green so that the search starts at the colors with the
+ * closest green and stops once the green difference alone exceeds
+ * the best distance found. Colors that were looked up before are
+ * remembered in a small cache, which helps images with few colors.
+ * </p>
+ */
+final class PaletteMatcher {
+	static final int CACHE_SIZE = 1024;
+
+	/* The palette indices sorted by green, and the colors in that order */
+	final int[] indices, reds, greens, blues;
+
+	/* Colors as 0xRRGGBB, or -1, and their nearest palette index */
+	final int[] cacheColors, cacheIndices;
+
+/**
+ * Creates a matcher for the first <code>size</code> colors of the
+ * given channels, with a cache of recent colors if <code>cache</code>
+ * is true. A matcher without cache can be shared between threads.
+ */
+PaletteMatcher(byte[] reds, byte[] greens, byte[] blues, int size, boolean cache) {
+	long[] keys = new long[size];
+	for (int i = 0; i < size; i++) {
+		keys[i] = ((long)(greens[i] & 0xFF) << 32) | i;
+	}
+	Arrays.sort(keys);
+	this.indices = new int[size];
+	this.reds = new int[size];
+	this.greens = new int[size];
+	this.blues = new int[size];
+	for (int k = 0; k < size; k++) {
+		int i = (int)keys[k];
+		indices[k] = i;
+		this.reds[k] = reds[i] & 0xFF;
+		this.greens[k] = greens[i] & 0xFF;
+		this.blues[k] = blues[i] & 0xFF;
+	}
+	if (cache) {
+		cacheColors = new int[CACHE_SIZE];
+		cacheIndices = new int[CACHE_SIZE];
+		Arrays.fill(cacheColors, -1);
+	} else {
+		cacheColors = cacheIndices = null;
+	}
+}
+
+/**
+ * Answers the index of the palette color nearest to the given color,
+ * or 0 if the palette is empty.
+ */
+int nearest(int red, int green, int blue) {
+	int[] cacheColors = this.cacheColors;
+	int color = 0, slot = 0;
+	if (cacheColors != null) {
+		color = (red << 16) | (green << 8) | blue;
+		slot = (color * 0x9E3779B1) >>> 22;
+		if (cacheColors[slot] == color) return cacheIndices[slot];
+	}
+	int[] reds = this.reds, greens = this.greens, blues = this.blues, indices = this.indices;
+	int size = indices.length;
+	/* The first color whose green is not below the given one */
+	int low = 0, high = size;
+	while (low < high) {
+		int mid = (low + high) >>> 1;
+		if (greens[mid] < green) low = mid + 1; else high = mid;
+	}
+	int up = low, down = low - 1;
+	int minDistance = 0x7fffffff, nearest = 0;
+	while (up < size || down >= 0) {
+		int k;
+		if (down < 0 || (up < size && greens[up] - green <= green - greens[down])) {
+			k = up++;
+		} else {
+			k = down--;
+		}
+		int dg = greens[k] - green;
+		/* Ties are kept, a color of lower index may be at the same distance */
+		if (dg * dg > minDistance) {
+			if (k >= low) up = size; else down = -1;
+			continue;
+		}
+		int dr = reds[k] - red, db = blues[k] - blue;
+		int distance = dr * dr + dg * dg + db * db;
+		int index = indices[k];
+		if (distance < minDistance || (distance == minDistance && index < nearest)) {
+			minDistance = distance;
+			nearest = index;
+		}
+	}
+	if (cacheColors != null) {
+		cacheColors[slot] = color;
+		cacheIndices[slot] = nearest;
+	}
+	return nearest;
+}
+
+}
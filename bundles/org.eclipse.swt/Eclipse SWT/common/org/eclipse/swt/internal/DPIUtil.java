@@ -221,25 +221,7 @@ private static ImageData autoScaleImageData (Device device, final ImageData imag
 	int scaledHeight = Math.round ((float) height * scaleFactor);
 	switch (autoScaleMethod) {
 	case SMOOTH:
-		Image original = new Image (device, (ImageDataProvider) zoom -> imageData);
-
-		/* Create a 24 bit image data with alpha channel */
-		final ImageData resultData = new ImageData (scaledWidth, scaledHeight, 24, new PaletteData (0xFF, 0xFF00, 0xFF0000));
-		resultData.alphaData = new byte [scaledWidth * scaledHeight];
-
-		Image resultImage = new Image (device, (ImageDataProvider) zoom -> resultData);
-		GC gc = new GC (resultImage);
-		gc.setAntialias (SWT.ON);
-		gc.drawImage (original, 0, 0, DPIUtil.autoScaleDown (width), DPIUtil.autoScaleDown (height),
-				/* E.g. destWidth here is effectively DPIUtil.autoScaleDown (scaledWidth), but avoiding rounding errors.
-				 * Nevertheless, we still have some rounding errors due to the point-based API GC#drawImage(..).
-				 */
-				0, 0, Math.round (DPIUtil.autoScaleDown ((float) width * scaleFactor)), Math.round (DPIUtil.autoScaleDown ((float) height * scaleFactor)));
-		gc.dispose ();
-		original.dispose ();
-		ImageData result = resultImage.getImageData (DPIUtil.getDeviceZoom ());
-		resultImage.dispose ();
-		return result;
+		return imageData.scaledTo (scaledWidth, scaledHeight, SWT.FILTER_BICUBIC);
 	case NEAREST:
 	default:
 		return imageData.scaledTo (scaledWidth, scaledHeight);
@@ -417,6 +399,18 @@ public static int getDeviceZoom() {
 	return deviceZoom;
 }
 
+public static int getNativeDeviceZoom() {
+	return nativeDeviceZoom;
+}
+
+/**
+ * Returns whether images are scaled with smooth edges rather than by
+ * nearest-neighbor interpolation.
+ */
+public static boolean isSmoothAutoScale() {
+	return autoScaleMethod == AutoScaleMethod.SMOOTH;
+}
+
 public static void setDeviceZoom (int nativeDeviceZoom) {
 	DPIUtil.nativeDeviceZoom = nativeDeviceZoom;
 	int deviceZoom = 0;
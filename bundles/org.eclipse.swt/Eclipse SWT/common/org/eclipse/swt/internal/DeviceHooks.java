@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal;
+
+
+import java.util.function.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+
+/**
+ * Hooks that let SWT graphics run code on the thread of a display and
+ * learn when a display is disposed, without referencing the classes of
+ * SWT widgets. Like the device finder of <code>Device</code>, they are
+ * installed when the classes that provide them are loaded.
+ */
+public final class DeviceHooks {
+
+	/**
+	 * Runs a runnable on the user-interface thread of a display at the
+	 * next reasonable opportunity, or right away for other devices, set
+	 * by <code>Display</code>. It throws <code>ERROR_DEVICE_DISPOSED</code>
+	 * when the device is disposed.
+	 */
+	public static BiConsumer<Device, Runnable> asyncExec;
+
+	/**
+	 * Told about a display that is being disposed, after it ran the last
+	 * runnables it will run, set by the graphics code that needs it.
+	 */
+	public static Consumer<Device> disposed;
+
+/**
+ * Runs the runnable on the thread of the device. Devices without a
+ * user-interface thread run it on the calling thread before returning.
+ *
+ * @exception SWTException <ul>
+ *    <li>ERROR_DEVICE_DISPOSED - if the device has been disposed</li>
+ * </ul>
+ */
+public static void asyncExec(Device device, Runnable runnable) {
+	BiConsumer<Device, Runnable> asyncExec = DeviceHooks.asyncExec;
+	if (asyncExec != null) {
+		asyncExec.accept(device, runnable);
+	} else {
+		run(device, runnable);
+	}
+}
+
+/**
+ * Runs the runnable on the calling thread, for devices without a
+ * user-interface thread.
+ *
+ * @exception SWTException <ul>
+ *    <li>ERROR_DEVICE_DISPOSED - if the device has been disposed</li>
+ * </ul>
+ */
+public static void run(Device device, Runnable runnable) {
+	if (device.isDisposed()) SWT.error(SWT.ERROR_DEVICE_DISPOSED);
+	runnable.run();
+}
+
+/**
+ * Tells the graphics code that the device is being disposed.
+ */
+public static void disposed(Device device) {
+	Consumer<Device> disposed = DeviceHooks.disposed;
+	if (disposed != null) disposed.accept(device);
+}
+
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import org.eclipse.swt.*;
+
+/**
+ * This class runs the loops of image codecs and filters over rows, strips
+ * or segments concurrently on the common fork/join pool.
+ */
+public class ParallelUtil {
+
+	/**
+	 * A task run for a range of indices.
+	 */
+	public interface RangeTask {
+		/**
+		 * Runs the task for the indices from <code>first</code> (inclusive)
+		 * to <code>last</code> (exclusive).
+		 */
+		void run(int first, int last);
+	}
+
+	/* Parallelism used instead of the one of the common pool, 0 if not set */
+	static int parallelism;
+
+/**
+ * Returns the number of threads loops are spread over.
+ */
+public static int getParallelism() {
+	return parallelism > 0 ? parallelism : ForkJoinPool.getCommonPoolParallelism();
+}
+
+/**
+ * Sets the number of threads loops are spread over, or restores the
+ * parallelism of the common pool when <code>parallelism</code> is 0.
+ * This lets tests run the concurrent code paths on machines with a
+ * single core.
+ */
+public static void setParallelism(int parallelism) {
+	ParallelUtil.parallelism = Math.max(0, parallelism);
+}
+
+/**
+ * Returns whether loops run concurrently.
+ */
+public static boolean isParallel() {
+	return getParallelism() > 1;
+}
+
+/**
+ * Runs the task for every index from 0 to <code>count</code>, concurrently
+ * when <code>parallel</code> is true and loops run concurrently.
+ */
+public static void forEach(int count, boolean parallel, IntConsumer task) {
+	forEachRange(count, parallel, (first, last) -> {
+		for (int index = first; index < last; index++) task.accept(index);
+	});
+}
+
+/**
+ * Runs the task for ranges covering every index from 0 to
+ * <code>count</code>, concurrently when <code>parallel</code> is true and
+ * loops run concurrently. The task runs once for the whole range
+ * otherwise.
+ */
+public static void forEachRange(int count, boolean parallel, RangeTask task) {
+	if (!parallel || count < 2 || !isParallel()) {
+		if (count > 0) task.run(0, count);
+		return;
+	}
+	int numTasks = Math.min(count, getParallelism() * 4);
+	List<Callable<Object>> tasks = new ArrayList<>(numTasks);
+	for (int i = 0; i < numTasks; i++) {
+		int first = (int) ((long) count * i / numTasks);
+		int last = (int) ((long) count * (i + 1) / numTasks);
+		tasks.add(() -> {
+			task.run(first, last);
+			return null;
+		});
+	}
+	for (Future<Object> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			SWT.error(SWT.ERROR_UNSPECIFIED, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			SWT.error(SWT.ERROR_UNSPECIFIED, cause);
+		}
+	}
+}
+
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal.image;
+
+
+import java.io.*;
+import java.util.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+
+/**
+ * Adapts an image codec registered by the application to a file format.
+ */
+final class CodecFileFormat extends FileFormat {
+	ImageCodec codec;
+
+	/* The registered codecs, found the first time they are needed */
+	static ImageCodec[] codecs;
+
+CodecFileFormat(ImageCodec codec) {
+	this.codec = codec;
+}
+
+/**
+ * Answer the codecs registered with the service loader.
+ */
+static synchronized ImageCodec[] getCodecs() {
+	if (codecs == null) {
+		List<ImageCodec> list = new ArrayList<>();
+		try {
+			for (ImageCodec codec : ServiceLoader.load(ImageCodec.class)) {
+				list.add(codec);
+			}
+		} catch (ServiceConfigurationError e) {
+		}
+		codecs = list.toArray(new ImageCodec[list.size()]);
+	}
+	return codecs;
+}
+
+/**
+ * Answer the file format of the first registered codec that can
+ * load a stream starting with the given header, or null.
+ */
+static FileFormat getFileFormat(byte[] header) {
+	for (ImageCodec codec : getCodecs()) {
+		if (codec.isFormat(header)) return new CodecFileFormat(codec);
+	}
+	return null;
+}
+
+/**
+ * Answer the file format of the registered codec that saves the
+ * given format, or null.
+ */
+static FileFormat getFileFormat(int format) {
+	if (format == -1) return null;
+	for (ImageCodec codec : getCodecs()) {
+		if (codec.getFormat() == format) return new CodecFileFormat(codec);
+	}
+	return null;
+}
+
+@Override
+boolean isFileFormat(byte[] header) {
+	return codec.isFormat(header);
+}
+
+@Override
+ImageData[] loadFromByteStream() {
+	try {
+		ImageData[] data = codec.load(inputStream, loader);
+		if (data == null) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		return data;
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+		return null;
+	}
+}
+
+@Override
+void unloadIntoByteStream(ImageLoader loader) {
+	try {
+		codec.save(outputStream, loader);
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+}
+
+}
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal.image;
+
+/**
+ * Receives the pixels of an image that is decoded straight into
+ * platform storage instead of an intermediate <code>ImageData</code>.
+ * Rows are delivered top to bottom as 32-bit ARGB values with the
+ * color components premultiplied by alpha.
+ */
+public interface DirectImageTarget {
+
+/**
+ * Prepares to receive an image of the given size. Answers false if
+ * the image should be decoded into an <code>ImageData</code> instead.
+ */
+boolean begin(int width, int height, boolean hasAlpha);
+
+/**
+ * Stores one row of pixels. The alpha values are null when the
+ * image is opaque.
+ */
+void setRow(int y, int[] pixels, byte[] alphas);
+
+}
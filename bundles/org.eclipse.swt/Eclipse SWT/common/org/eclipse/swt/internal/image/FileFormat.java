@@ -12,6 +12,10 @@ package org.eclipse.swt.internal.image;
 
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 
@@ -21,27 +25,81 @@ import org.eclipse.swt.graphics.*;
  *
  */
 public abstract class FileFormat {
-	static final String FORMAT_PACKAGE = "org.eclipse.swt.internal.image"; //$NON-NLS-1$
-	static final String FORMAT_SUFFIX = "FileFormat"; //$NON-NLS-1$
-	static final String[] FORMATS = {"WinBMP", "WinBMP", "GIF", "WinICO", "JPEG", "PNG", "TIFF", "OS2BMP"}; //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$//$NON-NLS-5$ //$NON-NLS-6$//$NON-NLS-7$//$NON-NLS-8$
+	/* Number of leading bytes read to recognize the format of a stream */
+	static final int SIGNATURE_LENGTH = 32;
 
 	LEDataInputStream inputStream;
 	LEDataOutputStream outputStream;
 	ImageLoader loader;
 	int compression;
+	int targetWidth, targetHeight;
+	DirectImageTarget directTarget;
+	ImageRowConsumer rowConsumer;
+
+	/* Approximate size in bytes of the bands passed to the row consumer */
+	static final int BAND_SIZE = 64 * 1024;
+
+	/**
+	 * Files of at least this many bytes are mapped into memory by
+	 * <code>open</code>, smaller ones are read with a single call.
+	 */
+	static final int MAP_SIZE = 256 * 1024;
 
-static FileFormat getFileFormat (LEDataInputStream stream, String format) throws Exception {
-	Class<?> clazz = Class.forName(FORMAT_PACKAGE + '.' + format + FORMAT_SUFFIX);
-	FileFormat fileFormat = (FileFormat) clazz.newInstance();
-	if (fileFormat.isFileFormat(stream)) return fileFormat;
+	/*
+	 * A mapped file cannot be deleted or replaced on Windows until
+	 * the mapping is garbage collected, so large files are streamed there.
+	 */
+	public static final boolean MAP_FILES = !"win32".equals(SWT.getPlatform());
+
+/**
+ * Answer a new instance of the built-in file format for the given
+ * <code>SWT.IMAGE_*</code> constant, or null if it is not built in.
+ */
+static FileFormat createFileFormat(int format) {
+	switch (format) {
+		case SWT.IMAGE_BMP:
+		case SWT.IMAGE_BMP_RLE: return new WinBMPFileFormat();
+		case SWT.IMAGE_GIF: return new GIFFileFormat();
+		case SWT.IMAGE_ICO: return new WinICOFileFormat();
+		case SWT.IMAGE_JPEG: return new JPEGFileFormat();
+		case SWT.IMAGE_PNG: return new PNGFileFormat();
+		case SWT.IMAGE_TIFF: return new TIFFFileFormat();
+		case SWT.IMAGE_OS2_BMP: return new OS2BMPFileFormat();
+	}
 	return null;
 }
 
 /**
- * Return whether or not the specified input stream
- * represents a supported file format.
+ * Answer the built-in file format whose signature the given header
+ * starts with, or null if there is none. The first byte selects the
+ * candidate formats, which then verify the rest of their signature.
+ */
+static FileFormat createFileFormat(byte[] header) {
+	if (header.length == 0) return null;
+	FileFormat fileFormat = null;
+	switch (header[0] & 0xFF) {
+		case 0x42: /* 'B' */
+			fileFormat = new WinBMPFileFormat();
+			if (!fileFormat.isFileFormat(header)) fileFormat = new OS2BMPFileFormat();
+			break;
+		case 0x47: /* 'G' */ fileFormat = new GIFFileFormat(); break;
+		case 0x00: fileFormat = new WinICOFileFormat(); break;
+		case 0xFF: fileFormat = new JPEGFileFormat(); break;
+		case 0x89: fileFormat = new PNGFileFormat(); break;
+		case 0x49: /* 'I' */
+		case 0x4D: /* 'M' */ fileFormat = new TIFFFileFormat(); break;
+	}
+	if (fileFormat != null && !fileFormat.isFileFormat(header)) fileFormat = null;
+	return fileFormat;
+}
+
+/**
+ * Return whether or not a stream starting with the specified
+ * header represents this file format. The header holds the first
+ * <code>SIGNATURE_LENGTH</code> bytes of the stream, or all of
+ * them for shorter streams.
  */
-abstract boolean isFileFormat(LEDataInputStream stream);
+abstract boolean isFileFormat(byte[] header);
 
 abstract ImageData[] loadFromByteStream();
 
@@ -63,46 +121,198 @@ public ImageData[] loadFromStream(LEDataInputStream stream) {
 	}
 }
 
+/**
+ * Read the headers of the specified input stream and return a
+ * description of the image file. Formats that cannot describe
+ * themselves from their headers load the images.
+ */
+ImageInfo probeFromByteStream() {
+	ImageData[] data = loadFromByteStream();
+	if (data == null || data.length < 1) SWT.error(SWT.ERROR_INVALID_IMAGE);
+	ImageData image = data[0];
+	return ImageInfo.internal_new(image.type, image.width, image.height, image.depth, data.length, image.alphaData != null);
+}
+
+/**
+ * Read the headers of the specified input stream, and return a
+ * description of the image file represented by the stream.
+ */
+public ImageInfo probeFromStream(LEDataInputStream stream) {
+	try {
+		inputStream = stream;
+		return probeFromByteStream();
+	} catch (Exception e) {
+		if (e instanceof IOException) {
+			SWT.error(SWT.ERROR_IO, e);
+		} else {
+			SWT.error(SWT.ERROR_INVALID_IMAGE, e);
+		}
+		return null;
+	}
+}
+
+/**
+ * Answer a stream over the contents of the file with the specified name.
+ * Files that fit in an array are mapped into memory or read with one call,
+ * so that the decoders read from a buffer and seek within it without
+ * copying. Other files, and files whose size is unknown, are streamed.
+ */
+public static InputStream open(String filename) throws IOException {
+	FileInputStream file = new FileInputStream(filename);
+	try {
+		FileChannel channel = file.getChannel();
+		long size = channel.size();
+		if (size == 0 || size > Integer.MAX_VALUE || (size >= MAP_SIZE && !MAP_FILES)) {
+			InputStream stream = file;
+			file = null;
+			return stream;
+		}
+		ByteBuffer buffer;
+		if (size >= MAP_SIZE) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		} else {
+			buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining() && channel.read(buffer) != -1) {}
+			buffer.flip();
+		}
+		return new LEDataInputStream(buffer);
+	} finally {
+		if (file != null) file.close();
+	}
+}
+
+/**
+ * Answer a stream that reads the specified input stream, which is used
+ * as is when it was answered by <code>open</code>.
+ */
+static LEDataInputStream getStream(InputStream is) {
+	if (is instanceof LEDataInputStream) return (LEDataInputStream) is;
+	return new LEDataInputStream(is);
+}
+
+/**
+ * Read the headers of the specified input stream using the specified
+ * loader, and return a description of the image file represented by
+ * the stream.
+ */
+public static ImageInfo probe(InputStream is, ImageLoader loader) {
+	LEDataInputStream stream = getStream(is);
+	FileFormat fileFormat = getFileFormat(stream);
+	fileFormat.loader = loader;
+	return fileFormat.probeFromStream(stream);
+}
+
 /**
  * Read the specified input stream using the specified loader, and
  * return the device independent image array represented by the stream.
  */
 public static ImageData[] load(InputStream is, ImageLoader loader) {
-	FileFormat fileFormat = null;
-	LEDataInputStream stream = new LEDataInputStream(is);
-	for (int i = 1; i < FORMATS.length; i++) {
-		if (FORMATS[i] != null) {
-			try {
-				fileFormat = getFileFormat (stream, FORMATS[i]);
-				if (fileFormat != null) break;
-			} catch (ClassNotFoundException e) {
-				FORMATS[i] = null;
-			} catch (Exception e) {
-			}
-		}
+	return load(is, loader, 0, 0);
+}
+
+/**
+ * Read the specified input stream using the specified loader, and
+ * return the device independent image array represented by the stream.
+ * Formats that can decode at a reduced resolution produce images no
+ * smaller than the requested width and height, other formats ignore them.
+ */
+public static ImageData[] load(InputStream is, ImageLoader loader, int width, int height) {
+	return load(is, loader, width, height, null);
+}
+
+/**
+ * Read the specified input stream using the specified loader. Formats
+ * that support it decode the first image straight into the target and
+ * answer null, other formats return the device independent image array
+ * represented by the stream.
+ */
+public static ImageData[] load(InputStream is, ImageLoader loader, DirectImageTarget target) {
+	return load(is, loader, 0, 0, target);
+}
+
+/**
+ * Read the first image of the specified input stream using the specified
+ * loader, and pass its pixels to the consumer a band of rows at a time.
+ * Formats that cannot decode incrementally pass the whole image as one band.
+ */
+public static void load(InputStream is, ImageLoader loader, ImageRowConsumer consumer) {
+	LEDataInputStream stream = getStream(is);
+	FileFormat fileFormat = getFileFormat(stream);
+	fileFormat.loader = loader;
+	fileFormat.rowConsumer = consumer;
+	ImageData[] data = fileFormat.loadFromStream(stream);
+	if (data != null) {
+		if (data.length < 1) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		consumer.rowsLoaded(data[0], 0, data[0].height);
 	}
-	if (fileFormat == null) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+}
+
+static ImageData[] load(InputStream is, ImageLoader loader, int width, int height, DirectImageTarget target) {
+	LEDataInputStream stream = getStream(is);
+	FileFormat fileFormat = getFileFormat(stream);
 	fileFormat.loader = loader;
+	fileFormat.targetWidth = width;
+	fileFormat.targetHeight = height;
+	fileFormat.directTarget = target;
 	return fileFormat.loadFromStream(stream);
 }
 
+/**
+ * Answer the next <code>SIGNATURE_LENGTH</code> bytes of the specified
+ * input stream, or all remaining bytes if there are fewer, without
+ * consuming them.
+ */
+static byte[] readHeader(LEDataInputStream stream) throws IOException {
+	byte[] header = new byte[SIGNATURE_LENGTH];
+	stream.mark(SIGNATURE_LENGTH);
+	int length = Math.max(0, stream.read(header));
+	stream.reset();
+	if (length < header.length) header = Arrays.copyOf(header, length);
+	return header;
+}
+
+/**
+ * Answer the file format of the specified input stream.
+ */
+static FileFormat getFileFormat(LEDataInputStream stream) {
+	byte[] header = null;
+	try {
+		header = readHeader(stream);
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+	FileFormat fileFormat = createFileFormat(header);
+	if (fileFormat == null) fileFormat = CodecFileFormat.getFileFormat(header);
+	if (fileFormat == null) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+	return fileFormat;
+}
+
+/**
+ * Pass a band of rows to the row consumer.
+ */
+void rowsLoaded(ImageData rows, int y, int height) {
+	rowConsumer.rowsLoaded(rows, y, height);
+}
+
+/**
+ * Answer the number of rows in the bands passed to the row consumer
+ * for rows of the given size.
+ */
+static int getBandHeight(int bytesPerLine) {
+	return Math.max(1, BAND_SIZE / Math.max(1, bytesPerLine));
+}
+
 /**
  * Write the device independent image array stored in the specified loader
  * to the specified output stream using the specified file format.
  */
 public static void save(OutputStream os, int format, ImageLoader loader) {
-	if (format < 0 || format >= FORMATS.length) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
-	if (FORMATS[format] == null) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+	FileFormat fileFormat = createFileFormat(format);
+	if (fileFormat == null) fileFormat = CodecFileFormat.getFileFormat(format);
+	if (fileFormat == null) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
 	if (loader.data == null || loader.data.length < 1) SWT.error(SWT.ERROR_INVALID_ARGUMENT);
 
 	LEDataOutputStream stream = new LEDataOutputStream(os);
-	FileFormat fileFormat = null;
-	try {
-		Class<?> clazz = Class.forName(FORMAT_PACKAGE + '.' + FORMATS[format] + FORMAT_SUFFIX);
-		fileFormat = (FileFormat) clazz.newInstance();
-	} catch (Exception e) {
-		SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
-	}
 	if (format == SWT.IMAGE_BMP_RLE) {
 		switch (loader.data[0].depth) {
 			case 8: fileFormat.compression = 1; break;
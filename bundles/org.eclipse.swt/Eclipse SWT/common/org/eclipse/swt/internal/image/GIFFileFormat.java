@@ -48,15 +48,9 @@ public final class GIFFileFormat extends FileFormat {
 	}
 
 	@Override
-	boolean isFileFormat(LEDataInputStream stream) {
-		try {
-			byte[] signature = new byte[3];
-			stream.read(signature);
-			stream.unread(signature);
-			return signature[0] == 'G' && signature[1] == 'I' && signature[2] == 'F';
-		} catch (Exception e) {
-			return false;
-		}
+	boolean isFileFormat(byte[] signature) {
+		if (signature.length < 3) return false;
+		return signature[0] == 'G' && signature[1] == 'I' && signature[2] == 'F';
 	}
 
 	/**
@@ -67,7 +61,7 @@ public final class GIFFileFormat extends FileFormat {
 	ImageData[] loadFromByteStream() {
 		byte[] signature = new byte[3];
 		byte[] versionBytes = new byte[3];
-		byte[] block = new byte[7];
+		int bitField = 0;
 		try {
 			inputStream.read(signature);
 			if (!(signature[0] == 'G' && signature[1] == 'I' && signature[2] == 'F'))
@@ -75,17 +69,19 @@ public final class GIFFileFormat extends FileFormat {
 
 			inputStream.read(versionBytes);
 
-			inputStream.read(block);
+			// Logical screen descriptor.
+			if (!inputStream.fill(7))
+				SWT.error(SWT.ERROR_INVALID_IMAGE);
+			screenWidth = inputStream.readShort() & 0xFFFF;
+			screenHeight = inputStream.readShort() & 0xFFFF;
+			bitField = inputStream.read();
+			backgroundPixel = inputStream.read();
+			inputStream.read(); // aspect
 		} catch (IOException e) {
 			SWT.error(SWT.ERROR_IO, e);
 		}
-		screenWidth = (block[0] & 0xFF) | ((block[1] & 0xFF) << 8);
 		loader.logicalScreenWidth = screenWidth;
-		screenHeight = (block[2] & 0xFF) | ((block[3] & 0xFF) << 8);
 		loader.logicalScreenHeight = screenHeight;
-		byte bitField = block[4];
-		backgroundPixel = block[5] & 0xFF;
-		//aspect = block[6] & 0xFF;
 		bitsPerPixel = ((bitField >> 4) & 0x07) + 1;
 		defaultDepth = (bitField & 0x7) + 1;
 		PaletteData palette = null;
@@ -133,6 +129,109 @@ public final class GIFFileFormat extends FileFormat {
 		return images;
 	}
 
+	/**
+	 * Describe the GIF image(s) stored in the input stream. The
+	 * blocks are scanned to count the images, but their pixel data
+	 * is skipped rather than decoded.
+	 */
+	@Override
+	ImageInfo probeFromByteStream() {
+		byte[] header = new byte[13];
+		try {
+			if (inputStream.read(header) != header.length)
+				SWT.error(SWT.ERROR_INVALID_IMAGE);
+		} catch (IOException e) {
+			SWT.error(SWT.ERROR_IO, e);
+		}
+		if (!(header[0] == 'G' && header[1] == 'I' && header[2] == 'F'))
+			SWT.error(SWT.ERROR_INVALID_IMAGE);
+		byte bitField = header[10];
+		bitsPerPixel = ((bitField >> 4) & 0x07) + 1;
+		defaultDepth = (bitField & 0x7) + 1;
+		if ((bitField & 0x80) != 0) {
+			// Global palette.
+			skipBytes(3 << defaultDepth);
+		} else {
+			// No global palette.
+			defaultDepth = bitsPerPixel;
+		}
+
+		ImageInfo info = null;
+		int frameCount = 0;
+		int id = readID();
+		while (id != GIF_TRAILER_ID && id != -1) {
+			if (id == GIF_IMAGE_BLOCK_ID) {
+				int width = 0, height = 0, blockBitField = 0;
+				try {
+					if (!inputStream.fill(9))
+						SWT.error(SWT.ERROR_INVALID_IMAGE);
+					// Skip the image position.
+					inputStream.skip(4);
+					width = inputStream.readShort() & 0xFFFF;
+					height = inputStream.readShort() & 0xFFFF;
+					blockBitField = inputStream.read();
+				} catch (IOException e) {
+					SWT.error(SWT.ERROR_IO, e);
+				}
+				int depth = defaultDepth;
+				if ((blockBitField & 0x80) != 0) {
+					// Local palette.
+					depth = (blockBitField & 0x7) + 1;
+					skipBytes(3 << depth);
+				}
+				if (info == null) {
+					// Promote depth to next highest supported value.
+					if (!(depth == 1 || depth == 4 || depth == 8)) {
+						depth = depth < 4 ? 4 : 8;
+					}
+					info = ImageInfo.internal_new(SWT.IMAGE_GIF, width, height, depth, 0, false);
+				}
+				// Skip the initial code size and the data sub-blocks.
+				if (readID() < 0) SWT.error(SWT.ERROR_INVALID_IMAGE);
+				skipSubBlocks();
+				frameCount++;
+			} else if (id == GIF_EXTENSION_BLOCK_ID) {
+				// Skip the extension identifier and the data sub-blocks.
+				readID();
+				skipSubBlocks();
+			} else {
+				/* The GIF is not to spec, but try to salvage it
+				 * if we read at least one image. */
+				if (frameCount > 0) break;
+				SWT.error(SWT.ERROR_INVALID_IMAGE);
+			}
+			id = readID();
+			if (id == 0) id = readID();
+		}
+		if (info == null) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		info.frameCount = frameCount;
+		return info;
+	}
+
+	/**
+	 * Skip the given number of bytes of the input stream.
+	 */
+	void skipBytes(int count) {
+		try {
+			if (inputStream.skip(count) != count)
+				SWT.error(SWT.ERROR_INVALID_IMAGE);
+		} catch (IOException e) {
+			SWT.error(SWT.ERROR_IO, e);
+		}
+	}
+
+	/**
+	 * Skip a sequence of data sub-blocks, including the block
+	 * terminator that ends it.
+	 */
+	void skipSubBlocks() {
+		int size = readID();
+		while (size > 0) {
+			skipBytes(size);
+			size = readID();
+		}
+	}
+
 	/**
 	 * Read and return the next block or extension identifier from the file.
 	 */
@@ -319,17 +418,16 @@ public final class GIFFileFormat extends FileFormat {
 	ImageData readImageBlock(PaletteData defaultPalette) {
 		int depth;
 		PaletteData palette;
-		byte[] block = new byte[9];
+		int left = 0, top = 0, width = 0, height = 0, bitField = 0;
 		try {
-			inputStream.read(block);
+			left = inputStream.readShort() & 0xFFFF;
+			top = inputStream.readShort() & 0xFFFF;
+			width = inputStream.readShort() & 0xFFFF;
+			height = inputStream.readShort() & 0xFFFF;
+			bitField = inputStream.read();
 		} catch (IOException e) {
 			SWT.error(SWT.ERROR_IO, e);
 		}
-		int left = (block[0] & 0xFF) | ((block[1] & 0xFF) << 8);
-		int top = (block[2] & 0xFF) | ((block[3] & 0xFF) << 8);
-		int width = (block[4] & 0xFF) | ((block[5] & 0xFF) << 8);
-		int height = (block[6] & 0xFF) | ((block[7] & 0xFF) << 8);
-		byte bitField = block[8];
 		boolean interlaced = (bitField & 0x40) != 0;
 		//boolean sorted = (bitField & 0x20) != 0;
 		if ((bitField & 0x80) != 0) {
@@ -410,7 +508,7 @@ public final class GIFFileFormat extends FileFormat {
 	void unloadIntoByteStream(ImageLoader loader) {
 
  		/* Step 1: Acquire GIF parameters. */
-		ImageData[] data = loader.data;
+		ImageData[] data = quantize(loader.data);
 		int frameCount = data.length;
 		boolean multi = frameCount > 1;
 		ImageData firstImage = data[0];
@@ -536,6 +634,23 @@ public final class GIFFileFormat extends FileFormat {
 		}
 	}
 
+	/**
+	 * Answer the given frames with the direct color ones reduced to
+	 * the depth of the first frame if it is indexed, or to 8 bits.
+	 * The frames of the loader are not modified.
+	 */
+	static ImageData[] quantize(ImageData[] data) {
+		ImageData[] result = data;
+		int depth = data[0].palette.isDirect ? 8 : data[0].depth;
+		for (int i=0; i<data.length; i++) {
+			if (data[i].palette.isDirect) {
+				if (result == data) result = data.clone();
+				result[i] = data[i].quantizedTo(depth, SWT.DITHER_ERROR_DIFFUSION);
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Write out a GraphicsControlBlock to describe
 	 * the specified device independent image.
@@ -18,6 +18,7 @@ import java.io.*;
 
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
+import org.eclipse.swt.internal.*;
 
 public class JPEGDecoder {
 
@@ -1801,18 +1802,18 @@ public class JPEGDecoder {
 				/* Select the proper IDCT routine for this component's scaling */
 				switch (compptr.DCT_scaled_size) {
 //					#ifdef IDCT_SCALING_SUPPORTED
-//					case 1:
+					case 1:
 //						method_ptr = jpeg_idct_1x1;
-//						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
-//						break;
-//					case 2:
+						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
+						break;
+					case 2:
 //						method_ptr = jpeg_idct_2x2;
-//						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
-//						break;
-//					case 4:
+						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
+						break;
+					case 4:
 //						method_ptr = jpeg_idct_4x4;
-//						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
-//						break;
+						method = JDCT_ISLOW;	/* jidctred uses islow-style table */
+						break;
 //					#endif
 					case DCTSIZE:
 						switch (cinfo.dct_method) {
@@ -2376,8 +2377,8 @@ static void jpeg_calc_output_dimensions (jpeg_decompress_struct cinfo)
 /* Do computations that are needed before master selection phase */
 {
 //#ifdef IDCT_SCALING_SUPPORTED
-//	int ci;
-//	jpeg_component_info compptr;
+	int ci;
+	jpeg_component_info compptr;
 //#endif
 
 	/* Prevent application from calling me at wrong times */
@@ -2386,74 +2387,65 @@ static void jpeg_calc_output_dimensions (jpeg_decompress_struct cinfo)
 //		ERREXIT1(cinfo, JERR_BAD_STATE, cinfo.global_state);
 
 //#ifdef IDCT_SCALING_SUPPORTED
-//
-//	/* Compute actual output image dimensions and DCT scaling choices. */
-//	if (cinfo.scale_num * 8 <= cinfo.scale_denom) {
-//		/* Provide 1/8 scaling */
-//		cinfo.output_width = (int)
-//			jdiv_round_up(cinfo.image_width, 8L);
-//		cinfo.output_height = (int)
-//			jdiv_round_up(cinfo.image_height, 8L);
-//		cinfo.min_DCT_scaled_size = 1;
-//	} else if (cinfo.scale_num * 4 <= cinfo.scale_denom) {
-//		/* Provide 1/4 scaling */
-//		cinfo.output_width = (int)
-//			jdiv_round_up(cinfo.image_width, 4L);
-//		cinfo.output_height = (int)
-//			jdiv_round_up(cinfo.image_height, 4L);
-//		cinfo.min_DCT_scaled_size = 2;
-//	} else if (cinfo.scale_num * 2 <= cinfo.scale_denom) {
-//		/* Provide 1/2 scaling */
-//		cinfo.output_width = (int)
-//			jdiv_round_up(cinfo.image_width, 2L);
-//		cinfo.output_height = (int)
-//			jdiv_round_up(cinfo.image_height, 2L);
-//		cinfo.min_DCT_scaled_size = 4;
-//	} else {
-//		/* Provide 1/1 scaling */
-//		cinfo.output_width = cinfo.image_width;
-//		cinfo.output_height = cinfo.image_height;
-//		cinfo.min_DCT_scaled_size = DCTSIZE;
-//	}
-//	/* In selecting the actual DCT scaling for each component, we try to
-//	 * scale up the chroma components via IDCT scaling rather than upsampling.
-//	 * This saves time if the upsampler gets to use 1:1 scaling.
-//	 * Note this code assumes that the supported DCT scalings are powers of 2.
-//	 */
-//	for (ci = 0; ci < cinfo.num_components; ci++) {
-//		compptr = cinfo.comp_info[ci];
-//		int ssize = cinfo.min_DCT_scaled_size;
-//		while (ssize < DCTSIZE &&
-//			(compptr.h_samp_factor * ssize * 2 <= cinfo.max_h_samp_factor * cinfo.min_DCT_scaled_size) &&
-//			(compptr.v_samp_factor * ssize * 2 <= cinfo.max_v_samp_factor * cinfo.min_DCT_scaled_size))
-//		{
-//			ssize = ssize * 2;
-//		}
-//		compptr.DCT_scaled_size = ssize;
-//	}
-//
-//	/* Recompute downsampled dimensions of components;
-//	 * application needs to know these if using raw downsampled data.
-//	 */
-//	for (ci = 0; ci < cinfo.num_components; ci++) {
-//		compptr = cinfo.comp_info[ci];
-//		/* Size in samples, after IDCT scaling */
-//		compptr.downsampled_width = (int)
-//			jdiv_round_up((long) cinfo.image_width * (long) (compptr.h_samp_factor * compptr.DCT_scaled_size),
-//				(cinfo.max_h_samp_factor * DCTSIZE));
-//		compptr.downsampled_height = (int)
-//			jdiv_round_up((long) cinfo.image_height * (long) (compptr.v_samp_factor * compptr.DCT_scaled_size),
-//				(cinfo.max_v_samp_factor * DCTSIZE));
-//	}
-//
-//#else /* !IDCT_SCALING_SUPPORTED */
 
-	/* Hardwire it to "no scaling" */
-	cinfo.output_width = cinfo.image_width;
-	cinfo.output_height = cinfo.image_height;
-	/* jdinput.c has already initialized DCT_scaled_size to DCTSIZE,
-	 * and has computed unscaled downsampled_width and downsampled_height.
+	/* Compute actual output image dimensions and DCT scaling choices. */
+	if (cinfo.scale_num * 8 <= cinfo.scale_denom) {
+		/* Provide 1/8 scaling */
+		cinfo.output_width = (int)
+			jdiv_round_up(cinfo.image_width, 8L);
+		cinfo.output_height = (int)
+			jdiv_round_up(cinfo.image_height, 8L);
+		cinfo.min_DCT_scaled_size = 1;
+	} else if (cinfo.scale_num * 4 <= cinfo.scale_denom) {
+		/* Provide 1/4 scaling */
+		cinfo.output_width = (int)
+			jdiv_round_up(cinfo.image_width, 4L);
+		cinfo.output_height = (int)
+			jdiv_round_up(cinfo.image_height, 4L);
+		cinfo.min_DCT_scaled_size = 2;
+	} else if (cinfo.scale_num * 2 <= cinfo.scale_denom) {
+		/* Provide 1/2 scaling */
+		cinfo.output_width = (int)
+			jdiv_round_up(cinfo.image_width, 2L);
+		cinfo.output_height = (int)
+			jdiv_round_up(cinfo.image_height, 2L);
+		cinfo.min_DCT_scaled_size = 4;
+	} else {
+		/* Provide 1/1 scaling */
+		cinfo.output_width = cinfo.image_width;
+		cinfo.output_height = cinfo.image_height;
+		cinfo.min_DCT_scaled_size = DCTSIZE;
+	}
+	/* In selecting the actual DCT scaling for each component, we try to
+	 * scale up the chroma components via IDCT scaling rather than upsampling.
+	 * This saves time if the upsampler gets to use 1:1 scaling.
+	 * Note this code assumes that the supported DCT scalings are powers of 2.
+	 */
+	for (ci = 0; ci < cinfo.num_components; ci++) {
+		compptr = cinfo.comp_info[ci];
+		int ssize = cinfo.min_DCT_scaled_size;
+		while (ssize < DCTSIZE &&
+			(compptr.h_samp_factor * ssize * 2 <= cinfo.max_h_samp_factor * cinfo.min_DCT_scaled_size) &&
+			(compptr.v_samp_factor * ssize * 2 <= cinfo.max_v_samp_factor * cinfo.min_DCT_scaled_size))
+		{
+			ssize = ssize * 2;
+		}
+		compptr.DCT_scaled_size = ssize;
+	}
+
+	/* Recompute downsampled dimensions of components;
+	 * application needs to know these if using raw downsampled data.
 	 */
+	for (ci = 0; ci < cinfo.num_components; ci++) {
+		compptr = cinfo.comp_info[ci];
+		/* Size in samples, after IDCT scaling */
+		compptr.downsampled_width = (int)
+			jdiv_round_up((long) cinfo.image_width * (long) (compptr.h_samp_factor * compptr.DCT_scaled_size),
+				(cinfo.max_h_samp_factor * DCTSIZE));
+		compptr.downsampled_height = (int)
+			jdiv_round_up((long) cinfo.image_height * (long) (compptr.v_samp_factor * compptr.DCT_scaled_size),
+				(cinfo.max_v_samp_factor * DCTSIZE));
+	}
 
 //#endif /* IDCT_SCALING_SUPPORTED */
 
@@ -3181,6 +3173,296 @@ static void jpeg_idct_islow (jpeg_decompress_struct cinfo, jpeg_component_info c
 	}
 }
 
+static void inverse_DCT (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
+	short[] coef_block,
+	byte[][] output_buf, int output_buf_offset, int output_col)
+{
+	switch (compptr.DCT_scaled_size) {
+		case 1: jpeg_idct_1x1(cinfo, compptr, coef_block, output_buf, output_buf_offset, output_col); break;
+		case 2: jpeg_idct_2x2(cinfo, compptr, coef_block, output_buf, output_buf_offset, output_col); break;
+		case 4: jpeg_idct_4x4(cinfo, compptr, coef_block, output_buf, output_buf_offset, output_col); break;
+		default: jpeg_idct_islow(cinfo, compptr, coef_block, output_buf, output_buf_offset, output_col); break;
+	}
+}
+
+/*
+ * Reduced-size inverse DCTs (jidctred.c).  These produce scaled-down output
+ * directly from the coefficients, so that 1/2, 1/4 and 1/8 scaled images can
+ * be obtained without computing the full 8x8 sample block.
+ */
+static final int FIX_0_211164243 = 1730;
+static final int FIX_0_509795579 = 4176;
+static final int FIX_0_601344887 = 4926;
+static final int FIX_0_720959822 = 5906;
+static final int FIX_0_765366865 = 6270;
+static final int FIX_0_850430095 = 6967;
+static final int FIX_0_899976223 = 7373;
+static final int FIX_1_061594337 = 8697;
+static final int FIX_1_272758580 = 10426;
+static final int FIX_1_451774981 = 11893;
+static final int FIX_1_847759065 = 15137;
+static final int FIX_2_172734803 = 17799;
+static final int FIX_2_562915447 = 20995;
+static final int FIX_3_624509785 = 29692;
+
+static void jpeg_idct_4x4 (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
+	short[] coef_block,
+	byte[][] output_buf, int output_buf_offset, int output_col)
+{
+	int tmp0, tmp2, tmp10, tmp12;
+	int z1, z2, z3, z4;
+	short[] inptr = coef_block;
+	int[] quantptr = compptr.dct_table;
+	int[] wsptr = cinfo.workspace;	/* buffers data between passes */
+	byte[] outptr;
+	byte[] range_limit = cinfo.sample_range_limit;
+	int range_limit_offset = cinfo.sample_range_limit_offset + CENTERJSAMPLE;
+	int ctr;
+
+	/* Pass 1: process columns from input, store into work array. */
+
+	int inptr_offset = 0, quantptr_offset = 0, wsptr_offset = 0;
+	for (ctr = DCTSIZE; ctr > 0; inptr_offset++, quantptr_offset++, wsptr_offset++, ctr--) {
+		/* Don't bother to process column 4, because second pass won't use it */
+		if (ctr == DCTSIZE-4)
+			continue;
+		if (inptr[DCTSIZE*1+inptr_offset] == 0 && inptr[DCTSIZE*2+inptr_offset] == 0 &&
+			inptr[DCTSIZE*3+inptr_offset] == 0 && inptr[DCTSIZE*5+inptr_offset] == 0 &&
+			inptr[DCTSIZE*6+inptr_offset] == 0 && inptr[DCTSIZE*7+inptr_offset] == 0)
+		{
+			/* AC terms all zero; we need not examine term 4 for 4x4 output */
+			int dcval = ((inptr[DCTSIZE*0+inptr_offset]) * quantptr[DCTSIZE*0+quantptr_offset]) << PASS1_BITS;
+
+			wsptr[DCTSIZE*0+wsptr_offset] = dcval;
+			wsptr[DCTSIZE*1+wsptr_offset] = dcval;
+			wsptr[DCTSIZE*2+wsptr_offset] = dcval;
+			wsptr[DCTSIZE*3+wsptr_offset] = dcval;
+			continue;
+		}
+
+		/* Even part */
+
+		tmp0 = (inptr[DCTSIZE*0+inptr_offset]) * quantptr[DCTSIZE*0+quantptr_offset];
+		tmp0 <<= (CONST_BITS+1);
+
+		z2 = (inptr[DCTSIZE*2+inptr_offset]) * quantptr[DCTSIZE*2+quantptr_offset];
+		z3 = (inptr[DCTSIZE*6+inptr_offset]) * quantptr[DCTSIZE*6+quantptr_offset];
+
+		tmp2 = z2 * FIX_1_847759065 + z3 * - FIX_0_765366865;
+
+		tmp10 = tmp0 + tmp2;
+		tmp12 = tmp0 - tmp2;
+
+		/* Odd part */
+
+		z1 = (inptr[DCTSIZE*7+inptr_offset]) * quantptr[DCTSIZE*7+quantptr_offset];
+		z2 = (inptr[DCTSIZE*5+inptr_offset]) * quantptr[DCTSIZE*5+quantptr_offset];
+		z3 = (inptr[DCTSIZE*3+inptr_offset]) * quantptr[DCTSIZE*3+quantptr_offset];
+		z4 = (inptr[DCTSIZE*1+inptr_offset]) * quantptr[DCTSIZE*1+quantptr_offset];
+
+		tmp0 = z1 * - FIX_0_211164243 /* sqrt(2) * (c3-c1) */
+			+ z2 * FIX_1_451774981 /* sqrt(2) * (c3+c7) */
+			+ z3 * - FIX_2_172734803 /* sqrt(2) * (-c1-c5) */
+			+ z4 * FIX_1_061594337; /* sqrt(2) * (c5+c7) */
+
+		tmp2 = z1 * - FIX_0_509795579 /* sqrt(2) * (c7-c5) */
+			+ z2 * - FIX_0_601344887 /* sqrt(2) * (c5-c1) */
+			+ z3 * FIX_0_899976223 /* sqrt(2) * (c3+c7) */
+			+ z4 * FIX_2_562915447; /* sqrt(2) * (c1+c3) */
+
+		/* Final output stage */
+
+//		#define DESCALE(x,n)	RIGHT_SHIFT((x) + (ONE << ((n)-1)), n)
+		wsptr[DCTSIZE*0+wsptr_offset] = (((tmp10 + tmp2) + (1 << ((CONST_BITS-PASS1_BITS+1)-1))) >> (CONST_BITS-PASS1_BITS+1));
+		wsptr[DCTSIZE*3+wsptr_offset] = (((tmp10 - tmp2) + (1 << ((CONST_BITS-PASS1_BITS+1)-1))) >> (CONST_BITS-PASS1_BITS+1));
+		wsptr[DCTSIZE*1+wsptr_offset] = (((tmp12 + tmp0) + (1 << ((CONST_BITS-PASS1_BITS+1)-1))) >> (CONST_BITS-PASS1_BITS+1));
+		wsptr[DCTSIZE*2+wsptr_offset] = (((tmp12 - tmp0) + (1 << ((CONST_BITS-PASS1_BITS+1)-1))) >> (CONST_BITS-PASS1_BITS+1));
+	}
+
+	/* Pass 2: process 4 rows from work array, store into output array. */
+
+	wsptr_offset = 0;
+	for (ctr = 0; ctr < 4; ctr++) {
+		outptr = output_buf[ctr+output_buf_offset];
+		int outptr_offset = output_col;
+
+//#ifndef NO_ZERO_ROW_TEST
+		if (wsptr[1+wsptr_offset] == 0 && wsptr[2+wsptr_offset] == 0 && wsptr[3+wsptr_offset] == 0 &&
+			wsptr[5+wsptr_offset] == 0 && wsptr[6+wsptr_offset] == 0 && wsptr[7+wsptr_offset] == 0)
+		{
+			/* AC terms all zero */
+			byte dcval = range_limit[range_limit_offset + ((((wsptr[0+wsptr_offset]) + (1 << ((PASS1_BITS+3)-1))) >> PASS1_BITS+3)
+					& RANGE_MASK)];
+
+			outptr[0+outptr_offset] = dcval;
+			outptr[1+outptr_offset] = dcval;
+			outptr[2+outptr_offset] = dcval;
+			outptr[3+outptr_offset] = dcval;
+
+			wsptr_offset += DCTSIZE;		/* advance pointer to next row */
+			continue;
+		}
+//#endif
+
+		/* Even part */
+
+		tmp0 = wsptr[0+wsptr_offset] << (CONST_BITS+1);
+
+		tmp2 = wsptr[2+wsptr_offset] * FIX_1_847759065 + wsptr[6+wsptr_offset] * - FIX_0_765366865;
+
+		tmp10 = tmp0 + tmp2;
+		tmp12 = tmp0 - tmp2;
+
+		/* Odd part */
+
+		z1 = wsptr[7+wsptr_offset];
+		z2 = wsptr[5+wsptr_offset];
+		z3 = wsptr[3+wsptr_offset];
+		z4 = wsptr[1+wsptr_offset];
+
+		tmp0 = z1 * - FIX_0_211164243 /* sqrt(2) * (c3-c1) */
+			+ z2 * FIX_1_451774981 /* sqrt(2) * (c3+c7) */
+			+ z3 * - FIX_2_172734803 /* sqrt(2) * (-c1-c5) */
+			+ z4 * FIX_1_061594337; /* sqrt(2) * (c5+c7) */
+
+		tmp2 = z1 * - FIX_0_509795579 /* sqrt(2) * (c7-c5) */
+			+ z2 * - FIX_0_601344887 /* sqrt(2) * (c5-c1) */
+			+ z3 * FIX_0_899976223 /* sqrt(2) * (c3+c7) */
+			+ z4 * FIX_2_562915447; /* sqrt(2) * (c1+c3) */
+
+		/* Final output stage */
+
+		outptr[0+outptr_offset] = range_limit[range_limit_offset + ((((tmp10 + tmp2) + (1 << ((CONST_BITS+PASS1_BITS+3+1)-1))) >>
+					CONST_BITS+PASS1_BITS+3+1)
+				& RANGE_MASK)];
+		outptr[3+outptr_offset] = range_limit[range_limit_offset + ((((tmp10 - tmp2) + (1 << ((CONST_BITS+PASS1_BITS+3+1)-1))) >>
+					CONST_BITS+PASS1_BITS+3+1)
+				& RANGE_MASK)];
+		outptr[1+outptr_offset] = range_limit[range_limit_offset + ((((tmp12 + tmp0) + (1 << ((CONST_BITS+PASS1_BITS+3+1)-1))) >>
+					CONST_BITS+PASS1_BITS+3+1)
+				& RANGE_MASK)];
+		outptr[2+outptr_offset] = range_limit[range_limit_offset + ((((tmp12 - tmp0) + (1 << ((CONST_BITS+PASS1_BITS+3+1)-1))) >>
+					CONST_BITS+PASS1_BITS+3+1)
+				& RANGE_MASK)];
+
+		wsptr_offset += DCTSIZE;		/* advance pointer to next row */
+	}
+}
+
+static void jpeg_idct_2x2 (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
+	short[] coef_block,
+	byte[][] output_buf, int output_buf_offset, int output_col)
+{
+	int tmp0, tmp10, z1;
+	short[] inptr = coef_block;
+	int[] quantptr = compptr.dct_table;
+	int[] wsptr = cinfo.workspace;	/* buffers data between passes */
+	byte[] outptr;
+	byte[] range_limit = cinfo.sample_range_limit;
+	int range_limit_offset = cinfo.sample_range_limit_offset + CENTERJSAMPLE;
+	int ctr;
+
+	/* Pass 1: process columns from input, store into work array. */
+
+	int inptr_offset = 0, quantptr_offset = 0, wsptr_offset = 0;
+	for (ctr = DCTSIZE; ctr > 0; inptr_offset++, quantptr_offset++, wsptr_offset++, ctr--) {
+		/* Don't bother to process columns 2,4,6 */
+		if (ctr == DCTSIZE-2 || ctr == DCTSIZE-4 || ctr == DCTSIZE-6)
+			continue;
+		if (inptr[DCTSIZE*1+inptr_offset] == 0 && inptr[DCTSIZE*3+inptr_offset] == 0 &&
+			inptr[DCTSIZE*5+inptr_offset] == 0 && inptr[DCTSIZE*7+inptr_offset] == 0)
+		{
+			/* AC terms all zero; we need not examine terms 2,4,6 for 2x2 output */
+			int dcval = ((inptr[DCTSIZE*0+inptr_offset]) * quantptr[DCTSIZE*0+quantptr_offset]) << PASS1_BITS;
+
+			wsptr[DCTSIZE*0+wsptr_offset] = dcval;
+			wsptr[DCTSIZE*1+wsptr_offset] = dcval;
+			continue;
+		}
+
+		/* Even part */
+
+		z1 = (inptr[DCTSIZE*0+inptr_offset]) * quantptr[DCTSIZE*0+quantptr_offset];
+		tmp10 = z1 << (CONST_BITS+2);
+
+		/* Odd part */
+
+		z1 = (inptr[DCTSIZE*7+inptr_offset]) * quantptr[DCTSIZE*7+quantptr_offset];
+		tmp0 = z1 * - FIX_0_720959822; /* sqrt(2) * (c7-c5+c3-c1) */
+		z1 = (inptr[DCTSIZE*5+inptr_offset]) * quantptr[DCTSIZE*5+quantptr_offset];
+		tmp0 += z1 * FIX_0_850430095; /* sqrt(2) * (-c1+c3+c5+c7) */
+		z1 = (inptr[DCTSIZE*3+inptr_offset]) * quantptr[DCTSIZE*3+quantptr_offset];
+		tmp0 += z1 * - FIX_1_272758580; /* sqrt(2) * (-c1+c3-c5-c7) */
+		z1 = (inptr[DCTSIZE*1+inptr_offset]) * quantptr[DCTSIZE*1+quantptr_offset];
+		tmp0 += z1 * FIX_3_624509785; /* sqrt(2) * (c1+c3+c5+c7) */
+
+		/* Final output stage */
+
+		wsptr[DCTSIZE*0+wsptr_offset] = (((tmp10 + tmp0) + (1 << ((CONST_BITS-PASS1_BITS+2)-1))) >> (CONST_BITS-PASS1_BITS+2));
+		wsptr[DCTSIZE*1+wsptr_offset] = (((tmp10 - tmp0) + (1 << ((CONST_BITS-PASS1_BITS+2)-1))) >> (CONST_BITS-PASS1_BITS+2));
+	}
+
+	/* Pass 2: process 2 rows from work array, store into output array. */
+
+	wsptr_offset = 0;
+	for (ctr = 0; ctr < 2; ctr++) {
+		outptr = output_buf[ctr+output_buf_offset];
+		int outptr_offset = output_col;
+
+//#ifndef NO_ZERO_ROW_TEST
+		if (wsptr[1+wsptr_offset] == 0 && wsptr[3+wsptr_offset] == 0 && wsptr[5+wsptr_offset] == 0 && wsptr[7+wsptr_offset] == 0) {
+			/* AC terms all zero */
+			byte dcval = range_limit[range_limit_offset + ((((wsptr[0+wsptr_offset]) + (1 << ((PASS1_BITS+3)-1))) >> PASS1_BITS+3)
+					& RANGE_MASK)];
+
+			outptr[0+outptr_offset] = dcval;
+			outptr[1+outptr_offset] = dcval;
+
+			wsptr_offset += DCTSIZE;		/* advance pointer to next row */
+			continue;
+		}
+//#endif
+
+		/* Even part */
+
+		tmp10 = wsptr[0+wsptr_offset] << (CONST_BITS+2);
+
+		/* Odd part */
+
+		tmp0 = wsptr[7+wsptr_offset] * - FIX_0_720959822 /* sqrt(2) * (c7-c5+c3-c1) */
+			+ wsptr[5+wsptr_offset] * FIX_0_850430095 /* sqrt(2) * (-c1+c3+c5+c7) */
+			+ wsptr[3+wsptr_offset] * - FIX_1_272758580 /* sqrt(2) * (-c1+c3-c5-c7) */
+			+ wsptr[1+wsptr_offset] * FIX_3_624509785; /* sqrt(2) * (c1+c3+c5+c7) */
+
+		/* Final output stage */
+
+		outptr[0+outptr_offset] = range_limit[range_limit_offset + ((((tmp10 + tmp0) + (1 << ((CONST_BITS+PASS1_BITS+3+2)-1))) >>
+					CONST_BITS+PASS1_BITS+3+2)
+				& RANGE_MASK)];
+		outptr[1+outptr_offset] = range_limit[range_limit_offset + ((((tmp10 - tmp0) + (1 << ((CONST_BITS+PASS1_BITS+3+2)-1))) >>
+					CONST_BITS+PASS1_BITS+3+2)
+				& RANGE_MASK)];
+
+		wsptr_offset += DCTSIZE;		/* advance pointer to next row */
+	}
+}
+
+static void jpeg_idct_1x1 (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
+	short[] coef_block,
+	byte[][] output_buf, int output_buf_offset, int output_col)
+{
+	byte[] range_limit = cinfo.sample_range_limit;
+	int range_limit_offset = cinfo.sample_range_limit_offset + CENTERJSAMPLE;
+
+	/* We hardly need an inverse DCT routine for this: just take the
+	 * average pixel value, which is one-eighth of the DC coefficient.
+	 */
+	int dcval = coef_block[0] * compptr.dct_table[0];
+	dcval = (dcval + (1 << (3-1))) >> 3;
+
+	output_buf[output_buf_offset][output_col] = range_limit[range_limit_offset + (dcval & RANGE_MASK)];
+}
+
 static void upsample (jpeg_decompress_struct cinfo,
 	byte[][][] input_buf, int[] input_buf_offset, int[] in_row_group_ctr,
 	int in_row_groups_avail,
@@ -3802,7 +4084,7 @@ static int decompress_onepass (jpeg_decompress_struct cinfo, byte[][][] output_b
 					if (cinfo.input_iMCU_row < last_iMCU_row ||	yoffset+yindex < compptr.last_row_height) {
 						output_col = start_col;
 						for (xindex = 0; xindex < useful_width; xindex++) {
-							jpeg_idct_islow(cinfo, compptr, coef.MCU_buffer[blkn+xindex], output_ptr, output_ptr_offset, output_col);
+							inverse_DCT(cinfo, compptr, coef.MCU_buffer[blkn+xindex], output_ptr, output_ptr_offset, output_col);
 							output_col += compptr.DCT_scaled_size;
 						}
 					}
@@ -4021,7 +4303,7 @@ static int decompress_smooth_data (jpeg_decompress_struct cinfo, byte[][][] outp
 					workspace[2] = (short) pred;
 				}
 				/* OK, do the IDCT */
-				jpeg_idct_islow(cinfo, compptr, workspace, output_ptr, output_ptr_offset, output_col);
+				inverse_DCT(cinfo, compptr, workspace, output_ptr, output_ptr_offset, output_col);
 				/* Advance for next column */
 				DC1 = DC2; DC2 = DC3;
 				DC4 = DC5; DC5 = DC6;
@@ -4085,7 +4367,7 @@ static int decompress_data (jpeg_decompress_struct cinfo, byte[][][] output_buf,
 			int buffer_ptr_offset = 0;
 			output_col = 0;
 			for (block_num = 0; block_num < compptr.width_in_blocks; block_num++) {
-				jpeg_idct_islow(cinfo, compptr, buffer_ptr[buffer_ptr_offset], output_ptr, output_ptr_offset, output_col);
+				inverse_DCT(cinfo, compptr, buffer_ptr[buffer_ptr_offset], output_ptr, output_ptr_offset, output_col);
 
 				buffer_ptr_offset++;
 				output_col += compptr.DCT_scaled_size;
@@ -4734,28 +5016,11 @@ static void sep_upsample (jpeg_decompress_struct cinfo, byte[][][] input_buf, in
 		byte[][] output_buf, int[] out_row_ctr,	int out_rows_avail)
 {
 	jpeg_upsampler upsample = cinfo.upsample;
-	int ci;
-	jpeg_component_info compptr;
 	int num_rows;
 
 	/* Fill the conversion buffer, if it's empty */
 	if (upsample.next_row_out >= cinfo.max_v_samp_factor) {
-		for (ci = 0; ci < cinfo.num_components; ci++) {
-			compptr = cinfo.comp_info[ci];
-			/* Invoke per-component upsample method.	Notice we pass a POINTER
-			 * to color_buf[ci], so that fullsize_upsample can change it.
-			 */
-			int offset = input_buf_offset[ci] + (in_row_group_ctr[0] * upsample.rowgroup_height[ci]);
-			switch (upsample.methods[ci]) {
-				case NOOP_UPSAMPLE: noop_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
-				case FULLSIZE_UPSAMPLE: fullsize_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
-				case H2V1_FANCY_UPSAMPLE: h2v1_fancy_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
-				case H2V1_UPSAMPLE: h2v1_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
-				case H2V2_FANCY_UPSAMPLE: h2v2_fancy_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
-				case H2V2_UPSAMPLE: h2v2_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
-				case INT_UPSAMPLE: int_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
-			}
-		}
+		upsample_row_group(cinfo, upsample, input_buf, input_buf_offset, in_row_group_ctr[0]);
 		upsample.next_row_out = 0;
 	}
 
@@ -4773,13 +5038,7 @@ static void sep_upsample (jpeg_decompress_struct cinfo, byte[][][] input_buf, in
 	if (num_rows > out_rows_avail)
 		num_rows = out_rows_avail;
 
-	switch (cinfo.cconvert.color_convert) {
-		case NULL_CONVERT: null_convert (cinfo, upsample.color_buf, upsample.color_buf_offset, upsample.next_row_out, output_buf, out_row_ctr[0], num_rows); break;
-		case GRAYSCALE_CONVERT: grayscale_convert (cinfo, upsample.color_buf, upsample.color_buf_offset, upsample.next_row_out, output_buf, out_row_ctr[0], num_rows); break;
-		case YCC_RGB_CONVERT: ycc_rgb_convert (cinfo, upsample.color_buf, upsample.color_buf_offset, upsample.next_row_out, output_buf, out_row_ctr[0], num_rows); break;
-		case GRAY_RGB_CONVERT: gray_rgb_convert (cinfo, upsample.color_buf, upsample.color_buf_offset, upsample.next_row_out, output_buf, out_row_ctr[0], num_rows); break;
-		case YCCK_CMYK_CONVERT: error(); break;
-	}
+	color_convert(cinfo, upsample.color_buf, upsample.color_buf_offset, upsample.next_row_out, output_buf, out_row_ctr[0], num_rows);
 
 	/* Adjust counts */
 	out_row_ctr[0] += num_rows;
@@ -4791,6 +5050,42 @@ static void sep_upsample (jpeg_decompress_struct cinfo, byte[][][] input_buf, in
 	}
 }
 
+static void upsample_row_group (jpeg_decompress_struct cinfo, jpeg_upsampler upsample, byte[][][] input_buf, int[] input_buf_offset, int in_row_group)
+{
+	int ci;
+	jpeg_component_info compptr;
+
+	for (ci = 0; ci < cinfo.num_components; ci++) {
+		compptr = cinfo.comp_info[ci];
+		/* Invoke per-component upsample method.	Notice we pass a POINTER
+		 * to color_buf[ci], so that fullsize_upsample can change it.
+		 */
+		int offset = input_buf_offset[ci] + (in_row_group * upsample.rowgroup_height[ci]);
+		switch (upsample.methods[ci]) {
+			case NOOP_UPSAMPLE: noop_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
+			case FULLSIZE_UPSAMPLE: fullsize_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
+			case H2V1_FANCY_UPSAMPLE: h2v1_fancy_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
+			case H2V1_UPSAMPLE: h2v1_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
+			case H2V2_FANCY_UPSAMPLE: h2v2_fancy_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
+			case H2V2_UPSAMPLE: h2v2_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
+			case INT_UPSAMPLE: int_upsample(cinfo, compptr, input_buf[ci], offset, upsample.color_buf, upsample.color_buf_offset, ci); break;
+		}
+	}
+}
+
+static void color_convert (jpeg_decompress_struct cinfo,
+	byte[][][] input_buf, int[] input_buf_offset, int input_row,
+	byte[][] output_buf, int output_buf_offset, int num_rows)
+{
+	switch (cinfo.cconvert.color_convert) {
+		case NULL_CONVERT: null_convert (cinfo, input_buf, input_buf_offset, input_row, output_buf, output_buf_offset, num_rows); break;
+		case GRAYSCALE_CONVERT: grayscale_convert (cinfo, input_buf, input_buf_offset, input_row, output_buf, output_buf_offset, num_rows); break;
+		case YCC_RGB_CONVERT: ycc_rgb_convert (cinfo, input_buf, input_buf_offset, input_row, output_buf, output_buf_offset, num_rows); break;
+		case GRAY_RGB_CONVERT: gray_rgb_convert (cinfo, input_buf, input_buf_offset, input_row, output_buf, output_buf_offset, num_rows); break;
+		case YCCK_CMYK_CONVERT: error(); break;
+	}
+}
+
 static void noop_upsample (jpeg_decompress_struct cinfo, jpeg_component_info compptr,
 	 byte[][] input_data, int input_data_offset, byte[][][] output_data_ptr, int[] output_data_offset, int output_data_index)
 {
@@ -6298,20 +6593,395 @@ static void jpeg_abort (jpeg_decompress_struct cinfo) {
 static boolean isFileFormat(LEDataInputStream stream) {
 	try {
 		byte[] buffer = new byte[2];
+		stream.mark(buffer.length);
 		stream.read(buffer);
-		stream.unread(buffer);
+		stream.reset();
 		return (buffer[0] & 0xFF) == 0xFF && (buffer[1] & 0xFF) == M_SOI;
 	} catch (Exception e) {
 		return false;
 	}
 }
 
+/*
+ * Select the largest supported IDCT scaling (1/2, 1/4 or 1/8) that still
+ * produces an image at least as large as the requested size.  A size
+ * of zero or less requests the full resolution image.
+ */
+static void select_scale(jpeg_decompress_struct cinfo, int width, int height) {
+	cinfo.scale_num = 1;
+	cinfo.scale_denom = 1;
+	if (width <= 0 || height <= 0) return;
+	for (int denom = 8; denom > 1; denom >>= 1) {
+		if (jdiv_round_up(cinfo.image_width, denom) >= width && jdiv_round_up(cinfo.image_height, denom) >= height) {
+			cinfo.scale_denom = denom;
+			break;
+		}
+	}
+}
+
+/*
+ * Parallel decoding of single-scan Huffman images that contain restart
+ * markers.  Each restart interval is an independently decodable run of MCUs
+ * (the DC predictors and the bit reader are reset at every RSTn marker), so
+ * the entropy-coded data is split at the markers and the intervals are
+ * decoded and inverse transformed concurrently into full-image component
+ * planes.  Upsampling and color conversion are then done concurrently in
+ * bands of row groups.  The result is identical to the sequential path.
+ */
+
+static final int PARALLEL_MIN_PIXELS = 512 * 512;
+
+static boolean use_parallel_decompress (jpeg_decompress_struct cinfo) {
+	if (cinfo.buffered_image || cinfo.restart_interval == 0) return false;
+	if (cinfo.progressive_mode || cinfo.arith_code || cinfo.inputctl.has_multiple_scans) return false;
+	if (!(cinfo.entropy instanceof huff_entropy_decoder)) return false;
+	if (cinfo.out_color_space != JCS_RGB && cinfo.out_color_space != JCS_GRAYSCALE) return false;
+	if (cinfo.MCUs_per_row * cinfo.MCU_rows_in_scan <= cinfo.restart_interval) return false;
+	if (cinfo.output_width * cinfo.output_height < PARALLEL_MIN_PIXELS) return false;
+	return ParallelUtil.isParallel();
+}
+
+static byte[] read_entropy_data (jpeg_decompress_struct cinfo) {
+	ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	stream.write(cinfo.buffer, cinfo.bytes_offset, cinfo.bytes_in_buffer - cinfo.bytes_offset);
+	cinfo.bytes_offset = cinfo.bytes_in_buffer;
+	try {
+		byte[] buffer = new byte[4096];
+		int count;
+		while ((count = cinfo.inputStream.read(buffer)) > 0) {
+			stream.write(buffer, 0, count);
+		}
+	} catch (IOException e) {
+		error(SWT.ERROR_IO);
+	}
+	/* Append a fake EOI marker so that truncated data always ends in a marker */
+	stream.write(0xFF);
+	stream.write(M_EOI);
+	return stream.toByteArray();
+}
+
+static void decompress_parallel (jpeg_decompress_struct cinfo, byte[] data, int row_stride) {
+	byte[] input = read_entropy_data(cinfo);
+	int total_MCUs = cinfo.MCUs_per_row * cinfo.MCU_rows_in_scan;
+	int num_segments = (total_MCUs + cinfo.restart_interval - 1) / cinfo.restart_interval;
+
+	/* Locate the restart intervals.  A segment ends just past the marker that
+	 * terminates it, so the bit reader stops there as it would sequentially.
+	 * Segments missing from corrupt or truncated data are flagged with a
+	 * negative start and left uniform gray, as the sequential decoder does.
+	 */
+	int[] segment_start = new int[num_segments];
+	int[] segment_end = new int[num_segments];
+	int segment = 0, start = 0, offset = 0, length = input.length;
+	while (offset < length - 1 && segment < num_segments) {
+		if ((input[offset] & 0xFF) != 0xFF) {
+			offset++;
+			continue;
+		}
+		int c = input[offset + 1] & 0xFF;
+		if (c == 0) {
+			offset += 2;
+		} else if (c == 0xFF) {
+			offset++;
+		} else {
+			segment_start[segment] = start;
+			segment_end[segment++] = offset + 2;
+			if (c < M_RST0 || c > M_RST7) break;
+			offset += 2;
+			start = offset;
+		}
+	}
+	while (segment < num_segments) {
+		segment_start[segment++] = -1;
+	}
+
+	byte[][][] planes = new byte[cinfo.num_components][][];
+	for (int ci = 0; ci < cinfo.num_components; ci++) {
+		jpeg_component_info compptr = cinfo.comp_info[ci];
+		planes[ci] = new byte[compptr.height_in_blocks * compptr.DCT_scaled_size][compptr.width_in_blocks * compptr.DCT_scaled_size];
+	}
+
+	ParallelUtil.forEachRange(num_segments, true, (first, last) -> {
+		decode_segments(cinfo, input, segment_start, segment_end, first, last, planes);
+	});
+
+	/* Build the row pointers the upsampler expects, including one context
+	 * row group above and below that replicate the first and last rows.
+	 */
+	jpeg_upsampler upsample = cinfo.upsample;
+	int max_v_samp_factor = cinfo.max_v_samp_factor;
+	int num_row_groups = (cinfo.output_height + max_v_samp_factor - 1) / max_v_samp_factor;
+	byte[][][] input_buf = new byte[cinfo.num_components][][];
+	int[] input_buf_offset = new int[cinfo.num_components];
+	for (int ci = 0; ci < cinfo.num_components; ci++) {
+		int rowgroup_height = upsample.rowgroup_height[ci];
+		int last_row = cinfo.comp_info[ci].downsampled_height - 1;
+		byte[][] rows = input_buf[ci] = new byte[(num_row_groups + 2) * rowgroup_height][];
+		for (int row = 0; row < rows.length; row++) {
+			rows[row] = planes[ci][Math.max(0, Math.min(row - rowgroup_height, last_row))];
+		}
+		input_buf_offset[ci] = rowgroup_height;
+	}
+
+	ParallelUtil.forEachRange(num_row_groups, true, (first, last) -> {
+		convert_row_groups(cinfo, input_buf, input_buf_offset, first, last, data, row_stride);
+	});
+	cinfo.output_scanline = cinfo.output_height;
+}
+
+static void decode_segments (jpeg_decompress_struct cinfo, byte[] input, int[] segment_start, int[] segment_end, int first, int last, byte[][][] planes) {
+	huff_entropy_decoder master = (huff_entropy_decoder) cinfo.entropy;
+	huff_entropy_decoder entropy = new huff_entropy_decoder();
+	entropy.dc_cur_tbls = master.dc_cur_tbls;
+	entropy.ac_cur_tbls = master.ac_cur_tbls;
+	entropy.dc_needed = master.dc_needed;
+	entropy.ac_needed = master.ac_needed;
+
+	/* Private state for the bit reader and the inverse DCT */
+	jpeg_decompress_struct worker = new jpeg_decompress_struct();
+	worker.entropy = entropy;
+	worker.buffer = input;
+	worker.blocks_in_MCU = cinfo.blocks_in_MCU;
+	worker.MCU_membership = cinfo.MCU_membership;
+	worker.comps_in_scan = cinfo.comps_in_scan;
+	worker.cur_comp_info = cinfo.cur_comp_info;
+	worker.sample_range_limit = cinfo.sample_range_limit;
+	worker.sample_range_limit_offset = cinfo.sample_range_limit_offset;
+
+	short[][] MCU_buffer = new short[cinfo.blocks_in_MCU][DCTSIZE2];
+	int total_MCUs = cinfo.MCUs_per_row * cinfo.MCU_rows_in_scan;
+	for (int segment = first; segment < last; segment++) {
+		worker.bytes_offset = segment_start[segment];
+		worker.bytes_in_buffer = segment_end[segment];
+		worker.unread_marker = 0;
+		entropy.bitstate.get_buffer = 0;
+		entropy.bitstate.bits_left = 0;
+		entropy.saved.last_dc_val[0] = entropy.saved.last_dc_val[1] = entropy.saved.last_dc_val[2] = entropy.saved.last_dc_val[3] = 0;
+		entropy.insufficient_data = segment_start[segment] < 0;
+
+		int end_MCU = Math.min(total_MCUs, (segment + 1) * cinfo.restart_interval);
+		for (int MCU_num = segment * cinfo.restart_interval; MCU_num < end_MCU; MCU_num++) {
+			for (int i = 0; i < MCU_buffer.length; i++) {
+				short[] blk = MCU_buffer[i];
+				for (int j = 0; j < blk.length; j++) {
+					blk[j] = 0;
+				}
+			}
+			entropy.decode_mcu(worker, MCU_buffer);
+			int MCU_row = MCU_num / cinfo.MCUs_per_row;
+			int MCU_col = MCU_num % cinfo.MCUs_per_row;
+			int blkn = 0;
+			for (int ci = 0; ci < cinfo.comps_in_scan; ci++) {
+				jpeg_component_info compptr = cinfo.cur_comp_info[ci];
+				if (! compptr.component_needed) {
+					blkn += compptr.MCU_blocks;
+					continue;
+				}
+				byte[][] output_ptr = planes[compptr.component_index];
+				for (int yindex = 0; yindex < compptr.MCU_height; yindex++) {
+					int block_row = MCU_row * compptr.MCU_height + yindex;
+					for (int xindex = 0; xindex < compptr.MCU_width; xindex++) {
+						/* Skip the dummy blocks at the right and bottom edges */
+						int block_col = MCU_col * compptr.MCU_width + xindex;
+						if (block_row < compptr.height_in_blocks && block_col < compptr.width_in_blocks) {
+							inverse_DCT(worker, compptr, MCU_buffer[blkn + xindex], output_ptr, block_row * compptr.DCT_scaled_size, block_col * compptr.DCT_scaled_size);
+						}
+					}
+					blkn += compptr.MCU_width;
+				}
+			}
+		}
+	}
+}
+
+static void convert_row_groups (jpeg_decompress_struct cinfo, byte[][][] input_buf, int[] input_buf_offset, int first, int last, byte[] data, int row_stride) {
+	jpeg_upsampler master = cinfo.upsample;
+	jpeg_upsampler upsample = new jpeg_upsampler();
+	upsample.methods = master.methods;
+	upsample.rowgroup_height = master.rowgroup_height;
+	for (int ci = 0; ci < cinfo.num_components; ci++) {
+		if (master.methods[ci] != NOOP_UPSAMPLE && master.methods[ci] != FULLSIZE_UPSAMPLE) {
+			upsample.color_buf[ci] = new byte[cinfo.max_v_samp_factor][(int) jround_up(cinfo.output_width, cinfo.max_h_samp_factor)];
+		}
+	}
+	int max_v_samp_factor = cinfo.max_v_samp_factor;
+	byte[][] output_buf = new byte[max_v_samp_factor][row_stride];
+	for (int row_group = first; row_group < last; row_group++) {
+		upsample_row_group(cinfo, upsample, input_buf, input_buf_offset, row_group);
+		int output_row = row_group * max_v_samp_factor;
+		int num_rows = Math.min(max_v_samp_factor, cinfo.output_height - output_row);
+		color_convert(cinfo, upsample.color_buf, upsample.color_buf_offset, 0, output_buf, 0, num_rows);
+		for (int row = 0; row < num_rows; row++) {
+			System.arraycopy(output_buf[row], 0, data, (output_row + row) * row_stride, row_stride);
+		}
+	}
+}
+
+/*
+ * Read the scanlines a band at a time and pass each band to the consumer,
+ * so only one band of the output image is held in memory.
+ */
+static void decompress_rows(jpeg_decompress_struct cinfo, PaletteData palette, int scanlinePad, int row_stride, ImageRowConsumer consumer) {
+	int band_height = Math.min(cinfo.output_height, FileFormat.getBandHeight(row_stride));
+	byte[][] buffer = new byte[1][row_stride];
+	byte[] data = new byte[row_stride * band_height];
+	ImageData rows = null;
+	while (cinfo.output_scanline < cinfo.output_height) {
+		int y = cinfo.output_scanline;
+		int num_rows = Math.min(band_height, cinfo.output_height - y);
+		if (rows == null || rows.height != num_rows) {
+			rows = ImageData.internal_new(
+				cinfo.output_width, num_rows, palette.isDirect ? 24 : 8, palette, scanlinePad, data,
+				0, null, null, -1, -1, SWT.IMAGE_JPEG, 0, 0, 0, 0);
+		}
+		for (int row = 0; row < num_rows; row++) {
+			jpeg_read_scanlines(cinfo, buffer, 1);
+			System.arraycopy(buffer[0], 0, data, row * row_stride, row_stride);
+		}
+		consumer.rowsLoaded(rows, y, num_rows);
+	}
+}
+
+/*
+ * Progressive previews.  When listeners are attached to the loader, an
+ * event is sent after every scan of a progressive image.  A full output
+ * pass per scan costs as much as decoding the whole image, so intermediate
+ * images are instead rendered straight from the coefficient buffer with the
+ * reduced-size inverse DCTs and enlarged to the output size by replicating
+ * pixels.  Only the final image goes through the regular output pass.
+ */
+
+/*
+ * Answer the block size to render a preview at, from how much of the
+ * luminance spectrum has been received so far: the DC term alone gives
+ * one sample per block, the first few AC terms 2x2 and anything more 4x4.
+ */
+static int preview_scale (jpeg_decompress_struct cinfo) {
+	int[] coef_bits = cinfo.coef_bits[0];
+	int known = 0;
+	while (known + 1 < DCTSIZE2 && coef_bits[known + 1] >= 0) known++;
+	int scale = known == 0 ? 1 : known < 14 ? 2 : 4;
+	return Math.min(scale, cinfo.min_DCT_scaled_size);
+}
+
+static ImageData render_preview (jpeg_decompress_struct cinfo, int scale, PaletteData palette, int scanlinePad, int row_stride) {
+	int width = (int) jdiv_round_up((long) cinfo.image_width * scale, DCTSIZE);
+	int height = (int) jdiv_round_up((long) cinfo.image_height * scale, DCTSIZE);
+
+	/* Private state for the inverse DCT and the color conversion */
+	jpeg_decompress_struct worker = new jpeg_decompress_struct();
+	worker.sample_range_limit = cinfo.sample_range_limit;
+	worker.sample_range_limit_offset = cinfo.sample_range_limit_offset;
+	worker.cconvert = cinfo.cconvert;
+	worker.num_components = cinfo.num_components;
+	worker.output_width = width;
+
+	/* Inverse transform every block into a plane per component */
+	byte[][][] planes = new byte[cinfo.num_components][][];
+	int[][] column_map = new int[cinfo.num_components][];
+	byte[][][] input_buf = new byte[cinfo.num_components][][];
+	int[] input_buf_offset = new int[cinfo.num_components];
+	for (int ci = 0; ci < cinfo.num_components; ci++) {
+		jpeg_component_info compptr = cinfo.comp_info[ci];
+		if (! compptr.component_needed) continue;
+		jpeg_component_info preview = new jpeg_component_info();
+		preview.DCT_scaled_size = scale;
+		preview.dct_table = new int[DCTSIZE2];
+		/* No quantization table yet means no data yet, which decodes as gray */
+		if (compptr.quant_table != null) {
+			for (int i = 0; i < DCTSIZE2; i++) {
+				preview.dct_table[i] = compptr.quant_table.quantval[i];
+			}
+		}
+		short[][][] buffer = cinfo.coef.whole_image[ci];
+		byte[][] plane = planes[ci] = new byte[compptr.height_in_blocks * scale][compptr.width_in_blocks * scale];
+		for (int block_row = 0; block_row < compptr.height_in_blocks; block_row++) {
+			short[][] buffer_ptr = buffer[block_row];
+			for (int block_col = 0; block_col < compptr.width_in_blocks; block_col++) {
+				inverse_DCT(worker, preview, buffer_ptr[block_col], plane, block_row * scale, block_col * scale);
+			}
+		}
+		int[] map = column_map[ci] = new int[width];
+		for (int x = 0; x < width; x++) {
+			map[x] = x * compptr.h_samp_factor / cinfo.max_h_samp_factor;
+		}
+		input_buf[ci] = new byte[1][width];
+	}
+
+	/* Color convert each preview row and replicate it into the output */
+	int pixel_size = cinfo.out_color_components;
+	int[] pixel_map = new int[cinfo.output_width];
+	for (int x = 0; x < pixel_map.length; x++) {
+		pixel_map[x] = (int) ((long) x * width / cinfo.output_width) * pixel_size;
+	}
+	byte[][] output_buf = new byte[1][width * pixel_size];
+	byte[] data = new byte[row_stride * cinfo.output_height];
+	int last_row = -1;
+	for (int y = 0; y < cinfo.output_height; y++) {
+		int row = (int) ((long) y * height / cinfo.output_height);
+		int offset = y * row_stride;
+		if (row == last_row) {
+			System.arraycopy(data, offset - row_stride, data, offset, row_stride);
+			continue;
+		}
+		last_row = row;
+		for (int ci = 0; ci < cinfo.num_components; ci++) {
+			if (planes[ci] == null) continue;
+			jpeg_component_info compptr = cinfo.comp_info[ci];
+			byte[] inptr = planes[ci][row * compptr.v_samp_factor / cinfo.max_v_samp_factor];
+			byte[] outptr = input_buf[ci][0];
+			int[] map = column_map[ci];
+			for (int x = 0; x < width; x++) {
+				outptr[x] = inptr[map[x]];
+			}
+		}
+		color_convert(worker, input_buf, input_buf_offset, 0, output_buf, 0, 1);
+		byte[] outptr = output_buf[0];
+		for (int x = 0; x < pixel_map.length; x++) {
+			int inptr_offset = pixel_map[x];
+			for (int i = 0; i < pixel_size; i++) {
+				data[offset++] = outptr[inptr_offset + i];
+			}
+		}
+	}
+	return ImageData.internal_new(
+		cinfo.output_width, cinfo.output_height, palette.isDirect ? 24 : 8, palette, scanlinePad, data,
+		0, null, null, -1, -1, SWT.IMAGE_JPEG, 0, 0, 0, 0);
+}
+
+/*
+ * Describe the image from the frame header, without decoding the scans.
+ */
+static ImageInfo probeFromByteStream(InputStream inputStream) {
+	jpeg_decompress_struct cinfo = new jpeg_decompress_struct();
+	cinfo.inputStream = inputStream;
+	jpeg_create_decompress(cinfo);
+	jpeg_read_header(cinfo, true);
+	int depth = 0;
+	switch (cinfo.out_color_space) {
+		case JCS_RGB: depth = 24; break;
+		case JCS_GRAYSCALE: depth = 8; break;
+		default: error();
+	}
+	jpeg_destroy_decompress(cinfo);
+	return ImageInfo.internal_new(SWT.IMAGE_JPEG, cinfo.image_width, cinfo.image_height, depth, 1, false);
+}
+
 static ImageData[] loadFromByteStream(InputStream inputStream, ImageLoader loader) {
+	return loadFromByteStream(inputStream, loader, 0, 0);
+}
+
+static ImageData[] loadFromByteStream(InputStream inputStream, ImageLoader loader, int width, int height) {
+	return loadFromByteStream(inputStream, loader, width, height, null);
+}
+
+static ImageData[] loadFromByteStream(InputStream inputStream, ImageLoader loader, int width, int height, ImageRowConsumer consumer) {
 	jpeg_decompress_struct cinfo = new jpeg_decompress_struct();
 	cinfo.inputStream = inputStream;
 	jpeg_create_decompress(cinfo);
 	jpeg_read_header(cinfo, true);
-	cinfo.buffered_image = cinfo.progressive_mode && loader.hasListeners();
+	select_scale(cinfo, width, height);
+	cinfo.buffered_image = cinfo.progressive_mode && loader.hasListeners() && consumer == null;
 	jpeg_start_decompress(cinfo);
 	PaletteData palette = null;
 	switch (cinfo.out_color_space) {
@@ -6330,24 +7000,46 @@ static ImageData[] loadFromByteStream(InputStream inputStream, ImageLoader loade
 	}
 	int scanlinePad = 4;
 	int row_stride = (((cinfo.output_width * cinfo.out_color_components * 8 + 7) / 8) + (scanlinePad - 1)) / scanlinePad * scanlinePad;
+	if (consumer != null) {
+		decompress_rows(cinfo, palette, scanlinePad, row_stride, consumer);
+		jpeg_finish_decompress(cinfo);
+		jpeg_destroy_decompress(cinfo);
+		return null;
+	}
 	byte[][] buffer = new byte[1][row_stride];
 	byte[] data = new byte[row_stride * cinfo.output_height];
 	ImageData imageData = ImageData.internal_new(
 			cinfo.output_width, cinfo.output_height, palette.isDirect ? 24 : 8, palette, scanlinePad, data,
 			0, null, null, -1, -1, SWT.IMAGE_JPEG, 0, 0, 0, 0);
 	if (cinfo.buffered_image) {
-		boolean done;
-		do {
-			int incrementCount = cinfo.input_scan_number - 1;
-			jpeg_start_output(cinfo, cinfo.input_scan_number);
-			while (cinfo.output_scanline < cinfo.output_height) {
-				int offset = row_stride * cinfo.output_scanline;
-				jpeg_read_scanlines(cinfo, buffer, 1);
-				System.arraycopy(buffer[0], 0, data, offset, row_stride);
+		/* Send a preview once a scan is complete and the next one has started,
+		 * the last scan is followed by the fully decoded image instead.
+		 */
+		int incrementCount = 0, scale = 0;
+		int retcode;
+		while ((retcode = jpeg_consume_input(cinfo)) != JPEG_REACHED_EOI) {
+			if (retcode == JPEG_SUSPENDED) error();
+			if (retcode == JPEG_SCAN_COMPLETED) {
+				/* The progression status changes as soon as the next scan starts */
+				scale = preview_scale(cinfo);
+			} else if (retcode == JPEG_REACHED_SOS && scale != 0) {
+				ImageData preview = render_preview(cinfo, scale, palette, scanlinePad, row_stride);
+				loader.notifyListeners(new ImageLoaderEvent(loader, preview, incrementCount++, false));
+				scale = 0;
 			}
-			jpeg_finish_output(cinfo);
-			loader.notifyListeners(new ImageLoaderEvent(loader, (ImageData)imageData.clone(), incrementCount, done = jpeg_input_complete(cinfo)));
-		} while (!done);
+		}
+		jpeg_start_output(cinfo, cinfo.input_scan_number);
+		while (cinfo.output_scanline < cinfo.output_height) {
+			int offset = row_stride * cinfo.output_scanline;
+			jpeg_read_scanlines(cinfo, buffer, 1);
+			System.arraycopy(buffer[0], 0, data, offset, row_stride);
+		}
+		jpeg_finish_output(cinfo);
+		loader.notifyListeners(new ImageLoaderEvent(loader, (ImageData)imageData.clone(), incrementCount, true));
+	} else if (use_parallel_decompress(cinfo)) {
+		decompress_parallel(cinfo, data, row_stride);
+		jpeg_destroy_decompress(cinfo);
+		return new ImageData[]{imageData};
 	} else {
 		while (cinfo.output_scanline < cinfo.output_height) {
 			int offset = row_stride * cinfo.output_scanline;
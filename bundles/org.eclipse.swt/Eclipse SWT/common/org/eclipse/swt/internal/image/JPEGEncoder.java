@@ -0,0 +1,569 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * This source file is based in part on the work of the Independent JPEG Group (IJG)
+ * and is made available under the terms contained in the about_files/IJG_README
+ * file accompanying this program.
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal.image;
+
+
+import java.io.*;
+
+import org.eclipse.swt.*;
+import org.eclipse.swt.graphics.*;
+import org.eclipse.swt.internal.*;
+
+/**
+ * Baseline JPEG encoder.
+ * <p>
+ * The image is converted to YCbCr, transformed and quantized one MCU row
+ * at a time, and the quantized coefficients are kept so that Huffman tables
+ * optimized for the image can be written before the scan. Large images get
+ * a restart marker after every MCU row, which makes the rows independent:
+ * they are then transformed and entropy coded concurrently, and can be
+ * decoded concurrently as well.
+ * </p>
+ */
+final class JPEGEncoder {
+	ImageData image;
+	int quality;
+	int width, height;
+	int hSamp, vSamp;
+	int mcuWidth, mcuHeight;
+	int mcusPerRow, mcuRows;
+	int blocksPerMcu;
+	boolean parallel;
+	/* Quantization tables in zigzag order, as written to the DQT segments */
+	int[] lumQuantization, chromQuantization;
+	/* Reciprocals of the scaled quantization steps, in natural order */
+	float[] lumDivisors, chromDivisors;
+	/* Y, Cb and Cr of every palette entry of indexed images */
+	int[] paletteY, paletteCb, paletteCr;
+	/* Quantized coefficients of every MCU row, 64 per block in zigzag order */
+	short[][] coefficients;
+	/* Huffman codes and lengths of DC luminance, DC chrominance, AC luminance and AC chrominance */
+	int[][] huffCodes = new int[4][];
+	byte[][] huffSizes = new byte[4][];
+
+	/* Images of at least this many pixels are encoded in parallel, one MCU row per restart interval */
+	static final int PARALLEL_MIN_PIXELS = 512 * 512;
+	/* Chrominance is subsampled 2x2 as by default in the IJG library, except at this quality */
+	static final int FULL_CHROMA_QUALITY = 100;
+
+	/* Fixed point constants of the AAN forward DCT, scaled by 2^13 */
+	static final int CONST_BITS = 13;
+	static final int FIX_0_382683433 = 3135;
+	static final int FIX_0_541196100 = 4433;
+	static final int FIX_0_707106781 = 5793;
+	static final int FIX_1_306562965 = 10703;
+	/* Extra precision given to the samples, removed by the quantization */
+	static final int PASS_BITS = 2;
+
+	/*
+	 * The AAN algorithm leaves every output scaled by 8 times the product
+	 * of these row and column factors, cos(k*PI/16) * sqrt(2) for k > 0.
+	 * The scaling is folded into the quantization divisors.
+	 */
+	static final double[] AAN_SCALES = {
+		1.0, 1.387039845, 1.306562965, 1.175875602,
+		1.0, 0.785694958, 0.541196100, 0.275899379
+	};
+
+	static final int DC_LUMINANCE = 0, DC_CHROMINANCE = 1, AC_LUMINANCE = 2, AC_CHROMINANCE = 3;
+
+JPEGEncoder(ImageData image, int quality) {
+	this.image = image;
+	this.quality = quality;
+	width = image.width;
+	height = image.height;
+	hSamp = vSamp = quality < FULL_CHROMA_QUALITY ? 2 : 1;
+	mcuWidth = hSamp * JPEGFileFormat.DCTSIZE;
+	mcuHeight = vSamp * JPEGFileFormat.DCTSIZE;
+	mcusPerRow = (width + mcuWidth - 1) / mcuWidth;
+	mcuRows = (height + mcuHeight - 1) / mcuHeight;
+	blocksPerMcu = hSamp * vSamp + 2;
+	parallel = (long) width * height >= PARALLEL_MIN_PIXELS;
+}
+
+void encode(LEDataOutputStream outputStream) {
+	JPEGQuantizationTable lumDQT = JPEGQuantizationTable.defaultLuminanceTable();
+	lumDQT.scaleBy(quality);
+	lumQuantization = lumDQT.getQuantizationTablesValues()[0];
+	lumDivisors = divisors(lumQuantization);
+	JPEGQuantizationTable chromDQT = JPEGQuantizationTable.defaultChrominanceTable();
+	chromDQT.scaleBy(quality);
+	chromQuantization = chromDQT.getQuantizationTablesValues()[0];
+	chromDivisors = divisors(chromQuantization);
+
+	/* Transform the image before writing anything, unsupported images fail here */
+	if (!image.palette.isDirect) {
+		RGB[] rgbs = image.palette.getRGBs();
+		paletteY = new int[rgbs.length];
+		paletteCb = new int[rgbs.length];
+		paletteCr = new int[rgbs.length];
+		for (int i = 0; i < rgbs.length; i++) {
+			int r = rgbs[i].red, g = rgbs[i].green, b = rgbs[i].blue;
+			paletteY[i] = (JPEGFileFormat.RYTable[r] + JPEGFileFormat.GYTable[g] + JPEGFileFormat.BYTable[b]) >> 16;
+			paletteCb[i] = (JPEGFileFormat.RCbTable[r] + JPEGFileFormat.GCbTable[g] + JPEGFileFormat.BCbTable[b]) >> 16;
+			paletteCr[i] = (JPEGFileFormat.RCrTable[r] + JPEGFileFormat.GCrTable[g] + JPEGFileFormat.BCrTable[b]) >> 16;
+		}
+	}
+	coefficients = new short[mcuRows][];
+	ParallelUtil.forEach(mcuRows, parallel, this::transformRow);
+
+	/* Count the symbols of every restart interval and build the Huffman tables */
+	int segmentCount = parallel ? mcuRows : 1;
+	int[][][] frequencies = new int[segmentCount][4][257];
+	ParallelUtil.forEach(segmentCount, parallel, segment -> countSymbols(segment, frequencies[segment]));
+	int[][] totals = new int[4][257];
+	for (int[][] segmentFrequencies : frequencies) {
+		for (int table = 0; table < 4; table++) {
+			for (int symbol = 0; symbol < 256; symbol++) {
+				totals[table][symbol] += segmentFrequencies[table][symbol];
+			}
+		}
+	}
+	JPEGHuffmanTable dht = optimalTables(totals);
+
+	/* Entropy code the restart intervals */
+	byte[][] segments = new byte[segmentCount][];
+	ParallelUtil.forEach(segmentCount, parallel, segment -> segments[segment] = encodeSegment(segment, segmentCount));
+
+	try {
+		if (!new JPEGStartOfImage().writeToStream(outputStream)) {
+			SWT.error(SWT.ERROR_IO);
+		}
+		JPEGAppn appn = new JPEGAppn(new byte[] {(byte)0xFF, (byte)0xE0, 0, 0x10, 0x4A, 0x46, 0x49, 0x46, 0, 1, 1, 0, 0, 1, 0, 1, 0, 0});
+		if (!appn.writeToStream(outputStream)) {
+			SWT.error(SWT.ERROR_IO);
+		}
+		if (!lumDQT.writeToStream(outputStream) || !chromDQT.writeToStream(outputStream)) {
+			SWT.error(SWT.ERROR_IO);
+		}
+		JPEGFrameHeader frameHeader = new JPEGFrameHeader(new byte[19]);
+		frameHeader.setSegmentMarker(JPEGFileFormat.SOF0);
+		frameHeader.setSegmentLength(17);
+		frameHeader.setSamplePrecision(8);
+		frameHeader.setSamplesPerLine(width);
+		frameHeader.setNumberOfLines(height);
+		frameHeader.setNumberOfImageComponents(3);
+		frameHeader.componentParameters = new int[][] {{0, hSamp, vSamp, 0, 0}, {1, 1, 1, 0, 0}, {1, 1, 1, 0, 0}};
+		frameHeader.componentIdentifiers = new int[] {0, 1, 2};
+		frameHeader.initializeContents();
+		if (!frameHeader.writeToStream(outputStream) || !dht.writeToStream(outputStream)) {
+			SWT.error(SWT.ERROR_IO);
+		}
+		if (parallel && !new JPEGRestartInterval(mcusPerRow).writeToStream(outputStream)) {
+			SWT.error(SWT.ERROR_IO);
+		}
+		JPEGScanHeader scanHeader = new JPEGScanHeader(new byte[14]);
+		scanHeader.setSegmentMarker(JPEGFileFormat.SOS);
+		scanHeader.setSegmentLength(12);
+		scanHeader.setNumberOfImageComponents(3);
+		scanHeader.setStartOfSpectralSelection(0);
+		scanHeader.setEndOfSpectralSelection(63);
+		scanHeader.componentParameters = new int[][] {{0, 0}, {1, 1}, {1, 1}};
+		scanHeader.initializeContents();
+		if (!scanHeader.writeToStream(outputStream)) {
+			SWT.error(SWT.ERROR_IO);
+		}
+		for (byte[] segment : segments) {
+			outputStream.write(segment, 0, segment.length);
+		}
+		if (!new JPEGEndOfImage().writeToStream(outputStream)) {
+			SWT.error(SWT.ERROR_IO);
+		}
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+}
+
+static float[] divisors(int[] quantization) {
+	float[] divisors = new float[JPEGFileFormat.DCTSIZESQR];
+	for (int i = 0; i < divisors.length; i++) {
+		int k = JPEGFileFormat.ZigZag8x8[i];
+		double scale = AAN_SCALES[k >> 3] * AAN_SCALES[k & 7] * 8 * (1 << PASS_BITS);
+		divisors[k] = (float) (1.0 / (quantization[i] * scale));
+	}
+	return divisors;
+}
+
+/*
+ * Convert the pixels of one MCU row to YCbCr, replicating the last column
+ * and row into the padding, then transform and quantize its blocks.
+ */
+void transformRow(int mcuRow) {
+	int bandWidth = mcusPerRow * mcuWidth;
+	int[] yBand = new int[mcuHeight * bandWidth];
+	int[] cbBand = new int[mcuHeight * bandWidth];
+	int[] crBand = new int[mcuHeight * bandWidth];
+	int[] pixels = new int[width];
+	PaletteData palette = image.palette;
+	int redMask = palette.redMask, greenMask = palette.greenMask, blueMask = palette.blueMask;
+	int redShift = palette.redShift, greenShift = palette.greenShift, blueShift = palette.blueShift;
+	for (int row = 0; row < mcuHeight; row++) {
+		int y = Math.min(mcuRow * mcuHeight + row, height - 1);
+		image.getPixels(0, y, width, pixels, 0);
+		int index = row * bandWidth;
+		if (palette.isDirect) {
+			for (int x = 0; x < width; x++, index++) {
+				int pixel = pixels[x];
+				int r = pixel & redMask;
+				r = (redShift < 0) ? r >>> -redShift : r << redShift;
+				int g = pixel & greenMask;
+				g = (greenShift < 0) ? g >>> -greenShift : g << greenShift;
+				int b = pixel & blueMask;
+				b = (blueShift < 0) ? b >>> -blueShift : b << blueShift;
+				yBand[index] = (JPEGFileFormat.RYTable[r] + JPEGFileFormat.GYTable[g] + JPEGFileFormat.BYTable[b]) >> 16;
+				cbBand[index] = (JPEGFileFormat.RCbTable[r] + JPEGFileFormat.GCbTable[g] + JPEGFileFormat.BCbTable[b]) >> 16;
+				crBand[index] = (JPEGFileFormat.RCrTable[r] + JPEGFileFormat.GCrTable[g] + JPEGFileFormat.BCrTable[b]) >> 16;
+			}
+		} else {
+			for (int x = 0; x < width; x++, index++) {
+				int pixel = pixels[x];
+				yBand[index] = paletteY[pixel];
+				cbBand[index] = paletteCb[pixel];
+				crBand[index] = paletteCr[pixel];
+			}
+		}
+		for (int x = width; x < bandWidth; x++, index++) {
+			yBand[index] = yBand[index - 1];
+			cbBand[index] = cbBand[index - 1];
+			crBand[index] = crBand[index - 1];
+		}
+	}
+	if (hSamp > 1) {
+		/* Average 2x2 pixels, with the alternating rounding of the IJG downsampler */
+		int chromWidth = bandWidth / 2;
+		for (int row = 0; row < mcuHeight / 2; row++) {
+			int src = row * 2 * bandWidth, dst = row * chromWidth;
+			for (int x = 0; x < chromWidth; x++, src += 2, dst++) {
+				int bias = 1 + (x & 1);
+				cbBand[dst] = (cbBand[src] + cbBand[src + 1] + cbBand[src + bandWidth] + cbBand[src + bandWidth + 1] + bias) >> 2;
+				crBand[dst] = (crBand[src] + crBand[src + 1] + crBand[src + bandWidth] + crBand[src + bandWidth + 1] + bias) >> 2;
+			}
+		}
+	}
+
+	short[] rowCoefficients = coefficients[mcuRow] = new short[mcusPerRow * blocksPerMcu * JPEGFileFormat.DCTSIZESQR];
+	int[] block = new int[JPEGFileFormat.DCTSIZESQR];
+	int chromWidth = bandWidth / hSamp;
+	int offset = 0;
+	for (int mcu = 0; mcu < mcusPerRow; mcu++) {
+		for (int v = 0; v < vSamp; v++) {
+			for (int h = 0; h < hSamp; h++) {
+				int start = v * JPEGFileFormat.DCTSIZE * bandWidth + (mcu * hSamp + h) * JPEGFileFormat.DCTSIZE;
+				transformBlock(yBand, start, bandWidth, block, lumDivisors, rowCoefficients, offset);
+				offset += JPEGFileFormat.DCTSIZESQR;
+			}
+		}
+		int start = mcu * JPEGFileFormat.DCTSIZE;
+		transformBlock(cbBand, start, chromWidth, block, chromDivisors, rowCoefficients, offset);
+		offset += JPEGFileFormat.DCTSIZESQR;
+		transformBlock(crBand, start, chromWidth, block, chromDivisors, rowCoefficients, offset);
+		offset += JPEGFileFormat.DCTSIZESQR;
+	}
+}
+
+static void transformBlock(int[] samples, int start, int stride, int[] block, float[] divisors, short[] coefficients, int offset) {
+	for (int row = 0, index = 0; row < JPEGFileFormat.DCTSIZE; row++, start += stride) {
+		for (int col = 0; col < JPEGFileFormat.DCTSIZE; col++) {
+			block[index++] = (samples[start + col] - 128) << PASS_BITS;
+		}
+	}
+	forwardDCT(block);
+	for (int i = 0; i < JPEGFileFormat.DCTSIZESQR; i++) {
+		int k = JPEGFileFormat.ZigZag8x8[i];
+		/* Round to nearest, the offset keeps the float to int conversion rounding down */
+		int value = (int) (block[k] * divisors[k] + 16384.5f) - 16384;
+		int limit = i == 0 ? 2047 : 1023;
+		if (value > limit) value = limit;
+		if (value < -limit) value = -limit;
+		coefficients[offset + i] = (short) value;
+	}
+}
+
+static int multiply(int value, int constant) {
+	return (value * constant + (1 << (CONST_BITS - 1))) >> CONST_BITS;
+}
+
+/*
+ * Forward DCT of Arai, Agui and Nakajima (jfdctfst.c), 5 multiplications
+ * per 8 point pass.  The outputs are scaled as described by AAN_SCALES.
+ */
+static void forwardDCT(int[] block) {
+	for (int pass = 0; pass < 2; pass++) {
+		int step = pass == 0 ? 1 : JPEGFileFormat.DCTSIZE;
+		int next = pass == 0 ? JPEGFileFormat.DCTSIZE : 1;
+		for (int i = 0, base = 0; i < JPEGFileFormat.DCTSIZE; i++, base += next) {
+			int d0 = block[base], d1 = block[base + step], d2 = block[base + 2 * step], d3 = block[base + 3 * step];
+			int d4 = block[base + 4 * step], d5 = block[base + 5 * step], d6 = block[base + 6 * step], d7 = block[base + 7 * step];
+			int tmp0 = d0 + d7, tmp7 = d0 - d7;
+			int tmp1 = d1 + d6, tmp6 = d1 - d6;
+			int tmp2 = d2 + d5, tmp5 = d2 - d5;
+			int tmp3 = d3 + d4, tmp4 = d3 - d4;
+
+			/* Even part */
+			int tmp10 = tmp0 + tmp3, tmp13 = tmp0 - tmp3;
+			int tmp11 = tmp1 + tmp2, tmp12 = tmp1 - tmp2;
+			block[base] = tmp10 + tmp11;
+			block[base + 4 * step] = tmp10 - tmp11;
+			int z1 = multiply(tmp12 + tmp13, FIX_0_707106781);
+			block[base + 2 * step] = tmp13 + z1;
+			block[base + 6 * step] = tmp13 - z1;
+
+			/* Odd part */
+			tmp10 = tmp4 + tmp5;
+			tmp11 = tmp5 + tmp6;
+			tmp12 = tmp6 + tmp7;
+			int z5 = multiply(tmp10 - tmp12, FIX_0_382683433);
+			int z2 = multiply(tmp10, FIX_0_541196100) + z5;
+			int z4 = multiply(tmp12, FIX_1_306562965) + z5;
+			int z3 = multiply(tmp11, FIX_0_707106781);
+			int z11 = tmp7 + z3, z13 = tmp7 - z3;
+			block[base + 5 * step] = z13 + z2;
+			block[base + 3 * step] = z13 - z2;
+			block[base + step] = z11 + z4;
+			block[base + 7 * step] = z11 - z4;
+		}
+	}
+}
+
+static int bitCount(int value) {
+	return 32 - Integer.numberOfLeadingZeros(value < 0 ? -value : value);
+}
+
+/*
+ * Visit the blocks of a restart interval in scan order.  The DC
+ * prediction starts from zero at the beginning of every interval.
+ */
+interface BlockVisitor {
+	void block(short[] coefficients, int offset, int dcDifference, int dcTable, int acTable);
+}
+
+void visitSegment(int segment, BlockVisitor visitor) {
+	int firstRow = parallel ? segment : 0;
+	int lastRow = parallel ? segment + 1 : mcuRows;
+	int lumBlocks = hSamp * vSamp;
+	int lastY = 0, lastCb = 0, lastCr = 0;
+	for (int mcuRow = firstRow; mcuRow < lastRow; mcuRow++) {
+		short[] rowCoefficients = coefficients[mcuRow];
+		int offset = 0;
+		for (int mcu = 0; mcu < mcusPerRow; mcu++) {
+			for (int i = 0; i < lumBlocks; i++, offset += JPEGFileFormat.DCTSIZESQR) {
+				int dc = rowCoefficients[offset];
+				visitor.block(rowCoefficients, offset, dc - lastY, DC_LUMINANCE, AC_LUMINANCE);
+				lastY = dc;
+			}
+			int dc = rowCoefficients[offset];
+			visitor.block(rowCoefficients, offset, dc - lastCb, DC_CHROMINANCE, AC_CHROMINANCE);
+			lastCb = dc;
+			offset += JPEGFileFormat.DCTSIZESQR;
+			dc = rowCoefficients[offset];
+			visitor.block(rowCoefficients, offset, dc - lastCr, DC_CHROMINANCE, AC_CHROMINANCE);
+			lastCr = dc;
+			offset += JPEGFileFormat.DCTSIZESQR;
+		}
+	}
+}
+
+void countSymbols(int segment, int[][] frequencies) {
+	visitSegment(segment, (coefficients, offset, dcDifference, dcTable, acTable) -> {
+		frequencies[dcTable][bitCount(dcDifference)]++;
+		int[] acFrequencies = frequencies[acTable];
+		int run = 0;
+		for (int i = 1; i < JPEGFileFormat.DCTSIZESQR; i++) {
+			int value = coefficients[offset + i];
+			if (value == 0) {
+				run++;
+				continue;
+			}
+			while (run > 15) {
+				acFrequencies[0xF0]++;
+				run -= 16;
+			}
+			acFrequencies[(run << 4) + bitCount(value)]++;
+			run = 0;
+		}
+		if (run > 0) acFrequencies[0]++;
+	});
+}
+
+/*
+ * Build a DHT segment with the optimal tables for the symbol frequencies
+ * of each table (jpeg_gen_optimal_table, JPEG standard section K.2).
+ */
+JPEGHuffmanTable optimalTables(int[][] frequencies) {
+	ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	stream.write(0xFF);
+	stream.write(0xC4);
+	stream.write(0);
+	stream.write(0);
+	for (int table = 0; table < 4; table++) {
+		int[] freq = frequencies[table].clone();
+		int[] codeSize = new int[257];
+		int[] others = new int[257];
+		for (int i = 0; i < others.length; i++) others[i] = -1;
+		/* Reserve one code point so that no code consists of all ones */
+		freq[256] = 1;
+		while (true) {
+			int c1 = -1, c2 = -1;
+			long v = Long.MAX_VALUE;
+			for (int i = 0; i <= 256; i++) {
+				if (freq[i] != 0 && freq[i] <= v) {
+					v = freq[i];
+					c1 = i;
+				}
+			}
+			v = Long.MAX_VALUE;
+			for (int i = 0; i <= 256; i++) {
+				if (freq[i] != 0 && freq[i] <= v && i != c1) {
+					v = freq[i];
+					c2 = i;
+				}
+			}
+			if (c2 < 0) break;
+			freq[c1] += freq[c2];
+			freq[c2] = 0;
+			codeSize[c1]++;
+			while (others[c1] >= 0) {
+				c1 = others[c1];
+				codeSize[c1]++;
+			}
+			others[c1] = c2;
+			codeSize[c2]++;
+			while (others[c2] >= 0) {
+				c2 = others[c2];
+				codeSize[c2]++;
+			}
+		}
+		int[] bits = new int[33];
+		for (int i = 0; i <= 256; i++) {
+			if (codeSize[i] != 0) bits[codeSize[i]]++;
+		}
+		/* Limit the code lengths to 16 bits */
+		for (int i = 32; i > 16; i--) {
+			while (bits[i] > 0) {
+				int j = i - 2;
+				while (bits[j] == 0) j--;
+				bits[i] -= 2;
+				bits[i - 1]++;
+				bits[j + 1] += 2;
+				bits[j]--;
+			}
+		}
+		/* Remove the reserved code point from the longest codes */
+		int longest = 16;
+		while (bits[longest] == 0) longest--;
+		bits[longest]--;
+
+		stream.write((table >= AC_LUMINANCE ? 0x10 : 0) | (table & 1));
+		for (int i = 1; i <= 16; i++) {
+			stream.write(bits[i]);
+		}
+		for (int size = 1; size <= 32; size++) {
+			for (int symbol = 0; symbol < 256; symbol++) {
+				if (codeSize[symbol] == size) stream.write(symbol);
+			}
+		}
+	}
+	byte[] reference = stream.toByteArray();
+	reference[2] = (byte) ((reference.length - 2) >> 8);
+	reference[3] = (byte) (reference.length - 2);
+	JPEGHuffmanTable dht = new JPEGHuffmanTable(reference);
+	dht.initialize();
+	for (JPEGHuffmanTable table : dht.getAllTables()) {
+		int index = (table.getTableClass() == 0 ? DC_LUMINANCE : AC_LUMINANCE) + table.getTableIdentifier();
+		huffCodes[index] = table.ehCodes;
+		huffSizes[index] = table.ehCodeLengths;
+	}
+	return dht;
+}
+
+/*
+ * Entropy code a restart interval, followed by its restart marker
+ * unless it is the last one.
+ */
+byte[] encodeSegment(int segment, int segmentCount) {
+	BitWriter writer = new BitWriter();
+	visitSegment(segment, (coefficients, offset, dcDifference, dcTable, acTable) -> {
+		int size = bitCount(dcDifference);
+		writer.write(huffCodes[dcTable][size], huffSizes[dcTable][size], dcDifference, size);
+		int[] codes = huffCodes[acTable];
+		byte[] sizes = huffSizes[acTable];
+		int run = 0;
+		for (int i = 1; i < JPEGFileFormat.DCTSIZESQR; i++) {
+			int value = coefficients[offset + i];
+			if (value == 0) {
+				run++;
+				continue;
+			}
+			while (run > 15) {
+				writer.write(codes[0xF0], sizes[0xF0], 0, 0);
+				run -= 16;
+			}
+			size = bitCount(value);
+			int symbol = (run << 4) + size;
+			writer.write(codes[symbol], sizes[symbol], value, size);
+			run = 0;
+		}
+		if (run > 0) writer.write(codes[0], sizes[0], 0, 0);
+	});
+	writer.flush();
+	if (segment < segmentCount - 1) {
+		writer.writeMarker(0xD0 + (segment & 7));
+	}
+	return writer.toByteArray();
+}
+
+/* Accumulates Huffman codes and stuffs a zero after every 0xFF byte */
+static final class BitWriter {
+	byte[] buffer = new byte[4096];
+	int length;
+	long bits;
+	int bitCount;
+
+	/* Write the Huffman code followed by the low size bits of the value, ones complemented when negative */
+	void write(int code, int codeSize, int value, int size) {
+		if (value < 0) value--;
+		bits = (bits << (codeSize + size)) | ((long) code << size) | (value & ((1 << size) - 1));
+		bitCount += codeSize + size;
+		if (buffer.length - length < 8) {
+			byte[] newBuffer = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, newBuffer, 0, length);
+			buffer = newBuffer;
+		}
+		while (bitCount >= 8) {
+			bitCount -= 8;
+			byte b = (byte) (bits >> bitCount);
+			buffer[length++] = b;
+			if (b == (byte) 0xFF) buffer[length++] = 0;
+		}
+	}
+
+	/* Pad the last byte with ones */
+	void flush() {
+		if (bitCount > 0) write((1 << (8 - bitCount)) - 1, 8 - bitCount, 0, 0);
+	}
+
+	void writeMarker(int marker) {
+		if (buffer.length - length < 2) write(0, 0, 0, 0);
+		buffer[length++] = (byte) 0xFF;
+		buffer[length++] = (byte) marker;
+	}
+
+	byte[] toByteArray() {
+		byte[] result = new byte[length];
+		System.arraycopy(buffer, 0, result, 0, length);
+		return result;
+	}
+}
+}
@@ -17,6 +17,14 @@ final class JPEGRestartInterval extends JPEGFixedSizeSegment {
 		super(byteStream);
 	}
 
+	/* Used when encoding. */
+	public JPEGRestartInterval(int restartInterval) {
+		super();
+		reference[3] = (byte)getSegmentLength();
+		reference[4] = (byte)((restartInterval & 0xFF00) >> 8);
+		reference[5] = (byte)(restartInterval & 0xFF);
+	}
+
 	@Override
 	public int signature() {
 		return JPEGFileFormat.DRI;
@@ -11,6 +11,8 @@
 package org.eclipse.swt.internal.image;
 
 
+import java.nio.*;
+
 import org.eclipse.swt.*;
 
 abstract class JPEGVariableSizeSegment extends JPEGSegment {
@@ -21,16 +23,12 @@ abstract class JPEGVariableSizeSegment extends JPEGSegment {
 
 	public JPEGVariableSizeSegment(LEDataInputStream byteStream) {
 		try {
-			byte[] header = new byte[4];
-			byteStream.read(header);
-			reference = header; // to use getSegmentLength()
-			byte[] contents = new byte[getSegmentLength() + 2];
-			contents[0] = header[0];
-			contents[1] = header[1];
-			contents[2] = header[2];
-			contents[3] = header[3];
-			byteStream.read(contents, 4, contents.length - 4);
-			reference = contents;
+			int marker = byteStream.readShort(ByteOrder.BIG_ENDIAN) & 0xFFFF;
+			int length = byteStream.readShort(ByteOrder.BIG_ENDIAN) & 0xFFFF;
+			reference = new byte[length + 2];
+			setSegmentMarker(marker);
+			setSegmentLength(length);
+			byteStream.read(reference, 4, reference.length - 4);
 		} catch (Exception e) {
 			SWT.error(SWT.ERROR_IO, e);
 		}
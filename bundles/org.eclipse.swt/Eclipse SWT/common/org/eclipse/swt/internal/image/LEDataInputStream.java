@@ -12,40 +12,74 @@ package org.eclipse.swt.internal.image;
 
 
 import java.io.*;
+import java.nio.*;
 
+/**
+ * The input of the image decoders. The bytes are read from a buffer,
+ * which either holds the whole input, or a window of the underlying
+ * stream that is refilled in bulk. Integers can be read in either byte
+ * order, and the stream can be marked and reset or bytes pushed back
+ * by moving the position of the buffer.
+ */
 final class LEDataInputStream extends InputStream {
-	int position;
+	/**
+	 * The stream the window is filled from, or null when the
+	 * buffer holds the whole input.
+	 */
 	InputStream in;
 
 	/**
-	 * The byte array containing the bytes to read.
+	 * The buffer containing the bytes to read. Its position is the
+	 * next byte of the stream, its limit the end of the bytes read
+	 * from <code>in</code>.
+	 */
+	ByteBuffer buffer;
+
+	/**
+	 * The index in <code>buffer</code> of the first byte of the stream.
+	 * It becomes negative once bytes are discarded from the window.
+	 */
+	int start;
+
+	/**
+	 * The index in <code>buffer</code> of the marked byte, or -1,
+	 * and the number of bytes that can be read before the mark is lost.
 	 */
-	protected byte[] buf;
+	int mark = -1, markLimit;
 
 	/**
-	 * The current position within the byte array <code>buf</code>. A value
-	 * equal to buf.length indicates no bytes available.  A value of
-	 * 0 indicates the buffer is full.
+	 * The number of bytes before the position that are kept when
+	 * the window is refilled, so that they can be pushed back.
 	 */
-	protected int pos;
+	static final int PUSHBACK_SIZE = 512;
 
+	static final int BUFFER_SIZE = 8192;
 
 	public LEDataInputStream(InputStream input) {
-		this(input, 512);
+		this(input, BUFFER_SIZE);
 	}
 
 	public LEDataInputStream(InputStream input, int bufferSize) {
 		this.in = input;
 		if (bufferSize > 0) {
-			buf = new byte[bufferSize];
-			pos = bufferSize;
+			buffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.limit(0);
 		}
 		else throw new IllegalArgumentException();
 	}
 
+	/**
+	 * Read the remaining bytes of the given buffer. No bytes are
+	 * copied until they are read into an array.
+	 */
+	public LEDataInputStream(ByteBuffer input) {
+		buffer = input.order(ByteOrder.LITTLE_ENDIAN);
+		start = input.position();
+	}
+
 	@Override
 	public void close() throws IOException {
-		buf = null;
+		buffer = null;
 		if (in != null) {
 			in.close();
 			in = null;
@@ -56,7 +90,7 @@ final class LEDataInputStream extends InputStream {
 	 * Answer how many bytes were read.
 	 */
 	public int getPosition() {
-		return position;
+		return buffer.position() - start;
 	}
 
 	/**
@@ -64,8 +98,48 @@ final class LEDataInputStream extends InputStream {
 	 */
 	@Override
 	public int available() throws IOException {
-		if (buf == null) throw new IOException();
-		return (buf.length - pos) + in.available();
+		if (buffer == null) throw new IOException();
+		return buffer.remaining() + (in != null ? in.available() : 0);
+	}
+
+	/**
+	 * Make at least <code>count</code> bytes available in the buffer,
+	 * refilling the window from the underlying stream if needed.
+	 * Answer whether there are that many bytes before the end of the stream.
+	 */
+	boolean fill(int count) throws IOException {
+		if (buffer == null) throw new IOException();
+		if (buffer.remaining() >= count) return true;
+		if (in == null) return false;
+		int position = buffer.position();
+		if (mark != -1 && position - mark > markLimit) mark = -1;
+		int keep = Math.max(0, position - PUSHBACK_SIZE);
+		if (mark != -1) keep = Math.min(keep, mark);
+		int required = position - keep + count;
+		ByteBuffer window = buffer;
+		if (required > buffer.capacity()) {
+			window = ByteBuffer.allocate(Math.max(required, buffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		buffer.position(keep);
+		if (window == buffer) {
+			buffer.compact();
+		} else {
+			window.put(buffer);
+		}
+		start -= keep;
+		position -= keep;
+		if (mark != -1) mark -= keep;
+		byte[] array = window.array();
+		int end = window.position();
+		while (end < required) {
+			int n = in.read(array, end, array.length - end);
+			if (n == -1) break;
+			end += n;
+		}
+		window.limit(end);
+		window.position(position);
+		buffer = window;
+		return buffer.remaining() >= count;
 	}
 
 	/**
@@ -73,14 +147,8 @@ final class LEDataInputStream extends InputStream {
 	 */
 	@Override
 	public int read() throws IOException {
-		if (buf == null) throw new IOException();
-		if (pos < buf.length) {
-			position++;
-			return (buf[pos++] & 0xFF);
-		}
-		int c = in.read();
-		if (c != -1) position++;
-		return c;
+		if (!fill(1)) return -1;
+		return buffer.get() & 0xFF;
 	}
 
 	/**
@@ -89,60 +157,69 @@ final class LEDataInputStream extends InputStream {
 	 */
 	@Override
 	public int read(byte b[], int off, int len) throws IOException {
-		int read = 0, count;
-		while (read != len && (count = readData(b, off, len - read)) != -1) {
-			off += count;
-			read += count;
+		if (buffer == null) throw new IOException();
+		if (off < 0 || len < 0 || len > b.length - off) {
+			throw new ArrayIndexOutOfBoundsException();
+		}
+		if (len == 0) return 0;
+		int read = Math.min(len, buffer.remaining());
+		buffer.get(b, off, read);
+		if (read < len && in != null) {
+			if (mark == -1 && len - read >= buffer.capacity()) {
+				/* Read large blocks directly and empty the window */
+				int position = getPosition();
+				int count;
+				while (read != len && (count = in.read(b, off + read, len - read)) != -1) {
+					position += count;
+					read += count;
+				}
+				buffer.clear().limit(0);
+				start = -position;
+			} else {
+				while (read != len && fill(1)) {
+					int count = Math.min(len - read, buffer.remaining());
+					buffer.get(b, off + read, count);
+					read += count;
+				}
+			}
 		}
-		position += read;
-		if (read == 0 && read != len) return -1;
+		if (read == 0) return -1;
 		return read;
 	}
 
-	/**
- 	 * Reads at most <code>length</code> bytes from this LEDataInputStream and
- 	 * stores them in byte array <code>buffer</code> starting at <code>offset</code>.
- 	 * <p>
- 	 * Answer the number of bytes actually read or -1 if no bytes were read and
- 	 * end of stream was encountered.  This implementation reads bytes from
- 	 * the pushback buffer first, then the target stream if more bytes are required
- 	 * to satisfy <code>count</code>.
-	 * </p>
-	 * @param buffer the byte array in which to store the read bytes.
-	 * @param offset the offset in <code>buffer</code> to store the read bytes.
-	 * @param length the maximum number of bytes to store in <code>buffer</code>.
-	 *
-	 * @return int the number of bytes actually read or -1 if end of stream.
-	 *
-	 * @exception java.io.IOException if an IOException occurs.
-	 */
-	private int readData(byte[] buffer, int offset, int length) throws IOException {
-		if (buf == null) throw new IOException();
-		if (offset < 0 || offset > buffer.length ||
-  		 	length < 0 || (length > buffer.length - offset)) {
-	 		throw new ArrayIndexOutOfBoundsException();
-		 	}
-
-		int cacheCopied = 0;
-		int newOffset = offset;
-
-		// Are there pushback bytes available?
-		int available = buf.length - pos;
-		if (available > 0) {
-			cacheCopied = (available >= length) ? length : available;
-			System.arraycopy(buf, pos, buffer, newOffset, cacheCopied);
-			newOffset += cacheCopied;
-			pos += cacheCopied;
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n && fill(1)) {
+			int count = (int) Math.min(n - skipped, buffer.remaining());
+			buffer.position(buffer.position() + count);
+			skipped += count;
 		}
+		return skipped;
+	}
 
-		// Have we copied enough?
-		if (cacheCopied == length) return length;
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
 
-		int inCopied = in.read(buffer, newOffset, length - cacheCopied);
+	/**
+	 * Mark the current position of the stream, so that a later call to
+	 * <code>reset</code> reads the same bytes again as long as no more than
+	 * <code>readlimit</code> bytes were read in between. Marking does not
+	 * copy any bytes.
+	 */
+	@Override
+	public void mark(int readlimit) {
+		if (buffer == null) return;
+		mark = buffer.position();
+		markLimit = readlimit;
+	}
 
-		if (inCopied > 0) return inCopied + cacheCopied;
-		if (cacheCopied == 0) return inCopied;
-		return cacheCopied;
+	@Override
+	public void reset() throws IOException {
+		if (buffer == null || mark == -1) throw new IOException();
+		buffer.position(mark);
 	}
 
 	/**
@@ -150,12 +227,21 @@ final class LEDataInputStream extends InputStream {
 	 * four bytes of the input stream.
 	 */
 	public int readInt() throws IOException {
-		byte[] buf = new byte[4];
-		read(buf);
-		return ((buf[3] & 0xFF) << 24) |
-			((buf[2] & 0xFF) << 16) |
-			((buf[1] & 0xFF) << 8) |
-			(buf[0] & 0xFF);
+		return readInt(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Answer an integer comprised of the next four bytes
+	 * of the input stream in the given byte order.
+	 */
+	public int readInt(ByteOrder order) throws IOException {
+		if (!fill(4)) {
+			byte[] buf = new byte[4];
+			read(buf);
+			return ByteBuffer.wrap(buf).order(order).getInt();
+		}
+		int value = buffer.getInt();
+		return order == ByteOrder.LITTLE_ENDIAN ? value : Integer.reverseBytes(value);
 	}
 
 	/**
@@ -163,28 +249,57 @@ final class LEDataInputStream extends InputStream {
 	 * two bytes of the input stream.
 	 */
 	public short readShort() throws IOException {
-		byte[] buf = new byte[2];
-		read(buf);
-		return (short)(((buf[1] & 0xFF) << 8) | (buf[0] & 0xFF));
+		return readShort(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Answer a short comprised of the next two bytes
+	 * of the input stream in the given byte order.
+	 */
+	public short readShort(ByteOrder order) throws IOException {
+		if (!fill(2)) {
+			byte[] buf = new byte[2];
+			read(buf);
+			return ByteBuffer.wrap(buf).order(order).getShort();
+		}
+		short value = buffer.getShort();
+		return order == ByteOrder.LITTLE_ENDIAN ? value : Short.reverseBytes(value);
 	}
 
 	/**
 	 * Push back the entire content of the given buffer <code>b</code>.
 	 * <p>
 	 * The bytes are pushed so that they would be read back b[0], b[1], etc.
-	 * If the push back buffer cannot handle the bytes copied from <code>b</code>,
-	 * an IOException will be thrown and no byte will be pushed back.
+	 * When they are the bytes that were just read, which is always the case
+	 * for the decoders, the position of the buffer is moved back. Otherwise
+	 * they are copied in front of the remaining bytes.
 	 * </p>
 	 *
 	 * @param b the byte array containing bytes to push back into the stream
 	 *
-	 * @exception 	java.io.IOException if the pushback buffer is too small
+	 * @exception 	java.io.IOException if the stream is closed
 	 */
 	public void unread(byte[] b) throws IOException {
+		if (buffer == null) throw new IOException();
 		int length = b.length;
-		if (length > pos) throw new IOException();
-		position -= length;
-		pos -= length;
-		System.arraycopy(b, 0, buf, pos, length);
+		int position = buffer.position();
+		int first = position - length;
+		if (first >= Math.max(0, start)) {
+			boolean same = true;
+			for (int i = 0; i < length && same; i++) {
+				same = buffer.get(first + i) == b[i];
+			}
+			if (same) {
+				buffer.position(first);
+				return;
+			}
+		}
+		ByteBuffer window = ByteBuffer.allocate(Math.max(length + buffer.remaining(), in != null ? buffer.capacity() : 0)).order(ByteOrder.LITTLE_ENDIAN);
+		start = length - getPosition();
+		window.put(b);
+		window.put(buffer);
+		window.flip();
+		mark = -1;
+		buffer = window;
 	}
 }
@@ -11,16 +11,17 @@
 package org.eclipse.swt.internal.image;
 
 
+import java.util.*;
+
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 
 final class LZWCodec {
 	int bitsPerPixel, blockSize, blockIndex, currentByte, bitsLeft,
 		codeSize, clearCode, endCode, newCodes, topSlot, currentSlot,
-		imageWidth, imageHeight, imageX, imageY, pass, line, codeMask;
+		imageWidth, imageHeight, imageY, pass, line, codeMask;
 	byte[] block, lineArray;
-	int[] stack, suffix, prefix;
-	LZWNode[] nodeStack;
+	int[] stack, suffix, prefix, lengths, hashTable, lastChildren;
 	LEDataInputStream inputStream;
 	LEDataOutputStream outputStream;
 	ImageData image;
@@ -30,52 +31,113 @@ final class LZWCodec {
 		0x1, 0x3, 0x7, 0xF, 0x1F, 0x3F, 0x7F,
 		0xFF, 0x1FF, 0x3FF, 0x7FF, 0xFFF
 	};
+	/* The encoder dictionary is an open addressed hash table at most a quarter full */
+	static final int HASH_BITS = 14;
+	static final int HASH_SIZE = 1 << HASH_BITS;
 
 /**
  * Decode the input.
+ * <p>
+ * The string of every code is written straight into the line
+ * buffer from its last pixel back to its first one, using the
+ * length of the string kept for every code. Only strings that
+ * do not fit in the rest of the line go through the stack. The
+ * state is kept in locals, and the codes are read from the bits
+ * left over in <code>currentByte</code>.
+ * </p>
  */
 void decode() {
 	int code;
 	int oc = 0;
 	int fc = 0;
-	byte[] buf = new byte[imageWidth];
-	int stackIndex = 0;
+	byte[] buf = new byte[imageWidth], block = this.block;
+	int[] stack = this.stack, suffix = this.suffix, prefix = this.prefix, lengths = this.lengths;
+	int newCodes = this.newCodes, clearCode = this.clearCode, endCode = this.endCode;
+	int codeSize = this.codeSize, codeMask = this.codeMask, currentSlot = this.currentSlot, topSlot = this.topSlot;
+	int bits = currentByte, bitsLeft = this.bitsLeft, blockIndex = this.blockIndex, blockSize = this.blockSize;
+	int imageWidth = this.imageWidth;
 	int bufIndex = 0;
-	int c;
-	while ((c = nextCode()) != endCode) {
+	boolean cleared = false;
+	while (true) {
+		/* Read the next code, an empty block ends the data */
+		while (bitsLeft < codeSize) {
+			if (blockIndex >= blockSize) {
+				blockSize = readBlock();
+				blockIndex = 0;
+				if (blockSize == 0) break;
+			}
+			blockIndex++;
+			bits |= (block[blockIndex] & 0xFF) << bitsLeft;
+			bitsLeft += 8;
+		}
+		if (bitsLeft < codeSize) break;
+		int c = bits & codeMask;
+		bits >>>= codeSize;
+		bitsLeft -= codeSize;
+		if (c == endCode) break;
 		if (c == clearCode) {
 			codeSize = bitsPerPixel + 1;
 			codeMask = MASK_TABLE[bitsPerPixel];
 			currentSlot = newCodes;
 			topSlot = 1 << codeSize;
-			while ((c = nextCode()) == clearCode) {}
-			if (c != endCode) {
-				oc = fc = c;
-				buf[bufIndex] = (byte)c;
-				bufIndex++;
-				if (bufIndex == imageWidth) {
-					nextPutPixels(buf);
-					bufIndex = 0;
-				}
+			cleared = true;
+		} else if (cleared) {
+			/* The first code after a clear code only starts the next string */
+			cleared = false;
+			oc = fc = c;
+			buf[bufIndex] = (byte)c;
+			bufIndex++;
+			if (bufIndex == imageWidth) {
+				nextPutPixels(buf);
+				bufIndex = 0;
 			}
 		} else {
 			code = c;
+			/* A code that is not defined yet is the previous string followed by its first pixel */
+			int last = -1;
 			if (code >= currentSlot) {
 				code = oc;
-				stack[stackIndex] = fc;
-				stackIndex++;
+				last = fc;
 			}
-			while (code >= newCodes) {
-				stack[stackIndex] = suffix[code];
-				stackIndex++;
-				code = prefix[code];
+			int length = code < newCodes ? 1 : lengths[code];
+			if (last != -1) length++;
+			if (bufIndex + length <= imageWidth) {
+				int index = bufIndex + length - 1;
+				if (last != -1) buf[index--] = (byte)last;
+				/* The bound only matters for corrupt data that refers to codes of a previous table */
+				while (code >= newCodes && index > bufIndex) {
+					buf[index--] = (byte)suffix[code];
+					code = prefix[code];
+				}
+				buf[index] = (byte)code;
+				bufIndex += length;
+				if (bufIndex == imageWidth) {
+					nextPutPixels(buf);
+					bufIndex = 0;
+				}
+			} else {
+				int stackIndex = 0;
+				if (last != -1) stack[stackIndex++] = last;
+				while (code >= newCodes) {
+					stack[stackIndex++] = suffix[code];
+					code = prefix[code];
+				}
+				stack[stackIndex++] = code;
+				while (stackIndex > 0) {
+					stackIndex--;
+					buf[bufIndex] = (byte)stack[stackIndex];
+					bufIndex++;
+					if (bufIndex == imageWidth) {
+						nextPutPixels(buf);
+						bufIndex = 0;
+					}
+				}
 			}
-			stack[stackIndex] = code;
-			stackIndex++;
 			if (currentSlot < topSlot) {
 				fc = code;
 				suffix[currentSlot] = fc;
 				prefix[currentSlot] = oc;
+				lengths[currentSlot] = (oc < newCodes ? 1 : lengths[oc]) + 1;
 				currentSlot++;
 				oc = c;
 			}
@@ -86,15 +148,6 @@ void decode() {
 					topSlot = topSlot + topSlot;
 				}
 			}
-			while (stackIndex > 0) {
-				stackIndex--;
-				buf[bufIndex] = (byte)stack[stackIndex];
-				bufIndex++;
-				if (bufIndex == imageWidth) {
-					nextPutPixels(buf);
-					bufIndex = 0;
-				}
-			}
 		}
 	}
 	if (bufIndex != 0 && line < imageHeight) {
@@ -148,72 +201,69 @@ public void encode(LEDataOutputStream byteStream, ImageData image) {
 	encode();
 }
 /**
- * Encoding loop broken out to allow early return.
+ * Encoding loop, answering the prefix left to output.
+ * <p>
+ * The dictionary maps a prefix code followed by a pixel to the
+ * code of that string. It is kept in an open addressed hash table
+ * of <code>(prefix &lt;&lt; 8) | pixel</code> keys, each packed with
+ * its 12 bit code in one int. New codes are never 0, so 0 marks
+ * the empty slots. The last string found or added for every prefix
+ * is also kept as <code>(pixel &lt;&lt; 12) | code</code>, which
+ * finds runs of the same strings without hashing.
+ * </p>
  */
 int encodeLoop() {
-	int pixel = nextPixel();
-	boolean found;
-	LZWNode node;
-	while (true) {
-		int currentPrefix = pixel;
-		node = nodeStack[currentPrefix];
-		found = true;
-		pixel = nextPixel();
-		if (pixel < 0)
-			return currentPrefix;
-		while (found && (node.children != null)) {
-			node = node.children;
-			while (found && (node.suffix != pixel)) {
-				if (pixel < node.suffix) {
-					if (node.left == null) {
-						node.left = new LZWNode();
-						found = false;
-					}
-					node = node.left;
-				} else {
-					if (node.right == null) {
-						node.right = new LZWNode();
-						found = false;
-					}
-					node = node.right;
-				}
+	int[] hashTable = this.hashTable, lastChildren = this.lastChildren;
+	byte[] lineArray = this.lineArray;
+	int currentPrefix = -1;
+	for (imageY = 0; imageY < imageHeight; imageY++) {
+		nextPixels(lineArray, imageWidth);
+		for (int x = 0; x < imageWidth; x++) {
+			int pixel = lineArray[x] & 0xFF;
+			if (currentPrefix == -1) {
+				currentPrefix = pixel;
+				continue;
 			}
-			if (found) {
-				currentPrefix = node.code;
-				pixel = nextPixel();
-				if (pixel < 0)
-					return currentPrefix;
+			int child = lastChildren[currentPrefix];
+			if ((child >>> 12) == pixel && child != 0) {
+				currentPrefix = child & 0xFFF;
+				continue;
 			}
-		}
-		if (found) {
-			node.children = new LZWNode();
-			node = node.children;
-		}
-		node.children = null;
-		node.left = null;
-		node.right = null;
-		node.code = currentSlot;
-		node.prefix = currentPrefix;
-		node.suffix = pixel;
-		nextPutCode(currentPrefix);
-		currentSlot++;
-		// Off by one?
-		if (currentSlot < 4096) {
-			if (currentSlot > topSlot) {
-				codeSize++;
+			int key = (currentPrefix << 8) | pixel;
+			int slot = (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+			int entry;
+			while ((entry = hashTable[slot]) != 0 && (entry >>> 12) != key) {
+				slot = (slot + 1) & (HASH_SIZE - 1);
+			}
+			if (entry != 0) {
+				lastChildren[currentPrefix] = (pixel << 12) | (entry & 0xFFF);
+				currentPrefix = entry & 0xFFF;
+				continue;
+			}
+			hashTable[slot] = (key << 12) | currentSlot;
+			lastChildren[currentPrefix] = (pixel << 12) | currentSlot;
+			nextPutCode(currentPrefix);
+			currentPrefix = pixel;
+			currentSlot++;
+			// Off by one?
+			if (currentSlot < 4096) {
+				if (currentSlot > topSlot) {
+					codeSize++;
+					codeMask = MASK_TABLE[codeSize - 1];
+					topSlot *= 2;
+				}
+			} else {
+				nextPutCode(clearCode);
+				Arrays.fill(hashTable, 0);
+				Arrays.fill(lastChildren, 0);
+				codeSize = bitsPerPixel + 1;
 				codeMask = MASK_TABLE[codeSize - 1];
-				topSlot *= 2;
+				currentSlot = newCodes;
+				topSlot = 1 << codeSize;
 			}
-		} else {
-			nextPutCode(clearCode);
-			for (int i = 0; i < nodeStack.length; i++)
-				nodeStack[i].children = null;
-			codeSize = bitsPerPixel + 1;
-			codeMask = MASK_TABLE[codeSize - 1];
-			currentSlot = newCodes;
-			topSlot = 1 << codeSize;
 		}
 	}
+	return currentPrefix;
 }
 /**
  * Initialize the receiver for decoding the given
@@ -227,13 +277,14 @@ void initializeForDecoding() {
 	clearCode = 1 << bitsPerPixel;
 	endCode = clearCode + 1;
 	newCodes = currentSlot = endCode + 1;
-	currentByte = -1;
+	currentByte = 0;
 	blockSize = bitsLeft = 0;
 	blockIndex = 0;
 	codeMask = MASK_TABLE[codeSize - 1];
 	stack = new int[4096];
 	suffix = new int[4096];
 	prefix = new int[4096];
+	lengths = new int[4096];
 	block = new byte[256];
 	imageWidth = image.width;
 	imageHeight = image.height;
@@ -256,71 +307,11 @@ void initializeForEncoding() {
 	blockSize = 255;
 	block = new byte[blockSize];
 	block[0] = (byte)(blockSize - 1);
-	nodeStack = new LZWNode[1 << bitsPerPixel];
-	for (int i = 0; i < nodeStack.length; i++) {
-		LZWNode node = new LZWNode();
-		node.code = i + 1;
-		node.prefix = -1;
-		node.suffix = i + 1;
-		nodeStack[i] = node;
-	}
+	hashTable = new int[HASH_SIZE];
+	lastChildren = new int[4096];
 	imageWidth = image.width;
 	imageHeight = image.height;
-	imageY = -1;
 	lineArray = new byte[imageWidth];
-	imageX = imageWidth + 1; // Force a read
-}
-/**
- * Answer the next code from the input byte array.
- */
-int nextCode() {
-	int code;
-	if (bitsLeft == 0) {
-		if (blockIndex >= blockSize) {
-			blockSize = readBlock();
-			blockIndex = 0;
-			if (blockSize == 0) return endCode;
-		}
-		blockIndex++;
-		currentByte = block[blockIndex] & 0xFF;
-		bitsLeft = 8;
-		code = currentByte;
-	} else {
-		int shift = bitsLeft - 8;
-		if (shift < 0)
-			code = currentByte >> (0 - shift);
-		else
-			code = currentByte << shift;
-	}
-	while (codeSize > bitsLeft) {
-		if (blockIndex >= blockSize) {
-			blockSize = readBlock();
-			blockIndex = 0;
-			if (blockSize == 0) return endCode;
-		}
-		blockIndex++;
-		currentByte = block[blockIndex] & 0xFF;
-		code += currentByte << bitsLeft;
-		bitsLeft += 8;
-	}
-	bitsLeft -= codeSize;
-	return code & codeMask;
-}
-/**
- * Answer the next pixel to encode in the image
- */
-int nextPixel() {
-	imageX++;
-	if (imageX > imageWidth) {
-		imageY++;
-		if (imageY >= imageHeight) {
-			return -1;
-		} else {
-			nextPixels(lineArray, imageWidth);
-		}
-		imageX = 1;
-	}
-	return this.lineArray[imageX - 1] & 0xFF;
 }
 /**
  * Copy a row of pixel values from the image.
@@ -390,9 +381,7 @@ void nextPutCode(int aCode) {
 void nextPutPixels(byte[] buf) {
 	if (image.depth == 8) {
 		// Slight optimization for depth = 8.
-		int start = line * image.bytesPerLine;
-		for (int i = 0; i < imageWidth; i++)
-			image.data[start + i] = buf[i];
+		System.arraycopy(buf, 0, image.data, line * image.bytesPerLine, imageWidth);
 	} else {
 		image.setPixels(0, line, imageWidth, buf, 0);
 	}
@@ -437,7 +426,11 @@ void nextPutPixels(byte[] buf) {
 void copyRow(byte[] buf, int copies) {
 	for (int i = 1; i <= copies; i++) {
 		if (line + i < imageHeight) {
-			image.setPixels(0, line + i, imageWidth, buf, 0);
+			if (image.depth == 8) {
+				System.arraycopy(buf, 0, image.data, (line + i) * image.bytesPerLine, imageWidth);
+			} else {
+				image.setPixels(0, line + i, imageWidth, buf, 0);
+			}
 		}
 	}
 }
@@ -14,6 +14,7 @@ package org.eclipse.swt.internal.image;
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 import java.io.*;
+import java.nio.*;
 
 public final class OS2BMPFileFormat extends FileFormat {
 	static final int BMPFileHeaderSize = 14;
@@ -21,16 +22,10 @@ public final class OS2BMPFileFormat extends FileFormat {
 	int width, height, bitCount;
 
 @Override
-boolean isFileFormat(LEDataInputStream stream) {
-	try {
-		byte[] header = new byte[18];
-		stream.read(header);
-		stream.unread(header);
-		int infoHeaderSize = (header[14] & 0xFF) | ((header[15] & 0xFF) << 8) | ((header[16] & 0xFF) << 16) | ((header[17] & 0xFF) << 24);
-		return header[0] == 0x42 && header[1] == 0x4D && infoHeaderSize == BMPHeaderFixedSize;
-	} catch (Exception e) {
-		return false;
-	}
+boolean isFileFormat(byte[] header) {
+	if (header.length < 18) return false;
+	int infoHeaderSize = (header[14] & 0xFF) | ((header[15] & 0xFF) << 8) | ((header[16] & 0xFF) << 16) | ((header[17] & 0xFF) << 24);
+	return header[0] == 0x42 && header[1] == 0x4D && infoHeaderSize == BMPHeaderFixedSize;
 }
 byte[] loadData(byte[] infoHeader) {
 	int stride = (width * bitCount + 7) / 8;
@@ -66,6 +61,22 @@ int[] loadFileHeader() {
 	return header;
 }
 @Override
+ImageInfo probeFromByteStream() {
+	loadFileHeader();
+	byte[] infoHeader = new byte[BMPHeaderFixedSize];
+	try {
+		if (inputStream.read(infoHeader) != infoHeader.length)
+			SWT.error(SWT.ERROR_INVALID_IMAGE);
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+	ByteBuffer header = ByteBuffer.wrap(infoHeader).order(ByteOrder.LITTLE_ENDIAN);
+	width = header.getShort(4) & 0xFFFF;
+	height = header.getShort(6) & 0xFFFF;
+	bitCount = header.getShort(10) & 0xFFFF;
+	return ImageInfo.internal_new(SWT.IMAGE_OS2_BMP, width, height, bitCount, 1, false);
+}
+@Override
 ImageData[] loadFromByteStream() {
 	int[] fileHeader = loadFileHeader();
 	byte[] infoHeader = new byte[BMPHeaderFixedSize];
@@ -74,9 +85,10 @@ ImageData[] loadFromByteStream() {
 	} catch (Exception e) {
 		SWT.error(SWT.ERROR_IO, e);
 	}
-	width = (infoHeader[4] & 0xFF) | ((infoHeader[5] & 0xFF) << 8);
-	height = (infoHeader[6] & 0xFF) | ((infoHeader[7] & 0xFF) << 8);
-	bitCount = (infoHeader[10] & 0xFF) | ((infoHeader[11] & 0xFF) << 8);
+	ByteBuffer header = ByteBuffer.wrap(infoHeader).order(ByteOrder.LITTLE_ENDIAN);
+	width = header.getShort(4) & 0xFFFF;
+	height = header.getShort(6) & 0xFFFF;
+	bitCount = header.getShort(10) & 0xFFFF;
 	PaletteData palette = loadPalette(infoHeader);
 	if (inputStream.getPosition() < fileHeader[4]) {
 		// Seek to the specified offset
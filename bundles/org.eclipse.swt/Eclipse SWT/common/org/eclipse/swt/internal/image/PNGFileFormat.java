@@ -23,6 +23,9 @@ public final class PNGFileFormat extends FileFormat {
 	PngIhdrChunk headerChunk;
 	PngPlteChunk paletteChunk;
 	ImageData imageData;
+	PaletteData palette;
+	int transparentPixel = -1;
+	boolean loadedDirect, loadedRows;
 	byte[] data;
 	byte[] alphaPalette;
 	byte headerByte1;
@@ -48,41 +51,87 @@ ImageData[] loadFromByteStream() {
 		headerChunk = chunkReader.getIhdrChunk();
 		int width = headerChunk.getWidth(), height = headerChunk.getHeight();
 		if (width <= 0 || height <= 0) SWT.error(SWT.ERROR_INVALID_IMAGE);
-		int imageSize = getAlignedBytesPerRow() * height;
-		data = new byte[imageSize];
-		imageData = ImageData.internal_new(
-			width,
-			height,
-			headerChunk.getSwtBitsPerPixel(),
-			new PaletteData(0, 0, 0),
-			4,
-			data,
-			0,
-			null,
-			null,
-			-1,
-			-1,
-			SWT.IMAGE_PNG,
-			0,
-			0,
-			0,
-			0);
-
-		if (headerChunk.usesDirectColor()) {
-			imageData.palette = headerChunk.getPaletteData();
-		}
+		palette = headerChunk.usesDirectColor() ? headerChunk.getPaletteData() : new PaletteData(0, 0, 0);
+		// Allocating the image is deferred when it might be decoded directly
+		// or a band at a time.
+		if (directTarget == null && rowConsumer == null) createImageData();
 
 		// Read and process chunks until the IEND chunk is encountered.
 		while (chunkReader.hasMoreChunks()) {
 			readNextChunk(chunkReader);
 		}
 
+		if (loadedDirect || loadedRows) return null;
+		if (imageData == null) createImageData();
 		return new ImageData[] {imageData};
 	} catch (IOException e) {
 		SWT.error(SWT.ERROR_INVALID_IMAGE);
 		return null;
 	}
 }
+/**
+ * Describe the PNG image from its IHDR chunk.
+ */
+@Override
+ImageInfo probeFromByteStream() {
+	try {
+		readSignature();
+		PngChunkReader chunkReader = new PngChunkReader(inputStream);
+		headerChunk = chunkReader.getIhdrChunk();
+		int width = headerChunk.getWidth(), height = headerChunk.getHeight();
+		if (width <= 0 || height <= 0) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		int colorType = headerChunk.getColorType();
+		boolean hasAlpha = colorType == PngIhdrChunk.COLOR_TYPE_RGB_WITH_ALPHA || colorType == PngIhdrChunk.COLOR_TYPE_GRAYSCALE_WITH_ALPHA;
+		return ImageInfo.internal_new(SWT.IMAGE_PNG, width, height, headerChunk.getSwtBitsPerPixel(), 1, hasAlpha);
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_INVALID_IMAGE);
+		return null;
+	}
+}
+/**
+ * Allocate the image data the pixels are decoded into.
+ */
+void createImageData() {
+	createImageData(headerChunk.getHeight());
+}
+/**
+ * Allocate image data for the given number of rows, reusing
+ * the pixel buffer when it already has the right size.
+ */
+void createImageData(int height) {
+	int imageSize = getAlignedBytesPerRow() * height;
+	if (data == null || data.length != imageSize) data = new byte[imageSize];
+	imageData = ImageData.internal_new(
+		headerChunk.getWidth(),
+		height,
+		headerChunk.getSwtBitsPerPixel(),
+		palette,
+		4,
+		data,
+		0,
+		null,
+		null,
+		-1,
+		transparentPixel,
+		SWT.IMAGE_PNG,
+		0,
+		0,
+		0,
+		0);
+}
+/**
+ * Answer whether the pixel data can be decoded straight into
+ * the direct target. This is the case for non-interlaced 8-bit
+ * RGB and RGBA images without a transparency chunk.
+ */
+boolean canLoadDirect() {
+	if (directTarget == null || imageData != null) return false;
+	if (headerChunk.getBitDepth() != 8) return false;
+	if (headerChunk.getInterlaceMethod() != PngIhdrChunk.INTERLACE_METHOD_NONE) return false;
+	if (transparentPixel != -1 || alphaPalette != null) return false;
+	int colorType = headerChunk.getColorType();
+	return colorType == PngIhdrChunk.COLOR_TYPE_RGB || colorType == PngIhdrChunk.COLOR_TYPE_RGB_WITH_ALPHA;
+}
 /**
  * Read and handle the next chunk of data from the
  * PNG file.
@@ -95,7 +144,8 @@ void readNextChunk(PngChunkReader chunkReader) throws IOException {
 		case PngChunk.CHUNK_PLTE:
 			if (!headerChunk.usesDirectColor()) {
 				paletteChunk = (PngPlteChunk) chunk;
-				imageData.palette = paletteChunk.getPaletteData();
+				palette = paletteChunk.getPaletteData();
+				if (imageData != null) imageData.palette = palette;
 			}
 			break;
 		case PngChunk.CHUNK_tRNS:
@@ -103,8 +153,9 @@ void readNextChunk(PngChunkReader chunkReader) throws IOException {
 			if (trnsChunk.getTransparencyType(headerChunk) ==
 				PngTrnsChunk.TRANSPARENCY_TYPE_PIXEL)
 			{
-				imageData.transparentPixel =
+				transparentPixel =
 					trnsChunk.getSwtTransparentPixel(headerChunk);
+				if (imageData != null) imageData.transparentPixel = transparentPixel;
 			} else {
 				alphaPalette = trnsChunk.getAlphaValues(headerChunk, paletteChunk);
 				int transparentCount = 0, transparentPixel = -1;
@@ -118,7 +169,8 @@ void readNextChunk(PngChunkReader chunkReader) throws IOException {
 					alphaPalette = null;
 				} else if (transparentCount == 1 && alphaPalette[transparentPixel] == 0) {
 					alphaPalette = null;
-					imageData.transparentPixel = transparentPixel;
+					this.transparentPixel = transparentPixel;
+					if (imageData != null) imageData.transparentPixel = transparentPixel;
 				}
 			}
 			break;
@@ -133,6 +185,12 @@ void readNextChunk(PngChunkReader chunkReader) throws IOException {
 				// Read in the pixel data for the image. This should
 				// go through all the image's IDAT chunks.
 				PngIdatChunk dataChunk = (PngIdatChunk) chunk;
+				if (canLoadDirect()) {
+					int colorType = headerChunk.getColorType();
+					loadedDirect = directTarget.begin(headerChunk.getWidth(), headerChunk.getHeight(), colorType == PngIhdrChunk.COLOR_TYPE_RGB_WITH_ALPHA);
+				}
+				loadedRows = rowConsumer != null && headerChunk.getInterlaceMethod() == PngIhdrChunk.INTERLACE_METHOD_NONE;
+				if (!loadedDirect && !loadedRows && imageData == null) createImageData();
 				readPixelData(dataChunk, chunkReader);
 			}
 			break;
@@ -149,23 +207,17 @@ void unloadIntoByteStream(ImageLoader loader) {
 	encoder.encode(outputStream);
 }
 @Override
-boolean isFileFormat(LEDataInputStream stream) {
-	try {
-		byte[] signature = new byte[SIGNATURE_LENGTH];
-		stream.read(signature);
-		stream.unread(signature);
-		if ((signature[0] & 0xFF) != 137) return false; //137
-		if ((signature[1] & 0xFF) != 80) return false; //P
-		if ((signature[2] & 0xFF) != 78) return false; //N
-		if ((signature[3] & 0xFF) != 71) return false; //G
-		if ((signature[4] & 0xFF) != 13) return false; //<RETURN>
-		if ((signature[5] & 0xFF) != 10) return false; //<LINEFEED>
-		if ((signature[6] & 0xFF) != 26) return false; //<CTRL/Z>
-		if ((signature[7] & 0xFF) != 10) return false; //<LINEFEED>
-		return true;
-	} catch (Exception e) {
-		return false;
-	}
+boolean isFileFormat(byte[] signature) {
+	if (signature.length < SIGNATURE_LENGTH) return false;
+	if ((signature[0] & 0xFF) != 137) return false; //137
+	if ((signature[1] & 0xFF) != 80) return false; //P
+	if ((signature[2] & 0xFF) != 78) return false; //N
+	if ((signature[3] & 0xFF) != 71) return false; //G
+	if ((signature[4] & 0xFF) != 13) return false; //<RETURN>
+	if ((signature[5] & 0xFF) != 10) return false; //<LINEFEED>
+	if ((signature[6] & 0xFF) != 26) return false; //<CTRL/Z>
+	if ((signature[7] & 0xFF) != 10) return false; //<LINEFEED>
+	return true;
 }
 /**
  * SWT does not support 16-bit depths. If this image uses
@@ -316,7 +368,11 @@ void readPixelData(PngIdatChunk chunk, PngChunkReader chunkReader) throws IOExce
 		stream = new PngDecodingDataStream(stream);
 	}
 	int interlaceMethod = headerChunk.getInterlaceMethod();
-	if (interlaceMethod == PngIhdrChunk.INTERLACE_METHOD_NONE) {
+	if (loadedDirect) {
+		readDirectImage(stream);
+	} else if (loadedRows) {
+		readRowBands(stream);
+	} else if (interlaceMethod == PngIhdrChunk.INTERLACE_METHOD_NONE) {
 		readNonInterlacedImage(stream);
 	} else {
 		readInterlacedImage(stream);
@@ -490,6 +546,86 @@ void readNonInterlacedImage(InputStream inputStream) throws IOException {
 	}
 	setImageDataValues(data, imageData);
 }
+/**
+ * Read the pixel data for a non-interlaced image from the
+ * data stream a band of rows at a time, and pass each band
+ * to the row consumer.
+ */
+void readRowBands(InputStream inputStream) throws IOException {
+	int alignedBytesPerRow = getAlignedBytesPerRow();
+	int bytesPerRow = getBytesPerRow();
+	byte[] row1 = new byte[bytesPerRow];
+	byte[] row2 = new byte[bytesPerRow];
+	byte[] currentRow = row1;
+	byte[] lastRow = row2;
+	int height = headerChunk.getHeight();
+	int bandHeight = Math.min(height, getBandHeight(alignedBytesPerRow));
+	for (int y = 0; y < height; y += bandHeight) {
+		int rows = Math.min(bandHeight, height - y);
+		createImageData(rows);
+		int dataOffset = 0;
+		for (int row = 0; row < rows; row++) {
+			byte filterType = (byte)inputStream.read();
+			int read = 0;
+			while (read != bytesPerRow) {
+				read += inputStream.read(currentRow, read, bytesPerRow - read);
+			}
+			filterRow(currentRow, lastRow, filterType);
+			System.arraycopy(currentRow, 0, data, dataOffset, bytesPerRow);
+			dataOffset += alignedBytesPerRow;
+			currentRow = (currentRow == row1) ? row2 : row1;
+			lastRow = (lastRow == row1) ? row2 : row1;
+		}
+		setImageDataValues(data, imageData);
+		rowsLoaded(imageData, y, rows);
+	}
+}
+/**
+ * Read the pixel data for a non-interlaced 8-bit RGB or RGBA
+ * image from the data stream and hand each row to the direct
+ * target as premultiplied ARGB.
+ */
+void readDirectImage(InputStream inputStream) throws IOException {
+	int width = headerChunk.getWidth();
+	int height = headerChunk.getHeight();
+	boolean hasAlpha = headerChunk.getColorType() == PngIhdrChunk.COLOR_TYPE_RGB_WITH_ALPHA;
+	int bytesPerRow = getBytesPerRow();
+	byte[] row1 = new byte[bytesPerRow];
+	byte[] row2 = new byte[bytesPerRow];
+	byte[] currentRow = row1;
+	byte[] lastRow = row2;
+	int[] pixels = new int[width];
+	byte[] alphas = hasAlpha ? new byte[width] : null;
+	for (int row = 0; row < height; row++) {
+		byte filterType = (byte)inputStream.read();
+		int read = 0;
+		while (read != bytesPerRow) {
+			read += inputStream.read(currentRow, read, bytesPerRow - read);
+		}
+		filterRow(currentRow, lastRow, filterType);
+		if (hasAlpha) {
+			for (int x = 0, offset = 0; x < width; x++, offset += 4) {
+				int a = currentRow[offset + 3] & 0xFF;
+				/* pre-multiplied alpha */
+				int r = ((currentRow[offset] & 0xFF) * a) + 128;
+				r = (r + (r >> 8)) >> 8;
+				int g = ((currentRow[offset + 1] & 0xFF) * a) + 128;
+				g = (g + (g >> 8)) >> 8;
+				int b = ((currentRow[offset + 2] & 0xFF) * a) + 128;
+				b = (b + (b >> 8)) >> 8;
+				pixels[x] = (a << 24) | (r << 16) | (g << 8) | b;
+				alphas[x] = (byte)a;
+			}
+		} else {
+			for (int x = 0, offset = 0; x < width; x++, offset += 3) {
+				pixels[x] = 0xFF000000 | ((currentRow[offset] & 0xFF) << 16) | ((currentRow[offset + 1] & 0xFF) << 8) | (currentRow[offset + 2] & 0xFF);
+			}
+		}
+		directTarget.setRow(row, pixels, alphas);
+		currentRow = (currentRow == row1) ? row2 : row1;
+		lastRow = (lastRow == row1) ? row2 : row1;
+	}
+}
 /**
  * SWT does not support 16-bit depth color formats.
  * Convert the 16-bit data to 8-bit data.
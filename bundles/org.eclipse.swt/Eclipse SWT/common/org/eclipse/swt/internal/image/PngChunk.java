@@ -13,6 +13,7 @@ package org.eclipse.swt.internal.image;
 
 import org.eclipse.swt.*;
 import java.io.*;
+import java.nio.*;
 
 class PngChunk extends Object {
 	byte[] reference;
@@ -292,19 +293,17 @@ int getChunkType() {
 static PngChunk readNextFromStream(LEDataInputStream stream) {
 	try {
 		int headerLength = LENGTH_FIELD_LENGTH + TYPE_FIELD_LENGTH;
-		byte[] headerBytes = new byte[headerLength];
-		int result = stream.read(headerBytes, 0, headerLength);
-		stream.unread(headerBytes);
-		if (result != headerLength) return null;
+		if (!stream.fill(headerLength)) return null;
 
-		PngChunk tempChunk = new PngChunk(headerBytes);
-
-		int chunkLength = tempChunk.getSize();
+		/* Read the length, then the whole chunk including its header */
+		stream.mark(headerLength);
+		int chunkLength = stream.readInt(ByteOrder.BIG_ENDIAN) + MIN_LENGTH;
+		stream.reset();
 		byte[] chunk = new byte[chunkLength];
-		result = stream.read(chunk, 0, chunkLength);
+		int result = stream.read(chunk, 0, chunkLength);
 		if (result != chunkLength) return null;
 
-		switch (tempChunk.getChunkType()) {
+		switch (new PngChunk(chunk).getChunkType()) {
 			case CHUNK_IHDR:
 				return new PngIhdrChunk(chunk);
 			case CHUNK_PLTE:
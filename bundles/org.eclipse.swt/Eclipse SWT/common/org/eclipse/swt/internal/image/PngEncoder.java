@@ -11,6 +11,8 @@
 package org.eclipse.swt.internal.image;
 
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 
 import org.eclipse.swt.*;
@@ -30,6 +32,16 @@ final class PngEncoder extends Object {
 	static final int BEST_COMPRESSION = 9;
 	static final int DEFAULT_COMPRESSION = -1;
 
+	static final int FILTER_NONE = 0;
+	static final int FILTER_SUB = 1;
+	static final int FILTER_UP = 2;
+	static final int FILTER_AVERAGE = 3;
+	static final int FILTER_PAETH = 4;
+
+	/* Uncompressed size of the row blocks deflated in parallel */
+	static final int BLOCK_SIZE = 256 * 1024;
+	static final int DICTIONARY_SIZE = 32 * 1024;
+
 	ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
 	PngChunk chunk;
 
@@ -37,7 +49,7 @@ final class PngEncoder extends Object {
 	ImageData data;
 	int transparencyType;
 
-	int width, height, bitDepth, colorType;
+	int width, height, bitDepth, colorType, bytesPerPixel;
 
 	int compressionMethod = 0;
 	int filterMethod = 0;
@@ -67,6 +79,8 @@ public PngEncoder(ImageLoader loader) {
 
 	if (!(colorType == 2 || colorType == 3 || colorType == 6)) SWT.error(SWT.ERROR_INVALID_IMAGE);
 
+	this.bytesPerPixel = colorType == 3 ? 1 : colorType == 6 ? 4 : 3;
+
 }
 
 void writeShort(ByteArrayOutputStream baos, int theShort) {
@@ -232,106 +246,325 @@ void writeTransparency() {
 
 void writeImageData() throws IOException {
 
-	ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
-	OutputStream os = null;
+	int level;
 	switch (loader.compression) {
 	case 0:
-		os = new DeflaterOutputStream(baos, new Deflater(NO_COMPRESSION));
+		level = NO_COMPRESSION;
 		break;
 	case 1:
-		os = new DeflaterOutputStream(baos, new Deflater(BEST_SPEED));
+		level = BEST_SPEED;
 		break;
 	case 3:
-		os = new DeflaterOutputStream(baos, new Deflater(BEST_COMPRESSION));
+		level = BEST_COMPRESSION;
 		break;
 	default:
-		os = new DeflaterOutputStream(baos, new Deflater(DEFAULT_COMPRESSION));
+		level = DEFAULT_COMPRESSION;
 		break;
 	}
 
-	if (colorType == 3) {
+	int rowLength = width * bytesPerPixel + 1;
+	int blockRows = Math.max(1, BLOCK_SIZE / rowLength);
+	if (height > blockRows && ForkJoinPool.getCommonPoolParallelism() > 1) {
+		writeChunk(TAG_IDAT, deflateParallel(level, blockRows));
+		return;
+	}
+
+	ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+	OutputStream os = new DeflaterOutputStream(baos, new Deflater(level));
+
+	writeRows(os, 0, 0, height);
+
+	os.flush();
+	os.close();
+
+	byte[] compressed = baos.toByteArray();
+	if (os == baos) {
+		/* Use PngDeflater for J2ME. */
+		PngDeflater deflater = new PngDeflater();
+		compressed = deflater.deflate(compressed);
+	}
+
+	writeChunk(TAG_IDAT, compressed);
+
+}
 
-		byte[] lineData = new byte[width];
+/*
+ * Writes the filtered scanlines from startY up to, but not including, endY.
+ * The rows from filterY are filtered against their predecessors so that a
+ * block can be started anywhere in the image.
+ */
+void writeRows(OutputStream os, int filterY, int startY, int endY) throws IOException {
 
-		for (int y = 0; y < height; y++) {
+	int rowBytes = width * bytesPerPixel;
+	byte[] previous = new byte[rowBytes];
+	byte[] current = new byte[rowBytes];
+	byte[] filtered = new byte[rowBytes + 1];
+	byte[] temp;
 
-			int filter = 0;
-			os.write(filter);
+	int[] lineData = new int[width];
+	byte[] alphaData = colorType == 6 ? new byte[width] : null;
 
-			data.getPixels(0, y, width, lineData, 0);
+	if (startY > 0) {
+		getRow(startY - 1, previous, lineData, alphaData);
+	}
+
+	for (int y = startY; y < endY; y++) {
 
-			os.write(lineData);
+		getRow(y, current, lineData, alphaData);
 
+		if (y >= filterY) {
+			filterRow(current, previous, filtered);
+			os.write(filtered);
 		}
 
+		temp = previous;
+		previous = current;
+		current = temp;
+
 	}
 
-	else {
+}
+
+void getRow(int y, byte[] lineBytes, int[] lineData, byte[] alphaData) {
+
+	if (colorType == 3) {
+
+		data.getPixels(0, y, width, lineBytes, 0);
+		return;
+
+	}
+
+	int redMask = data.palette.redMask;
+	int redShift = data.palette.redShift;
+	int greenMask = data.palette.greenMask;
+	int greenShift = data.palette.greenShift;
+	int blueShift = data.palette.blueShift;
+	int blueMask = data.palette.blueMask;
+
+	data.getPixels(0, y, width, lineData, 0);
+
+	if (colorType == 6) {
+		data.getAlphas(0, y, width, alphaData, 0);
+	}
+
+	int offset = 0;
+	for (int x = 0; x < lineData.length; x++) {
+
+		int pixel = lineData[x];
+
+		int r = pixel & redMask;
+		lineBytes[offset++] = (byte) ((redShift < 0) ? r >>> -redShift
+				: r << redShift);
+		int g = pixel & greenMask;
+		lineBytes[offset++] = (byte) ((greenShift < 0) ? g >>> -greenShift
+				: g << greenShift);
+		int b = pixel & blueMask;
+		lineBytes[offset++] = (byte) ((blueShift < 0) ? b >>> -blueShift
+				: b << blueShift);
 
-		int[] lineData = new int[width];
-		byte[] alphaData = null;
 		if (colorType == 6) {
-			alphaData = new byte[width];
+			lineBytes[offset++] = alphaData[x];
 		}
 
-		int redMask = data.palette.redMask;
-		int redShift = data.palette.redShift;
-		int greenMask = data.palette.greenMask;
-		int greenShift = data.palette.greenShift;
-		int blueShift = data.palette.blueShift;
-		int blueMask = data.palette.blueMask;
+	}
 
-		byte[] lineBytes = new byte[width * (colorType == 6 ? 4 : 3)];
+}
 
-		for (int y = 0; y < height; y++) {
+/*
+ * Filters a scanline into the given buffer, preceded by its filter type.
+ * Palette images and uncompressed output use no filtering; otherwise the
+ * filter giving the smallest sum of absolute differences is chosen.
+ */
+void filterRow(byte[] current, byte[] previous, byte[] filtered) {
 
-			int filter = 0;
-			os.write(filter);
+	int length = current.length;
 
-			data.getPixels(0, y, width, lineData, 0);
+	int filter = FILTER_NONE;
 
-			if (colorType == 6) {
-				data.getAlphas(0, y, width, alphaData, 0);
-			}
+	if (colorType != 3 && loader.compression != 0) {
 
-			int offset = 0;
-			for (int x = 0; x < lineData.length; x++) {
+		long sumNone = 0, sumSub = 0, sumUp = 0, sumAverage = 0, sumPaeth = 0;
 
-				int pixel = lineData[x];
+		for (int i = 0; i < length; i++) {
 
-				int r = pixel & redMask;
-				lineBytes[offset++] = (byte) ((redShift < 0) ? r >>> -redShift
-						: r << redShift);
-				int g = pixel & greenMask;
-				lineBytes[offset++] = (byte) ((greenShift < 0) ? g >>> -greenShift
-						: g << greenShift);
-				int b = pixel & blueMask;
-				lineBytes[offset++] = (byte) ((blueShift < 0) ? b >>> -blueShift
-						: b << blueShift);
+			int x = current[i] & 0xff;
+			int a = i >= bytesPerPixel ? current[i - bytesPerPixel] & 0xff : 0;
+			int b = previous[i] & 0xff;
+			int c = i >= bytesPerPixel ? previous[i - bytesPerPixel] & 0xff : 0;
 
-				if (colorType == 6) {
-					lineBytes[offset++] = alphaData[x];
-				}
+			sumNone += Math.abs((byte) x);
+			sumSub += Math.abs((byte) (x - a));
+			sumUp += Math.abs((byte) (x - b));
+			sumAverage += Math.abs((byte) (x - ((a + b) >> 1)));
+			sumPaeth += Math.abs((byte) (x - paethPredictor(a, b, c)));
+
+		}
+
+		long min = sumNone;
+		if (sumSub < min) { min = sumSub; filter = FILTER_SUB; }
+		if (sumUp < min) { min = sumUp; filter = FILTER_UP; }
+		if (sumAverage < min) { min = sumAverage; filter = FILTER_AVERAGE; }
+		if (sumPaeth < min) { min = sumPaeth; filter = FILTER_PAETH; }
+
+	}
+
+	filtered[0] = (byte) filter;
+
+	switch (filter) {
 
+		case FILTER_NONE:
+			System.arraycopy(current, 0, filtered, 1, length);
+			break;
+
+		case FILTER_SUB:
+			for (int i = 0; i < length; i++) {
+				int a = i >= bytesPerPixel ? current[i - bytesPerPixel] : 0;
+				filtered[i + 1] = (byte) (current[i] - a);
 			}
+			break;
 
-			os.write(lineBytes);
+		case FILTER_UP:
+			for (int i = 0; i < length; i++) {
+				filtered[i + 1] = (byte) (current[i] - previous[i]);
+			}
+			break;
 
-		}
+		case FILTER_AVERAGE:
+			for (int i = 0; i < length; i++) {
+				int a = i >= bytesPerPixel ? current[i - bytesPerPixel] & 0xff : 0;
+				int b = previous[i] & 0xff;
+				filtered[i + 1] = (byte) (current[i] - ((a + b) >> 1));
+			}
+			break;
+
+		case FILTER_PAETH:
+			for (int i = 0; i < length; i++) {
+				int a = i >= bytesPerPixel ? current[i - bytesPerPixel] & 0xff : 0;
+				int b = previous[i] & 0xff;
+				int c = i >= bytesPerPixel ? previous[i - bytesPerPixel] & 0xff : 0;
+				filtered[i + 1] = (byte) (current[i] - paethPredictor(a, b, c));
+			}
+			break;
 
 	}
 
-	os.flush();
-	os.close();
+}
 
-	byte[] compressed = baos.toByteArray();
-	if (os == baos) {
-		/* Use PngDeflater for J2ME. */
-		PngDeflater deflater = new PngDeflater();
-		compressed = deflater.deflate(compressed);
+static int paethPredictor(int a, int b, int c) {
+
+	int p = a + b - c;
+	int pa = Math.abs(p - a);
+	int pb = Math.abs(p - b);
+	int pc = Math.abs(p - c);
+
+	if (pa <= pb && pa <= pc) return a;
+	if (pb <= pc) return b;
+	return c;
+
+}
+
+/*
+ * Compresses blocks of rows concurrently, in the manner of pigz. Each block
+ * is raw deflate data primed with the last 32K of the preceding block and
+ * ended on a byte boundary with a sync flush, so the blocks concatenate into
+ * a single deflate stream. The zlib header and the combined Adler-32 of all
+ * the blocks are added around it.
+ */
+byte[] deflateParallel(int level, int blockRows) throws IOException {
+
+	int blockCount = (height + blockRows - 1) / blockRows;
+	int rowLength = width * bytesPerPixel + 1;
+	int dictionaryRows = (DICTIONARY_SIZE + rowLength - 1) / rowLength;
+
+	List<Callable<byte[]>> tasks = new ArrayList<>(blockCount);
+	int[] adlers = new int[blockCount];
+	for (int i = 0; i < blockCount; i++) {
+		int block = i;
+		tasks.add(() -> {
+			int startY = block * blockRows;
+			int endY = Math.min(height, startY + blockRows);
+			int filterY = Math.max(0, startY - dictionaryRows);
+
+			ByteArrayOutputStream rows = new ByteArrayOutputStream((endY - filterY) * rowLength);
+			writeRows(rows, filterY, filterY, endY);
+			byte[] input = rows.toByteArray();
+			int dictionaryLength = (startY - filterY) * rowLength;
+			int inputLength = input.length - dictionaryLength;
+
+			Adler32 adler = new Adler32();
+			adler.update(input, dictionaryLength, inputLength);
+			adlers[block] = (int) adler.getValue();
+
+			Deflater deflater = new Deflater(level, true);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(inputLength / 2 + 64);
+			try {
+				if (dictionaryLength > 0) {
+					deflater.setDictionary(input, Math.max(0, dictionaryLength - DICTIONARY_SIZE), Math.min(dictionaryLength, DICTIONARY_SIZE));
+				}
+				deflater.setInput(input, dictionaryLength, inputLength);
+				byte[] buffer = new byte[8192];
+				boolean last = block == blockCount - 1;
+				if (last) deflater.finish();
+				while (true) {
+					int count = deflater.deflate(buffer, 0, buffer.length, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+					out.write(buffer, 0, count);
+					if (last ? deflater.finished() : count < buffer.length) break;
+				}
+			} finally {
+				deflater.end();
+			}
+			return out.toByteArray();
+		});
 	}
 
-	writeChunk(TAG_IDAT, compressed);
+	ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+	baos.write(0x78);
+	switch (level) {
+		case NO_COMPRESSION:
+		case BEST_SPEED: baos.write(0x01); break;
+		case BEST_COMPRESSION: baos.write(0xDA); break;
+		default: baos.write(0x9C); break;
+	}
+
+	int adler = 1;
+	List<Future<byte[]>> futures = ForkJoinPool.commonPool().invokeAll(tasks);
+	for (int i = 0; i < blockCount; i++) {
+		try {
+			baos.write(futures.get(i).get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			SWT.error(SWT.ERROR_IO, cause);
+		}
+		int startY = i * blockRows;
+		int endY = Math.min(height, startY + blockRows);
+		adler = combineAdler32(adler, adlers[i], (long) (endY - startY) * rowLength);
+	}
+	writeInt(baos, adler);
+
+	return baos.toByteArray();
+
+}
+
+/* Port of adler32_combine() from zlib */
+static int combineAdler32(int adler1, int adler2, long length2) {
+
+	final int BASE = 65521;
+	long remainder = length2 % BASE;
+	long sum1 = adler1 & 0xffff;
+	long sum2 = (remainder * sum1) % BASE;
+	sum1 += (adler2 & 0xffff) + BASE - 1;
+	sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + BASE - remainder;
+	if (sum1 >= BASE) sum1 -= BASE;
+	if (sum1 >= BASE) sum1 -= BASE;
+	if (sum2 >= ((long) BASE << 1)) sum2 -= ((long) BASE << 1);
+	if (sum2 >= BASE) sum2 -= BASE;
+	return (int) (sum1 | (sum2 << 16));
 
 }
 
@@ -13,13 +13,18 @@ package org.eclipse.swt.internal.image;
 
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
+import org.eclipse.swt.internal.*;
 import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.zip.*;
 
 final class TIFFDirectory {
 
 	TIFFRandomFileAccess file;
-	boolean isLittleEndian;
+	ByteOrder byteOrder;
 	ImageLoader loader;
+	ImageRowConsumer rowConsumer;
 	int depth;
 
 	/* Directory fields */
@@ -35,6 +40,11 @@ final class TIFFDirectory {
 	int[] stripByteCounts;
 	int t4Options;
 	int colorMapOffset;
+	int predictor;
+	int tileWidth;
+	int tileLength;
+	int[] tileOffsets;
+	int[] tileByteCounts;
 
 	/* Encoder fields */
 	ImageData image;
@@ -63,7 +73,12 @@ final class TIFFDirectory {
 	static final short TAG_ResolutionUnit = 296;
 	static final short TAG_Software = 305;
 	static final short TAG_DateTime = 306;
+	static final short TAG_Predictor = 317;
 	static final short TAG_ColorMap = 320;
+	static final short TAG_TileWidth = 322;
+	static final short TAG_TileLength = 323;
+	static final short TAG_TileOffsets = 324;
+	static final short TAG_TileByteCounts = 325;
 
 	static final int TYPE_BYTE = 1;
 	static final int TYPE_ASCII = 2;
@@ -81,13 +96,23 @@ final class TIFFDirectory {
 	/* Different compression schemes */
 	static final int COMPRESSION_NONE = 1;
 	static final int COMPRESSION_CCITT_3_1 = 2;
+	static final int COMPRESSION_LZW = 5;
+	static final int COMPRESSION_ADOBE_DEFLATE = 8;
 	static final int COMPRESSION_PACKBITS = 32773;
+	static final int COMPRESSION_DEFLATE = 32946;
+
+	/* Differencing schemes applied before compression */
+	static final int PREDICTOR_NONE = 1;
+	static final int PREDICTOR_HORIZONTAL = 2;
+
+	/* Decoded size from which strips and tiles are decompressed in parallel */
+	static final int PARALLEL_MIN_BYTES = 256 * 1024;
 
 	static final int IFD_ENTRY_SIZE = 12;
 
 public TIFFDirectory(TIFFRandomFileAccess file, boolean isLittleEndian, ImageLoader loader) {
 	this.file = file;
-	this.isLittleEndian = isLittleEndian;
+	this.byteOrder = isLittleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
 	this.loader = loader;
 }
 
@@ -122,11 +147,11 @@ int decodePackBits(byte[] src, byte[] dest, int offsetDest) {
 	return destIndex - offsetDest;
 }
 
-int getEntryValue(int type, byte[] buffer, int index) {
+int getEntryValue(int type, ByteBuffer buffer, int index) {
 	return toInt(buffer, index + 8, type);
 }
 
-void getEntryValue(int type, byte[] buffer, int index, int[] values) throws IOException {
+void getEntryValue(int type, ByteBuffer buffer, int index, int[] values) throws IOException {
 	int start = index + 8;
 	int size;
 	int offset = toInt(buffer, start, TYPE_LONG);
@@ -139,9 +164,8 @@ void getEntryValue(int type, byte[] buffer, int index, int[] values) throws IOEx
 		default: SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT); return;
 	}
 	if (values.length * size > 4) {
-		buffer = new byte[values.length * size];
 		file.seek(offset);
-		file.read(buffer);
+		buffer = file.read(values.length * size, byteOrder);
 		start = 0;
 	}
 	for (int i = 0; i < values.length; i++) {
@@ -151,28 +175,37 @@ void getEntryValue(int type, byte[] buffer, int index, int[] values) throws IOEx
 
 void decodePixels(ImageData image) throws IOException {
 	/* Each row is byte aligned */
-	byte[] imageData = new byte[(imageWidth * depth + 7) / 8 * imageLength];
+	int rowByteSize = (imageWidth * depth + 7) / 8;
+	byte[] imageData = new byte[rowByteSize * imageLength];
 	image.data = imageData;
-	int destIndex = 0;
+	if (tileWidth != NO_VALUE) {
+		decodeTiles(image, rowByteSize);
+		return;
+	}
+	int stripHeight = Math.min(rowsPerStrip, imageLength);
 	int length = stripOffsets.length;
-	for (int i = 0; i < length; i++) {
+	if (isParallel(length, imageData.length)) {
+		/* Strips are compressed independently and decoded into their own rows */
+		byte[][] strips = readSegments(stripOffsets, stripByteCounts, Math.min(length, (imageLength + stripHeight - 1) / stripHeight));
+		ParallelUtil.forEach(strips.length, true, i -> {
+			int y = i * stripHeight;
+			decodeSegment(strips[i], imageData, y * rowByteSize, imageWidth, rowByteSize, Math.min(stripHeight, imageLength - y));
+		});
+		return;
+	}
+	int destIndex = 0;
+	for (int i = 0, y = 0; i < length; i++, y += stripHeight) {
 		/* Read a strip */
-		byte[] data = new byte[stripByteCounts[i]];
 		file.seek(stripOffsets[i]);
-		file.read(data);
 		if (compression == COMPRESSION_NONE) {
-			System.arraycopy(data, 0, imageData, destIndex, data.length);
-			destIndex += data.length;
-		} else if (compression == COMPRESSION_PACKBITS) {
-			destIndex += decodePackBits(data, imageData, destIndex);
-		} else if (compression == COMPRESSION_CCITT_3_1 || compression == 3) {
-			TIFFModifiedHuffmanCodec codec = new TIFFModifiedHuffmanCodec();
-			int nRows = rowsPerStrip;
-			if (i == length -1) {
-				int n = imageLength % rowsPerStrip;
-				if (n != 0) nRows = n;
-			}
-			destIndex += codec.decode(data, imageData, destIndex, imageWidth, nRows);
+			/* Uncompressed strips are read straight into the image */
+			file.read(imageData, destIndex, stripByteCounts[i]);
+			destIndex += stripByteCounts[i];
+		} else {
+			byte[] data = new byte[stripByteCounts[i]];
+			file.read(data);
+			int nRows = Math.max(0, Math.min(stripHeight, imageLength - y));
+			destIndex += decodeSegment(data, imageData, destIndex, imageWidth, rowByteSize, nRows);
 		}
 		if (loader.hasListeners()) {
 			loader.notifyListeners(new ImageLoaderEvent(loader, image, i, i == length - 1));
@@ -180,13 +213,157 @@ void decodePixels(ImageData image) throws IOException {
 	}
 }
 
+/* Decode the tiles row by row, copying each tile into the rows it covers */
+void decodeTiles(ImageData image, int rowByteSize) throws IOException {
+	byte[] imageData = image.data;
+	int tileRowByteSize = tileWidth * depth / 8;
+	int tilesAcross = (imageWidth + tileWidth - 1) / tileWidth;
+	int tilesDown = (imageLength + tileLength - 1) / tileLength;
+	int count = tilesAcross * tilesDown;
+	if (tileOffsets.length < count || tileByteCounts.length < count) SWT.error(SWT.ERROR_INVALID_IMAGE);
+	if (isParallel(count, imageData.length)) {
+		byte[][] tiles = readSegments(tileOffsets, tileByteCounts, count);
+		ParallelUtil.forEach(count, true, i -> {
+			byte[] tile = new byte[tileRowByteSize * tileLength];
+			decodeSegment(tiles[i], tile, 0, tileWidth, tileRowByteSize, tileLength);
+			int y = i / tilesAcross * tileLength;
+			copyTile(tile, tileRowByteSize, imageData, y * rowByteSize, rowByteSize, i % tilesAcross, Math.min(tileLength, imageLength - y));
+		});
+		return;
+	}
+	byte[] tile = new byte[tileRowByteSize * tileLength];
+	for (int i = 0, y = 0; i < tilesDown; i++, y += tileLength) {
+		for (int j = 0; j < tilesAcross; j++) {
+			decodeTile(i * tilesAcross + j, tile, tileRowByteSize);
+			copyTile(tile, tileRowByteSize, imageData, y * rowByteSize, rowByteSize, j, Math.min(tileLength, imageLength - y));
+		}
+		if (loader.hasListeners()) {
+			loader.notifyListeners(new ImageLoaderEvent(loader, image, i, i == tilesDown - 1));
+		}
+	}
+}
+
+/* Read and decode the tile at the given index into the tile buffer */
+void decodeTile(int index, byte[] tile, int tileRowByteSize) throws IOException {
+	file.seek(tileOffsets[index]);
+	byte[] data = new byte[tileByteCounts[index]];
+	file.read(data);
+	Arrays.fill(tile, (byte) 0);
+	decodeSegment(data, tile, 0, tileWidth, tileRowByteSize, tileLength);
+}
+
+/* Copy the rows of a tile to its column of the destination rows, clipping the parts outside the image */
+void copyTile(byte[] tile, int tileRowByteSize, byte[] dest, int destIndex, int rowByteSize, int column, int nRows) {
+	int x = column * tileRowByteSize;
+	int count = Math.min(tileRowByteSize, rowByteSize - x);
+	for (int row = 0; row < nRows; row++) {
+		System.arraycopy(tile, row * tileRowByteSize, dest, destIndex + row * rowByteSize + x, count);
+	}
+}
+
+/*
+ * Decompress a strip or tile of nRows rows of width pixels into dest,
+ * and answer the number of bytes written.
+ */
+int decodeSegment(byte[] data, byte[] dest, int offsetDest, int width, int rowByteSize, int nRows) {
+	int size = rowByteSize * nRows;
+	switch (compression) {
+		case COMPRESSION_NONE: {
+			int count = Math.min(data.length, size);
+			System.arraycopy(data, 0, dest, offsetDest, count);
+			return count;
+		}
+		case COMPRESSION_PACKBITS: {
+			return decodePackBits(data, dest, offsetDest);
+		}
+		case COMPRESSION_CCITT_3_1:
+		case 3: {
+			TIFFModifiedHuffmanCodec codec = new TIFFModifiedHuffmanCodec();
+			return codec.decode(data, dest, offsetDest, width, nRows);
+		}
+		case COMPRESSION_LZW: {
+			TIFFLZWCodec codec = new TIFFLZWCodec();
+			codec.decode(data, dest, offsetDest, size);
+			break;
+		}
+		case COMPRESSION_ADOBE_DEFLATE:
+		case COMPRESSION_DEFLATE: {
+			decodeDeflate(data, dest, offsetDest, size);
+			break;
+		}
+		default: {
+			/* Unsupported compressions leave the pixels blank */
+			return 0;
+		}
+	}
+	if (predictor == PREDICTOR_HORIZONTAL) {
+		decodePredictor(dest, offsetDest, rowByteSize, nRows);
+	}
+	return size;
+}
+
+/* Zlib decoder */
+void decodeDeflate(byte[] src, byte[] dest, int offsetDest, int size) {
+	Inflater inflater = new Inflater();
+	try {
+		inflater.setInput(src);
+		int destIndex = offsetDest;
+		int destEnd = offsetDest + size;
+		while (destIndex < destEnd) {
+			int count = inflater.inflate(dest, destIndex, destEnd - destIndex);
+			if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) break;
+			destIndex += count;
+		}
+	} catch (DataFormatException e) {
+		SWT.error(SWT.ERROR_INVALID_IMAGE, e);
+	} finally {
+		inflater.end();
+	}
+}
+
+/* Horizontal predictor decoder, each sample is the difference with the sample on its left */
+void decodePredictor(byte[] data, int offset, int rowByteSize, int nRows) {
+	int bytesPerPixel = depth / 8;
+	for (int row = 0; row < nRows; row++) {
+		int end = offset + rowByteSize;
+		for (int i = offset + bytesPerPixel; i < end; i++) {
+			data[i] += data[i - bytesPerPixel];
+		}
+		offset = end;
+	}
+}
+
+/*
+ * Answer whether the given number of strips or tiles are decompressed in
+ * parallel. Only LZW and Deflate decoders are costly enough, and listeners
+ * expect the strips to be decoded in order.
+ */
+boolean isParallel(int count, int size) {
+	if (compression != COMPRESSION_LZW && compression != COMPRESSION_ADOBE_DEFLATE && compression != COMPRESSION_DEFLATE) return false;
+	if (count < 2 || size < PARALLEL_MIN_BYTES || loader.hasListeners()) return false;
+	return ParallelUtil.isParallel();
+}
+
+/* Read the compressed data of the first count strips or tiles, in file order */
+byte[][] readSegments(int[] offsets, int[] byteCounts, int count) throws IOException {
+	Integer[] order = new Integer[count];
+	for (int i = 0; i < count; i++) order[i] = i;
+	Arrays.sort(order, (a, b) -> Integer.compare(offsets[a], offsets[b]));
+	byte[][] segments = new byte[count][];
+	for (int i : order) {
+		file.seek(offsets[i]);
+		segments[i] = new byte[byteCounts[i]];
+		file.read(segments[i]);
+	}
+	return segments;
+}
+
 PaletteData getColorMap() throws IOException {
 	int numColors = 1 << bitsPerSample[0];
 	/* R, G, B entries are 16 bit wide (2 bytes) */
 	int numBytes = 3 * 2 * numColors;
-	byte[] buffer = new byte[numBytes];
 	file.seek(colorMapOffset);
-	file.read(buffer);
+	ByteBuffer buffer = file.read(numBytes, byteOrder);
 	RGB[] colors = new RGB[numColors];
 	/**
 	 * SWT does not support 16-bit depth color formats.
@@ -197,13 +374,13 @@ PaletteData getColorMap() throws IOException {
 	 * The fast way to do this is just to drop the low
 	 * byte of the 16-bit value.
 	 */
-	int offset = isLittleEndian ? 1 : 0;
+	int offset = 0;
 	int startG = 2 * numColors;
 	int startB = startG + 2 * numColors;
 	for (int i = 0; i < numColors; i++) {
-		int r = buffer[offset] & 0xFF;
-		int g = buffer[startG + offset] & 0xFF;
-		int b = buffer[startB + offset] & 0xFF;
+		int r = (buffer.getShort(offset) >> 8) & 0xFF;
+		int g = (buffer.getShort(startG + offset) >> 8) & 0xFF;
+		int b = (buffer.getShort(startB + offset) >> 8) & 0xFF;
 		colors[i] = new RGB(r, g, b);
 		offset += 2;
 	}
@@ -309,8 +486,8 @@ int[] formatColorMap(RGB[] rgbs) {
 	return colorMap;
 }
 
-void parseEntries(byte[] buffer) throws IOException {
-	for (int offset = 0; offset < buffer.length; offset += IFD_ENTRY_SIZE) {
+void parseEntries(ByteBuffer buffer) throws IOException {
+	for (int offset = 0; offset < buffer.limit(); offset += IFD_ENTRY_SIZE) {
 		int tag = toInt(buffer, offset, TYPE_SHORT);
 		int type = toInt(buffer, offset + 2, TYPE_SHORT);
 		int count = toInt(buffer, offset + 4, TYPE_LONG);
@@ -413,21 +590,124 @@ void parseEntries(byte[] buffer) throws IOException {
 				/* Ignored */
 				break;
 			}
+			case TAG_Predictor: {
+				predictor = getEntryValue(type, buffer, offset);
+				/* Floating point differencing is not supported */
+				if (predictor != PREDICTOR_NONE && predictor != PREDICTOR_HORIZONTAL) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+				break;
+			}
 			case TAG_ColorMap: {
 				if (type != TYPE_SHORT) SWT.error(SWT.ERROR_INVALID_IMAGE);
 				/* Get the offset of the colorMap (use TYPE_LONG) */
 				colorMapOffset = getEntryValue(TYPE_LONG, buffer, offset);
 				break;
 			}
+			case TAG_TileWidth: {
+				tileWidth = getEntryValue(type, buffer, offset);
+				break;
+			}
+			case TAG_TileLength: {
+				tileLength = getEntryValue(type, buffer, offset);
+				break;
+			}
+			case TAG_TileOffsets: {
+				if (type != TYPE_LONG && type != TYPE_SHORT) SWT.error(SWT.ERROR_INVALID_IMAGE);
+				tileOffsets = new int[count];
+				getEntryValue(type, buffer, offset, tileOffsets);
+				break;
+			}
+			case TAG_TileByteCounts: {
+				tileByteCounts = new int[count];
+				getEntryValue(type, buffer, offset, tileByteCounts);
+				break;
+			}
 		}
 	}
 }
 
-public ImageData read(int [] nextIFDOffset) throws IOException {
+/* Decode each strip or row of tiles into a band and pass it to the row consumer */
+void decodeRows(ImageData image) throws IOException {
+	/* Each row is byte aligned */
+	int rowByteSize = (imageWidth * depth + 7) / 8;
+	boolean isTiled = tileWidth != NO_VALUE;
+	int bandHeight = isTiled ? tileLength : Math.min(rowsPerStrip, imageLength);
+	byte[] band = new byte[rowByteSize * bandHeight];
+	int tileRowByteSize = 0, tilesAcross = 0;
+	byte[] tile = null;
+	if (isTiled) {
+		tileRowByteSize = tileWidth * depth / 8;
+		tilesAcross = (imageWidth + tileWidth - 1) / tileWidth;
+		tile = new byte[tileRowByteSize * tileLength];
+		int tilesDown = (imageLength + tileLength - 1) / tileLength;
+		if (tileOffsets.length < tilesAcross * tilesDown || tileByteCounts.length < tilesAcross * tilesDown) SWT.error(SWT.ERROR_INVALID_IMAGE);
+	}
+	ImageData rows = null;
+	int length = isTiled ? Integer.MAX_VALUE : stripOffsets.length;
+	for (int i = 0, y = 0; i < length && y < imageLength; i++, y += bandHeight) {
+		int nRows = Math.min(bandHeight, imageLength - y);
+		if (isTiled) {
+			for (int j = 0; j < tilesAcross; j++) {
+				decodeTile(i * tilesAcross + j, tile, tileRowByteSize);
+				copyTile(tile, tileRowByteSize, band, 0, rowByteSize, j, nRows);
+			}
+		} else {
+			file.seek(stripOffsets[i]);
+			if (compression == COMPRESSION_NONE) {
+				file.read(band, 0, Math.min(stripByteCounts[i], band.length));
+			} else {
+				byte[] data = new byte[stripByteCounts[i]];
+				file.read(data);
+				decodeSegment(data, band, 0, imageWidth, rowByteSize, nRows);
+			}
+		}
+		if (rows == null || rows.height != nRows) {
+			rows = ImageData.internal_new(imageWidth, nRows, depth, image.palette, 1, band, 0, null, null, -1, -1, SWT.IMAGE_TIFF, 0, 0, 0, 0);
+		}
+		rowConsumer.rowsLoaded(rows, y, nRows);
+	}
+}
+
+/* Describe the image of this directory without reading its pixels */
+public ImageInfo probe(int [] nextIFDOffset) throws IOException {
+	readEntries(nextIFDOffset);
+	switch (photometricInterpretation) {
+		case 0:
+		case 1:
+		case 3: {
+			/* Bilevel, Grayscale or Palette Color image */
+			depth = bitsPerSample[0];
+			break;
+		}
+		case 2: {
+			/* RGB image */
+			depth = bitsPerSample[0] + bitsPerSample[1] + bitsPerSample[2];
+			break;
+		}
+		default: {
+			SWT.error(SWT.ERROR_INVALID_IMAGE);
+		}
+	}
+	return ImageInfo.internal_new(SWT.IMAGE_TIFF, imageWidth, imageLength, depth, 1, false);
+}
+
+/* Answer the offset of the directory following the one at the current position */
+int readNextIFDOffset() throws IOException {
+	int numberEntries = file.readUnsignedShort(byteOrder);
+	file.seek(file.current + IFD_ENTRY_SIZE * numberEntries);
+	return file.readInt(byteOrder);
+}
+
+/* Read the entries of the directory at the current position */
+void readEntries(int [] nextIFDOffset) throws IOException {
 	/* Set TIFF default values */
 	bitsPerSample = new int[] {1};
 	colorMapOffset = NO_VALUE;
 	compression = 1;
+	predictor = PREDICTOR_NONE;
+	tileWidth = NO_VALUE;
+	tileLength = NO_VALUE;
+	tileOffsets = null;
+	tileByteCounts = null;
 	imageLength = NO_VALUE;
 	imageWidth = NO_VALUE;
 	photometricInterpretation = NO_VALUE;
@@ -436,15 +716,14 @@ public ImageData read(int [] nextIFDOffset) throws IOException {
 	stripByteCounts = null;
 	stripOffsets = null;
 
-	byte[] buffer = new byte[2];
-	file.read(buffer);
-	int numberEntries = toInt(buffer, 0, TYPE_SHORT);
-	buffer = new byte[IFD_ENTRY_SIZE * numberEntries];
-	file.read(buffer);
-	byte buffer2[] = new byte[4];
-	file.read(buffer2);
-	nextIFDOffset[0] = toInt(buffer2, 0, TYPE_LONG);
+	int numberEntries = file.readUnsignedShort(byteOrder);
+	ByteBuffer buffer = file.read(IFD_ENTRY_SIZE * numberEntries, byteOrder);
+	nextIFDOffset[0] = file.readInt(byteOrder);
 	parseEntries(buffer);
+}
+
+public ImageData read(int [] nextIFDOffset) throws IOException {
+	readEntries(nextIFDOffset);
 
 	PaletteData palette = null;
 	depth = 0;
@@ -475,6 +754,13 @@ public ImageData read(int [] nextIFDOffset) throws IOException {
 			SWT.error(SWT.ERROR_INVALID_IMAGE);
 		}
 	}
+	/* Differencing is only supported on byte samples */
+	if (predictor == PREDICTOR_HORIZONTAL && bitsPerSample[0] != 8) SWT.error(SWT.ERROR_UNSUPPORTED_FORMAT);
+	if (tileWidth != NO_VALUE) {
+		/* Tiles start on byte boundaries */
+		if (tileWidth <= 0 || tileLength <= 0 || tileWidth * depth % 8 != 0) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		if (tileOffsets == null || tileByteCounts == null) SWT.error(SWT.ERROR_INVALID_IMAGE);
+	}
 
 	ImageData image = ImageData.internal_new(
 			imageWidth,
@@ -493,20 +779,20 @@ public ImageData read(int [] nextIFDOffset) throws IOException {
 			0,
 			0,
 			0);
+	if (rowConsumer != null) {
+		decodeRows(image);
+		return null;
+	}
 	decodePixels(image);
 	return image;
 }
 
-int toInt(byte[] buffer, int i, int type) {
+int toInt(ByteBuffer buffer, int i, int type) {
 	if (type == TYPE_LONG) {
-		return isLittleEndian ?
-		(buffer[i] & 0xFF) | ((buffer[i + 1] & 0xFF) << 8) | ((buffer[i + 2] & 0xFF) << 16) | ((buffer[i + 3] & 0xFF) << 24) :
-		(buffer[i + 3] & 0xFF) | ((buffer[i + 2] & 0xFF) << 8) | ((buffer[i + 1] & 0xFF) << 16) | ((buffer[i] & 0xFF) << 24);
+		return buffer.getInt(i);
 	}
 	if (type == TYPE_SHORT) {
-		return isLittleEndian ?
-		(buffer[i] & 0xFF) | ((buffer[i + 1] & 0xFF) << 8) :
-		(buffer[i + 1] & 0xFF) | ((buffer[i] & 0xFF) << 8);
+		return buffer.getShort(i) & 0xFFFF;
 	}
 	/* Invalid type */
 	SWT.error(SWT.ERROR_INVALID_IMAGE);
@@ -14,28 +14,55 @@ package org.eclipse.swt.internal.image;
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 import java.io.*;
+import java.nio.*;
 
 /**
  * Baseline TIFF decoder revision 6.0
  * Extension T4-encoding CCITT T.4 1D
+ * Extensions LZW and Deflate compression, horizontal predictor, tiles
  */
 public final class TIFFFileFormat extends FileFormat {
 
 @Override
-boolean isFileFormat(LEDataInputStream stream) {
+boolean isFileFormat(byte[] header) {
+	if (header.length < 4) return false;
+	if (header[0] != header[1]) return false;
+	if (!(header[0] == 0x49 && header[2] == 42 && header[3] == 0) &&
+		!(header[0] == 0x4d && header[2] == 0 && header[3] == 42)) {
+		return false;
+	}
+	return true;
+}
+
+/**
+ * Describe the image of the first directory, and count the directories
+ * by following their links without reading their entries.
+ */
+@Override
+ImageInfo probeFromByteStream() {
+	byte[] header = new byte[8];
+	ImageInfo info = null;
+	TIFFRandomFileAccess file = new TIFFRandomFileAccess(inputStream);
 	try {
-		byte[] header = new byte[4];
-		stream.read(header);
-		stream.unread(header);
-		if (header[0] != header[1]) return false;
-		if (!(header[0] == 0x49 && header[2] == 42 && header[3] == 0) &&
-			!(header[0] == 0x4d && header[2] == 0 && header[3] == 42)) {
-			return false;
+		file.read(header);
+		if (!isFileFormat(header)) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		boolean isLittleEndian = header[0] == 0x49;
+		int offset = ByteBuffer.wrap(header).order(isLittleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN).getInt(4);
+		if (offset == 0) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		file.seek(offset);
+		TIFFDirectory directory = new TIFFDirectory(file, isLittleEndian, loader);
+		int [] nextIFDOffset = new int[1];
+		info = directory.probe(nextIFDOffset);
+		offset = nextIFDOffset[0];
+		while (offset != 0) {
+			file.seek(offset);
+			offset = directory.readNextIFDOffset();
+			info.frameCount++;
 		}
-		return true;
-	} catch (Exception e) {
-		return false;
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
 	}
+	return info;
 }
 
 @Override
@@ -52,13 +79,17 @@ ImageData[] loadFromByteStream() {
 			SWT.error(SWT.ERROR_INVALID_IMAGE);
 		}
 		isLittleEndian = header[0] == 0x49;
-		int offset = isLittleEndian ?
-			(header[4] & 0xFF) | ((header[5] & 0xFF) << 8) | ((header[6] & 0xFF) << 16) | ((header[7] & 0xFF) << 24) :
-			(header[7] & 0xFF) | ((header[6] & 0xFF) << 8) | ((header[5] & 0xFF) << 16) | ((header[4] & 0xFF) << 24);
+		int offset = ByteBuffer.wrap(header).order(isLittleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN).getInt(4);
 		while (offset != 0) {
 			file.seek(offset);
 			TIFFDirectory directory = new TIFFDirectory(file, isLittleEndian, loader);
 			int [] nextIFDOffset = new int[1];
+			if (rowConsumer != null) {
+				/* Only the first image is passed to the row consumer */
+				directory.rowConsumer = rowConsumer;
+				directory.read(nextIFDOffset);
+				return null;
+			}
 			ImageData image = directory.read(nextIFDOffset);
 			offset = nextIFDOffset[0];
 			ImageData[] oldImages = images;
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.internal.image;
+
+import org.eclipse.swt.*;
+
+/*
+* Decoder for
+* - LZW compression with variable length codes of 9 to 12 bits
+*   stored most significant bit first (TIFF compression type 5)
+*/
+final class TIFFLZWCodec {
+	static final int CLEAR_CODE = 256;
+	static final int EOI_CODE = 257;
+	static final int FIRST_CODE = 258;
+	static final int MIN_CODE_SIZE = 9;
+	static final int MAX_CODE_SIZE = 12;
+	static final int TABLE_SIZE = 1 << MAX_CODE_SIZE;
+
+	/*
+	 * The string of a code is the string of its prefix followed by its
+	 * suffix. The length and the first byte of the string are kept so
+	 * that strings can be written back to front without walking twice.
+	 */
+	int[] prefix = new int[TABLE_SIZE];
+	byte[] suffix = new byte[TABLE_SIZE];
+	byte[] first = new byte[TABLE_SIZE];
+	int[] length = new int[TABLE_SIZE];
+
+TIFFLZWCodec() {
+	for (int code = 0; code < CLEAR_CODE; code++) {
+		prefix[code] = -1;
+		suffix[code] = first[code] = (byte) code;
+		length[code] = 1;
+	}
+}
+
+/**
+ * Decode the LZW data in src into dest starting at offsetDest.
+ * Decoding stops at the end of information code, at the end of src,
+ * or once size bytes have been written.
+ * Answer the number of bytes written.
+ */
+int decode(byte[] src, byte[] dest, int offsetDest, int size) {
+	int destIndex = offsetDest;
+	int destEnd = offsetDest + size;
+	int srcIndex = 0;
+	int bits = 0, bitCount = 0;
+	int codeSize = MIN_CODE_SIZE;
+	int next = FIRST_CODE;
+	int previous = -1;
+	while (destIndex < destEnd) {
+		while (bitCount < codeSize) {
+			if (srcIndex == src.length) return destIndex - offsetDest;
+			bits = (bits << 8) | (src[srcIndex++] & 0xFF);
+			bitCount += 8;
+		}
+		bitCount -= codeSize;
+		int code = (bits >>> bitCount) & ((1 << codeSize) - 1);
+		if (code == EOI_CODE) break;
+		if (code == CLEAR_CODE) {
+			codeSize = MIN_CODE_SIZE;
+			next = FIRST_CODE;
+			previous = -1;
+			continue;
+		}
+		if (previous == -1) {
+			if (code > CLEAR_CODE) SWT.error(SWT.ERROR_INVALID_IMAGE);
+			dest[destIndex++] = (byte) code;
+			previous = code;
+			continue;
+		}
+		if (code < next) {
+			destIndex += writeString(code, dest, destIndex, destEnd);
+			if (next < TABLE_SIZE) addString(next++, previous, first[code]);
+		} else if (code == next && next < TABLE_SIZE) {
+			/* The string of the previous code followed by its own first byte */
+			addString(next++, previous, first[previous]);
+			destIndex += writeString(code, dest, destIndex, destEnd);
+		} else {
+			SWT.error(SWT.ERROR_INVALID_IMAGE);
+		}
+		/* Codes grow one code early, as in all TIFF LZW encoders */
+		if (next >= (1 << codeSize) - 1 && codeSize < MAX_CODE_SIZE) codeSize++;
+		previous = code;
+	}
+	return destIndex - offsetDest;
+}
+
+void addString(int code, int prefixCode, byte lastByte) {
+	prefix[code] = prefixCode;
+	suffix[code] = lastByte;
+	first[code] = first[prefixCode];
+	length[code] = length[prefixCode] + 1;
+}
+
+/* Write the string of the given code, clipped to end, and answer its length */
+int writeString(int code, byte[] dest, int destIndex, int end) {
+	int count = length[code];
+	int index = destIndex + count - 1;
+	/* Skip the bytes past the end of the destination */
+	while (index >= end) {
+		code = prefix[code];
+		index--;
+	}
+	while (index >= destIndex) {
+		dest[index--] = suffix[code];
+		code = prefix[code];
+	}
+	return Math.min(count, end - destIndex);
+}
+
+}
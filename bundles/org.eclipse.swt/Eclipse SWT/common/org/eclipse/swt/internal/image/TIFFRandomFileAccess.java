@@ -11,6 +11,9 @@
 package org.eclipse.swt.internal.image;
 
 import java.io.*;
+import java.nio.*;
+
+import org.eclipse.swt.*;
 
 final class TIFFRandomFileAccess {
 
@@ -18,16 +21,34 @@ final class TIFFRandomFileAccess {
 	int start, current, next;
 	byte[][] buffers;
 
+	/*
+	 * The input when the stream reads from memory, which is accessed directly.
+	 * Positions are then indices into the buffer offset by start, and current
+	 * follows the position of the buffer.
+	 */
+	ByteBuffer buffer;
+
 	static final int CHUNK_SIZE = 8192;
 	static final int LIST_SIZE = 128;
 
 public TIFFRandomFileAccess(LEDataInputStream stream) {
 	inputStream = stream;
 	start = current = next = inputStream.getPosition();
+	if (stream.in == null) {
+		buffer = stream.buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		start = stream.start;
+		return;
+	}
 	buffers = new byte[LIST_SIZE][];
 }
 
 void seek(int pos) throws IOException {
+	if (buffer != null) {
+		if (pos < 0 || pos > buffer.limit() - start) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		buffer.position(start + pos);
+		current = pos;
+		return;
+	}
 	if (pos == current) return;
 	if (pos < start) throw new IOException();
 	current = pos;
@@ -53,10 +74,19 @@ void seek(int pos) throws IOException {
 }
 
 void read(byte b[]) throws IOException {
-	int size = b.length;
+	read(b, 0, b.length);
+}
+
+void read(byte b[], int off, int size) throws IOException {
+	if (buffer != null) {
+		if (size > buffer.remaining()) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		buffer.get(b, off, size);
+		current += size;
+		return;
+	}
 	int nCached = Math.min(size, next - current);
 	int nMissing = size - next + current;
-	int destNext = 0;
+	int destNext = off;
 	if (nCached > 0) {
 		/* Get cached bytes */
 		int index = current / CHUNK_SIZE;
@@ -93,4 +123,30 @@ void read(byte b[]) throws IOException {
 	current += size;
 }
 
+/**
+ * Answer the next <code>size</code> bytes as a buffer in the given
+ * byte order. The bytes are not copied when the input is in memory.
+ */
+ByteBuffer read(int size, ByteOrder order) throws IOException {
+	if (buffer != null) {
+		if (size > buffer.remaining()) SWT.error(SWT.ERROR_INVALID_IMAGE);
+		ByteBuffer result = buffer.slice();
+		result.limit(size);
+		buffer.position(buffer.position() + size);
+		current += size;
+		return result.order(order);
+	}
+	byte[] b = new byte[size];
+	read(b);
+	return ByteBuffer.wrap(b).order(order);
+}
+
+int readInt(ByteOrder order) throws IOException {
+	return read(4, order).getInt(0);
+}
+
+int readUnsignedShort(ByteOrder order) throws IOException {
+	return read(2, order).getShort(0) & 0xFFFF;
+}
+
 }
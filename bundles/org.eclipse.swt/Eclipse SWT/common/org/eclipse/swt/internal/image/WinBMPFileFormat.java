@@ -14,6 +14,7 @@ package org.eclipse.swt.internal.image;
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 import java.io.*;
+import java.nio.*;
 
 public final class WinBMPFileFormat extends FileFormat {
 	static final int BMPFileHeaderSize = 14;
@@ -407,16 +408,10 @@ int decompressRLE8Data(byte[] src, int numBytes, int stride, byte[] dest, int de
 	return 1;
 }
 @Override
-boolean isFileFormat(LEDataInputStream stream) {
-	try {
-		byte[] header = new byte[18];
-		stream.read(header);
-		stream.unread(header);
-		int infoHeaderSize = (header[14] & 0xFF) | ((header[15] & 0xFF) << 8) | ((header[16] & 0xFF) << 16) | ((header[17] & 0xFF) << 24);
-		return header[0] == 0x42 && header[1] == 0x4D && infoHeaderSize >= BMPHeaderFixedSize;
-	} catch (Exception e) {
-		return false;
-	}
+boolean isFileFormat(byte[] header) {
+	if (header.length < 18) return false;
+	int infoHeaderSize = (header[14] & 0xFF) | ((header[15] & 0xFF) << 8) | ((header[16] & 0xFF) << 16) | ((header[17] & 0xFF) << 24);
+	return header[0] == 0x42 && header[1] == 0x4D && infoHeaderSize >= BMPHeaderFixedSize;
 }
 boolean isPaletteBMP(PaletteData pal, int depth) {
 	switch(depth) {
@@ -434,9 +429,10 @@ boolean isPaletteBMP(PaletteData pal, int depth) {
 	}
 }
 byte[] loadData(byte[] infoHeader) {
-	int width = (infoHeader[4] & 0xFF) | ((infoHeader[5] & 0xFF) << 8) | ((infoHeader[6] & 0xFF) << 16) | ((infoHeader[7] & 0xFF) << 24);
-	int height = (infoHeader[8] & 0xFF) | ((infoHeader[9] & 0xFF) << 8) | ((infoHeader[10] & 0xFF) << 16) | ((infoHeader[11] & 0xFF) << 24);
-	int bitCount = (infoHeader[14] & 0xFF) | ((infoHeader[15] & 0xFF) << 8);
+	ByteBuffer header = ByteBuffer.wrap(infoHeader).order(ByteOrder.LITTLE_ENDIAN);
+	int width = header.getInt(4);
+	int height = header.getInt(8);
+	int bitCount = header.getShort(14) & 0xFFFF;
 	int stride = (width * bitCount + 7) / 8;
 	stride = (stride + 3) / 4 * 4; // Round up to 4 byte multiple
 	byte[] data = loadData(infoHeader, stride);
@@ -444,11 +440,12 @@ byte[] loadData(byte[] infoHeader) {
 	return data;
 }
 byte[] loadData(byte[] infoHeader, int stride) {
-	int height = (infoHeader[8] & 0xFF) | ((infoHeader[9] & 0xFF) << 8) | ((infoHeader[10] & 0xFF) << 16) | ((infoHeader[11] & 0xFF) << 24);
+	ByteBuffer header = ByteBuffer.wrap(infoHeader).order(ByteOrder.LITTLE_ENDIAN);
+	int height = header.getInt(8);
 	if (height < 0) height = -height;
 	int dataSize = height * stride;
 	byte[] data = new byte[dataSize];
-	int cmp = (infoHeader[16] & 0xFF) | ((infoHeader[17] & 0xFF) << 8) | ((infoHeader[18] & 0xFF) << 16) | ((infoHeader[19] & 0xFF) << 24);
+	int cmp = header.getInt(16);
 	if (cmp == 0 || cmp == 3) { // BMP_NO_COMPRESSION
 		try {
 			if (inputStream.read(data) != dataSize)
@@ -457,7 +454,7 @@ byte[] loadData(byte[] infoHeader, int stride) {
 			SWT.error(SWT.ERROR_IO, e);
 		}
 	} else {
-		int compressedSize = (infoHeader[20] & 0xFF) | ((infoHeader[21] & 0xFF) << 8) | ((infoHeader[22] & 0xFF) << 16) | ((infoHeader[23] & 0xFF) << 24);
+		int compressedSize = header.getInt(20);
 		byte[] compressed = new byte[compressedSize];
 		try {
 			if (inputStream.read(compressed) != compressedSize)
@@ -493,11 +490,12 @@ ImageData[] loadFromByteStream() {
 	} catch (Exception e) {
 		SWT.error(SWT.ERROR_IO, e);
 	}
-	int width = (infoHeader[4] & 0xFF) | ((infoHeader[5] & 0xFF) << 8) | ((infoHeader[6] & 0xFF) << 16) | ((infoHeader[7] & 0xFF) << 24);
-	int height = (infoHeader[8] & 0xFF) | ((infoHeader[9] & 0xFF) << 8) | ((infoHeader[10] & 0xFF) << 16) | ((infoHeader[11] & 0xFF) << 24);
+	ByteBuffer header = ByteBuffer.wrap(infoHeader).order(ByteOrder.LITTLE_ENDIAN);
+	int width = header.getInt(4);
+	int height = header.getInt(8);
 	if (height < 0) height = -height;
-	int bitCount = (infoHeader[14] & 0xFF) | ((infoHeader[15] & 0xFF) << 8);
-	this.compression = (infoHeader[16] & 0xFF) | ((infoHeader[17] & 0xFF) << 8) | ((infoHeader[18] & 0xFF) << 16) | ((infoHeader[19] & 0xFF) << 24);
+	int bitCount = header.getShort(14) & 0xFFFF;
+	this.compression = header.getInt(16);
 	PaletteData palette = loadPalette(infoHeader);
 	if (inputStream.getPosition() < fileHeader[4]) {
 		// Seek to the specified offset
@@ -507,10 +505,14 @@ ImageData[] loadFromByteStream() {
 			SWT.error(SWT.ERROR_IO, e);
 		}
 	}
+	if (rowConsumer != null && (this.compression == 0 || this.compression == 3)) { // BMP_NO_COMPRESSION
+		loadRows(infoHeader, palette);
+		return null;
+	}
 	byte[] data = loadData(infoHeader);
-	this.importantColors = (infoHeader[36] & 0xFF) | ((infoHeader[37] & 0xFF) << 8) | ((infoHeader[38] & 0xFF) << 16) | ((infoHeader[39] & 0xFF) << 24);
-	int xPelsPerMeter = (infoHeader[24] & 0xFF) | ((infoHeader[25] & 0xFF) << 8) | ((infoHeader[26] & 0xFF) << 16) | ((infoHeader[27] & 0xFF) << 24);
-	int yPelsPerMeter = (infoHeader[28] & 0xFF) | ((infoHeader[29] & 0xFF) << 8) | ((infoHeader[30] & 0xFF) << 16) | ((infoHeader[31] & 0xFF) << 24);
+	this.importantColors = header.getInt(36);
+	int xPelsPerMeter = header.getInt(24);
+	int yPelsPerMeter = header.getInt(28);
 	this.pelsPerMeter = new Point(xPelsPerMeter, yPelsPerMeter);
 	int type = (this.compression == 1 /*BMP_RLE8_COMPRESSION*/) || (this.compression == 2 /*BMP_RLE4_COMPRESSION*/) ? SWT.IMAGE_BMP_RLE : SWT.IMAGE_BMP;
 	return new ImageData[] {
@@ -533,10 +535,66 @@ ImageData[] loadFromByteStream() {
 			0)
 	};
 }
+/**
+ * Read uncompressed pixel data a band of rows at a time and pass
+ * each band to the row consumer. The bands of bottom-up bitmaps
+ * are passed from the bottom of the image to the top.
+ */
+void loadRows(byte[] infoHeader, PaletteData palette) {
+	ByteBuffer header = ByteBuffer.wrap(infoHeader).order(ByteOrder.LITTLE_ENDIAN);
+	int width = header.getInt(4);
+	int height = header.getInt(8);
+	boolean bottomUp = height > 0;
+	if (height < 0) height = -height;
+	int bitCount = header.getShort(14) & 0xFFFF;
+	int stride = (width * bitCount + 7) / 8;
+	stride = (stride + 3) / 4 * 4; // Round up to 4 byte multiple
+	int bandHeight = Math.min(height, getBandHeight(stride));
+	byte[] data = new byte[bandHeight * stride];
+	ImageData rows = null;
+	for (int y = 0; y < height; y += bandHeight) {
+		int count = Math.min(bandHeight, height - y);
+		try {
+			if (inputStream.read(data, 0, count * stride) != count * stride)
+				SWT.error(SWT.ERROR_INVALID_IMAGE);
+		} catch (IOException e) {
+			SWT.error(SWT.ERROR_IO, e);
+		}
+		if (rows == null || rows.height != count) {
+			rows = ImageData.internal_new(width, count, bitCount, palette, 4, data, 0, null, null, -1, -1, SWT.IMAGE_BMP, 0, 0, 0, 0);
+		}
+		if (bottomUp) {
+			flipScanLines(data, stride, count);
+			rowsLoaded(rows, height - y - count, count);
+		} else {
+			rowsLoaded(rows, y, count);
+		}
+	}
+}
+@Override
+ImageInfo probeFromByteStream() {
+	loadFileHeader();
+	byte[] infoHeader = new byte[BMPHeaderFixedSize];
+	try {
+		if (inputStream.read(infoHeader) != infoHeader.length)
+			SWT.error(SWT.ERROR_INVALID_IMAGE);
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+	ByteBuffer header = ByteBuffer.wrap(infoHeader).order(ByteOrder.LITTLE_ENDIAN);
+	int width = header.getInt(4);
+	int height = header.getInt(8);
+	if (height < 0) height = -height;
+	int bitCount = header.getShort(14) & 0xFFFF;
+	int compression = header.getInt(16);
+	int type = (compression == 1 /*BMP_RLE8_COMPRESSION*/) || (compression == 2 /*BMP_RLE4_COMPRESSION*/) ? SWT.IMAGE_BMP_RLE : SWT.IMAGE_BMP;
+	return ImageInfo.internal_new(type, width, height, bitCount, 1, false);
+}
 PaletteData loadPalette(byte[] infoHeader) {
-	int depth = (infoHeader[14] & 0xFF) | ((infoHeader[15] & 0xFF) << 8);
+	ByteBuffer header = ByteBuffer.wrap(infoHeader).order(ByteOrder.LITTLE_ENDIAN);
+	int depth = header.getShort(14) & 0xFFFF;
 	if (depth <= 8) {
-		int numColors = (infoHeader[32] & 0xFF) | ((infoHeader[33] & 0xFF) << 8) | ((infoHeader[34] & 0xFF) << 16) | ((infoHeader[35] & 0xFF) << 24);
+		int numColors = header.getInt(32);
 		if (numColors == 0) {
 			numColors = 1 << depth;
 		} else {
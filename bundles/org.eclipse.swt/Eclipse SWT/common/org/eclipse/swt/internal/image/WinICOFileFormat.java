@@ -14,6 +14,7 @@ package org.eclipse.swt.internal.image;
 import org.eclipse.swt.*;
 import org.eclipse.swt.graphics.*;
 import java.io.*;
+import java.nio.*;
 
 public final class WinICOFileFormat extends FileFormat {
 
@@ -51,15 +52,9 @@ int iconSize(ImageData i) {
 	return WinBMPFileFormat.BMPHeaderFixedSize + paletteSize + dataSize;
 }
 @Override
-boolean isFileFormat(LEDataInputStream stream) {
-	try {
-		byte[] header = new byte[4];
-		stream.read(header);
-		stream.unread(header);
-		return header[0] == 0 && header[1] == 0 && header[2] == 1 && header[3] == 0;
-	} catch (Exception e) {
-		return false;
-	}
+boolean isFileFormat(byte[] header) {
+	if (header.length < 4) return false;
+	return header[0] == 0 && header[1] == 0 && header[2] == 1 && header[3] == 0;
 }
 boolean isValidIcon(ImageData i) {
 	switch (i.depth) {
@@ -112,6 +107,36 @@ int loadFileHeader(LEDataInputStream byteStream, boolean hasHeader) {
 		SWT.error(SWT.ERROR_INVALID_IMAGE);
 	return numIcons;
 }
+/**
+ * Describe the icons from the icon directory and the header
+ * of the first icon.
+ */
+@Override
+ImageInfo probeFromByteStream() {
+	int numIcons = loadFileHeader(inputStream);
+	int[][] headers = loadIconHeaders(numIcons);
+	try {
+		if (inputStream.getPosition() < headers[0][6]) {
+			inputStream.skip(headers[0][6] - inputStream.getPosition());
+		}
+		FileFormat png = new PNGFileFormat();
+		if (png.isFileFormat(readHeader(inputStream))) {
+			png.loader = this.loader;
+			ImageInfo info = png.probeFromStream(inputStream);
+			info.frameCount = numIcons;
+			return info;
+		}
+	} catch (IOException e) {
+		SWT.error(SWT.ERROR_IO, e);
+	}
+	byte[] infoHeader = loadInfoHeader(headers[0]);
+	ByteBuffer header = ByteBuffer.wrap(infoHeader).order(ByteOrder.LITTLE_ENDIAN);
+	int width = header.getInt(4);
+	int height = header.getInt(8);
+	if (height < 0) height = -height;
+	int depth = header.getShort(14) & 0xFFFF;
+	return ImageInfo.internal_new(SWT.IMAGE_ICO, width, height, depth, numIcons, false);
+}
 @Override
 ImageData[] loadFromByteStream() {
 	int numIcons = loadFileHeader(inputStream);
@@ -127,8 +152,8 @@ ImageData[] loadFromByteStream() {
  */
 ImageData loadIcon(int[] iconHeader) {
 	try {
-		FileFormat png = getFileFormat(inputStream, "PNG");
-		if (png != null) {
+		FileFormat png = new PNGFileFormat();
+		if (png.isFileFormat(readHeader(inputStream))) {
 			png.loader = this.loader;
 			return png.loadFromStream(inputStream)[0];
 		}
@@ -139,12 +164,12 @@ ImageData loadIcon(int[] iconHeader) {
 	bmpFormat.inputStream = inputStream;
 	PaletteData palette = bmpFormat.loadPalette(infoHeader);
 	byte[] shapeData = bmpFormat.loadData(infoHeader);
-	int width = (infoHeader[4] & 0xFF) | ((infoHeader[5] & 0xFF) << 8) | ((infoHeader[6] & 0xFF) << 16) | ((infoHeader[7] & 0xFF) << 24);
-	int height = (infoHeader[8] & 0xFF) | ((infoHeader[9] & 0xFF) << 8) | ((infoHeader[10] & 0xFF) << 16) | ((infoHeader[11] & 0xFF) << 24);
+	ByteBuffer header = ByteBuffer.wrap(infoHeader).order(ByteOrder.LITTLE_ENDIAN);
+	int width = header.getInt(4);
+	int height = header.getInt(8);
 	if (height < 0) height = -height;
-	int depth = (infoHeader[14] & 0xFF) | ((infoHeader[15] & 0xFF) << 8);
-	infoHeader[14] = 1;
-	infoHeader[15] = 0;
+	int depth = header.getShort(14) & 0xFFFF;
+	header.putShort(14, (short) 1);
 	byte[] maskData = bmpFormat.loadData(infoHeader);
 	maskData = convertPad(maskData, width, height, 1, 4, 2);
 	bitInvertData(maskData, 0, maskData.length);
@@ -206,11 +231,12 @@ byte[] loadInfoHeader(int[] iconHeader) {
 	} catch (IOException e) {
 		SWT.error(SWT.ERROR_IO, e);
 	}
-	if (((infoHeader[12] & 0xFF) | ((infoHeader[13] & 0xFF) << 8)) != 1)
+	ByteBuffer header = ByteBuffer.wrap(infoHeader).order(ByteOrder.LITTLE_ENDIAN);
+	if ((header.getShort(12) & 0xFFFF) != 1)
 		SWT.error(SWT.ERROR_INVALID_IMAGE);
-	int infoWidth = (infoHeader[4] & 0xFF) | ((infoHeader[5] & 0xFF) << 8) | ((infoHeader[6] & 0xFF) << 16) | ((infoHeader[7] & 0xFF) << 24);
-	int infoHeight = (infoHeader[8] & 0xFF) | ((infoHeader[9] & 0xFF) << 8) | ((infoHeader[10] & 0xFF) << 16) | ((infoHeader[11] & 0xFF) << 24);
-	int bitCount = (infoHeader[14] & 0xFF) | ((infoHeader[15] & 0xFF) << 8);
+	int infoWidth = header.getInt(4);
+	int infoHeight = header.getInt(8);
+	int bitCount = header.getShort(14) & 0xFFFF;
 	/*
 	 * Feature in the ico spec. The spec says that a width/height of 0 represents 256, however, newer images can be created with even larger sizes.
 	 * Images with a width/height >= 256 will have their width/height set to 0 in the icon header; the fix for this case is to read the width/height
@@ -222,10 +248,7 @@ byte[] loadInfoHeader(int[] iconHeader) {
 	if (!((width == infoWidth) && (height * 2 == infoHeight) &&
 		(bitCount == 1 || bitCount == 4 || bitCount == 8 || bitCount == 24 || bitCount == 32)))
 			SWT.error(SWT.ERROR_INVALID_IMAGE);
-	infoHeader[8] = (byte)(height & 0xFF);
-	infoHeader[9] = (byte)((height >> 8) & 0xFF);
-	infoHeader[10] = (byte)((height >> 16) & 0xFF);
-	infoHeader[11] = (byte)((height >> 24) & 0xFF);
+	header.putInt(8, height);
 	return infoHeader;
 }
 /**
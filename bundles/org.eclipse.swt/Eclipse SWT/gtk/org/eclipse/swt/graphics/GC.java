@@ -483,6 +483,8 @@ public void copyArea(Image image, int x, int y) {
 }
 void copyAreaInPixels(Image image, int x, int y) {
 	if (OS.USE_CAIRO) {
+		image.unshareSurface();
+		ScaledImageCache.remove(image);
 		long /*int*/ cairo = Cairo.cairo_create(image.surface);
 		if (cairo == 0) SWT.error(SWT.ERROR_NO_HANDLES);
 		Cairo.cairo_translate(cairo, -x, -y);
@@ -933,14 +935,6 @@ void drawImage(Image srcImage, int srcX, int srcY, int srcWidth, int srcHeight,
 			}
 			Cairo.cairo_rectangle(cairo, destX , destY, destWidth, destHeight);
 			Cairo.cairo_clip(cairo);
-			if (srcWidth != destWidth || srcHeight != destHeight) {
-				float scaleX = destWidth / (float)srcWidth;
-				float scaleY = destHeight / (float)srcHeight;
-				Cairo.cairo_translate(cairo, destX - (int)(srcX * scaleX), destY - (int)(srcY * scaleY));
-				Cairo.cairo_scale(cairo, scaleX, scaleY);
-			} else {
-				Cairo.cairo_translate(cairo, destX - srcX, destY - srcY);
-			}
 			int filter = Cairo.CAIRO_FILTER_GOOD;
 			switch (data.interpolation) {
 				case SWT.DEFAULT: filter = Cairo.CAIRO_FILTER_GOOD; break;
@@ -948,64 +942,27 @@ void drawImage(Image srcImage, int srcX, int srcY, int srcWidth, int srcHeight,
 				case SWT.LOW: filter = Cairo.CAIRO_FILTER_FAST; break;
 				case SWT.HIGH: filter = Cairo.CAIRO_FILTER_BEST; break;
 			}
-			long /*int*/ pattern = Cairo.cairo_pattern_create_for_surface(srcImage.surface);
-			if (pattern == 0) SWT.error(SWT.ERROR_NO_HANDLES);
-			if (srcWidth != destWidth || srcHeight != destHeight) {
-				/*
-				* Bug in Cairo.  When drawing the image stretched with an interpolation
-				* algorithm, the edges of the image are faded.  This is not a bug, but
-				* it is not desired.  To avoid the faded edges, it should be possible to
-				* use cairo_pattern_set_extend() to set the pattern extend to either
-				* CAIRO_EXTEND_REFLECT or CAIRO_EXTEND_PAD, but these are not implemented
-				* in some versions of cairo (1.2.x) and have bugs in others (in 1.4.2 it
-				* draws with black edges).  The fix is to implement CAIRO_EXTEND_REFLECT
-				* by creating an image that is 3 times bigger than the original, drawing
-				* the original image in every quadrant (with an appropriate transform) and
-				* use this image as the pattern.
-				*
-				* NOTE: For some reason, it is necessary to use CAIRO_EXTEND_PAD with
-				* the image that was created or the edges are still faded.
-				*
-				* NOTE: Cairo.CAIRO_EXTEND_PAD works on Cairo 1.8.x and greater.
-				*/
-				int version = Cairo.cairo_version ();
-				if (version < Cairo.CAIRO_VERSION_ENCODE(1, 8, 0)) {
-					long /*int*/ surface = Cairo.cairo_image_surface_create(Cairo.CAIRO_FORMAT_ARGB32, imgWidth * 3, imgHeight * 3);
-					long /*int*/ cr = Cairo.cairo_create(surface);
-					Cairo.cairo_set_source_surface(cr, srcImage.surface, imgWidth, imgHeight);
-					Cairo.cairo_paint(cr);
-					Cairo.cairo_scale(cr, -1, -1);
-					Cairo.cairo_set_source_surface(cr, srcImage.surface, -imgWidth, -imgHeight);
-					Cairo.cairo_paint(cr);
-					Cairo.cairo_set_source_surface(cr, srcImage.surface, -imgWidth * 3, -imgHeight);
-					Cairo.cairo_paint(cr);
-					Cairo.cairo_set_source_surface(cr, srcImage.surface, -imgWidth, -imgHeight * 3);
-					Cairo.cairo_paint(cr);
-					Cairo.cairo_set_source_surface(cr, srcImage.surface, -imgWidth * 3, -imgHeight * 3);
-					Cairo.cairo_paint(cr);
-					Cairo.cairo_scale(cr, 1, -1);
-					Cairo.cairo_set_source_surface(cr, srcImage.surface, -imgWidth, imgHeight);
-					Cairo.cairo_paint(cr);
-					Cairo.cairo_set_source_surface(cr, srcImage.surface, -imgWidth * 3, imgHeight);
-					Cairo.cairo_paint(cr);
-					Cairo.cairo_scale(cr, -1, -1);
-					Cairo.cairo_set_source_surface(cr, srcImage.surface, imgWidth, -imgHeight);
-					Cairo.cairo_paint(cr);
-					Cairo.cairo_set_source_surface(cr, srcImage.surface, imgWidth, -imgHeight * 3);
-					Cairo.cairo_paint(cr);
-					Cairo.cairo_destroy(cr);
-					long /*int*/ newPattern = Cairo.cairo_pattern_create_for_surface(surface);
-					Cairo.cairo_surface_destroy(surface);
-					if (newPattern == 0) SWT.error(SWT.ERROR_NO_HANDLES);
-					Cairo.cairo_pattern_destroy(pattern);
-					pattern = newPattern;
-					Cairo.cairo_pattern_set_extend(pattern, Cairo.CAIRO_EXTEND_PAD);
-					double[] matrix = new double[6];
-					Cairo.cairo_matrix_init_translate(matrix, imgWidth, imgHeight);
-					Cairo.cairo_pattern_set_matrix(pattern, matrix);
+			boolean scaled = srcWidth != destWidth || srcHeight != destHeight;
+			long /*int*/ scaledSurface = 0;
+			if (scaled && srcX == 0 && srcY == 0 && srcWidth == imgWidth && srcHeight == imgHeight && srcImage.memGC == null && isPixelAligned(cairo)) {
+				scaledSurface = ScaledImageCache.get(srcImage, imgWidth, imgHeight, destWidth, destHeight, filter);
+			}
+			long /*int*/ pattern;
+			if (scaledSurface != 0) {
+				/* The whole image is drawn scaled, the surface it was scaled to before is drawn as is */
+				Cairo.cairo_translate(cairo, destX, destY);
+				pattern = Cairo.cairo_pattern_create_for_surface(scaledSurface);
+				if (pattern == 0) SWT.error(SWT.ERROR_NO_HANDLES);
+			} else {
+				if (scaled) {
+					float scaleX = destWidth / (float)srcWidth;
+					float scaleY = destHeight / (float)srcHeight;
+					Cairo.cairo_translate(cairo, destX - (int)(srcX * scaleX), destY - (int)(srcY * scaleY));
+					Cairo.cairo_scale(cairo, scaleX, scaleY);
 				} else {
-					Cairo.cairo_pattern_set_extend(pattern, Cairo.CAIRO_EXTEND_PAD);
+					Cairo.cairo_translate(cairo, destX - srcX, destY - srcY);
 				}
+				pattern = createImagePattern(srcImage.surface, imgWidth, imgHeight, scaled);
 			}
 			Cairo.cairo_pattern_set_filter(pattern, filter);
 			Cairo.cairo_set_source(cairo, pattern);
@@ -1027,6 +984,103 @@ void drawImage(Image srcImage, int srcX, int srcY, int srcWidth, int srcHeight,
 		drawImage(srcImage, srcX, srcY, srcWidth, srcHeight, destX, destY, destWidth, destHeight, simple, imgWidth, imgHeight);
 	}
 }
+
+/**
+ * Returns a new pattern for the surface of an image, which is set up to
+ * draw the edges of the image sharp when it is scaled.
+ */
+static long /*int*/ createImagePattern(long /*int*/ imageSurface, int imgWidth, int imgHeight, boolean scaled) {
+	long /*int*/ pattern = Cairo.cairo_pattern_create_for_surface(imageSurface);
+	if (pattern == 0) SWT.error(SWT.ERROR_NO_HANDLES);
+	if (scaled) {
+		/*
+		* Bug in Cairo.  When drawing the image stretched with an interpolation
+		* algorithm, the edges of the image are faded.  This is not a bug, but
+		* it is not desired.  To avoid the faded edges, it should be possible to
+		* use cairo_pattern_set_extend() to set the pattern extend to either
+		* CAIRO_EXTEND_REFLECT or CAIRO_EXTEND_PAD, but these are not implemented
+		* in some versions of cairo (1.2.x) and have bugs in others (in 1.4.2 it
+		* draws with black edges).  The fix is to implement CAIRO_EXTEND_REFLECT
+		* by creating an image that is 3 times bigger than the original, drawing
+		* the original image in every quadrant (with an appropriate transform) and
+		* use this image as the pattern.
+		*
+		* NOTE: For some reason, it is necessary to use CAIRO_EXTEND_PAD with
+		* the image that was created or the edges are still faded.
+		*
+		* NOTE: Cairo.CAIRO_EXTEND_PAD works on Cairo 1.8.x and greater.
+		*/
+		int version = Cairo.cairo_version ();
+		if (version < Cairo.CAIRO_VERSION_ENCODE(1, 8, 0)) {
+			long /*int*/ surface = Cairo.cairo_image_surface_create(Cairo.CAIRO_FORMAT_ARGB32, imgWidth * 3, imgHeight * 3);
+			long /*int*/ cr = Cairo.cairo_create(surface);
+			Cairo.cairo_set_source_surface(cr, imageSurface, imgWidth, imgHeight);
+			Cairo.cairo_paint(cr);
+			Cairo.cairo_scale(cr, -1, -1);
+			Cairo.cairo_set_source_surface(cr, imageSurface, -imgWidth, -imgHeight);
+			Cairo.cairo_paint(cr);
+			Cairo.cairo_set_source_surface(cr, imageSurface, -imgWidth * 3, -imgHeight);
+			Cairo.cairo_paint(cr);
+			Cairo.cairo_set_source_surface(cr, imageSurface, -imgWidth, -imgHeight * 3);
+			Cairo.cairo_paint(cr);
+			Cairo.cairo_set_source_surface(cr, imageSurface, -imgWidth * 3, -imgHeight * 3);
+			Cairo.cairo_paint(cr);
+			Cairo.cairo_scale(cr, 1, -1);
+			Cairo.cairo_set_source_surface(cr, imageSurface, -imgWidth, imgHeight);
+			Cairo.cairo_paint(cr);
+			Cairo.cairo_set_source_surface(cr, imageSurface, -imgWidth * 3, imgHeight);
+			Cairo.cairo_paint(cr);
+			Cairo.cairo_scale(cr, -1, -1);
+			Cairo.cairo_set_source_surface(cr, imageSurface, imgWidth, -imgHeight);
+			Cairo.cairo_paint(cr);
+			Cairo.cairo_set_source_surface(cr, imageSurface, imgWidth, -imgHeight * 3);
+			Cairo.cairo_paint(cr);
+			Cairo.cairo_destroy(cr);
+			long /*int*/ newPattern = Cairo.cairo_pattern_create_for_surface(surface);
+			Cairo.cairo_surface_destroy(surface);
+			if (newPattern == 0) SWT.error(SWT.ERROR_NO_HANDLES);
+			Cairo.cairo_pattern_destroy(pattern);
+			pattern = newPattern;
+			Cairo.cairo_pattern_set_extend(pattern, Cairo.CAIRO_EXTEND_PAD);
+			double[] matrix = new double[6];
+			Cairo.cairo_matrix_init_translate(matrix, imgWidth, imgHeight);
+			Cairo.cairo_pattern_set_matrix(pattern, matrix);
+		} else {
+			Cairo.cairo_pattern_set_extend(pattern, Cairo.CAIRO_EXTEND_PAD);
+		}
+	}
+	return pattern;
+}
+
+/**
+ * Returns a new surface with the whole image scaled to the given size.
+ */
+static long /*int*/ createScaledSurface(Image image, int imgWidth, int imgHeight, int width, int height, int filter) {
+	long /*int*/ surface = Cairo.cairo_image_surface_create(Cairo.CAIRO_FORMAT_ARGB32, width, height);
+	if (surface == 0) SWT.error(SWT.ERROR_NO_HANDLES);
+	long /*int*/ cairo = Cairo.cairo_create(surface);
+	if (cairo == 0) SWT.error(SWT.ERROR_NO_HANDLES);
+	Cairo.cairo_scale(cairo, width / (float)imgWidth, height / (float)imgHeight);
+	long /*int*/ pattern = createImagePattern(image.surface, imgWidth, imgHeight, true);
+	Cairo.cairo_pattern_set_filter(pattern, filter);
+	Cairo.cairo_set_source(cairo, pattern);
+	Cairo.cairo_paint(cairo);
+	Cairo.cairo_destroy(cairo);
+	Cairo.cairo_pattern_destroy(pattern);
+	return surface;
+}
+
+/**
+ * Returns whether the current transformation maps device pixels to
+ * device pixels, so that surfaces are drawn without resampling.
+ */
+static boolean isPixelAligned(long /*int*/ cairo) {
+	double[] matrix = new double[6];
+	Cairo.cairo_get_matrix(cairo, matrix);
+	return Math.abs(matrix[0]) == 1 && matrix[1] == 0 && matrix[2] == 0 && Math.abs(matrix[3]) == 1
+		&& matrix[4] == Math.rint(matrix[4]) && matrix[5] == Math.rint(matrix[5]);
+}
+
 void drawImage(Image srcImage, int srcX, int srcY, int srcWidth, int srcHeight, int destX, int destY, int destWidth, int destHeight, boolean simple, int imgWidth, int imgHeight) {
 	/* Refresh Image as per zoom level, if required. */
 	srcImage.refreshImageForZoom ();
@@ -12,11 +12,15 @@ package org.eclipse.swt.graphics;
 
 
 import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 import org.eclipse.swt.*;
 import org.eclipse.swt.internal.*;
 import org.eclipse.swt.internal.cairo.*;
 import org.eclipse.swt.internal.gtk.*;
+import org.eclipse.swt.internal.image.*;
 
 /**
  * Instances of this class are graphics which have been prepared
@@ -176,6 +180,22 @@ public final class Image extends Resource implements Drawable {
 	 */
 	private int currentDeviceZoom = 100;
 
+	/**
+	 * Native resources of the zoom levels the image was displayed at before,
+	 * see ImageVariantCache
+	 */
+	Map<Integer, ImageVariantCache.Variant> variants;
+
+	/**
+	 * Image data computed ahead of time by prepareZoomLevels(), by zoom level
+	 */
+	Map<Integer, ImageData> preparedData;
+
+	/**
+	 * Surfaces the image was scaled to when drawn, see ScaledImageCache
+	 */
+	Map<Long, ScaledImageCache.Entry> scaledSurfaces;
+
 Image(Device device) {
 	super(device);
 	currentDeviceZoom = DPIUtil.getDeviceZoom();
@@ -581,6 +601,43 @@ public Image(Device device, ImageData data) {
 	init();
 }
 
+/**
+ * Constructs an instance of this class from the given
+ * <code>ARGBImageData</code>.
+ * <p>
+ * Premultiplied pixels are copied to the image as they are, which
+ * is faster than creating the image from an <code>ImageData</code>.
+ * </p>
+ * <p>
+ * You must dispose the image when it is no longer required.
+ * </p>
+ *
+ * @param device the device on which to create the image
+ * @param data the image data to create the image from (must not be null)
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if device is null and there is no current device</li>
+ *    <li>ERROR_NULL_ARGUMENT - if the image data is null</li>
+ * </ul>
+ * @exception SWTError <ul>
+ *    <li>ERROR_NO_HANDLES if a handle could not be obtained for image creation</li>
+ * </ul>
+ *
+ * @see #dispose()
+ * @since 3.106
+ */
+public Image(Device device, ARGBImageData data) {
+	super(device);
+	if (data == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	currentDeviceZoom = DPIUtil.getDeviceZoom();
+	if (OS.USE_CAIRO && currentDeviceZoom == 100) {
+		init(data);
+	} else {
+		init(DPIUtil.autoScaleUp (device, data.toImageData()));
+	}
+	init();
+}
+
 /**
  * Constructs an instance of this class, whose type is
  * <code>SWT.ICON</code>, from the two given <code>ImageData</code>
@@ -684,10 +741,18 @@ public Image(Device device, ImageData source, ImageData mask) {
  */
 public Image(Device device, InputStream stream) {
 	super(device);
-	ImageData data = new ImageData(stream);
 	currentDeviceZoom = DPIUtil.getDeviceZoom();
-	data = DPIUtil.autoScaleUp (device, data);
-	init(data);
+	ImageData data = null;
+	if (OS.USE_CAIRO && (currentDeviceZoom == 100 || !this.device.isAutoScalable())) {
+		/* Decode common PNG images straight into the cairo surface */
+		data = initDirect(stream);
+	} else {
+		data = new ImageData(stream);
+	}
+	if (data != null) {
+		data = DPIUtil.autoScaleUp (device, data);
+		init(data);
+	}
 	init();
 }
 
@@ -727,9 +792,8 @@ public Image(Device device, String filename) {
 	super(device);
 	if (filename == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
 
-	ImageData data = new ImageData(filename);
 	currentDeviceZoom = DPIUtil.getDeviceZoom();
-	data = DPIUtil.autoScaleUp (device, data);
+	ImageData data = ImageDiskCache.load(device, filename, currentDeviceZoom);
 	init(data);
 	init();
 }
@@ -776,8 +840,7 @@ public Image(Device device, ImageFileNameProvider imageFileNameProvider) {
 			init(data);
 		}
 	} else {
-		ImageData imageData = new ImageData (filename);
-		ImageData resizedData = DPIUtil.autoScaleUp (device, imageData);
+		ImageData resizedData = ImageDiskCache.load (device, filename, currentDeviceZoom);
 		init(resizedData);
 	}
 	init ();
@@ -829,79 +892,180 @@ public Image(Device device, ImageDataProvider imageDataProvider) {
 
 /**
  * Refresh the Image based on the zoom level, if required.
+ * <p>
+ * The native resources of the previous zoom level are kept in the
+ * ImageVariantCache, and reused when the image returns to that level.
+ * </p>
  *
  * @return true if image is refreshed
  */
 boolean refreshImageForZoom () {
-	boolean refreshed = false;
-	int deviceZoom = DPIUtil.getDeviceZoom();
-	if (imageFileNameProvider != null) {
-		int deviceZoomLevel = deviceZoom;
-		if (deviceZoomLevel != currentDeviceZoom) {
-			boolean[] found = new boolean[1];
-			String filename = DPIUtil.validateAndGetImagePathAtZoom (imageFileNameProvider, deviceZoomLevel, found);
-			/* Avoid re-creating the fall-back image, when current zoom is already 100% */
-			if (found[0] || currentDeviceZoom != 100) {
-				/* Release current native resources */
-				destroy ();
-				initNative(filename);
-				if (this.pixmap == 0 && this.surface == 0) {
-					ImageData data = new ImageData(filename);
-					init(data);
-				}
-				init ();
-				refreshed = true;
+	int deviceZoomLevel = DPIUtil.getDeviceZoom();
+	if (deviceZoomLevel == currentDeviceZoom) return false;
+	ScaledImageCache.remove(this);
+	ImageVariantCache.Variant variant = memGC == null ? ImageVariantCache.take(this, deviceZoomLevel) : null;
+	if (variant != null) {
+		ImageVariantCache.put(this, currentDeviceZoom);
+		ImageVariantCache.restore(this, variant);
+	} else {
+		ImageData data = ImageVariantCache.takePrepared(this, deviceZoomLevel);
+		boolean[] found = new boolean[1];
+		String filename = null;
+		if (data == null) {
+			if (imageFileNameProvider != null) {
+				filename = DPIUtil.validateAndGetImagePathAtZoom (imageFileNameProvider, deviceZoomLevel, found);
+				if (!found[0]) data = ImageDiskCache.load (device, filename, DPIUtil.getDeviceZoom ());
+			} else {
+				data = imageDataAtZoom(deviceZoomLevel);
 			}
-			if (!found[0]) {
-				/* Release current native resources */
-				destroy ();
-				ImageData imageData = new ImageData (filename);
-				ImageData resizedData = DPIUtil.autoScaleUp (device, imageData);
-				init(resizedData);
-				init ();
-				refreshed = true;
+		}
+		/* Release current native resources, or keep them for the current zoom level */
+		if (memGC == null) {
+			ImageVariantCache.put(this, currentDeviceZoom);
+		} else {
+			destroyHandles ();
+		}
+		if (data == null) {
+			initNative(filename);
+			if (this.pixmap == 0 && this.surface == 0) {
+				data = new ImageData(filename);
 			}
-			currentDeviceZoom = deviceZoomLevel;
 		}
+		if (data != null) init(data);
+		init();
+	}
+	currentDeviceZoom = deviceZoomLevel;
+	return true;
+}
+
+/**
+ * Returns the image data of the receiver at the given zoom level, as
+ * given by its providers or scaled from its current contents. Only image
+ * data providers and scaling are used, so that this can be called from a
+ * background thread for images with providers.
+ */
+ImageData imageDataAtZoom(int zoom) {
+	boolean[] found = new boolean[1];
+	if (imageFileNameProvider != null) {
+		String filename = DPIUtil.validateAndGetImagePathAtZoom (imageFileNameProvider, zoom, found);
+		return found[0] ? new ImageData (filename) : ImageDiskCache.load(device, filename, zoom);
 	} else if (imageDataProvider != null) {
-		int deviceZoomLevel = deviceZoom;
-		if (deviceZoomLevel != currentDeviceZoom) {
-			boolean[] found = new boolean[1];
-			ImageData data = DPIUtil.validateAndGetImageDataAtZoom (imageDataProvider, deviceZoomLevel, found);
-			/* Avoid re-creating the fall-back image, when current zoom is already 100% */
-			if (found[0] || currentDeviceZoom != 100) {
-				/* Release current native resources */
-				destroy ();
-				init(data);
-				init();
-				refreshed = true;
-			}
-			if (!found[0]) {
-				/* Release current native resources */
-				destroy ();
-				ImageData resizedData = DPIUtil.autoScaleImageData(device, data, deviceZoomLevel, 100);
-				init(resizedData);
-				init();
-				refreshed = true;
+		ImageData data = DPIUtil.validateAndGetImageDataAtZoom (imageDataProvider, zoom, found);
+		return found[0] ? data : DPIUtil.autoScaleImageData(device, data, zoom, 100);
+	} else {
+		return DPIUtil.autoScaleImageData(device, getImageDataAtCurrentZoom(), zoom, currentDeviceZoom);
+	}
+}
+
+/**
+ * Prepares the receiver to be displayed at the given zoom levels, so
+ * that moving it to one of these levels, for example when a shell is
+ * moved to a monitor with a different resolution, does not load and
+ * scale it on the user interface thread.
+ * <p>
+ * The work is done in the background and this method returns
+ * immediately. The image file name or image data providers of the
+ * receiver may be called from a background thread. This is a hint,
+ * platforms are free to ignore it.
+ * </p>
+ *
+ * @param zoomLevels the zoom levels in % of the standard resolution,
+ * for example 150 or 200
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if the zoom levels are null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_GRAPHIC_DISPOSED - if the receiver has been disposed</li>
+ * </ul>
+ *
+ * @since 3.106
+ */
+public void prepareZoomLevels (int... zoomLevels) {
+	if (isDisposed()) SWT.error(SWT.ERROR_GRAPHIC_DISPOSED);
+	if (zoomLevels == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	if (preparedData == null) preparedData = new HashMap<>();
+	List<Integer> zooms = new ArrayList<>();
+	for (int zoom : zoomLevels) {
+		if (zoom <= 0 || zoom == currentDeviceZoom || zooms.contains(zoom)) continue;
+		if (variants != null && variants.containsKey(zoom)) continue;
+		zooms.add(zoom);
+	}
+	if (zooms.isEmpty()) return;
+	Map<Integer, ImageData> prepared = preparedData;
+	/* Images without providers are scaled from their current contents, read here */
+	ImageData source = imageFileNameProvider == null && imageDataProvider == null ? getImageDataAtCurrentZoom() : null;
+	int sourceZoom = currentDeviceZoom;
+	ForkJoinPool.commonPool().execute(() -> {
+		for (int zoom : zooms) {
+			try {
+				ImageData data = source != null ? DPIUtil.autoScaleImageData(device, source, zoom, sourceZoom) : imageDataAtZoom(zoom);
+				ImageVariantCache.putPrepared(this, prepared, zoom, data);
+			} catch (RuntimeException e) {
+				/* The image is loaded on the user interface thread when needed, reporting the error there */
 			}
-			currentDeviceZoom = deviceZoomLevel;
 		}
-	} else {
-		int deviceZoomLevel = deviceZoom;
-		if (deviceZoomLevel != currentDeviceZoom) {
-			ImageData data = getImageDataAtCurrentZoom();
-			destroy ();
-			ImageData resizedData = DPIUtil.autoScaleImageData(device, data, deviceZoomLevel, currentDeviceZoom);
-			init(resizedData);
-			init();
-			refreshed = true;
-			currentDeviceZoom = deviceZoomLevel;
+	});
+}
+
+/**
+ * Loads the first image of the stream. Formats that support it are
+ * decoded straight into a new cairo surface, in which case null is
+ * returned. Otherwise the image data is returned for init(ImageData).
+ */
+ImageData initDirect(InputStream stream) {
+	if (stream == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
+	DirectImageTarget target = new DirectImageTarget() {
+		long /*int*/ data;
+		int stride;
+
+		@Override
+		public boolean begin(int width, int height, boolean hasAlpha) {
+			int format = hasAlpha ? Cairo.CAIRO_FORMAT_ARGB32 : Cairo.CAIRO_FORMAT_RGB24;
+			surface = Cairo.cairo_image_surface_create(format, width, height);
+			if (surface == 0) SWT.error(SWT.ERROR_NO_HANDLES);
+			data = Cairo.cairo_image_surface_get_data(surface);
+			stride = Cairo.cairo_image_surface_get_stride(surface);
+			Image.this.type = SWT.BITMAP;
+			Image.this.width = width;
+			Image.this.height = height;
+			if (hasAlpha) alphaData = new byte[width * height];
+			return true;
 		}
+
+		@Override
+		public void setRow(int y, int[] pixels, byte[] alphas) {
+			OS.memmove(data + (y * stride), pixels, pixels.length * 4);
+			if (alphas != null) System.arraycopy(alphas, 0, alphaData, y * alphas.length, alphas.length);
+		}
+	};
+	ImageData[] data;
+	try {
+		data = FileFormat.load(stream, new ImageLoader(), target);
+	} catch (RuntimeException | Error e) {
+		if (surface != 0) Cairo.cairo_surface_destroy(surface);
+		surface = 0;
+		alphaData = null;
+		throw e;
 	}
-	return refreshed;
+	if (data == null) {
+		Cairo.cairo_surface_mark_dirty(surface);
+		return null;
+	}
+	if (data.length < 1) SWT.error(SWT.ERROR_INVALID_IMAGE);
+	return data[0];
 }
 
 void initNative(String filename) {
+	/* Images that can be cached are read from the image disk cache instead */
+	if (ImageDiskCache.directory() != null) {
+		try {
+			init(new ImageData(filename));
+			return;
+		} catch (SWTException e) {
+			if (e.code != SWT.ERROR_UNSUPPORTED_FORMAT) throw e;
+		}
+	}
 	try {
 		int length = filename.length ();
 		char [] chars = new char [length];
@@ -1206,10 +1370,20 @@ void destroyMask() {
 
 @Override
 void destroy() {
+	ImageVariantCache.remove(this);
+	ImageVariantCache.removePrepared(this);
+	destroyHandles();
+}
+
+/**
+ * Releases the native resources of the current zoom level.
+ */
+void destroyHandles() {
 	if (memGC != null) memGC.dispose();
+	ScaledImageCache.remove(this);
 	if (pixmap != 0) OS.g_object_unref(pixmap);
 	if (mask != 0) OS.g_object_unref(mask);
-	if (surface != 0) Cairo.cairo_surface_destroy(surface);
+	if (surface != 0) SharedSurfaces.destroy(surface);
 	surface = pixmap = mask = 0;
 	memGC = null;
 }
@@ -1235,7 +1409,8 @@ public boolean equals (Object object) {
 	} else if (imageFileNameProvider != null && image.imageFileNameProvider != null) {
 		return imageFileNameProvider.equals (image.imageFileNameProvider);
 	} else if (OS.USE_CAIRO) {
-		return surface == image.surface;
+		/* Images sharing a surface are still distinct images */
+		return surface == image.surface && !SharedSurfaces.isShared(surface);
 	} else {
 		return pixmap == image.pixmap;
 	}
@@ -1508,12 +1683,55 @@ public ImageData getImageData (int zoom) {
 			return new ImageData (fileName);
 		}
 		// AutoScale the image at 100% zoom
-		return DPIUtil.autoScaleUp (device, new ImageData (fileName));
+		return ImageDiskCache.load (device, fileName, DPIUtil.getDeviceZoom ());
 	} else {
 		return DPIUtil.autoScaleImageData (device, getImageDataAtCurrentZoom (), zoom, currentDeviceZoom);
 	}
 }
 
+/**
+ * Invokes platform specific functionality to turn the sharing of
+ * surfaces between images created from identical image data on or off.
+ * <p>
+ * <b>IMPORTANT:</b> This method is <em>not</em> part of the public
+ * API for <code>Image</code>. It is marked public only so that it
+ * can be shared within the packages provided by SWT. It is not
+ * available on all platforms, and should never be called from
+ * application code.
+ * </p>
+ *
+ * @param enabled whether images share surfaces, or null to keep the setting
+ * @return the number of images holding a shared surface
+ *
+ * @noreference This method is not intended to be referenced by clients.
+ */
+public static int gtk_shareSurfaces(Boolean enabled) {
+	if (enabled != null) SharedSurfaces.setEnabled(enabled.booleanValue());
+	return SharedSurfaces.getHolders();
+}
+
+/**
+ * Invokes platform specific functionality to answer the statistics of
+ * the cache that keeps the native resources of images at the zoom levels
+ * they were displayed at, and to set its budget.
+ * <p>
+ * <b>IMPORTANT:</b> This method is <em>not</em> part of the public
+ * API for <code>Image</code>. It is marked public only so that it
+ * can be shared within the packages provided by SWT. It is not
+ * available on all platforms, and should never be called from
+ * application code.
+ * </p>
+ *
+ * @param budget the new budget of the cache in bytes, or -1 to keep it
+ * @return the hits, misses, size and budget in bytes of the cache
+ *
+ * @noreference This method is not intended to be referenced by clients.
+ */
+public static long[] gtk_variantCacheStatistics(long budget) {
+	if (budget != -1) ImageVariantCache.setBudget(Math.max(0, budget));
+	return ImageVariantCache.getStatistics();
+}
+
 /**
  * Invokes platform specific functionality to allocate a new image.
  * <p>
@@ -1626,6 +1844,57 @@ void init(int width, int height) {
 	OS.gdk_colormap_free_colors(colormap, white, 1);
 }
 
+void init(ARGBImageData image) {
+	int width = this.width = image.width;
+	int height = this.height = image.height;
+	int[] pixels = image.pixels;
+	int count = width * height;
+	boolean hasAlpha = false;
+	for (int i = 0; i < count; i++) {
+		if ((pixels[i] >>> 24) != 0xFF) {
+			hasAlpha = true;
+			break;
+		}
+	}
+	this.type = SWT.BITMAP;
+	int format = hasAlpha ? Cairo.CAIRO_FORMAT_ARGB32 : Cairo.CAIRO_FORMAT_RGB24;
+	surface = Cairo.cairo_image_surface_create(format, width, height);
+	if (surface == 0) SWT.error(SWT.ERROR_NO_HANDLES);
+	int stride = Cairo.cairo_image_surface_get_stride(surface);
+	long /*int*/ data = Cairo.cairo_image_surface_get_data(surface);
+	if (hasAlpha) {
+		alphaData = new byte[count];
+		for (int i = 0; i < count; i++) {
+			alphaData[i] = (byte)(pixels[i] >>> 24);
+		}
+	}
+	/*
+	* Premultiplied ARGB in native byte order is the pixel format of
+	* cairo, so the pixels are copied at once when the rows are packed.
+	*/
+	if (image.isPremultiplied() && stride == width * 4) {
+		OS.memmove(data, pixels, count * 4);
+	} else {
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			image.getRow(y, row, 0);
+			if (!image.isPremultiplied()) {
+				for (int x = 0; x < width; x++) {
+					int pixel = row[x];
+					int a = pixel >>> 24;
+					if (a == 0xFF) continue;
+					row[x] = (a << 24) |
+						(ARGBImageData.multiply((pixel >> 16) & 0xFF, a) << 16) |
+						(ARGBImageData.multiply((pixel >> 8) & 0xFF, a) << 8) |
+						ARGBImageData.multiply(pixel & 0xFF, a);
+				}
+			}
+			OS.memmove(data + y * stride, row, width * 4);
+		}
+	}
+	Cairo.cairo_surface_mark_dirty(surface);
+}
+
 void init(ImageData image) {
 	if (image == null) SWT.error(SWT.ERROR_NULL_ARGUMENT);
 	int width = this.width = image.width;
@@ -1635,6 +1904,8 @@ void init(ImageData image) {
 		((image.depth == 8) || (image.depth == 16 || image.depth == 24 || image.depth == 32) && palette.isDirect)))
 			SWT.error (SWT.ERROR_UNSUPPORTED_DEPTH);
 	if (OS.USE_CAIRO) {
+		ByteBuffer key = SharedSurfaces.key(image);
+		if (key != null && SharedSurfaces.share(this, key)) return;
 		boolean hasAlpha = image.transparentPixel != -1 || image.alpha != -1 || image.maskData != null || image.alphaData != null;
 		int format = hasAlpha ? Cairo.CAIRO_FORMAT_ARGB32 : Cairo.CAIRO_FORMAT_RGB24;
 		surface = Cairo.cairo_image_surface_create(format, width, height);
@@ -1762,6 +2033,7 @@ void init(ImageData image) {
 		}
 		OS.memmove(data, buffer, stride * height);
 		Cairo.cairo_surface_mark_dirty(surface);
+		if (key != null) SharedSurfaces.add(this, key);
 		//TODO convert to XLIB surface if opaque for better performance
 		return;
 	}
@@ -1863,6 +2135,11 @@ public long /*int*/ internal_new_GC (GCData data) {
 	if (type != SWT.BITMAP || memGC != null) {
 		SWT.error(SWT.ERROR_INVALID_ARGUMENT);
 	}
+	/* Drawing changes the image, its other zoom levels are out of date */
+	ImageVariantCache.remove(this);
+	ScaledImageCache.remove(this);
+	ImageVariantCache.removePrepared(this);
+	unshareSurface();
 	long /*int*/ gc;
 	if (OS.USE_CAIRO) {
 		gc = Cairo.cairo_create(surface);
@@ -1888,6 +2165,27 @@ public long /*int*/ internal_new_GC (GCData data) {
 	return gc;
 }
 
+/**
+ * Gives the receiver a surface of its own, if it shares its surface
+ * with other images, before something draws on it.
+ */
+void unshareSurface() {
+	if (surface == 0 || SharedSurfaces.detach(surface)) return;
+	int format = Cairo.cairo_image_surface_get_format(surface);
+	int width = Cairo.cairo_image_surface_get_width(surface);
+	int height = Cairo.cairo_image_surface_get_height(surface);
+	long /*int*/ copy = Cairo.cairo_image_surface_create(format, width, height);
+	if (copy == 0) SWT.error(SWT.ERROR_NO_HANDLES);
+	long /*int*/ cairo = Cairo.cairo_create(copy);
+	if (cairo == 0) SWT.error(SWT.ERROR_NO_HANDLES);
+	Cairo.cairo_set_operator(cairo, Cairo.CAIRO_OPERATOR_SOURCE);
+	Cairo.cairo_set_source_surface(cairo, surface, 0, 0);
+	Cairo.cairo_paint(cairo);
+	Cairo.cairo_destroy(cairo);
+	SharedSurfaces.destroy(surface);
+	surface = copy;
+}
+
 /**
  * Invokes platform specific functionality to dispose a GC handle.
  * <p>
@@ -1932,6 +2230,42 @@ public boolean isDisposed() {
 	}
 }
 
+/**
+ * Loads an image in the background from the files of the image file
+ * name provider.
+ * <p>
+ * The file for the current zoom level is decoded by a background thread.
+ * The image is then created on the user-interface thread of the device,
+ * where the returned future is completed. Loading many images this way
+ * does not block the user-interface thread while they are decoded.
+ * </p><p>
+ * The future fails with the exceptions the <code>Image</code>
+ * constructors throw when the image cannot be loaded. The image is
+ * not created when the future is cancelled first. You must dispose the
+ * image when it is no longer required.
+ * </p>
+ *
+ * @param device the device on which to create the image
+ * @param imageFileNameProvider the ImageFileNameProvider object that is
+ * to be used to get the file names
+ * @return a future completed with the image on the user-interface thread
+ *
+ * @exception IllegalArgumentException <ul>
+ *    <li>ERROR_NULL_ARGUMENT - if device is null and there is no current device</li>
+ *    <li>ERROR_NULL_ARGUMENT - if the ImageFileNameProvider is null</li>
+ * </ul>
+ * @exception SWTException <ul>
+ *    <li>ERROR_DEVICE_DISPOSED - if the device has been disposed</li>
+ * </ul>
+ *
+ * @see #Image(Device, ImageFileNameProvider)
+ * @see #dispose()
+ * @since 3.106
+ */
+public static CompletableFuture<Image> loadAsync (Device device, ImageFileNameProvider imageFileNameProvider) {
+	return AsyncImageLoader.load(device, imageFileNameProvider);
+}
+
 /**
  * Sets the color to which to map the transparent pixel.
  * <p>
@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+import java.util.*;
+
+import org.eclipse.swt.internal.gtk.*;
+
+/**
+ * Keeps the native resources of images at the zoom levels they were
+ * realized for, so that moving an image back to one of these zoom levels
+ * does not decode or scale it again.
+ * <p>
+ * The variants of all images share a budget of bytes, the least recently
+ * used variants are released first when it is exceeded. The image data
+ * prepared ahead of time by <code>Image.prepareZoomLevels</code> counts
+ * against the same budget, it is dropped when it does not fit. The budget
+ * is read in megabytes from the <code>swt.imageVariantCacheSize</code>
+ * system property, 0 disables the cache.
+ * </p><p>
+ * The cache is only accessed from the user interface thread, except for
+ * the prepared data which is added from background threads.
+ * </p>
+ */
+final class ImageVariantCache {
+
+	/**
+	 * The native resources of an image at one zoom level.
+	 */
+	static final class Variant {
+		final Image image;
+		final int zoom;
+		long /*int*/ surface, pixmap, mask;
+		int type, width, height, transparentPixel, alpha;
+		byte[] alphaData;
+		long size;
+
+		Variant(Image image, int zoom) {
+			this.image = image;
+			this.zoom = zoom;
+		}
+
+		void destroy() {
+			if (pixmap != 0) OS.g_object_unref(pixmap);
+			if (mask != 0) OS.g_object_unref(mask);
+			if (surface != 0) SharedSurfaces.destroy(surface);
+			surface = pixmap = mask = 0;
+		}
+	}
+
+	static final String SWT_IMAGE_VARIANT_CACHE_SIZE = "swt.imageVariantCacheSize";
+	static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+	static long budget = DEFAULT_BUDGET;
+	static long size;
+	static int hits, misses;
+
+	/* The size of the prepared data of all images, guarded by the class */
+	static long preparedSize;
+
+	/* All variants, least recently used first */
+	static final LinkedHashMap<Variant, Variant> variants = new LinkedHashMap<>(16, 0.75f, true);
+
+	static {
+		String value = System.getProperty(SWT_IMAGE_VARIANT_CACHE_SIZE);
+		if (value != null) {
+			try {
+				budget = Math.max(0, Long.parseLong(value.trim())) * 1024 * 1024;
+			} catch (NumberFormatException e) {
+			}
+		}
+	}
+
+/**
+ * Moves the native resources of the image into a variant for the zoom
+ * level, leaving the image without resources.  The resources are released
+ * instead when the variant does not fit in the budget.
+ */
+static void put(Image image, int zoom) {
+	Variant variant = new Variant(image, zoom);
+	variant.surface = image.surface;
+	variant.pixmap = image.pixmap;
+	variant.mask = image.mask;
+	variant.type = image.type;
+	variant.width = image.width;
+	variant.height = image.height;
+	variant.transparentPixel = image.transparentPixel;
+	variant.alpha = image.alpha;
+	variant.alphaData = image.alphaData;
+	image.surface = image.pixmap = image.mask = 0;
+	int width = variant.width, height = variant.height;
+	if (width == -1 || height == -1) {
+		int[] w = new int[1], h = new int[1];
+		OS.gdk_pixmap_get_size(variant.pixmap, w, h);
+		width = w[0];
+		height = h[0];
+	}
+	/* Four bytes per pixel for the image and one for its mask or alpha */
+	variant.size = (long) width * height * (variant.mask != 0 || variant.alphaData != null ? 5 : 4);
+	if (variant.size > budget) {
+		variant.destroy();
+		return;
+	}
+	if (image.variants == null) image.variants = new HashMap<>();
+	Variant old = image.variants.put(zoom, variant);
+	if (old != null) release(old);
+	variants.put(variant, variant);
+	size += variant.size;
+	trim();
+}
+
+/**
+ * Removes the variant of the image for the zoom level from the cache.
+ *
+ * @return the variant, or null if it is not cached
+ */
+static Variant take(Image image, int zoom) {
+	Variant variant = image.variants != null ? image.variants.remove(zoom) : null;
+	if (variant == null) {
+		misses++;
+		return null;
+	}
+	hits++;
+	variants.remove(variant);
+	size -= variant.size;
+	return variant;
+}
+
+/**
+ * Gives the native resources of a variant taken from the cache back to
+ * its image, which must not have resources.
+ */
+static void restore(Image image, Variant variant) {
+	image.surface = variant.surface;
+	image.pixmap = variant.pixmap;
+	image.mask = variant.mask;
+	image.type = variant.type;
+	image.width = variant.width;
+	image.height = variant.height;
+	image.transparentPixel = variant.transparentPixel;
+	image.alpha = variant.alpha;
+	image.alphaData = variant.alphaData;
+}
+
+/**
+ * Releases all the variants of the image.
+ */
+static void remove(Image image) {
+	if (image.variants == null) return;
+	for (Variant variant : image.variants.values()) {
+		release(variant);
+	}
+	image.variants = null;
+}
+
+/**
+ * Releases a variant that is no longer referenced by its image.
+ */
+static void release(Variant variant) {
+	variants.remove(variant);
+	size -= variant.size;
+	variant.destroy();
+}
+
+/**
+ * Adds image data prepared ahead of time for a zoom level of the image,
+ * unless the image dropped the prepared data map since or the data does
+ * not fit in the budget. This is called from background threads.
+ */
+static void putPrepared(Image image, Map<Integer, ImageData> prepared, int zoom, ImageData data) {
+	long dataSize = sizeOf(data);
+	synchronized (prepared) {
+		if (image.preparedData != prepared) return;
+		synchronized (ImageVariantCache.class) {
+			if (preparedSize + dataSize > budget) return;
+			preparedSize += dataSize;
+		}
+		ImageData old = prepared.put(zoom, data);
+		if (old != null) releasePrepared(old);
+	}
+}
+
+/**
+ * Removes the image data prepared for a zoom level of the image.
+ *
+ * @return the image data, or null if none was prepared
+ */
+static ImageData takePrepared(Image image, int zoom) {
+	Map<Integer, ImageData> prepared = image.preparedData;
+	if (prepared == null) return null;
+	synchronized (prepared) {
+		ImageData data = prepared.remove(zoom);
+		if (data != null) releasePrepared(data);
+		return data;
+	}
+}
+
+/**
+ * Drops all the image data prepared for the image.
+ */
+static void removePrepared(Image image) {
+	Map<Integer, ImageData> prepared = image.preparedData;
+	if (prepared == null) return;
+	synchronized (prepared) {
+		for (ImageData data : prepared.values()) {
+			releasePrepared(data);
+		}
+		prepared.clear();
+		image.preparedData = null;
+	}
+}
+
+static synchronized void releasePrepared(ImageData data) {
+	preparedSize -= sizeOf(data);
+}
+
+/* Answers the number of bytes held by the image data */
+static long sizeOf(ImageData data) {
+	long dataSize = data.data.length;
+	if (data.maskData != null) dataSize += data.maskData.length;
+	if (data.alphaData != null) dataSize += data.alphaData.length;
+	return dataSize;
+}
+
+/**
+ * Answers the hits, misses, size and budget in bytes of the cache, for
+ * tests and diagnostics.
+ */
+static long[] getStatistics() {
+	synchronized (ImageVariantCache.class) {
+		return new long[] {hits, misses, size + preparedSize, budget};
+	}
+}
+
+/**
+ * Sets the budget in bytes and releases the variants that no longer fit.
+ * The prepared data is only checked against the budget when added.
+ */
+static void setBudget(long budget) {
+	synchronized (ImageVariantCache.class) {
+		ImageVariantCache.budget = budget;
+	}
+	trim();
+}
+
+/**
+ * Releases the least recently used variants until the budget is met,
+ * counting the prepared data.
+ */
+static void trim() {
+	long preparedSize;
+	synchronized (ImageVariantCache.class) {
+		preparedSize = ImageVariantCache.preparedSize;
+	}
+	Iterator<Variant> iterator = variants.keySet().iterator();
+	while (size + preparedSize > budget && iterator.hasNext()) {
+		Variant variant = iterator.next();
+		iterator.remove();
+		variant.image.variants.remove(variant.zoom);
+		size -= variant.size;
+		variant.destroy();
+	}
+}
+
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+import java.util.*;
+
+import org.eclipse.swt.internal.cairo.*;
+
+/**
+ * Keeps the surfaces images were scaled to when drawn, so that drawing an
+ * image at the same size again copies the pixels instead of resampling
+ * the image.
+ * <p>
+ * A surface is kept the second time an image is drawn at the same size
+ * with the same filter, images drawn at a size only once are not worth
+ * it. The surfaces of all images share a budget of bytes, the least
+ * recently used surfaces are released first when it is exceeded. The
+ * budget is read in megabytes from the <code>swt.scaledImageCacheSize</code>
+ * system property, 0 disables the cache. The surfaces of an image are
+ * released when anything changes the image.
+ * </p><p>
+ * The cache is only accessed from the user interface thread.
+ * </p>
+ */
+final class ScaledImageCache {
+
+	/**
+	 * The surface an image was scaled to, for one size and filter.
+	 */
+	static final class Entry {
+		final Image image;
+		final long key;
+		long /*int*/ surface;
+		long size;
+
+		Entry(Image image, long key) {
+			this.image = image;
+			this.key = key;
+		}
+
+		void destroy() {
+			if (surface != 0) Cairo.cairo_surface_destroy(surface);
+			surface = 0;
+		}
+	}
+
+	static final String SWT_SCALED_IMAGE_CACHE_SIZE = "swt.scaledImageCacheSize";
+	static final long DEFAULT_BUDGET = 16L * 1024 * 1024;
+
+	/* The size accounted for an image drawn at a size only once */
+	static final long PENDING_SIZE = 64;
+
+	static long budget = DEFAULT_BUDGET;
+	static long size;
+	static int hits, misses;
+
+	/* All entries, least recently used first */
+	static final LinkedHashMap<Entry, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	static {
+		String value = System.getProperty(SWT_SCALED_IMAGE_CACHE_SIZE);
+		if (value != null) {
+			try {
+				budget = Math.max(0, Long.parseLong(value.trim())) * 1024 * 1024;
+			} catch (NumberFormatException e) {
+			}
+		}
+	}
+
+/**
+ * Returns the surface the whole image was scaled to with the filter,
+ * scaling it now if it is drawn at the size for the second time.
+ *
+ * @return the surface, or 0 if the image should be scaled while drawing
+ */
+static long /*int*/ get(Image image, int imgWidth, int imgHeight, int width, int height, int filter) {
+	long surfaceSize = (long) width * height * 4;
+	if (width <= 0 || height <= 0 || surfaceSize > budget) return 0;
+	long key = ((long) width << 32) | ((long) height << 4) | filter;
+	if (image.scaledSurfaces == null) image.scaledSurfaces = new HashMap<>();
+	Entry entry = image.scaledSurfaces.get(key);
+	if (entry == null) {
+		misses++;
+		entry = new Entry(image, key);
+		entry.size = PENDING_SIZE;
+		image.scaledSurfaces.put(key, entry);
+		entries.put(entry, entry);
+		size += entry.size;
+		trim();
+		return 0;
+	}
+	entries.get(entry);
+	if (entry.surface != 0) {
+		hits++;
+		return entry.surface;
+	}
+	misses++;
+	entry.surface = GC.createScaledSurface(image, imgWidth, imgHeight, width, height, filter);
+	size += surfaceSize - entry.size;
+	entry.size = surfaceSize;
+	trim();
+	return entry.surface;
+}
+
+/**
+ * Releases all the surfaces of the image.
+ */
+static void remove(Image image) {
+	if (image.scaledSurfaces == null) return;
+	for (Entry entry : image.scaledSurfaces.values()) {
+		entries.remove(entry);
+		size -= entry.size;
+		entry.destroy();
+	}
+	image.scaledSurfaces = null;
+}
+
+/**
+ * Releases the least recently used surfaces until the budget is met.
+ */
+static void trim() {
+	Iterator<Entry> iterator = entries.keySet().iterator();
+	while (size > budget && iterator.hasNext()) {
+		Entry entry = iterator.next();
+		iterator.remove();
+		entry.image.scaledSurfaces.remove(entry.key);
+		size -= entry.size;
+		entry.destroy();
+	}
+}
+
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.graphics;
+
+
+import java.nio.*;
+import java.security.*;
+import java.util.*;
+
+import org.eclipse.swt.internal.cairo.*;
+
+/**
+ * Shares one cairo surface between the images created from identical
+ * image data.
+ * <p>
+ * Surfaces are found by a digest of the image data. Every image holds its
+ * own cairo reference to the surface, and the number of images holding
+ * each shared surface is counted here. An image gets a private copy of
+ * the surface before anything draws on it.
+ * </p><p>
+ * Sharing is off by default, it is enabled by setting the
+ * <code>swt.shareImageSurfaces</code> system property to <code>true</code>.
+ * Turning it off only stops new images from sharing surfaces, the
+ * surfaces shared before are still tracked until they are released.
+ * </p>
+ */
+final class SharedSurfaces {
+
+	static final class Entry {
+		final ByteBuffer key;
+		final long /*int*/ surface;
+		int type, transparentPixel, alpha;
+		byte[] alphaData;
+		int count;
+
+		Entry(ByteBuffer key, long /*int*/ surface) {
+			this.key = key;
+			this.surface = surface;
+		}
+	}
+
+	static final String SWT_SHARE_IMAGE_SURFACES = "swt.shareImageSurfaces";
+	static boolean enabled = Boolean.getBoolean(SWT_SHARE_IMAGE_SURFACES);
+
+	static final Map<ByteBuffer, Entry> byKey = new HashMap<>();
+	static final Map<Long, Entry> bySurface = new HashMap<>();
+
+/**
+ * Returns the digest of everything in the image data that contributes to
+ * the surface created from it, or null if surfaces are not shared.
+ */
+static ByteBuffer key(ImageData image) {
+	if (!enabled) return null;
+	MessageDigest digest;
+	try {
+		digest = MessageDigest.getInstance("SHA-256");
+	} catch (NoSuchAlgorithmException e) {
+		return null;
+	}
+	ByteBuffer header = ByteBuffer.allocate(64);
+	header.putInt(image.width).putInt(image.height).putInt(image.depth).putInt(image.bytesPerLine);
+	header.putInt(image.transparentPixel).putInt(image.alpha).putInt(image.maskPad);
+	PaletteData palette = image.palette;
+	header.put((byte) (palette.isDirect ? 1 : 0));
+	header.putInt(palette.redMask).putInt(palette.greenMask).putInt(palette.blueMask);
+	header.put((byte) (image.maskData != null ? 1 : 0)).put((byte) (image.alphaData != null ? 1 : 0));
+	digest.update(header.array(), 0, header.position());
+	if (!palette.isDirect) {
+		byte[] rgbs = new byte[palette.colors.length * 3];
+		for (int i = 0; i < palette.colors.length; i++) {
+			RGB rgb = palette.colors[i];
+			if (rgb == null) continue;
+			rgbs[i * 3] = (byte) rgb.red;
+			rgbs[i * 3 + 1] = (byte) rgb.green;
+			rgbs[i * 3 + 2] = (byte) rgb.blue;
+		}
+		digest.update(rgbs);
+	}
+	digest.update(image.data, 0, Math.min(image.data.length, image.bytesPerLine * image.height));
+	if (image.maskData != null) digest.update(image.maskData);
+	if (image.alphaData != null) digest.update(image.alphaData);
+	return ByteBuffer.wrap(digest.digest());
+}
+
+/**
+ * Gives the image the shared surface created from identical image data.
+ *
+ * @return true if a surface was found
+ */
+static synchronized boolean share(Image image, ByteBuffer key) {
+	Entry entry = byKey.get(key);
+	if (entry == null) return false;
+	Cairo.cairo_surface_reference(entry.surface);
+	entry.count++;
+	image.surface = entry.surface;
+	image.type = entry.type;
+	image.transparentPixel = entry.transparentPixel;
+	image.alpha = entry.alpha;
+	if (entry.alphaData != null) image.alphaData = entry.alphaData.clone();
+	return true;
+}
+
+/**
+ * Offers the surface the image was just created with to the images
+ * created later from identical image data.
+ */
+static synchronized void add(Image image, ByteBuffer key) {
+	if (byKey.containsKey(key)) return;
+	Entry entry = new Entry(key, image.surface);
+	entry.type = image.type;
+	entry.transparentPixel = image.transparentPixel;
+	entry.alpha = image.alpha;
+	entry.alphaData = image.alphaData != null ? image.alphaData.clone() : null;
+	entry.count = 1;
+	byKey.put(key, entry);
+	bySurface.put(image.surface, entry);
+}
+
+static synchronized void setEnabled(boolean enabled) {
+	SharedSurfaces.enabled = enabled;
+}
+
+/**
+ * Answers the number of images holding a shared surface.
+ */
+static synchronized int getHolders() {
+	int holders = 0;
+	for (Entry entry : byKey.values()) {
+		holders += entry.count;
+	}
+	return holders;
+}
+
+static synchronized boolean isShared(long /*int*/ surface) {
+	return bySurface.containsKey(surface);
+}
+
+/**
+ * Stops sharing the surface, which has a single holder left.
+ *
+ * @return true if the surface could be kept by its holder
+ */
+static synchronized boolean detach(long /*int*/ surface) {
+	Entry entry = bySurface.get(surface);
+	if (entry == null) return true;
+	if (entry.count > 1) return false;
+	bySurface.remove(surface);
+	byKey.remove(entry.key);
+	return true;
+}
+
+/**
+ * Releases a reference to the surface, shared or not.
+ */
+static void destroy(long /*int*/ surface) {
+	synchronized (SharedSurfaces.class) {
+		Entry entry = bySurface.get(surface);
+		if (entry != null && --entry.count == 0) {
+			bySurface.remove(surface);
+			byKey.remove(entry.key);
+		}
+	}
+	Cairo.cairo_surface_destroy(surface);
+}
+
+}
@@ -237,6 +237,12 @@ public class Display extends Device {
 	Callback emissionProcCallback;
 	static final String GET_EMISSION_PROC_KEY = "org.eclipse.swt.internal.gtk.getEmissionProc"; //$NON-NLS-1$
 
+	/* Statistics and budget of the cache of image variants, for tests */
+	static final String IMAGE_VARIANT_CACHE_KEY = "org.eclipse.swt.internal.gtk.imageVariantCache"; //$NON-NLS-1$
+
+	/* Sharing of image surfaces, and number of images holding a shared surface, for tests */
+	static final String SHARE_IMAGE_SURFACES_KEY = "org.eclipse.swt.internal.gtk.shareImageSurfaces"; //$NON-NLS-1$
+
 	/* Get all children callback */
 	long /*int*/ allChildrenProc, allChildren;
 	Callback allChildrenCallback;
@@ -518,6 +524,13 @@ public class Display extends Device {
 			}
 			setDevice (device);
 		};
+		DeviceHooks.asyncExec = (device, runnable) -> {
+			if (device instanceof Display) {
+				((Display) device).asyncExec (runnable);
+			} else {
+				DeviceHooks.run (device, runnable);
+			}
+		};
 	}
 
 /*
@@ -1692,6 +1705,12 @@ public Object getData (String key) {
 	if (key.equals (GET_EMISSION_PROC_KEY)) {
 		return new LONG (emissionProc);
 	}
+	if (key.equals (IMAGE_VARIANT_CACHE_KEY)) {
+		return Image.gtk_variantCacheStatistics (-1);
+	}
+	if (key.equals (SHARE_IMAGE_SURFACES_KEY)) {
+		return Image.gtk_shareSurfaces (null);
+	}
 	if (keys == null) return null;
 	for (int i=0; i<keys.length; i++) {
 		if (keys [i].equals (key)) return values [i];
@@ -4175,6 +4194,7 @@ protected void release () {
 		}
 	}
 	disposeList = null;
+	DeviceHooks.disposed (this);
 	synchronizer.releaseSynchronizer ();
 	synchronizer = null;
 	releaseDisplay ();
@@ -4760,6 +4780,18 @@ public void setData (String key, Object value) {
 		setModalDialog ((Dialog) value);
 		return;
 	}
+	if (key.equals (IMAGE_VARIANT_CACHE_KEY)) {
+		if (value instanceof Long) {
+			Image.gtk_variantCacheStatistics (((Long) value).longValue ());
+			return;
+		}
+	}
+	if (key.equals (SHARE_IMAGE_SURFACES_KEY)) {
+		if (value instanceof Boolean) {
+			Image.gtk_shareSurfaces ((Boolean) value);
+			return;
+		}
+	}
 	if (key.equals (ADD_WIDGET_KEY)) {
 		Object [] data = (Object []) value;
 		long /*int*/ handle = ((LONG) data [0]).value;
@@ -450,6 +450,13 @@ public class Display extends Device {
 			}
 			setDevice (device);
 		};
+		DeviceHooks.asyncExec = (device, runnable) -> {
+			if (device instanceof Display) {
+				((Display) device).asyncExec (runnable);
+			} else {
+				DeviceHooks.run (device, runnable);
+			}
+		};
 	}
 
 /*
@@ -3887,6 +3894,7 @@ protected void release () {
 		}
 	}
 	disposeList = null;
+	DeviceHooks.disposed (this);
 	synchronizer.releaseSynchronizer ();
 	synchronizer = null;
 	releaseDisplay ();
@@ -18,7 +18,8 @@ import org.junit.runners.Suite;
  * Suite for testing all of the graphics test cases.
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({ Test_org_eclipse_swt_graphics_Color.class,
+@Suite.SuiteClasses({ Test_org_eclipse_swt_graphics_ARGBImageData.class,
+		Test_org_eclipse_swt_graphics_Color.class,
 		Test_org_eclipse_swt_graphics_Cursor.class,
 		Test_org_eclipse_swt_graphics_DeviceData.class,
 		Test_org_eclipse_swt_graphics_Font.class,
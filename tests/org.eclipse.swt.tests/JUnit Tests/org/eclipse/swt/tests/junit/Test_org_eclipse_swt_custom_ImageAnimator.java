@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.custom.ImageAnimator;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageLoader;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.widgets.Display;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Automated Test Suite for class org.eclipse.swt.custom.ImageAnimator
+ *
+ * @see org.eclipse.swt.custom.ImageAnimator
+ */
+public class Test_org_eclipse_swt_custom_ImageAnimator {
+
+@Before
+public void setUp() {
+	display = Display.getDefault();
+	// three frames, the second one only covers the middle and is undone afterwards
+	RGB[] rgbs = {new RGB(255, 0, 0), new RGB(0, 255, 0), new RGB(0, 0, 255)};
+	loader = new ImageLoader();
+	loader.logicalScreenWidth = 3;
+	loader.logicalScreenHeight = 1;
+	loader.repeatCount = 1;
+	loader.data = new ImageData[3];
+	for (int i = 0; i < 3; i++) {
+		ImageData frame = new ImageData(i == 1 ? 1 : 3, 1, 8, new PaletteData(rgbs));
+		for (int x = 0; x < frame.width; x++) {
+			frame.setPixel(x, 0, i);
+		}
+		frame.x = i == 1 ? 1 : 0;
+		frame.delayTime = 2;
+		frame.disposalMethod = i == 1 ? SWT.DM_FILL_PREVIOUS : SWT.DM_FILL_NONE;
+		loader.data[i] = frame;
+	}
+	animator = new ImageAnimator(display, loader);
+}
+
+@After
+public void tearDown() {
+	animator.dispose();
+}
+
+@Test
+public void test_ConstructorLorg_eclipse_swt_widgets_DisplayLorg_eclipse_swt_graphics_ImageLoader() {
+	try {
+		new ImageAnimator(null, loader);
+		fail("No exception thrown for null display");
+	} catch (IllegalArgumentException e) {
+		SwtTestUtil.assertSWTProblem("Incorrect exception thrown for null display", SWT.ERROR_NULL_ARGUMENT, e);
+	}
+
+	try {
+		new ImageAnimator(display, null);
+		fail("No exception thrown for null loader");
+	} catch (IllegalArgumentException e) {
+		SwtTestUtil.assertSWTProblem("Incorrect exception thrown for null loader", SWT.ERROR_NULL_ARGUMENT, e);
+	}
+
+	try {
+		new ImageAnimator(display, new ImageLoader());
+		fail("No exception thrown for loader without frames");
+	} catch (IllegalArgumentException e) {
+		SwtTestUtil.assertSWTProblem("Incorrect exception thrown for loader without frames", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_dispose() {
+	animator.start();
+	animator.dispose();
+	assertTrue(animator.isDisposed());
+	animator.dispose();
+
+	try {
+		animator.getImage();
+		fail("No exception thrown for disposed animator");
+	} catch (SWTException e) {
+		SwtTestUtil.assertSWTProblem("Incorrect exception thrown for disposed animator", SWT.ERROR_GRAPHIC_DISPOSED, e);
+	}
+}
+
+@Test
+public void test_getImage() {
+	Image image = animator.getImage();
+	assertEquals(0, animator.getFrameIndex());
+	assertEquals(3, image.getBounds().width);
+	assertEquals(1, image.getBounds().height);
+	assertSame(image, animator.getImage());
+	ImageData data = image.getImageData();
+	for (int x = 0; x < 3; x++) {
+		assertEquals(new RGB(255, 0, 0), data.palette.getRGB(data.getPixel(x, 0)));
+	}
+}
+
+@Test
+public void test_setMemoryBudgetI() {
+	assertTrue(animator.getMemoryBudget() > 0);
+	animator.setMemoryBudget(0);
+	assertEquals(0, animator.getMemoryBudget());
+	animator.getImage();
+
+	try {
+		animator.setMemoryBudget(-1);
+		fail("No exception thrown for negative budget");
+	} catch (IllegalArgumentException e) {
+		SwtTestUtil.assertSWTProblem("Incorrect exception thrown for negative budget", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_setMinimumDelayI() {
+	animator.setMinimumDelay(50);
+	assertEquals(50, animator.getMinimumDelay());
+
+	try {
+		animator.setMinimumDelay(-1);
+		fail("No exception thrown for negative delay");
+	} catch (IllegalArgumentException e) {
+		SwtTestUtil.assertSWTProblem("Incorrect exception thrown for negative delay", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_start() {
+	int[] frames = new int[3];
+	RGB[][] colors = new RGB[3][];
+	animator.addListener(event -> {
+		assertEquals(SWT.Modify, event.type);
+		frames[event.index]++;
+		ImageData data = animator.getImage().getImageData();
+		colors[event.index] = new RGB[] {data.palette.getRGB(data.getPixel(0, 0)), data.palette.getRGB(data.getPixel(1, 0))};
+	});
+	animator.start();
+	assertTrue(animator.isRunning());
+	long end = System.currentTimeMillis() + 5000;
+	while (animator.isRunning() && System.currentTimeMillis() < end) {
+		if (!display.readAndDispatch()) display.sleep();
+	}
+	// played once, the frames may have been dropped but not the last one
+	assertFalse(animator.isRunning());
+	assertEquals(2, animator.getFrameIndex());
+	assertEquals(1, frames[2]);
+	if (colors[1] != null) {
+		assertEquals(new RGB(255, 0, 0), colors[1][0]);
+		assertEquals(new RGB(0, 255, 0), colors[1][1]);
+	}
+	assertEquals(new RGB(0, 0, 255), colors[2][1]);
+}
+
+@Test
+public void test_stop() {
+	animator.start();
+	animator.stop();
+	assertFalse(animator.isRunning());
+	assertEquals(0, animator.getFrameIndex());
+}
+
+/* custom */
+Display display;
+ImageLoader loader;
+ImageAnimator animator;
+}
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.swt.tests.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.ARGBImageData;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.junit.Test;
+
+/**
+ * Automated Test Suite for class org.eclipse.swt.graphics.ARGBImageData
+ *
+ * @see org.eclipse.swt.graphics.ARGBImageData
+ */
+public class Test_org_eclipse_swt_graphics_ARGBImageData {
+
+@Test
+public void test_ConstructorIIZ() {
+	ARGBImageData data = new ARGBImageData(3, 2, true);
+	assertEquals(3, data.width);
+	assertEquals(2, data.height);
+	assertEquals(6, data.pixels.length);
+	assertTrue(data.isPremultiplied());
+
+	try {
+		new ARGBImageData(0, 2, false);
+		fail("No exception thrown for width <= 0");
+	} catch (IllegalArgumentException e) {
+		SwtTestUtil.assertSWTProblem("Incorrect exception thrown for width <= 0", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_ConstructorII$IZ() {
+	int[] pixels = new int[6];
+	ARGBImageData data = new ARGBImageData(3, 2, pixels, false);
+	assertSame(pixels, data.pixels);
+	assertFalse(data.isPremultiplied());
+
+	try {
+		new ARGBImageData(3, 2, null, false);
+		fail("No exception thrown for null pixels");
+	} catch (IllegalArgumentException e) {
+		SwtTestUtil.assertSWTProblem("Incorrect exception thrown for null pixels", SWT.ERROR_NULL_ARGUMENT, e);
+	}
+
+	try {
+		new ARGBImageData(3, 3, pixels, false);
+		fail("No exception thrown for pixels too small");
+	} catch (IllegalArgumentException e) {
+		SwtTestUtil.assertSWTProblem("Incorrect exception thrown for pixels too small", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_ConstructorLorg_eclipse_swt_graphics_ImageDataZ() {
+	// direct palette with alpha data
+	ImageData direct = new ImageData(2, 2, 32, new PaletteData(0xFF00, 0xFF0000, 0xFF000000));
+	direct.setPixel(0, 0, 0x336699 << 8);
+	direct.setPixel(1, 1, 0xFFFFFF << 8);
+	direct.alphaData = new byte[] {(byte)0xFF, 0, (byte)0x80, 0x40};
+	ARGBImageData data = new ARGBImageData(direct, false);
+	assertArrayEquals(new int[] {0xFF996633, 0, 0x80000000, 0x40FFFFFF}, data.pixels);
+
+	// indexed palette with a transparent pixel
+	ImageData indexed = new ImageData(3, 1, 2, new PaletteData(new RGB[] {new RGB(255, 0, 0), new RGB(0, 255, 0), new RGB(0, 0, 255)}));
+	indexed.setPixels(0, 0, 3, new byte[] {0, 1, 2}, 0);
+	indexed.transparentPixel = 1;
+	data = new ARGBImageData(indexed, false);
+	assertArrayEquals(new int[] {0xFFFF0000, 0x0000FF00, 0xFF0000FF}, data.pixels);
+
+	// global alpha
+	indexed.transparentPixel = -1;
+	indexed.alpha = 0x80;
+	data = new ARGBImageData(indexed, true);
+	assertArrayEquals(new int[] {0x80800000, 0x80008000, 0x80000080}, data.pixels);
+
+	// a transparent pixel takes precedence over the global alpha
+	indexed.transparentPixel = 1;
+	data = new ARGBImageData(indexed, false);
+	assertArrayEquals(new int[] {0xFFFF0000, 0x0000FF00, 0xFF0000FF}, data.pixels);
+
+	// and so does a transparency mask
+	indexed.transparentPixel = -1;
+	indexed.maskPad = 1;
+	indexed.maskData = new byte[] {(byte)0xA0};
+	data = new ARGBImageData(indexed, false);
+	assertArrayEquals(new int[] {0xFFFF0000, 0x0000FF00, 0xFF0000FF}, data.pixels);
+
+	try {
+		new ARGBImageData(null, false);
+		fail("No exception thrown for null image data");
+	} catch (IllegalArgumentException e) {
+		SwtTestUtil.assertSWTProblem("Incorrect exception thrown for null image data", SWT.ERROR_NULL_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_clone() {
+	ARGBImageData data = new ARGBImageData(2, 1, new int[] {1, 2}, true);
+	ARGBImageData clone = data.clone();
+	assertNotSame(data.pixels, clone.pixels);
+	assertArrayEquals(data.pixels, clone.pixels);
+	assertTrue(clone.isPremultiplied());
+}
+
+@Test
+public void test_getPixelII() {
+	ARGBImageData data = new ARGBImageData(2, 2, new int[] {1, 2, 3, 4}, false);
+	assertEquals(3, data.getPixel(0, 1));
+
+	try {
+		data.getPixel(2, 0);
+		fail("No exception thrown for x out of bounds");
+	} catch (IllegalArgumentException e) {
+		SwtTestUtil.assertSWTProblem("Incorrect exception thrown for x out of bounds", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_getRowI$II() {
+	ARGBImageData data = new ARGBImageData(2, 2, new int[] {1, 2, 3, 4}, false);
+	int[] row = new int[3];
+	data.getRow(1, row, 1);
+	assertArrayEquals(new int[] {0, 3, 4}, row);
+
+	try {
+		data.getRow(2, row, 0);
+		fail("No exception thrown for y out of bounds");
+	} catch (IllegalArgumentException e) {
+		SwtTestUtil.assertSWTProblem("Incorrect exception thrown for y out of bounds", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+
+	try {
+		data.getRow(0, null, 0);
+		fail("No exception thrown for null row");
+	} catch (IllegalArgumentException e) {
+		SwtTestUtil.assertSWTProblem("Incorrect exception thrown for null row", SWT.ERROR_NULL_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_setPremultipliedZ() {
+	ARGBImageData data = new ARGBImageData(4, 1, new int[] {0xFF123456, 0x80FF8040, 0x00FFFFFF, 0x01FFFFFF}, false);
+	data.setPremultiplied(true);
+	assertArrayEquals(new int[] {0xFF123456, 0x80804020, 0x00000000, 0x01010101}, data.pixels);
+	data.setPremultiplied(false);
+	assertArrayEquals(new int[] {0xFF123456, 0x80FF8040, 0x00000000, 0x01FFFFFF}, data.pixels);
+}
+
+@Test
+public void test_setRowI$II() {
+	ARGBImageData data = new ARGBImageData(2, 2, false);
+	data.setRow(0, new int[] {9, 1, 2}, 1);
+	assertArrayEquals(new int[] {1, 2, 0, 0}, data.pixels);
+
+	try {
+		data.setRow(-1, new int[2], 0);
+		fail("No exception thrown for y out of bounds");
+	} catch (IllegalArgumentException e) {
+		SwtTestUtil.assertSWTProblem("Incorrect exception thrown for y out of bounds", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+}
+
+@Test
+public void test_toImageData() {
+	ARGBImageData opaque = new ARGBImageData(2, 1, new int[] {0xFF102030, 0xFFFFFFFF}, false);
+	ImageData data = opaque.toImageData();
+	assertEquals(24, data.depth);
+	assertNull(data.alphaData);
+	assertEquals(new RGB(0x10, 0x20, 0x30), data.palette.getRGB(data.getPixel(0, 0)));
+
+	ARGBImageData translucent = new ARGBImageData(3, 1, new int[] {0xFF102030, 0x80804020, 0}, true);
+	data = translucent.toImageData();
+	assertArrayEquals(new byte[] {(byte)0xFF, (byte)0x80, 0}, data.alphaData);
+	assertEquals(new RGB(0xFF, 0x80, 0x40), data.palette.getRGB(data.getPixel(1, 0)));
+
+	ARGBImageData roundTrip = new ARGBImageData(data, true);
+	assertArrayEquals(translucent.pixels, roundTrip.pixels);
+}
+}
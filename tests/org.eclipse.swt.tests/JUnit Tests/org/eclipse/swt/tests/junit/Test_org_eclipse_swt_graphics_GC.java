@@ -296,6 +296,41 @@ public void test_drawImageLorg_eclipse_swt_graphics_ImageIIIIIIII() {
 	c3.dispose();
 }
 
+@Test
+public void test_drawImageLorg_eclipse_swt_graphics_ImageIIIIIIII_repeatedlyScaled() {
+	Color red = display.getSystemColor(SWT.COLOR_RED);
+	Color blue = display.getSystemColor(SWT.COLOR_BLUE);
+	Image source = new Image(display, 10, 10);
+	GC sourceGC = new GC(source);
+	sourceGC.setBackground(red);
+	sourceGC.fillRectangle(0, 0, 10, 10);
+	sourceGC.dispose();
+	Image target = new Image(display, 100, 40);
+	GC targetGC = new GC(target);
+	targetGC.setInterpolation(SWT.NONE);
+	for (int i = 0; i < 3; i++) {
+		targetGC.drawImage(source, 0, 0, 10, 10, i * 30, 0, 30, 30);
+	}
+	/* Drawing on the image must show when it is scaled again */
+	sourceGC = new GC(source);
+	sourceGC.setBackground(blue);
+	sourceGC.fillRectangle(0, 0, 10, 10);
+	sourceGC.dispose();
+	targetGC.drawImage(source, 0, 0, 10, 10, 0, 0, 30, 30);
+	targetGC.dispose();
+	ImageData data = target.getImageData();
+	assertEquals(blue.getRGB(), data.palette.getRGB(data.getPixel(15, 15)));
+	for (int i = 1; i < 3; i++) {
+		for (int y = 0; y < 30; y++) {
+			for (int x = 0; x < 30; x++) {
+				assertEquals(red.getRGB(), data.palette.getRGB(data.getPixel(i * 30 + x, y)));
+			}
+		}
+	}
+	target.dispose();
+	source.dispose();
+}
+
 @Test
 public void test_drawLineIIII() {
 	gc.drawLine(0,0,0,20);
@@ -24,9 +24,15 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
+import org.eclipse.swt.graphics.ARGBImageData;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Image;
@@ -236,6 +242,35 @@ public void test_ConstructorLorg_eclipse_swt_graphics_DeviceLorg_eclipse_swt_gra
 	image.dispose();
 }
 
+@Test
+public void test_ConstructorLorg_eclipse_swt_graphics_DeviceLorg_eclipse_swt_graphics_ARGBImageData() {
+	ARGBImageData data = null;
+	Image image = null;
+
+	try {
+		image = new Image(display, data);
+		image.dispose();
+		fail("No exception thrown for ARGBImageData == null");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for ARGBImageData == null", SWT.ERROR_NULL_ARGUMENT, e);
+	}
+
+	for (boolean premultiplied : new boolean[] {false, true}) {
+		data = new ARGBImageData(10, 10, premultiplied);
+		Arrays.fill(data.pixels, 0xFF0000FF);
+		data.setPixel(9, 9, 0xFFFF0000);
+		data.setPixel(0, 0, 0);
+		image = new Image(display, data);
+		ImageData imageData = image.getImageDataAtCurrentZoom();
+		assertEquals(new RGB(255, 0, 0), imageData.palette.getRGB(imageData.getPixel(9, 9)));
+		assertEquals(new RGB(0, 0, 255), imageData.palette.getRGB(imageData.getPixel(5, 5)));
+		assertNotNull(imageData.alphaData);
+		assertEquals(0, imageData.getAlpha(0, 0));
+		assertEquals(255, imageData.getAlpha(5, 5));
+		image.dispose();
+	}
+}
+
 @Test
 public void test_ConstructorLorg_eclipse_swt_graphics_DeviceLorg_eclipse_swt_graphics_ImageDataLorg_eclipse_swt_graphics_ImageData() {
 	ImageData data = null;
@@ -385,6 +420,27 @@ public void test_ConstructorLorg_eclipse_swt_graphics_DeviceLjava_io_InputStream
 				}
 			}
 		}
+
+		// image with an alpha channel, compared unscaled
+		stream = SwtTestUtil.class.getResourceAsStream("transparent.png");
+		ImageData source = new ImageData(SwtTestUtil.class.getResourceAsStream("transparent.png"));
+		image = new Image(display, stream);
+		try {
+			ImageData data = image.getImageData();
+			if (DPIUtil.getDeviceZoom() != 100) return;
+			assertEquals(source.width, data.width);
+			assertEquals(source.height, data.height);
+			for (int y = 0; y < source.height; y++) {
+				for (int x = 0; x < source.width; x++) {
+					assertEquals(source.getAlpha(x, y), data.getAlpha(x, y));
+					if (source.getAlpha(x, y) == 0xFF) {
+						assertEquals(source.palette.getRGB(source.getPixel(x, y)), data.palette.getRGB(data.getPixel(x, y)));
+					}
+				}
+			}
+		} finally {
+			image.dispose();
+		}
 	} finally {
 		try {
 			stream.close();
@@ -911,6 +967,164 @@ public void test_isDisposed() {
 	assertTrue(":b:", image.isDisposed());
 }
 
+@Test
+public void test_loadAsyncLorg_eclipse_swt_graphics_DeviceLorg_eclipse_swt_graphics_ImageFileNameProvider() throws Exception {
+	try {
+		Image.loadAsync(display, null);
+		fail("No exception thrown for provider == null");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for provider == null", SWT.ERROR_NULL_ARGUMENT, e);
+	}
+	CompletableFuture<Image> valid = Image.loadAsync(display, imageFileNameProvider);
+	CompletableFuture<Image> invalid = Image.loadAsync(display, zoom -> null);
+	long end = System.currentTimeMillis() + 10000;
+	while ((!valid.isDone() || !invalid.isDone()) && System.currentTimeMillis() < end) {
+		if (!display.readAndDispatch()) Thread.sleep(10);
+	}
+	Image image = valid.get();
+	try {
+		Image expected = new Image(display, imageFileNameProvider);
+		assertEquals(expected.getBounds(), image.getBounds());
+		expected.dispose();
+	} finally {
+		image.dispose();
+	}
+	try {
+		invalid.get();
+		fail("No exception thrown for non-existent file name");
+	} catch (ExecutionException e) {
+		assertSWTProblem("Incorrect exception thrown for non-existent file name", SWT.ERROR_INVALID_ARGUMENT, e.getCause());
+	}
+}
+
+@Test
+public void test_identicalImagesAreIndependent() {
+	// images created from identical data may share their native resources
+	if (SwtTestUtil.isGTK) display.setData(SHARE_SURFACES_KEY, Boolean.TRUE);
+	ImageData data = new ImageData(20, 20, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	for (int y = 0; y < data.height; y++) {
+		for (int x = 0; x < data.width; x++) {
+			data.setPixel(x, y, 0x00FF00);
+		}
+	}
+	int holders = getSharedSurfaceHolders();
+	Image image1 = new Image(display, data);
+	Image image2 = new Image(display, data);
+	try {
+		if (SwtTestUtil.isGTK) assertEquals(holders + 2, getSharedSurfaceHolders());
+		assertFalse(image1.equals(image2));
+		GC gc = new GC(image1);
+		// the image drawn on gets a copy of the shared surface
+		if (SwtTestUtil.isGTK) assertEquals(holders + 1, getSharedSurfaceHolders());
+		gc.setBackground(display.getSystemColor(SWT.COLOR_RED));
+		gc.fillRectangle(0, 0, 20, 20);
+		gc.dispose();
+		ImageData data1 = image1.getImageData();
+		ImageData data2 = image2.getImageData();
+		assertEquals(new RGB(255, 0, 0), data1.palette.getRGB(data1.getPixel(10, 10)));
+		assertEquals(new RGB(0, 255, 0), data2.palette.getRGB(data2.getPixel(10, 10)));
+		image1.dispose();
+		Image image3 = new Image(display, data);
+		if (SwtTestUtil.isGTK) assertEquals(holders + 2, getSharedSurfaceHolders());
+		data2 = image3.getImageData();
+		assertEquals(new RGB(0, 255, 0), data2.palette.getRGB(data2.getPixel(10, 10)));
+		image3.dispose();
+		image2.dispose();
+		if (SwtTestUtil.isGTK) assertEquals(holders, getSharedSurfaceHolders());
+	} finally {
+		image1.dispose();
+		image2.dispose();
+		if (SwtTestUtil.isGTK) display.setData(SHARE_SURFACES_KEY, Boolean.valueOf(Boolean.getBoolean("swt.shareImageSurfaces")));
+	}
+}
+
+@Test
+public void test_prepareZoomLevels$I() {
+	Image image = new Image(display, imageDataProvider);
+	try {
+		image.prepareZoomLevels((int[]) null);
+		fail("No exception thrown for null zoom levels");
+	} catch (IllegalArgumentException e) {
+	}
+	ImageData expected = image.getImageData();
+	image.prepareZoomLevels(100, 150, 200);
+	image.prepareZoomLevels();
+	// preparing zoom levels does not change the image
+	assertEquals(expected.width, image.getImageData().width);
+	assertEquals(expected.height, image.getImageData().height);
+	assertEquals(image.getImageData(200).width, image.getImageData(100).width * 2);
+	image.dispose();
+	try {
+		image.prepareZoomLevels(200);
+		fail("No exception thrown for disposed image");
+	} catch (SWTException e) {
+	}
+}
+
+@Test
+public void test_prepareZoomLevels$I_variantCache() {
+	// only GTK keeps the native resources of the zoom levels an image was displayed at
+	if (!SwtTestUtil.isGTK) return;
+	int nativeZoom = DPIUtil.getNativeDeviceZoom();
+	int zoom = DPIUtil.getDeviceZoom(), otherZoom = zoom == 200 ? 100 : 200;
+	long budget = getVariantCacheStatistics()[3];
+	display.setData(VARIANT_CACHE_KEY, Long.valueOf(64L * 1024 * 1024));
+	Image image = new Image(display, imageDataProvider);
+	Image target = new Image(display, 10, 10);
+	GC gc = new GC(target);
+	try {
+		// returning to a zoom level reuses its native resources
+		gc.drawImage(image, 0, 0);
+		DPIUtil.setDeviceZoom(otherZoom);
+		gc.drawImage(image, 0, 0);
+		long[] before = getVariantCacheStatistics();
+		DPIUtil.setDeviceZoom(zoom);
+		gc.drawImage(image, 0, 0);
+		long[] after = getVariantCacheStatistics();
+		assertEquals(before[0] + 1, after[0]);
+		assertEquals(before[1], after[1]);
+
+		// drawing on the image drops its other zoom levels
+		new GC(image).dispose();
+		before = getVariantCacheStatistics();
+		DPIUtil.setDeviceZoom(otherZoom);
+		gc.drawImage(image, 0, 0);
+		after = getVariantCacheStatistics();
+		assertEquals(before[0], after[0]);
+		assertEquals(before[1] + 1, after[1]);
+
+		// zoom levels that do not fit in the budget are released
+		display.setData(VARIANT_CACHE_KEY, Long.valueOf(0));
+		before = getVariantCacheStatistics();
+		assertEquals(0, before[2]);
+		DPIUtil.setDeviceZoom(zoom);
+		gc.drawImage(image, 0, 0);
+		after = getVariantCacheStatistics();
+		assertEquals(before[0], after[0]);
+		assertEquals(before[1] + 1, after[1]);
+		assertEquals(0, after[2]);
+
+		// prepared image data counts against the budget
+		image.prepareZoomLevels(otherZoom);
+		ForkJoinPool.commonPool().awaitQuiescence(10, TimeUnit.SECONDS);
+		assertEquals(0, getVariantCacheStatistics()[2]);
+		display.setData(VARIANT_CACHE_KEY, Long.valueOf(64L * 1024 * 1024));
+		image.prepareZoomLevels(otherZoom);
+		ForkJoinPool.commonPool().awaitQuiescence(10, TimeUnit.SECONDS);
+		assertTrue(getVariantCacheStatistics()[2] > 0);
+
+		// and is dropped when drawing on the image
+		new GC(image).dispose();
+		assertEquals(0, getVariantCacheStatistics()[2]);
+	} finally {
+		DPIUtil.setDeviceZoom(nativeZoom);
+		display.setData(VARIANT_CACHE_KEY, Long.valueOf(budget));
+		gc.dispose();
+		target.dispose();
+		image.dispose();
+	}
+}
+
 @Test
 public void test_setBackgroundLorg_eclipse_swt_graphics_Color() {
 	if (SwtTestUtil.isGTK) {
@@ -985,6 +1199,8 @@ public void test_toString() {
 }
 
 /* custom */
+static final String VARIANT_CACHE_KEY = "org.eclipse.swt.internal.gtk.imageVariantCache";
+static final String SHARE_SURFACES_KEY = "org.eclipse.swt.internal.gtk.shareImageSurfaces";
 Display display;
 
 /** Test implementation **/
@@ -1038,6 +1254,15 @@ void getImageData2(int depth, PaletteData palette) {
 	gc.dispose();
 	image.dispose();
 }
+int getSharedSurfaceHolders() {
+	Object holders = display.getData(SHARE_SURFACES_KEY);
+	return holders != null ? ((Integer) holders).intValue() : 0;
+}
+
+long[] getVariantCacheStatistics() {
+	return (long[]) display.getData(VARIANT_CACHE_KEY);
+}
+
 String getPath(String fileName) {
 	String urlPath;
 
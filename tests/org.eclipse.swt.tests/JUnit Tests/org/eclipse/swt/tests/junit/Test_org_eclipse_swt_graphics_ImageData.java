@@ -18,13 +18,25 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
+import org.eclipse.swt.graphics.ARGBImageData;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.PaletteData;
@@ -185,6 +197,54 @@ public void test_ConstructorLjava_lang_String() {
 	}
 }
 
+@Test
+public void test_ConstructorLjava_lang_String_diskCache() throws IOException {
+	// with a cache directory, image files are decoded once and then read from the cache
+	Path directory = Files.createTempDirectory("swt");
+	Path cache = directory.resolve("cache");
+	String cacheDir = System.getProperty("swt.imageCacheDir");
+	System.setProperty("swt.imageCacheDir", cache.toString());
+	try {
+		int count = SwtTestUtil.imageFormats.length;
+		String[] fileNames = new String[count];
+		ImageData[] decoded = new ImageData[count];
+		for (int i = 0; i < count; i++) {
+			String fileName = SwtTestUtil.imageFilenames[0] + "." + SwtTestUtil.imageFormats[i];
+			try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileName)) {
+				Files.copy(stream, directory.resolve(fileName));
+			}
+			fileNames[i] = directory.resolve(fileName).toString();
+			decoded[i] = new ImageData(fileNames[i]);
+			assertImageDataEquals(decoded[i], new ImageData(fileNames[i]));
+		}
+		File[] files = cache.toFile().listFiles();
+		assertEquals(count, files.length);
+
+		// cache files with invalid lengths are decoded again and replaced
+		for (File file : files) {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.seek(8);
+				raf.seek(12 + raf.readInt() + 13 * 4);
+				raf.writeInt(Integer.MAX_VALUE);
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			assertImageDataEquals(decoded[i], new ImageData(fileNames[i]));
+			assertImageDataEquals(decoded[i], new ImageData(fileNames[i]));
+		}
+		assertEquals(count, cache.toFile().listFiles().length);
+	} finally {
+		if (cacheDir != null) {
+			System.setProperty("swt.imageCacheDir", cacheDir);
+		} else {
+			System.clearProperty("swt.imageCacheDir");
+		}
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+}
+
 @Test
 public void test_clone() {
 	try (InputStream stream = SwtTestUtil.class.getResourceAsStream(SwtTestUtil.imageFilenames[0] + "." + SwtTestUtil.imageFormats[0])) {
@@ -748,6 +808,161 @@ public void test_getTransparencyType() {
 	} catch (IOException e) {}
 }
 
+@Test
+public void test_quantizedToII() {
+	ImageData source = new ImageData(64, 64, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	for (int y = 0; y < 64; y++) {
+		for (int x = 0; x < 64; x++) {
+			source.setPixel(x, y, ((x * 4) << 16) | ((y * 4) << 8) | ((x + y) * 2));
+		}
+	}
+
+	try {
+		source.quantizedTo(3, SWT.DITHER_NONE);
+		fail("No exception thrown for invalid depth");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for invalid depth", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+
+	try {
+		source.quantizedTo(8, -1);
+		fail("No exception thrown for invalid dither");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for invalid dither", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+
+	for (int depth : new int[] {1, 2, 4, 8}) {
+		for (int dither : new int[] {SWT.DITHER_NONE, SWT.DITHER_ERROR_DIFFUSION, SWT.DITHER_ORDERED}) {
+			ImageData quantized = source.quantizedTo(depth, dither);
+			assertEquals(":a:", depth, quantized.depth);
+			assertFalse(":b:", quantized.palette.isDirect);
+			assertEquals(":c:", 1 << depth, quantized.palette.getRGBs().length);
+			assertEquals(":d:", -1, quantized.transparentPixel);
+		}
+	}
+
+	// without dithering every pixel is close to its color
+	ImageData quantized = source.quantizedTo(8, SWT.DITHER_NONE);
+	for (int y = 0; y < 64; y++) {
+		for (int x = 0; x < 64; x++) {
+			RGB expected = source.palette.getRGB(source.getPixel(x, y));
+			RGB actual = quantized.palette.getRGB(quantized.getPixel(x, y));
+			assertTrue(":e:", Math.abs(expected.red - actual.red) < 32);
+			assertTrue(":f:", Math.abs(expected.green - actual.green) < 32);
+			assertTrue(":g:", Math.abs(expected.blue - actual.blue) < 32);
+		}
+	}
+
+	// few colors are kept exactly, and transparent pixels get the last index
+	RGB[] colors = {new RGB(10, 20, 30), new RGB(200, 100, 0), new RGB(0, 255, 0)};
+	ImageData few = new ImageData(3, 2, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	for (int x = 0; x < 3; x++) {
+		few.setPixel(x, 0, few.palette.getPixel(colors[x]));
+		few.setPixel(x, 1, few.palette.getPixel(colors[x]));
+	}
+	few.alphaData = new byte[] {(byte)255, (byte)255, (byte)255, (byte)255, (byte)255, 0};
+	quantized = few.quantizedTo(2, SWT.DITHER_ORDERED);
+	assertEquals(":h:", 3, quantized.transparentPixel);
+	assertEquals(":i:", 3, quantized.getPixel(2, 1));
+	for (int x = 0; x < 3; x++) {
+		assertEquals(":j:", colors[x], quantized.palette.getRGB(quantized.getPixel(x, 0)));
+	}
+	assertNull(":k:", quantized.alphaData);
+}
+
+@Test
+public void test_scaledToII_unscaled() {
+	// unscaled copies keep every byte of the pixels, for contiguous and padded rows
+	Random random = new Random(0);
+	for (int depth : new int[] {1, 2, 4, 8, 16, 24, 32}) {
+		PaletteData palette;
+		if (depth <= 8) {
+			RGB[] rgbs = new RGB[1 << depth];
+			for (int i = 0; i < rgbs.length; i++) {
+				rgbs[i] = new RGB(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+			}
+			palette = new PaletteData(rgbs);
+		} else {
+			palette = depth == 16 ? new PaletteData(0x7C00, 0x3E0, 0x1F) : new PaletteData(0xFF0000, 0xFF00, 0xFF);
+		}
+		for (int width : new int[] {5, 8, 13, 32}) {
+			ImageData source = new ImageData(width, 6, depth, palette);
+			random.nextBytes(source.data);
+			ImageData copy = source.scaledTo(width, source.height);
+			assertEquals(source.bytesPerLine, copy.bytesPerLine);
+			int rowBytes = width * depth / 8;
+			for (int y = 0; y < source.height; y++) {
+				for (int x = 0; x < width; x++) {
+					assertEquals(source.getPixel(x, y), copy.getPixel(x, y));
+				}
+				for (int i = 0; i < rowBytes; i++) {
+					assertEquals(source.data[y * source.bytesPerLine + i], copy.data[y * copy.bytesPerLine + i]);
+				}
+			}
+		}
+	}
+}
+
+@Test
+public void test_unscaledConversion() {
+	// direct images with byte sized channels and 8 bit indexed images are converted to ARGB without scaling
+	Random random = new Random(0);
+	int[][] masks = {
+		{0xFF0000, 0xFF00, 0xFF}, {0xFF, 0xFF00, 0xFF0000},
+		{0xFF000000, 0xFF0000, 0xFF00}, {0xFF00, 0xFF0000, 0xFF000000},
+	};
+	for (int[] mask : masks) {
+		for (int depth : new int[] {24, 32}) {
+			if (depth == 24 && (mask[0] | mask[1] | mask[2]) != 0xFFFFFF) continue;
+			ImageData source = new ImageData(7, 5, depth, new PaletteData(mask[0], mask[1], mask[2]));
+			random.nextBytes(source.data);
+			assertConvertedToARGB(source);
+		}
+	}
+	RGB[] rgbs = new RGB[256];
+	for (int i = 0; i < rgbs.length; i++) {
+		rgbs[i] = new RGB(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+	}
+	ImageData source = new ImageData(7, 5, 8, new PaletteData(rgbs));
+	random.nextBytes(source.data);
+	assertConvertedToARGB(source);
+}
+
+@Test
+public void test_unscaledConversionClearsUnusedByte() throws Exception {
+	// the byte of 32 bit pixels not covered by the masks is cleared, not left as it was
+	Class<?> clazz = ImageData.class;
+	Method blit = clazz.getDeclaredMethod("blit", int.class,
+		byte[].class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, int.class,
+		int.class, byte[].class, int.class, int.class, int.class,
+		byte[].class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, int.class, int.class,
+		boolean.class, boolean.class);
+	blit.setAccessible(true);
+	Field blitSrc = clazz.getDeclaredField("BLIT_SRC");
+	Field alphaOpaque = clazz.getDeclaredField("ALPHA_OPAQUE");
+	Field msbFirst = clazz.getDeclaredField("MSB_FIRST");
+	blitSrc.setAccessible(true);
+	alphaOpaque.setAccessible(true);
+	msbFirst.setAccessible(true);
+	int width = 5, height = 3;
+	byte[] src = new byte[width * 3 * height];
+	new Random(0).nextBytes(src);
+	byte[] dest = new byte[width * 4 * height];
+	Arrays.fill(dest, (byte) 0x55);
+	int order = msbFirst.getInt(null);
+	blit.invoke(null, blitSrc.getInt(null),
+		src, 24, width * 3, order, 0, 0, width, height, 0xFF, 0xFF00, 0xFF0000,
+		alphaOpaque.getInt(null), null, 0, 0, 0,
+		dest, 32, width * 4, order, 0, 0, width, height, 0xFF0000, 0xFF00, 0xFF,
+		false, false);
+	for (int i = 0, s = 0, d = 0; i < width * height; i++, s += 3, d += 4) {
+		assertEquals(0, dest[d]);
+		assertEquals(src[s + 2], dest[d + 1]);
+		assertEquals(src[s + 1], dest[d + 2]);
+		assertEquals(src[s], dest[d + 3]);
+	}
+}
+
 @Test
 public void test_scaledToII() {
 	final int imageDimension = 8;
@@ -776,6 +991,55 @@ public void test_scaledToII() {
 	assertArrayEquals(":d:", expectedPixelData, scaledPixelData);
 }
 
+@Test
+public void test_scaledToIII() {
+	// left half opaque red, right half transparent green
+	RGB red = new RGB(255, 0, 0);
+	ImageData source = new ImageData(16, 16, 8, new PaletteData(new RGB[] {red, new RGB(0, 255, 0)}));
+	for (int y = 0; y < 16; y++) {
+		for (int x = 8; x < 16; x++) {
+			source.setPixel(x, y, 1);
+		}
+	}
+	source.transparentPixel = 1;
+
+	try {
+		source.scaledTo(32, 32, -1);
+		fail("No exception thrown for invalid filter");
+	} catch (IllegalArgumentException e) {
+		assertSWTProblem("Incorrect exception thrown for invalid filter", SWT.ERROR_INVALID_ARGUMENT, e);
+	}
+
+	ImageData nearest = source.scaledTo(32, 32, SWT.FILTER_NEAREST);
+	assertEquals(":a:", 8, nearest.depth);
+	assertEquals(":b:", 1, nearest.transparentPixel);
+
+	for (int filter : new int[] {SWT.FILTER_BILINEAR, SWT.FILTER_BICUBIC, SWT.FILTER_LANCZOS}) {
+		ImageData scaled = source.scaledTo(32, -32, filter);
+		assertEquals(":c:", 32, scaled.width);
+		assertEquals(":d:", 32, scaled.height);
+		assertEquals(":e:", SWT.TRANSPARENCY_ALPHA, scaled.getTransparencyType());
+		for (int y = 0; y < 32; y++) {
+			for (int x = 0; x < 32; x++) {
+				int alpha = scaled.getAlpha(x, y);
+				// transparent pixels do not bleed into the edge
+				if (alpha != 0) assertEquals(":f:", red, scaled.palette.getRGB(scaled.getPixel(x, y)));
+				if (x < 10) assertEquals(":g:", 255, alpha);
+				if (x > 21) assertEquals(":h:", 0, alpha);
+			}
+		}
+
+		// same size keeps the pixels
+		scaled = source.scaledTo(16, 16, filter);
+		for (int y = 0; y < 16; y++) {
+			for (int x = 0; x < 16; x++) {
+				assertEquals(":i:", x < 8 ? 255 : 0, scaled.getAlpha(x, y));
+				if (x < 8) assertEquals(":j:", red, scaled.palette.getRGB(scaled.getPixel(x, y)));
+			}
+		}
+	}
+}
+
 @Test
 public void test_setAlphaIII() {
 	int value;
@@ -1162,4 +1426,31 @@ public void test_setPixelsIII$II() {
 ImageData imageData;
 final int IMAGE_DIMENSION = 10;
 
+void assertImageDataEquals(ImageData expected, ImageData actual) {
+	assertEquals(expected.width, actual.width);
+	assertEquals(expected.height, actual.height);
+	assertEquals(expected.depth, actual.depth);
+	assertEquals(expected.bytesPerLine, actual.bytesPerLine);
+	assertEquals(expected.transparentPixel, actual.transparentPixel);
+	assertEquals(expected.alpha, actual.alpha);
+	assertEquals(expected.palette.isDirect, actual.palette.isDirect);
+	assertEquals(expected.palette.redMask, actual.palette.redMask);
+	assertEquals(expected.palette.greenMask, actual.palette.greenMask);
+	assertEquals(expected.palette.blueMask, actual.palette.blueMask);
+	assertArrayEquals(expected.palette.getRGBs(), actual.palette.getRGBs());
+	assertArrayEquals(expected.data, actual.data);
+	assertArrayEquals(expected.maskData, actual.maskData);
+	assertArrayEquals(expected.alphaData, actual.alphaData);
+}
+
+void assertConvertedToARGB(ImageData source) {
+	int[] pixels = new ARGBImageData(source, false).pixels;
+	for (int y = 0, i = 0; y < source.height; y++) {
+		for (int x = 0; x < source.width; x++, i++) {
+			RGB rgb = source.palette.getRGB(source.getPixel(x, y));
+			assertEquals(0xFF000000 | (rgb.red << 16) | (rgb.green << 8) | rgb.blue, pixels[i]);
+		}
+	}
+}
+
 }
@@ -12,18 +12,36 @@
 package org.eclipse.swt.tests.junit;
 
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntBinaryOperator;
+import java.util.zip.Deflater;
 
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageInfo;
 import org.eclipse.swt.graphics.ImageLoader;
 import org.eclipse.swt.graphics.ImageLoaderEvent;
 import org.eclipse.swt.graphics.ImageLoaderListener;
+import org.eclipse.swt.graphics.ImageRowConsumer;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.internal.ParallelUtil;
 import org.junit.Test;
 
 /**
@@ -88,6 +106,12 @@ public void test_loadLjava_io_InputStream() {
 		} catch (IOException|SWTException e) {
 		}
 
+		try (InputStream stream = new ByteArrayInputStream(new byte[] {'B', 'M'})) {
+			loader.load(stream);
+			fail("No exception thrown for load from truncated inputStream");
+		} catch (IOException|SWTException e) {
+		}
+
 		int numFormats = SwtTestUtil.imageFormats.length;
 		String fileName = SwtTestUtil.imageFilenames[0];
 		for (int i = 0; i < numFormats; i++) {
@@ -99,6 +123,206 @@ public void test_loadLjava_io_InputStream() {
 		}
 }
 
+@Test
+public void test_loadLjava_io_InputStreamII() {
+	ImageLoader loader = new ImageLoader();
+	try (InputStream stream = null) {
+		loader.load(stream, 16, 16);
+		fail("No exception thrown for load inputStream == null");
+	} catch (IllegalArgumentException | IOException e) {
+	}
+
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("target.jpg")) {
+		loader.load(stream, 0, 16);
+		fail("No exception thrown for load with width == 0");
+	} catch (IllegalArgumentException | IOException e) {
+	}
+
+	ImageData[] data = null;
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("target.jpg")) {
+		data = loader.load(stream, 12, 12);
+	} catch (IOException e) {}
+	assertEquals(":a:", 12, data[0].width);
+	assertEquals(":b:", 12, data[0].height);
+
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("target.jpg")) {
+		data = loader.load(stream, 4, 4);
+	} catch (IOException e) {}
+	assertEquals(":c:", 6, data[0].width);
+	assertEquals(":d:", 6, data[0].height);
+
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("target.png")) {
+		data = loader.load(stream, 4, 4);
+	} catch (IOException e) {}
+	assertEquals(":e:", 24, data[0].width);
+	assertEquals(":f:", 24, data[0].height);
+}
+
+@Test
+public void test_loadLjava_io_InputStreamLorg_eclipse_swt_graphics_ImageRowConsumer() {
+	ImageLoader loader = new ImageLoader();
+	try (InputStream stream = null) {
+		loader.load(stream, (rows, y, height) -> {});
+		fail("No exception thrown for load inputStream == null");
+	} catch (IllegalArgumentException | IOException e) {
+	}
+
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("target.png")) {
+		loader.load(stream, (ImageRowConsumer) null);
+		fail("No exception thrown for load consumer == null");
+	} catch (IllegalArgumentException | IOException e) {
+	}
+
+	String fileName = SwtTestUtil.imageFilenames[0];
+	for (String format : SwtTestUtil.imageFormats) {
+		ImageData data = null;
+		try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileName + "." + format)) {
+			data = loader.load(stream)[0];
+		} catch (IOException e) {}
+		ImageData image = data;
+		boolean[] loaded = new boolean[image.height];
+		try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileName + "." + format)) {
+			loader.load(stream, (rows, y, height) -> {
+				assertEquals(format, image.width, rows.width);
+				for (int row = 0; row < height; row++) {
+					assertFalse(format, loaded[y + row]);
+					loaded[y + row] = true;
+					for (int x = 0; x < image.width; x++) {
+						assertEquals(format, image.palette.getRGB(image.getPixel(x, y + row)), rows.palette.getRGB(rows.getPixel(x, row)));
+						assertEquals(format, image.getAlpha(x, y + row), rows.getAlpha(x, row));
+					}
+				}
+			});
+		} catch (IOException e) {}
+		for (int y = 0; y < image.height; y++) {
+			assertTrue(format, loaded[y]);
+		}
+	}
+}
+
+@Test
+public void test_loadLjava_io_InputStream_tiff() {
+	// tiled, deflated with the horizontal predictor, large enough for the tiles to be decoded in parallel
+	int width = 600, height = 400, tileSize = 64;
+	int tilesAcross = (width + tileSize - 1) / tileSize, tilesDown = (height + tileSize - 1) / tileSize;
+	int tileCount = tilesAcross * tilesDown;
+	ByteArrayOutputStream tiles = new ByteArrayOutputStream();
+	int[] offsets = new int[tileCount], counts = new int[tileCount];
+	for (int i = 0; i < tileCount; i++) {
+		byte[] tile = new byte[tileSize * tileSize * 3];
+		for (int y = 0; y < tileSize; y++) {
+			for (int x = tileSize - 1; x >= 0; x--) {
+				int pixel = (i / tilesAcross * tileSize + y) * width + i % tilesAcross * tileSize + x;
+				for (int sample = 0; sample < 3; sample++) {
+					int index = (y * tileSize + x) * 3 + sample;
+					tile[index] = (byte) (pixel >> (sample * 4));
+					if (x > 0) tile[index] -= (byte) ((pixel - 1) >> (sample * 4));
+				}
+			}
+		}
+		Deflater deflater = new Deflater();
+		deflater.setInput(tile);
+		deflater.finish();
+		byte[] buffer = new byte[tile.length + 64];
+		counts[i] = deflater.deflate(buffer);
+		deflater.end();
+		offsets[i] = 8 + tiles.size();
+		tiles.write(buffer, 0, counts[i]);
+	}
+	short[][] entries = {
+		{256, 4, 1}, {257, 4, 1}, {258, 3, 3}, {259, 3, 1}, {262, 3, 1}, {277, 3, 1},
+		{317, 3, 1}, {322, 4, 1}, {323, 4, 1}, {324, 4, (short) tileCount}, {325, 4, (short) tileCount}};
+	int ifdOffset = 8 + tiles.size();
+	int dataOffset = ifdOffset + 2 + entries.length * 12 + 4;
+	int[] values = {width, height, dataOffset, 8, 2, 3, 2, tileSize, tileSize, dataOffset + 8, dataOffset + 8 + tileCount * 4};
+	ByteBuffer file = ByteBuffer.allocate(values[10] + tileCount * 4).order(ByteOrder.LITTLE_ENDIAN);
+	file.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(ifdOffset).put(tiles.toByteArray());
+	file.putShort((short) entries.length);
+	for (int i = 0; i < entries.length; i++) {
+		file.putShort(entries[i][0]).putShort(entries[i][1]).putInt(entries[i][2]);
+		if (entries[i][1] == 3) file.putShort((short) values[i]).putShort((short) 0);
+		else file.putInt(values[i]);
+	}
+	file.putInt(0).putShort((short) 8).putShort((short) 8).putShort((short) 8).putShort((short) 0);
+	for (int offset : offsets) file.putInt(offset);
+	for (int count : counts) file.putInt(count);
+
+	ImageData data = new ImageLoader().load(new ByteArrayInputStream(file.array()))[0];
+	assertEquals(width, data.width);
+	assertEquals(height, data.height);
+	for (int y = 0; y < height; y++) {
+		for (int x = 0; x < width; x++) {
+			int pixel = y * width + x;
+			RGB rgb = data.palette.getRGB(data.getPixel(x, y));
+			assertEquals(new RGB(pixel & 0xFF, (pixel >> 4) & 0xFF, (pixel >> 8) & 0xFF), rgb);
+		}
+	}
+}
+
+@Test
+public void test_loadLjava_io_InputStream_tiffStrips() {
+	/*
+	 * Three pages written by another encoder: an 8-bit palette image in
+	 * one LZW strip, noisy enough to fill the code table and clear it
+	 * twice, with runs of equal bytes for codes used as soon as they are
+	 * defined; an RGB image in LZW strips with the horizontal predictor;
+	 * and part of the same RGB image in uncompressed strips.
+	 */
+	ImageData[] images = null;
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("strips.tif")) {
+		images = new ImageLoader().load(stream);
+	} catch (IOException e) {}
+	assertEquals(3, images.length);
+	int[][] sizes = {{160, 120}, {150, 100}, {48, 30}};
+	for (int i = 0; i < images.length; i++) {
+		ImageData data = images[i];
+		assertEquals(sizes[i][0], data.width);
+		assertEquals(sizes[i][1], data.height);
+		for (int y = 0; y < data.height; y++) {
+			for (int x = 0; x < data.width; x++) {
+				int hash = x * 0x9E3779B1 ^ y * 0x85EBCA6B;
+				hash ^= hash >>> 13;
+				RGB expected;
+				if (i == 0) {
+					int index = y < 16 ? y * 4 : hash & 0x3F;
+					expected = new RGB(index, 255 - index, (index * 7) & 0xFF);
+				} else {
+					expected = new RGB(x * 255 / 149, y * 2, (x + (hash & 0x1F)) & 0xFF);
+				}
+				assertEquals(i + ":" + x + "," + y, expected, data.palette.getRGB(data.getPixel(x, y)));
+			}
+		}
+	}
+}
+
+@Test
+public void test_loadLjava_io_InputStream_progressiveJpeg() {
+	ImageData expected = null;
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("progressive_target.jpg")) {
+		expected = new ImageLoader().load(stream)[0];
+	} catch (IOException e) {}
+
+	// one full size image per scan, the last one is the decoded image
+	ImageLoader loader = new ImageLoader();
+	List<ImageLoaderEvent> events = new ArrayList<>();
+	loader.addImageLoaderListener(events::add);
+	ImageData data = null;
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("progressive_target.jpg")) {
+		data = loader.load(stream)[0];
+	} catch (IOException e) {}
+	assertTrue(":a:", events.size() > 1);
+	for (int i = 0; i < events.size(); i++) {
+		ImageLoaderEvent event = events.get(i);
+		assertEquals(":b:", i, event.incrementCount);
+		assertEquals(":c:", i == events.size() - 1, event.endOfImage);
+		assertEquals(":d:", expected.width, event.imageData.width);
+		assertEquals(":e:", expected.height, event.imageData.height);
+		assertEquals(":f:", expected.bytesPerLine, event.imageData.bytesPerLine);
+	}
+	assertTrue(":g:", Arrays.equals(expected.data, data.data));
+	assertTrue(":h:", Arrays.equals(expected.data, events.get(events.size() - 1).imageData.data));
+}
+
 @Test
 public void test_loadLjava_lang_String() {
 	ImageLoader loader = new ImageLoader();
@@ -108,6 +332,56 @@ public void test_loadLjava_lang_String() {
 		fail("No exception thrown for load filename == null");
 	} catch (IllegalArgumentException e) {
 	}
+
+	// large enough for the file to be mapped into memory
+	ImageData source = gradient(600, 400, (x, y) -> x * y);
+	File file = null;
+	try {
+		file = File.createTempFile("swt", ".bmp");
+		loader.data = new ImageData[] {source};
+		loader.save(file.getPath(), SWT.IMAGE_BMP);
+		assertSimilar(source, new ImageLoader().load(file.getPath())[0], 0, 0);
+	} catch (IOException e) {
+		fail(e.getMessage());
+	} finally {
+		if (file != null) file.delete();
+	}
+}
+
+@Test
+public void test_probeLjava_io_InputStream() {
+	ImageLoader loader = new ImageLoader();
+	try (InputStream stream = null) {
+		loader.probe(stream);
+		fail("No exception thrown for probe inputStream == null");
+	} catch (IllegalArgumentException | IOException e) {
+	}
+
+	try (InputStream stream = SwtTestUtil.class.getResourceAsStream("empty.txt")) {
+		loader.probe(stream);
+		fail("No exception thrown for probe from invalid inputStream");
+	} catch (IOException|SWTException e) {
+	}
+
+	for (String fileName : SwtTestUtil.imageFilenames) {
+		for (String format : SwtTestUtil.imageFormats) {
+			ImageData[] data = null;
+			ImageInfo info = null;
+			try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileName + "." + format)) {
+				data = loader.load(stream);
+			} catch (IOException e) {}
+			try (InputStream stream = SwtTestUtil.class.getResourceAsStream(fileName + "." + format)) {
+				info = loader.probe(stream);
+			} catch (IOException e) {}
+			String name = fileName + "." + format;
+			assertEquals(name, data[0].type, info.type);
+			assertEquals(name, data[0].width, info.width);
+			assertEquals(name, data[0].height, info.height);
+			assertEquals(name, data[0].depth, info.depth);
+			assertEquals(name, data.length, info.frameCount);
+			assertEquals(name, data[0].alphaData != null, info.hasAlpha);
+		}
+	}
 }
 
 @Test
@@ -157,6 +431,107 @@ public void test_saveLjava_io_OutputStreamI() {
 	}
 }
 
+@Test
+public void test_saveLjava_io_OutputStreamI_png() {
+	// large enough for the encoder to compress several row blocks
+	ImageData source = gradient(600, 400, (x, y) -> x * y);
+	for (int y = 0; y < source.height; y++) {
+		for (int x = 0; x < source.width; x++) {
+			source.setAlpha(x, y, (x + y) & 0xFF);
+		}
+	}
+	for (int compression = 0; compression <= 3; compression++) {
+		assertRoundTrip(source, SWT.IMAGE_PNG, compression, 0, 0);
+	}
+}
+
+@Test
+public void test_saveLjava_io_OutputStreamI_jpeg() {
+	// large images are written with a restart interval per MCU row, small ones without
+	for (int[] size : new int[][] {{600, 520}, {37, 23}}) {
+		ImageData source = gradient(size[0], size[1], (x, y) -> 0x80);
+		// subsampled and full resolution chrominance
+		for (int compression : new int[] {50, 95, 100}) {
+			assertRoundTrip(source, SWT.IMAGE_JPEG, compression, 255, compression < 100 ? 4 : 2);
+		}
+	}
+}
+
+@Test
+public void test_loadLjava_io_InputStream_jpegRestartIntervals() {
+	// restart intervals are decoded concurrently, the result must not differ from sequential decoding
+	Random random = new Random(0);
+	ImageData source = gradient(600, 520, (x, y) -> random.nextInt(64));
+	// subsampled and full resolution chrominance
+	for (int compression : new int[] {50, 95, 100}) {
+		ImageLoader loader = new ImageLoader();
+		loader.data = new ImageData[] {source};
+		loader.compression = compression;
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		loader.save(outStream, SWT.IMAGE_JPEG);
+		byte[] bytes = outStream.toByteArray();
+		boolean restartMarkers = false;
+		for (int i = 0; i < bytes.length - 1 && !restartMarkers; i++) {
+			restartMarkers = bytes[i] == (byte) 0xFF && (bytes[i + 1] & 0xF8) == 0xD0;
+		}
+		assertTrue(restartMarkers);
+		// complete and truncated data
+		for (int length : new int[] {bytes.length, bytes.length * 2 / 3}) {
+			byte[] input = Arrays.copyOf(bytes, length);
+			ImageData sequential, parallel;
+			try {
+				ParallelUtil.setParallelism(1);
+				sequential = new ImageLoader().load(new ByteArrayInputStream(input))[0];
+				ParallelUtil.setParallelism(4);
+				parallel = new ImageLoader().load(new ByteArrayInputStream(input))[0];
+			} finally {
+				ParallelUtil.setParallelism(0);
+			}
+			assertEquals(sequential.width, parallel.width);
+			assertEquals(sequential.height, parallel.height);
+			assertEquals(sequential.bytesPerLine, parallel.bytesPerLine);
+			assertTrue(Arrays.equals(sequential.data, parallel.data));
+		}
+	}
+}
+
+@Test
+public void test_saveLjava_io_OutputStreamI_gif() {
+	// direct color images are reduced to a palette when saved as GIF
+	ImageData source = gradient(100, 80, (x, y) -> 0x80);
+	ImageData data = assertRoundTrip(source, SWT.IMAGE_GIF, 0, 32, 4);
+	assertEquals(8, data.depth);
+}
+
+@Test
+public void test_saveLjava_io_OutputStreamI_gifIndexed() {
+	// noise fills the code table several times, runs make strings that span rows
+	Random random = new Random(0);
+	for (int depth : new int[] {4, 8}) {
+		RGB[] rgbs = new RGB[1 << depth];
+		for (int i = 0; i < rgbs.length; i++) {
+			rgbs[i] = new RGB(i, i, i);
+		}
+		ImageData source = new ImageData(37, 300, depth, new PaletteData(rgbs));
+		for (int y = 0; y < source.height; y++) {
+			for (int x = 0; x < source.width; x++) {
+				source.setPixel(x, y, y < 150 ? random.nextInt(1 << depth) : (y / 50) % (1 << depth));
+			}
+		}
+		ImageLoader loader = new ImageLoader();
+		loader.data = new ImageData[] {source};
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		loader.save(outStream, SWT.IMAGE_GIF);
+		ImageData data = new ImageLoader().load(new ByteArrayInputStream(outStream.toByteArray()))[0];
+		assertEquals(depth, data.depth);
+		for (int y = 0; y < source.height; y++) {
+			for (int x = 0; x < source.width; x++) {
+				assertEquals(source.getPixel(x, y), data.getPixel(x, y));
+			}
+		}
+	}
+}
+
 @Test
 public void test_saveLjava_lang_StringI() {
 	ImageLoader loader = new ImageLoader();
@@ -170,4 +545,59 @@ public void test_saveLjava_lang_StringI() {
 
 /* custom */
 boolean loaderListenerCalled;
+
+/**
+ * Answer a direct color image whose red grows from left to right and green
+ * from top to bottom, with the blue of every pixel given by the function.
+ */
+private static ImageData gradient(int width, int height, IntBinaryOperator blue) {
+	ImageData image = new ImageData(width, height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	for (int y = 0; y < height; y++) {
+		for (int x = 0; x < width; x++) {
+			image.setPixel(x, y, ((x * 255 / width) << 16) | ((y * 255 / height) << 8) | (blue.applyAsInt(x, y) & 0xFF));
+		}
+	}
+	return image;
+}
+
+/**
+ * Save the image in the format, check that the loader still holds it, load
+ * it back and compare the two as {@link #assertSimilar} does. Answer the
+ * loaded image.
+ */
+private static ImageData assertRoundTrip(ImageData source, int format, int compression, int maxError, int averageError) {
+	ImageLoader loader = new ImageLoader();
+	loader.data = new ImageData[] {source};
+	loader.compression = compression;
+	ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+	loader.save(outStream, format);
+	assertTrue(loader.data[0] == source);
+	ImageData data = new ImageLoader().load(new ByteArrayInputStream(outStream.toByteArray()))[0];
+	assertSimilar(source, data, maxError, averageError);
+	return data;
+}
+
+/**
+ * Assert that the images have the same size and alpha, and that no color
+ * channel of a pixel differs by more than maxError, nor by more than
+ * averageError on average. Both are 0 for lossless formats.
+ */
+private static void assertSimilar(ImageData expected, ImageData actual, int maxError, int averageError) {
+	assertEquals(expected.width, actual.width);
+	assertEquals(expected.height, actual.height);
+	long error = 0;
+	for (int y = 0; y < expected.height; y++) {
+		for (int x = 0; x < expected.width; x++) {
+			RGB expectedRGB = expected.palette.getRGB(expected.getPixel(x, y));
+			RGB actualRGB = actual.palette.getRGB(actual.getPixel(x, y));
+			int red = Math.abs(expectedRGB.red - actualRGB.red);
+			int green = Math.abs(expectedRGB.green - actualRGB.green);
+			int blue = Math.abs(expectedRGB.blue - actualRGB.blue);
+			assertTrue(x + "," + y, red <= maxError && green <= maxError && blue <= maxError);
+			assertEquals(x + "," + y, expected.getAlpha(x, y), actual.getAlpha(x, y));
+			error += red + green + blue;
+		}
+	}
+	assertTrue(error <= 3L * expected.width * expected.height * averageError);
+}
 }
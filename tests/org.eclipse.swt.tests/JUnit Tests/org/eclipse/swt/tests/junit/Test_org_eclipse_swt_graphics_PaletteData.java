@@ -83,6 +83,23 @@ public void test_getPixelLorg_eclipse_swt_graphics_RGB() {
 
 	assertEquals(":a:", rgbs.length-1, data.getPixel(rgbs[rgbs.length-1]));
 
+	// the first of duplicate colors is answered, also after the colors change
+	rgbs = new RGB[256];
+	for (int i = 0; i < rgbs.length; i++) {
+		rgbs[i] = new RGB(i % 16 * 17, i / 16 * 17, (i * 7) % 256);
+	}
+	rgbs[200] = new RGB(1, 2, 3);
+	rgbs[100] = new RGB(1, 2, 3);
+	data = new PaletteData(rgbs);
+	for (int i = 0; i < rgbs.length; i++) {
+		if (i != 200) assertEquals(":c:", i, data.getPixel(rgbs[i]));
+	}
+	assertEquals(":d:", 100, data.getPixel(new RGB(1, 2, 3)));
+	rgbs[100].blue = 4;
+	assertEquals(":e:", 200, data.getPixel(new RGB(1, 2, 3)));
+	data.colors = new RGB[] {new RGB(9, 9, 9)};
+	assertEquals(":f:", 0, data.getPixel(new RGB(9, 9, 9)));
+
 	// direct palette tests
 	RGB rgb =new RGB(0x32, 0x64, 0x96);
 	data = new PaletteData(0xff0000, 0x00ff00, 0x0000ff);
@@ -10,11 +10,18 @@
  *******************************************************************************/
 package org.eclipse.swt.tests.junit.performance;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageLoader;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.layout.FillLayout;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
@@ -75,6 +82,7 @@ protected void setUp() throws Exception {
  * - Region operations
  * - Fonts
  * - Image loading
+ * - Image encoding
  * - Layouts
  */
 public void test_createComposites() {
@@ -257,6 +265,56 @@ public void test_imageDrawing() {
 	disposeMeter(meter);
 }
 
+public void test_gifCoding() {
+	PerformanceMeter decodeMeter = createMeter("Decode an animated GIF");
+	PerformanceMeter encodeMeter = createMeter("Encode an animated GIF");
+	int samples;
+
+	// 100 frames of dithered gradients and flat areas, the content of typical animations
+	RGB[] rgbs = new RGB[256];
+	for (int i = 0; i < rgbs.length; i++) {
+		rgbs[i] = new RGB(i, (i * 3) & 0xFF, 255 - i);
+	}
+	ImageData[] frames = new ImageData[100];
+	java.util.Random random = new java.util.Random(0);
+	for (int i = 0; i < frames.length; i++) {
+		ImageData frame = new ImageData(320, 240, 8, new PaletteData(rgbs));
+		for (int y = 0; y < frame.height; y++) {
+			for (int x = 0; x < frame.width; x++) {
+				int pixel = x < 160 ? (x + y + i + random.nextInt(8)) & 0xFF : ((x / 32 + y / 24 + i) * 17) & 0xFF;
+				frame.data[y * frame.bytesPerLine + x] = (byte)pixel;
+			}
+		}
+		frame.delayTime = 4;
+		frames[i] = frame;
+	}
+	ImageLoader loader = new ImageLoader();
+	loader.data = frames;
+	loader.logicalScreenWidth = 320;
+	loader.logicalScreenHeight = 240;
+	ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	loader.save(stream, SWT.IMAGE_GIF);
+	byte[] bytes = stream.toByteArray();
+
+	// Warm up.
+	for(samples = 0; samples < 2; samples++) {
+		new ImageLoader().load(new ByteArrayInputStream(bytes));
+		loader.save(new ByteArrayOutputStream(bytes.length), SWT.IMAGE_GIF);
+	}
+
+	for(samples = 0; samples < 20; samples++) {
+		decodeMeter.start();
+		new ImageLoader().load(new ByteArrayInputStream(bytes));
+		decodeMeter.stop();
+		stream = new ByteArrayOutputStream(bytes.length);
+		encodeMeter.start();
+		loader.save(stream, SWT.IMAGE_GIF);
+		encodeMeter.stop();
+	}
+	disposeMeter(decodeMeter);
+	disposeMeter(encodeMeter);
+}
+
 public void test_windowDrawing() {
 	PerformanceMeter meter = createMeter("Draw on a window");
 	Performance performance= Performance.getDefault();
@@ -416,6 +474,7 @@ public static java.util.List<String> methodNames() {
 	methodNames.add("test_createComposites");
 	methodNames.add("test_createWidgets");
 	methodNames.add("test_imageDrawing");
+	methodNames.add("test_gifCoding");
 	methodNames.add("test_windowDrawing");
 	methodNames.add("test_stringDrawing");
 	methodNames.add("test_fastStringDrawing");
@@ -428,6 +487,7 @@ protected void runTest() {
 	else if (getName().equals("test_createWidgets")) test_createWidgets();
 	else if (getName().equals("test_layout")) test_layout();
 	else if (getName().equals("test_imageDrawing")) test_imageDrawing();
+	else if (getName().equals("test_gifCoding")) test_gifCoding();
 	else if (getName().equals("test_windowDrawing")) test_windowDrawing();
 	else if (getName().equals("test_stringDrawing")) test_stringDrawing();
 	else if (getName().equals("test_fastStringDrawing")) test_fastStringDrawing();